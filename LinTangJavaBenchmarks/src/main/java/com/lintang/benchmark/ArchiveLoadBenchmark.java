@@ -0,0 +1,83 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.FormulaParserUtil;
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.serial.FormulaArchive;
+import com.lintang.formula.serial.FormulaArchiveWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm start of 10,000 distinct formulas: decoding a memory-mapped {@link FormulaArchive}
+ * vs parsing the text again with ANTLR and with the Pratt parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArchiveLoadBenchmark {
+
+    private static final int FORMULAS = 10_000;
+
+    private String[] texts;
+    private Path file;
+
+    @Setup
+    public void setUp() throws Exception {
+        texts = new String[FORMULAS];
+        FormulaArchiveWriter writer = new FormulaArchiveWriter();
+        for (int i = 0; i < FORMULAS; i++) {
+            int row = i + 1;
+            texts[i] = "SUM(A" + row + ":C" + (row + 20) + ") * B" + row + " + IF(D" + row + ", 2.5, -E" + row + " ^ 2) / " + row;
+            writer.add(texts[i], PrattFormulaParser.parse(texts[i]));
+        }
+        file = Files.createTempFile("formulas", ".ltfa");
+        writer.write(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void archive(Blackhole blackhole) throws IOException {
+        FormulaArchive archive = FormulaArchive.open(file);
+        for (int i = 0; i < archive.size(); i++) {
+            blackhole.consume(archive.get(i));
+        }
+    }
+
+    @Benchmark
+    public void antlr(Blackhole blackhole) throws Exception {
+        for (String text : texts) {
+            blackhole.consume(FormulaParserUtil.parse(text));
+        }
+    }
+
+    @Benchmark
+    public void pratt(Blackhole blackhole) {
+        for (String text : texts) {
+            ASTNode ast = PrattFormulaParser.parse(text);
+            blackhole.consume(ast);
+        }
+    }
+}
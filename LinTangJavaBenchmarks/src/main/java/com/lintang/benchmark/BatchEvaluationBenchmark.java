@@ -0,0 +1,73 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.batch.BatchFormula;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a formula template down one million rows: {@link BatchFormula} chunked column loops
+ * vs one closure evaluation per row with shifted cell references.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchEvaluationBenchmark {
+
+    private static final int ROWS = 1_000_000;
+
+    @Param({"A1 * B1 + C1", "(A1 - B1) / (C1 + 1) * 100 - A1 ^ 2"})
+    public String formula;
+
+    private ColumnarCellStore data;
+    private BatchFormula batch;
+    private CompiledFormula perRow;
+    private double[] out;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        data = ColumnarCellStore.ofColumns(
+                random.doubles(ROWS, 0, 100).toArray(),
+                random.doubles(ROWS, 0, 100).toArray(),
+                random.doubles(ROWS, 0, 100).toArray());
+        ASTNode template = PrattFormulaParser.parse(formula);
+        batch = BatchFormula.compile(template, 0);
+        perRow = ClosureCompiler.compile(template);
+        out = new double[ROWS];
+    }
+
+    @Benchmark
+    public double[] batch() {
+        batch.evaluateInto(data, 0, ROWS, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public double[] closurePerRow() {
+        for (int row = 0; row < ROWS; row++) {
+            int offset = row;
+            out[row] = perRow.evaluate((r, column) -> data.getNumber(r + offset, column));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,173 @@
+package com.lintang.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs benchmarks with the GC profiler and compares them against a saved baseline, to catch
+ * hot paths that regress, e.g. after a library upgrade.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.lintang.benchmark.BenchmarkRunner [options] [JMH options and patterns]
+ *   --save FILE        write the results as a baseline
+ *   --baseline FILE    compare the results with a baseline and exit with status 1 on regressions
+ *   --threshold PCT    tolerated slowdown or allocation growth in percent (default 10)
+ * </pre>
+ *
+ * A baseline is a tab-separated file with one line per benchmark and parameter combination:
+ * name, mode, score, score error, unit and normalized allocation in bytes per operation.
+ * A score regresses when it is worse than the baseline by more than the threshold and by more
+ * than the two score errors combined, so noisy runs are not reported; allocation regresses when
+ * it grows by more than the threshold and by more than 16 bytes per operation.
+ */
+public final class BenchmarkRunner {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+    private static final double ALLOCATION_SLACK = 16;
+
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * One measured benchmark, keyed by name and parameters.
+     */
+    record Measurement(String key, String mode, double score, double error, String unit, double allocation) {
+
+        static Measurement of(RunResult run) {
+            BenchmarkParams params = run.getParams();
+            StringBuilder key = new StringBuilder(params.getBenchmark());
+            for (String param : params.getParamsKeys()) {
+                key.append(':').append(param).append('=').append(params.getParam(param));
+            }
+            Result<?> primary = run.getPrimaryResult();
+            Result<?> allocation = run.getSecondaryResults().get(ALLOCATION);
+            return new Measurement(key.toString(), params.getMode().shortLabel(), primary.getScore(),
+                    primary.getScoreError(), primary.getScoreUnit(), allocation == null ? Double.NaN : allocation.getScore());
+        }
+
+        static Measurement parse(String line) {
+            String[] fields = line.split("\t");
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("Malformed baseline line: " + line);
+            }
+            return new Measurement(fields[0], fields[1], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                    fields[4], Double.parseDouble(fields[5]));
+        }
+
+        String format() {
+            return String.join("\t", key, mode, Double.toString(score), Double.toString(error), unit, Double.toString(allocation));
+        }
+
+        /**
+         * Returns the relative change of the score, positive when this measurement is worse.
+         */
+        double slowdown(Measurement baseline) {
+            boolean higherIsBetter = mode.equals(Mode.Throughput.shortLabel());
+            double change = (score - baseline.score) / baseline.score;
+            return higherIsBetter ? -change : change;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+        Path save = null;
+        Path baseline = null;
+        double threshold = 10;
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--save" -> save = Path.of(args[++i]);
+                case "--baseline" -> baseline = Path.of(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                default -> jmhArgs.add(args[i]);
+            }
+        }
+
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(new CommandLineOptions(jmhArgs.toArray(new String[0])));
+        options.addProfiler(GCProfiler.class);
+        Collection<RunResult> runs = new Runner(options.build()).run();
+
+        List<Measurement> measurements = new ArrayList<>();
+        for (RunResult run : runs) {
+            measurements.add(Measurement.of(run));
+        }
+        if (save != null) {
+            List<String> lines = new ArrayList<>();
+            for (Measurement measurement : measurements) {
+                lines.add(measurement.format());
+            }
+            Files.write(save, lines);
+            System.out.println("Baseline written to " + save);
+        }
+        if (baseline != null) {
+            int regressions = compare(measurements, load(baseline), threshold / 100);
+            if (regressions > 0) {
+                System.out.println(regressions + " regression(s) against " + baseline);
+                System.exit(1);
+            }
+            System.out.println("No regressions against " + baseline);
+        }
+    }
+
+    static Map<String, Measurement> load(Path file) throws IOException {
+        Map<String, Measurement> measurements = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                Measurement measurement = Measurement.parse(line);
+                measurements.put(measurement.key(), measurement);
+            }
+        }
+        return measurements;
+    }
+
+    /**
+     * Prints one line per current measurement and returns the number of regressions.
+     */
+    static int compare(List<Measurement> current, Map<String, Measurement> baseline, double threshold) {
+        int regressions = 0;
+        System.out.printf("%n%-70s %12s %12s %9s %12s %12s%n", "Benchmark", "Baseline", "Current", "Slowdown", "B/op before", "B/op now");
+        for (Measurement measurement : current) {
+            Measurement before = baseline.get(measurement.key());
+            if (before == null || !before.mode().equals(measurement.mode()) || !before.unit().equals(measurement.unit())) {
+                System.out.printf("%-70s %12s%n", measurement.key(), "(no baseline)");
+                continue;
+            }
+            double slowdown = measurement.slowdown(before);
+            boolean slower = slowdown > threshold
+                    && Math.abs(measurement.score() - before.score()) > noise(measurement) + noise(before);
+            boolean allocates = measurement.allocation() > before.allocation() * (1 + threshold)
+                    && measurement.allocation() - before.allocation() > ALLOCATION_SLACK;
+            String verdict = slower && allocates ? "  SLOWER, ALLOCATES MORE" : slower ? "  SLOWER" : allocates ? "  ALLOCATES MORE" : "";
+            if (slower || allocates) {
+                regressions++;
+            }
+            System.out.printf("%-70s %12.3f %12.3f %+8.1f%% %12.1f %12.1f%s%n", measurement.key(), before.score(),
+                    measurement.score(), slowdown * 100, before.allocation(), measurement.allocation(), verdict);
+        }
+        return regressions;
+    }
+
+    /**
+     * Returns the score error, or zero when a single iteration left it undefined.
+     */
+    private static double noise(Measurement measurement) {
+        return Double.isFinite(measurement.error()) ? measurement.error() : 0;
+    }
+}
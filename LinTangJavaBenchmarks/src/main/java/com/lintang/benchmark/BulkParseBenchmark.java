@@ -0,0 +1,76 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.BulkFormulaParser;
+import com.lintang.formula.BulkParseResult;
+import com.lintang.formula.FastFormulaParser;
+import com.lintang.formula.FormulaParserUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importing 100,000 formulas of which {@code distinct} have different texts: one by one with
+ * {@link FormulaParserUtil} vs {@link BulkFormulaParser} on the common pool and on one thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkParseBenchmark {
+
+    private static final int FORMULAS = 100_000;
+
+    @Param({"1000", "100000"})
+    public int distinct;
+
+    private List<String> formulas;
+    private BulkFormulaParser parallel;
+    private BulkFormulaParser singleThread;
+    private ForkJoinPool singleThreadPool;
+
+    @Setup
+    public void setUp() {
+        formulas = new ArrayList<>(FORMULAS);
+        for (int i = 0; i < FORMULAS; i++) {
+            int row = i % distinct + 1;
+            formulas.add("SUM(A" + row + ":C" + (row + 20) + ") * B" + row + " + IF(D" + row + ", 2.5, -E" + row + " ^ 2) / 4");
+        }
+        parallel = new BulkFormulaParser();
+        singleThreadPool = new ForkJoinPool(1);
+        singleThread = new BulkFormulaParser(FastFormulaParser::parse, singleThreadPool,
+                BulkFormulaParser.DEFAULT_CHUNK_SIZE, BulkFormulaParser.DEFAULT_WARM_UP_COUNT);
+    }
+
+    @Benchmark
+    public void oneByOne(Blackhole blackhole) throws Exception {
+        for (String formula : formulas) {
+            blackhole.consume(FormulaParserUtil.parse(formula));
+        }
+    }
+
+    @Benchmark
+    public BulkParseResult bulk() {
+        return parallel.parseAll(formulas);
+    }
+
+    @Benchmark
+    public BulkParseResult bulkSingleThread() {
+        return singleThread.parseAll(formulas);
+    }
+}
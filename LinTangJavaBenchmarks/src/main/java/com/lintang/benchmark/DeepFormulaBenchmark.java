@@ -0,0 +1,124 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.CellRefNode;
+import com.lintang.formula.ast.NumberNode;
+import com.lintang.formula.ast.UnaryOpNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating and printing right-deep operator chains of {@code depth} levels with the iterative
+ * {@link EvaluationVisitor} and {@link FormulaStringBuilder} vs straightforward recursive walks.
+ * The recursive versions need a larger thread stack at the deepest setting, so the fork runs
+ * with {@code -Xss16m}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class DeepFormulaBenchmark {
+
+    @Param({"10", "1000", "20000"})
+    public int depth;
+
+    private ASTNode ast;
+    private CellSource cells;
+    private EvaluationVisitor evaluator;
+
+    @Setup
+    public void setUp() {
+        ASTNode node = new CellRefNode("A1");
+        for (int i = 1; i <= depth; i++) {
+            ASTNode term = i % 3 == 0 ? new UnaryOpNode("-", new CellRefNode("B" + i)) : new NumberNode(i);
+            node = new BinaryOpNode(i % 2 == 0 ? "+" : "*", term, node);
+        }
+        ast = node;
+        cells = (row, column) -> 1.0 / (row + 1);
+        evaluator = new EvaluationVisitor(cells);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return ast.accept(evaluator);
+    }
+
+    @Benchmark
+    public double evaluateRecursive() {
+        return evaluateRecursive(ast);
+    }
+
+    @Benchmark
+    public String print() {
+        return ast.accept(new FormulaStringBuilder());
+    }
+
+    @Benchmark
+    public String printRecursive() {
+        return printRecursive(ast);
+    }
+
+    /**
+     * The recursive evaluation as it was before it used an explicit stack.
+     */
+    private double evaluateRecursive(ASTNode node) {
+        if (node instanceof BinaryOpNode binary) {
+            double left = evaluateRecursive(binary.getLeft());
+            double right = evaluateRecursive(binary.getRight());
+            return switch (binary.getOperator()) {
+                case "+" -> left + right;
+                case "-" -> left - right;
+                case "*" -> left * right;
+                case "/" -> {
+                    if (right == 0) {
+                        throw new ArithmeticException("Division by zero");
+                    }
+                    yield left / right;
+                }
+                case "^" -> Math.pow(left, right);
+                default -> throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+            };
+        }
+        if (node instanceof UnaryOpNode unary) {
+            double operand = evaluateRecursive(unary.getOperand());
+            return switch (unary.getOperator()) {
+                case "+" -> operand;
+                case "-" -> -operand;
+                default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+            };
+        }
+        return node.accept(evaluator);
+    }
+
+    /**
+     * The recursive printer as it was before it used an explicit stack: every level builds and
+     * copies the string of its subtree.
+     */
+    private static String printRecursive(ASTNode node) {
+        if (node instanceof BinaryOpNode binary) {
+            return "(" + printRecursive(binary.getLeft()) + " " + binary.getOperator() + " "
+                    + printRecursive(binary.getRight()) + ")";
+        }
+        if (node instanceof UnaryOpNode unary) {
+            return unary.getOperator() + printRecursive(unary.getOperand());
+        }
+        return node.accept(new FormulaStringBuilder());
+    }
+}
@@ -0,0 +1,90 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.engine.RectangleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Which formulas read this cell?" over {@code formulas} overlapping range precedents (running
+ * windows of up to 1000 rows over 26 columns): {@link RectangleIndex} lookups vs a linear scan of
+ * every range, plus the cost of editing a formula's range in the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DependencyLookupBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int formulas;
+
+    private CellRectangle[] ranges;
+    private RectangleIndex<Integer> index;
+    private int[] probeRows;
+    private int[] probeColumns;
+    private int probe;
+    private int edited;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ranges = new CellRectangle[formulas];
+        index = new RectangleIndex<>();
+        int rows = formulas / 26 + 1000;
+        for (int i = 0; i < formulas; i++) {
+            int row = random.nextInt(rows);
+            int column = random.nextInt(26);
+            ranges[i] = new CellRectangle(row, column, row + random.nextInt(1000), column);
+            index.insert(ranges[i], i);
+        }
+        probeRows = random.ints(1024, 0, rows).toArray();
+        probeColumns = random.ints(1024, 0, 26).toArray();
+    }
+
+    @Benchmark
+    public int indexLookup() {
+        int i = probe++ & 1023;
+        int[] found = new int[1];
+        index.search(probeRows[i], probeColumns[i], value -> found[0]++);
+        return found[0];
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int i = probe++ & 1023;
+        int found = 0;
+        for (CellRectangle range : ranges) {
+            if (range.contains(probeRows[i], probeColumns[i])) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public boolean indexEdit() {
+        int i = edited++ % formulas;
+        CellRectangle old = ranges[i];
+        CellRectangle moved = new CellRectangle(old.getFirstRow() + 1, old.getFirstColumn(),
+                old.getLastRow() + 1, old.getLastColumn());
+        index.remove(old, i);
+        index.insert(moved, i);
+        ranges[i] = moved;
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.BytecodeCompiler;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.compile.FlatFormula;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the evaluation tiers on the same formula: the tree-walking {@link EvaluationVisitor},
+ * the {@link FlatFormula} postfix interpreter, {@link ClosureCompiler} closures and
+ * {@link BytecodeCompiler} hidden classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({
+        "A1 * 2 + B1",
+        "(A1 + B2 * 3) / (C3 - 1) ^ 2 - D4",
+        "A1 + A2 + A3 + A4 + A5 + A6 + A7 + A8 + A9 + A10 * 1.5 - B1 / 2 + C1 * C2 - D1 ^ 2"
+    })
+    public String formula;
+
+    private CellSource cells;
+    private ASTNode ast;
+    private EvaluationVisitor visitor;
+    private FlatFormula flat;
+    private double[] stack;
+    private CompiledFormula closure;
+    private CompiledFormula bytecode;
+
+    @Setup
+    public void setUp() {
+        double[][] grid = new double[16][8];
+        for (int row = 0; row < grid.length; row++) {
+            for (int column = 0; column < grid[row].length; column++) {
+                grid[row][column] = row * 8 + column + 1.5;
+            }
+        }
+        cells = (row, column) -> grid[row][column];
+        ast = PrattFormulaParser.parse(formula);
+        visitor = new EvaluationVisitor(cells);
+        flat = FlatFormula.fromAST(ast);
+        stack = new double[flat.getMaxStackDepth()];
+        closure = ClosureCompiler.compile(ast);
+        bytecode = BytecodeCompiler.compile(ast);
+    }
+
+    @Benchmark
+    public double visitor() {
+        return ast.accept(visitor);
+    }
+
+    @Benchmark
+    public double flat() {
+        return flat.evaluate(cells, stack);
+    }
+
+    @Benchmark
+    public double closure() {
+        return closure.evaluate(cells);
+    }
+
+    @Benchmark
+    public double bytecode() {
+        return bytecode.evaluate(cells);
+    }
+}
@@ -0,0 +1,72 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.engine.FormulaTemplates;
+import com.lintang.formula.visitor.FormulaCanonicalizer;
+import com.lintang.formula.visitor.FormulaFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Identifying the template of 10,000 filled-down formulas: the single-pass relative
+ * {@link FormulaFingerprint} vs building the R1C1 text with {@link FormulaCanonicalizer},
+ * plus grouping the whole column with {@link FormulaTemplates}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+
+    private static final int FORMULAS = 10_000;
+
+    private ASTNode[] formulas;
+
+    @Setup
+    public void setUp() {
+        formulas = new ASTNode[FORMULAS];
+        for (int i = 0; i < FORMULAS; i++) {
+            int row = i + 1;
+            formulas[i] = PrattFormulaParser.parse(
+                    "SUM(A" + row + ":C" + (row + 20) + ") * B" + row + " + IF(D" + row + ", 2.5, -E" + row + " ^ 2) / 4");
+        }
+    }
+
+    @Benchmark
+    public void fingerprint(Blackhole blackhole) {
+        for (int i = 0; i < FORMULAS; i++) {
+            blackhole.consume(FormulaFingerprint.relative(formulas[i], i, 5));
+        }
+    }
+
+    @Benchmark
+    public void r1c1Text(Blackhole blackhole) {
+        for (int i = 0; i < FORMULAS; i++) {
+            blackhole.consume(FormulaCanonicalizer.toR1C1(formulas[i], i, 5).hashCode());
+        }
+    }
+
+    @Benchmark
+    public FormulaTemplates group() {
+        FormulaTemplates templates = new FormulaTemplates();
+        for (int i = 0; i < FORMULAS; i++) {
+            templates.add(CellAddress.pack(i, 5), formulas[i]);
+        }
+        return templates;
+    }
+}
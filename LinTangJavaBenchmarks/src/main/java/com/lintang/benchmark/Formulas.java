@@ -0,0 +1,53 @@
+package com.lintang.benchmark;
+
+/**
+ * Formula shapes shared by the parsing and visitor benchmarks.
+ */
+final class Formulas {
+
+    /** Depth of the nested shape, in parenthesized levels. */
+    static final int NESTING = 40;
+
+    private Formulas() {
+    }
+
+    /**
+     * Returns the formula text for a shape: {@code short}, a typical three-operator formula;
+     * {@code long}, a flat 80-term formula mixing operators and function calls; or
+     * {@code nested}, {@link #NESTING} levels of parentheses around alternating operators.
+     */
+    static String of(String shape) {
+        return switch (shape) {
+            case "short" -> "A1 * 2 + B1";
+            case "long" -> longFormula();
+            case "nested" -> nestedFormula();
+            default -> throw new IllegalArgumentException("Unknown formula shape: " + shape);
+        };
+    }
+
+    private static String longFormula() {
+        StringBuilder formula = new StringBuilder("A1");
+        for (int i = 2; i <= 80; i++) {
+            switch (i % 4) {
+                case 0 -> formula.append(" + B").append(i).append(" * 1.5");
+                case 1 -> formula.append(" - SUM(C").append(i).append(":D").append(i + 5).append(')');
+                case 2 -> formula.append(" + MAX(A").append(i).append(", ").append(i).append(')');
+                default -> formula.append(" - A").append(i).append(" / 4");
+            }
+        }
+        return formula.toString();
+    }
+
+    private static String nestedFormula() {
+        StringBuilder formula = new StringBuilder();
+        formula.append("(".repeat(NESTING)).append("A1");
+        for (int i = 1; i <= NESTING; i++) {
+            if (i % 2 == 0) {
+                formula.append(" * 2)");
+            } else {
+                formula.append(" + B").append(i).append(')');
+            }
+        }
+        return formula.toString();
+    }
+}
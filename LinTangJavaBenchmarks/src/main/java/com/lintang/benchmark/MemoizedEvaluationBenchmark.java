@@ -0,0 +1,96 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.VersionedCellStore;
+import com.lintang.formula.engine.MemoizedEvaluator;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaFingerprint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dashboard refresh: {@code changedCells} inputs change, then 1,000 formulas over a 1,000 x 10
+ * {@link VersionedCellStore} are evaluated again, with {@link EvaluationVisitor} vs
+ * {@link MemoizedEvaluator}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoizedEvaluationBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int COLUMNS = 10;
+
+    @Param({"1", "10", "1000"})
+    public int changedCells;
+
+    private VersionedCellStore cells;
+    private ASTNode[] formulas;
+    private FormulaFingerprint[] fingerprints;
+    private EvaluationVisitor visitor;
+    private MemoizedEvaluator memoized;
+    private int nextChange;
+
+    @Setup
+    public void setUp() {
+        cells = new VersionedCellStore(ROWS, COLUMNS);
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                cells.setNumber(row, column, row + column);
+            }
+        }
+        formulas = new ASTNode[ROWS];
+        fingerprints = new FormulaFingerprint[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            int row = i + 1;
+            formulas[i] = PrattFormulaParser.parse(
+                    "SUM(A" + row + ":H" + row + ") / (I" + row + " + 1) + MAX(A" + row + ":J" + row + ") * 2");
+            fingerprints[i] = FormulaFingerprint.of(formulas[i]);
+        }
+        visitor = new EvaluationVisitor(cells);
+        memoized = new MemoizedEvaluator(cells);
+    }
+
+    private void changeInputs() {
+        for (int i = 0; i < changedCells; i++) {
+            int cell = nextChange++;
+            // Spread the changes over rows and columns
+            cells.setNumber((int) (cell * 7919L % ROWS), cell % COLUMNS, cell);
+        }
+    }
+
+    @Benchmark
+    public double visitor() {
+        changeInputs();
+        double total = 0;
+        for (ASTNode formula : formulas) {
+            total += formula.accept(visitor);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double memoized() {
+        changeInputs();
+        double total = 0;
+        for (int i = 0; i < formulas.length; i++) {
+            total += memoized.evaluate(fingerprints[i], formulas[i]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,77 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.FastFormulaParser;
+import com.lintang.formula.FormulaASTBuilder;
+import com.lintang.formula.FormulaLexer;
+import com.lintang.formula.FormulaParser;
+import com.lintang.formula.FormulaParserUtil;
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one formula of each {@link Formulas} shape. {@code parse} is the full
+ * {@link FormulaParserUtil#parse} path; {@code parseTree} and {@code buildAST} split it into the
+ * ANTLR lexer and parser and the {@link FormulaASTBuilder} walk, and the fast and Pratt parsers
+ * are included for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"short", "long", "nested"})
+    public String shape;
+
+    private String formula;
+    private FormulaParser.FormulaContext parseTree;
+
+    @Setup
+    public void setUp() {
+        formula = Formulas.of(shape);
+        parseTree = parseTree();
+    }
+
+    @Benchmark
+    public ASTNode parse() throws Exception {
+        return FormulaParserUtil.parse(formula);
+    }
+
+    @Benchmark
+    public FormulaParser.FormulaContext parseTree() {
+        FormulaParser parser = new FormulaParser(new CommonTokenStream(new FormulaLexer(CharStreams.fromString(formula))));
+        return parser.formula();
+    }
+
+    @Benchmark
+    public ASTNode buildAST() {
+        return new FormulaASTBuilder().visit(parseTree);
+    }
+
+    @Benchmark
+    public ASTNode parseFast() {
+        return FastFormulaParser.parse(formula);
+    }
+
+    @Benchmark
+    public ASTNode pratt() {
+        return PrattFormulaParser.parse(formula);
+    }
+}
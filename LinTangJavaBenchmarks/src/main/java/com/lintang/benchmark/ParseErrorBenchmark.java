@@ -0,0 +1,71 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.FastFormulaParser;
+import com.lintang.formula.ParseResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing 1,000 formulas of which {@code malformedPercent} are malformed in different ways:
+ * {@link FastFormulaParser#tryParse} vs {@link FastFormulaParser#parse} with the exception caught.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseErrorBenchmark {
+
+    private static final int FORMULAS = 1000;
+    private static final String[] MALFORMED = {
+        "SUM(A%d:B%d", "A%d + * B%d", "A%d $ B%d", "\"A%d + B%d", "A%d B%d", "MAX(A%d,, B%d)"
+    };
+
+    @Param({"0", "10", "100"})
+    public int malformedPercent;
+
+    private String[] formulas;
+
+    @Setup
+    public void setUp() {
+        formulas = new String[FORMULAS];
+        for (int i = 0; i < FORMULAS; i++) {
+            int row = i + 1;
+            formulas[i] = i % 100 < malformedPercent
+                    ? String.format(MALFORMED[i % MALFORMED.length], row, row)
+                    : "SUM(A" + row + ":B" + row + ") * 2 + MAX(C" + row + ", 1)";
+        }
+    }
+
+    @Benchmark
+    public void tryParse(Blackhole blackhole) {
+        for (String formula : formulas) {
+            ParseResult result = FastFormulaParser.tryParse(formula);
+            blackhole.consume(result.isSuccess() ? result.getAst() : result.getDiagnostics());
+        }
+    }
+
+    @Benchmark
+    public void parseCatching(Blackhole blackhole) {
+        for (String formula : formulas) {
+            try {
+                blackhole.consume(FastFormulaParser.parse(formula));
+            } catch (IllegalArgumentException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled range functions over a {@link ColumnarCellStore} column of 10 to 10M cells, end to end.
+ * Runs on the preferred kernels; append {@code -jvmArgsAppend -Dlintang.formula.vector=false}
+ * to measure the scalar fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RangeFunctionBenchmark {
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private ColumnarCellStore cells;
+    private CompiledFormula sum;
+    private CompiledFormula average;
+    private CompiledFormula min;
+    private CompiledFormula count;
+    private CompiledFormula sumProduct;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        cells = ColumnarCellStore.ofColumns(
+                random.doubles(size, -1000, 1000).toArray(),
+                random.doubles(size, -1000, 1000).toArray());
+        // Measure the scans themselves; RangeIndexBenchmark covers indexed columns
+        cells.setIndexThreshold(Integer.MAX_VALUE);
+        String column = "A1:A" + size;
+        sum = compile("SUM(" + column + ")");
+        average = compile("AVERAGE(" + column + ")");
+        min = compile("MIN(" + column + ")");
+        count = compile("COUNT(" + column + ")");
+        sumProduct = compile("SUMPRODUCT(" + column + ", B1:B" + size + ")");
+    }
+
+    private static CompiledFormula compile(String formula) {
+        return ClosureCompiler.compile(PrattFormulaParser.parse(formula));
+    }
+
+    @Benchmark
+    public double sum() {
+        return sum.evaluate(cells);
+    }
+
+    @Benchmark
+    public double average() {
+        return average.evaluate(cells);
+    }
+
+    @Benchmark
+    public double min() {
+        return min.evaluate(cells);
+    }
+
+    @Benchmark
+    public double count() {
+        return count.evaluate(cells);
+    }
+
+    @Benchmark
+    public double sumProduct() {
+        return sumProduct.evaluate(cells);
+    }
+}
@@ -0,0 +1,103 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.cell.ColumnAggregateIndex;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1,000 overlapping running totals ({@code SUM(A1:A<n>)}, {@code SUM(A1:A<n+1>)}, ...), maxima
+ * and counts over one column of {@code rows} cells, scanned vs answered by a
+ * {@link ColumnAggregateIndex}; {@code updateAndSum} and {@code updateAndMax} write one cell first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RangeIndexBenchmark {
+
+    private static final int FORMULAS = 1000;
+
+    @Param({"10000", "1000000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private ColumnarCellStore cells;
+    private CompiledFormula[] sums;
+    private CompiledFormula[] maxima;
+    private CompiledFormula[] counts;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setUp() {
+        cells = ColumnarCellStore.ofColumns(random.doubles(rows, -1000, 1000).toArray());
+        cells.setIndexThreshold(indexed ? ColumnarCellStore.DEFAULT_INDEX_THRESHOLD : Integer.MAX_VALUE);
+        sums = new CompiledFormula[FORMULAS];
+        maxima = new CompiledFormula[FORMULAS];
+        counts = new CompiledFormula[FORMULAS];
+        for (int i = 0; i < FORMULAS; i++) {
+            String range = "A1:A" + (rows - FORMULAS + i + 1);
+            sums[i] = ClosureCompiler.compile(PrattFormulaParser.parse("SUM(" + range + ")"));
+            maxima[i] = ClosureCompiler.compile(PrattFormulaParser.parse("MAX(" + range + ")"));
+            counts[i] = ClosureCompiler.compile(PrattFormulaParser.parse("COUNT(" + range + ")"));
+        }
+    }
+
+    @Benchmark
+    public double runningTotals() {
+        double total = 0;
+        for (CompiledFormula sum : sums) {
+            total += sum.evaluate(cells);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double runningMaxima() {
+        double total = 0;
+        for (CompiledFormula max : maxima) {
+            total += max.evaluate(cells);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double runningCounts() {
+        double total = 0;
+        for (CompiledFormula count : counts) {
+            total += count.evaluate(cells);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double updateAndSum() {
+        cells.setNumber(random.nextInt(rows), 0, random.nextDouble());
+        return runningTotals();
+    }
+
+    @Benchmark
+    public double updateAndMax() {
+        cells.setNumber(random.nextInt(rows), 0, random.nextDouble());
+        return runningMaxima();
+    }
+}
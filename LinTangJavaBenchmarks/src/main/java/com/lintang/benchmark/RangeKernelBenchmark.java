@@ -0,0 +1,68 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.function.RangeKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and Vector API {@link RangeKernels} on column segments of 10 to 10M cells.
+ * Divide the score by {@code size} for cells per microsecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RangeKernelBenchmark {
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    private RangeKernels kernels;
+    private double[] left;
+    private double[] right;
+
+    @Setup
+    public void setUp() {
+        kernels = kernel.equals("vector") ? RangeKernels.vector() : RangeKernels.scalar();
+        Random random = new Random(42);
+        left = random.doubles(size, -1000, 1000).toArray();
+        right = random.doubles(size, -1000, 1000).toArray();
+    }
+
+    @Benchmark
+    public double sum() {
+        return kernels.sum(left, 0, size);
+    }
+
+    @Benchmark
+    public double min() {
+        return kernels.min(left, 0, size);
+    }
+
+    @Benchmark
+    public double max() {
+        return kernels.max(left, 0, size);
+    }
+
+    @Benchmark
+    public double dot() {
+        return kernels.dot(left, 0, right, 0, size);
+    }
+}
@@ -0,0 +1,86 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.engine.RecalculationEngine;
+import com.lintang.formula.engine.RecalculationScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full recalculation of a sheet whose formulas form {@code columns} levels of {@code rows}
+ * independent formulas each, sequentially and with {@link RecalculationScheduler} on the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RecalculationBenchmark {
+
+    @Param({"10000", "50000"})
+    public int rows;
+
+    @Param({"10"})
+    public int columns;
+
+    private RecalculationEngine sequential;
+    private RecalculationEngine parallel;
+    private double input;
+
+    @Setup
+    public void setUp() {
+        sequential = buildSheet(null);
+        parallel = buildSheet(new RecalculationScheduler());
+    }
+
+    private RecalculationEngine buildSheet(RecalculationScheduler scheduler) {
+        // Closures from the first evaluation on; bytecode would generate one class per distinct cell formula
+        FormulaCompiler compiler = new FormulaCompiler(0, Integer.MAX_VALUE, 1);
+        RecalculationEngine engine = new RecalculationEngine(new ColumnarCellStore(), compiler, scheduler);
+        for (int row = 0; row < rows; row++) {
+            engine.setValue(row, 0, row);
+        }
+        for (int column = 1; column <= columns; column++) {
+            String previous = CellAddress.columnName(column - 1);
+            for (int row = 0; row < rows; row++) {
+                int above = Math.max(row - 1, 0) + 1;
+                engine.setFormula(row, column, PrattFormulaParser.parse(
+                        previous + (row + 1) + " * 1.5 + " + previous + above + " / 2 - 1"));
+            }
+        }
+        engine.recalculate();
+        return engine;
+    }
+
+    private static int touchAllInputs(RecalculationEngine engine, int rows, double value) {
+        for (int row = 0; row < rows; row++) {
+            engine.setValue(row, 0, value + row);
+        }
+        return engine.recalculate();
+    }
+
+    @Benchmark
+    public int sequential() {
+        return touchAllInputs(sequential, rows, ++input);
+    }
+
+    @Benchmark
+    public int parallel() {
+        return touchAllInputs(parallel, rows, ++input);
+    }
+}
@@ -0,0 +1,80 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.value.ValueEvaluator;
+import com.lintang.formula.value.ValueSlot;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating 1,000 formulas of which {@code errorPercent} divide by zero: {@link EvaluationVisitor}
+ * with the {@link ArithmeticException} caught vs {@link ValueEvaluator} returning {@code #DIV/0!}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueEvaluationBenchmark {
+
+    private static final int FORMULAS = 1000;
+
+    @Param({"0", "10", "50"})
+    public int errorPercent;
+
+    private ASTNode[] formulas;
+    private EvaluationVisitor visitor;
+    private ValueEvaluator evaluator;
+    private final ValueSlot slot = new ValueSlot();
+
+    @Setup
+    public void setUp() {
+        formulas = new ASTNode[FORMULAS];
+        for (int i = 0; i < FORMULAS; i++) {
+            int row = i + 1;
+            formulas[i] = PrattFormulaParser.parse("(A" + row + " * 2 + SUM(C" + row + ":E" + row + ")) / B" + row + " - 1");
+        }
+        // Column B is zero in the rows that should fail
+        CellSource cells = (row, column) -> column == 1 && row % 100 < errorPercent ? 0 : row + column + 1;
+        visitor = new EvaluationVisitor(cells);
+        evaluator = new ValueEvaluator(cells);
+    }
+
+    @Benchmark
+    public double visitorCatching() {
+        double total = 0;
+        for (ASTNode formula : formulas) {
+            try {
+                total += formula.accept(visitor);
+            } catch (ArithmeticException e) {
+                total -= 1;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double valueEvaluator() {
+        double total = 0;
+        for (ASTNode formula : formulas) {
+            evaluator.evaluate(formula, slot);
+            total += slot.isError() ? -1 : slot.getNumber();
+        }
+        return total;
+    }
+}
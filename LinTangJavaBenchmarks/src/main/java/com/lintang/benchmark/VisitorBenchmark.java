@@ -0,0 +1,64 @@
+package com.lintang.benchmark;
+
+import com.lintang.formula.PrattFormulaParser;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.visitor.CellReferenceExtractor;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass of each visitor over an already parsed formula of each {@link Formulas} shape:
+ * {@link EvaluationVisitor}, {@link CellReferenceExtractor} and {@link FormulaStringBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({"short", "long", "nested"})
+    public String shape;
+
+    private ASTNode ast;
+    private EvaluationVisitor evaluator;
+
+    @Setup
+    public void setUp() {
+        ast = PrattFormulaParser.parse(Formulas.of(shape));
+        CellSource cells = (row, column) -> row * 0.5 + column + 1;
+        evaluator = new EvaluationVisitor(cells);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return ast.accept(evaluator);
+    }
+
+    @Benchmark
+    public CellReferenceExtractor extractReferences() {
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+        return extractor;
+    }
+
+    @Benchmark
+    public String toFormulaString() {
+        return ast.accept(new FormulaStringBuilder());
+    }
+}
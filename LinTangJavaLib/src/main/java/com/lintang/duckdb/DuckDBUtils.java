@@ -1,5 +1,9 @@
 package com.lintang.duckdb;
 
+import com.lintang.formula.FormulaParserUtil;
+import com.lintang.formula.ParseResult;
+import com.lintang.formula.visitor.DuckDBSqlTranslator;
+
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -47,7 +51,10 @@ public class DuckDBUtils {
             // Create view from S3 parquet file if needed
             if (query.toLowerCase().contains("parquet_data")) {
                 try (Statement stmt = conn.createStatement()) {
-                    String createViewSql = "CREATE VIEW parquet_data AS SELECT * FROM read_parquet('" + s3Path + "');";
+                    // Relative ranges in translated formulas are window frames ordered by row number
+                    String options = query.contains(DuckDBSqlTranslator.ROW_ORDER) ? ", file_row_number = true" : "";
+                    String createViewSql = "CREATE VIEW parquet_data AS SELECT * FROM read_parquet('" + s3Path + "'"
+                            + options + ");";
                     stmt.execute(createViewSql);
                     if (logger != null) {
                         logMessage(logger, "View created from " + s3Path);
@@ -89,6 +96,48 @@ public class DuckDBUtils {
         }
     }
 
+    /**
+     * Evaluate a formula over every row of a Parquet file inside DuckDB.
+     * The formula is translated to SQL (see {@link DuckDBSqlTranslator}) so no rows are
+     * materialized in Java; its result column is named {@code value}.
+     *
+     * @param s3Path S3 path to the Parquet file
+     * @param formula Formula written for row 1, e.g. {@code A1 * B1}
+     * @param columns Parquet column names for the column letters A, B, C, ...
+     * @param logger Optional logger for debug output (can be null)
+     * @return Map containing row_count, columns, and data, as for {@link #executeQuery}
+     * @throws IllegalArgumentException if the formula is malformed
+     * @throws UnsupportedOperationException if the formula cannot be translated to SQL
+     * @throws Exception if query execution fails
+     */
+    public static Map<String, Object> executeFormula(String s3Path, String formula, List<String> columns,
+                                                     Object logger) throws Exception {
+        String query = translateFormula(formula, columns);
+        if (logger != null) {
+            logMessage(logger, "Formula translated to: " + query);
+        }
+        return executeQuery(s3Path, query, logger);
+    }
+
+    /**
+     * Translate a formula to the query {@link #executeFormula} runs. Malformed formulas are
+     * rejected rather than repaired, so a typo never runs as a different query.
+     *
+     * @param formula Formula written for row 1, e.g. {@code A1 * B1}
+     * @param columns Parquet column names for the column letters A, B, C, ...
+     * @return SQL query selecting the formula's value per row as {@code value}
+     * @throws IllegalArgumentException if the formula is malformed, with the position and reason
+     * @throws UnsupportedOperationException if the formula cannot be translated to SQL
+     */
+    public static String translateFormula(String formula, List<String> columns) {
+        ParseResult parsed = FormulaParserUtil.tryParse(formula);
+        if (!parsed.isSuccess()) {
+            throw new IllegalArgumentException("Cannot translate malformed formula " + formula + ": "
+                    + parsed.getDiagnostics().get(0));
+        }
+        return new DuckDBSqlTranslator(columns).toQuery(parsed.getAst(), "value");
+    }
+
     /**
      * Log a message using the provided logger.
      *
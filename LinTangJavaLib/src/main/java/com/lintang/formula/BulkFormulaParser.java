@@ -0,0 +1,159 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Parses a whole batch of formulas, such as every formula of a workbook being imported, on a
+ * {@link ForkJoinPool}.
+ *
+ * <p>A batch runs in three phases, each timed in the {@link BulkParseResult}:
+ * <ol>
+ *   <li>Identical texts are found on the calling thread, so filled-down formulas are parsed once.</li>
+ *   <li>The first distinct formulas are parsed sequentially on the calling thread. ANTLR parsers
+ *       of one grammar share a static DFA cache that grows as new input shapes are predicted, and
+ *       adding states is synchronized; warming it up from one thread keeps the workers from
+ *       queuing on that lock, so they mostly read it afterwards.</li>
+ *   <li>The remaining distinct formulas are split recursively into chunks of at most
+ *       {@code chunkSize} and parsed in parallel; idle workers steal the remaining halves.</li>
+ * </ol>
+ *
+ * <p>A formula that fails to parse records its exception and does not affect the others.
+ * The default parser is {@link FastFormulaParser}, whose per-thread lexer and parser make it
+ * safe to call from every worker and which rejects malformed formulas instead of recovering.
+ */
+public class BulkFormulaParser {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+    public static final int DEFAULT_WARM_UP_COUNT = 256;
+
+    private final ParseFunction parser;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int warmUpCount;
+
+    /**
+     * Creates a bulk parser using {@link FastFormulaParser} on the common pool.
+     */
+    public BulkFormulaParser() {
+        this(FastFormulaParser::parse, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, DEFAULT_WARM_UP_COUNT);
+    }
+
+    /**
+     * @param parser Parser for single formulas; called concurrently from pool threads
+     * @param pool Pool running the chunks
+     * @param chunkSize Maximum number of formulas parsed by one task
+     * @param warmUpCount Number of distinct formulas parsed sequentially before going parallel
+     */
+    public BulkFormulaParser(ParseFunction parser, ForkJoinPool pool, int chunkSize, int warmUpCount) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        if (warmUpCount < 0) {
+            throw new IllegalArgumentException("warmUpCount must not be negative: " + warmUpCount);
+        }
+        this.parser = parser;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.warmUpCount = warmUpCount;
+    }
+
+    /**
+     * Parses every formula of the list.
+     *
+     * @return One AST or error per formula, in list order
+     */
+    public BulkParseResult parseAll(List<String> formulas) {
+        long start = System.nanoTime();
+        int[] distinctIndex = new int[formulas.size()];
+        Map<String, Integer> indexes = new HashMap<>();
+        int distinct = 0;
+        String[] texts = new String[formulas.size()];
+        for (int i = 0; i < distinctIndex.length; i++) {
+            String formula = formulas.get(i);
+            Integer index = indexes.putIfAbsent(formula, distinct);
+            if (index == null) {
+                texts[distinct] = formula;
+                index = distinct++;
+            }
+            distinctIndex[i] = index;
+        }
+        ASTNode[] asts = new ASTNode[distinct];
+        Exception[] errors = new Exception[distinct];
+
+        long warmUpStart = System.nanoTime();
+        int warmed = Math.min(warmUpCount, distinct);
+        parseRange(texts, 0, warmed, asts, errors);
+
+        long parseStart = System.nanoTime();
+        if (warmed < distinct) {
+            if (distinct - warmed <= chunkSize) {
+                parseRange(texts, warmed, distinct, asts, errors);
+            } else {
+                pool.invoke(new Chunk(texts, warmed, distinct, asts, errors));
+            }
+        }
+        long end = System.nanoTime();
+        return new BulkParseResult(distinctIndex, asts, errors, warmUpStart - start, parseStart - warmUpStart, end - parseStart);
+    }
+
+    /**
+     * Parses every formula of the stream, which is consumed on the calling thread first.
+     *
+     * @return One AST or error per formula, in encounter order
+     */
+    public BulkParseResult parseAll(Stream<String> formulas) {
+        return parseAll(formulas.collect(Collectors.toList()));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getWarmUpCount() {
+        return warmUpCount;
+    }
+
+    private void parseRange(String[] texts, int from, int to, ASTNode[] asts, Exception[] errors) {
+        for (int i = from; i < to; i++) {
+            try {
+                asts[i] = parser.parse(texts[i]);
+            } catch (Exception e) {
+                errors[i] = e;
+            }
+        }
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private final String[] texts;
+        private final int from;
+        private final int to;
+        private final ASTNode[] asts;
+        private final Exception[] errors;
+
+        Chunk(String[] texts, int from, int to, ASTNode[] asts, Exception[] errors) {
+            this.texts = texts;
+            this.from = from;
+            this.to = to;
+            this.asts = asts;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                parseRange(texts, from, to, asts, errors);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(texts, from, middle, asts, errors), new Chunk(texts, middle, to, asts, errors));
+        }
+    }
+}
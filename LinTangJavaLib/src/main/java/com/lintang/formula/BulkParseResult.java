@@ -0,0 +1,138 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of {@link BulkFormulaParser#parseAll}: one AST or one error per input formula, in
+ * input order, plus counters and timings for the batch.
+ *
+ * <p>Identical formula texts are parsed once, so their entries share the same AST instance;
+ * treat the ASTs as read-only.
+ */
+public final class BulkParseResult {
+    private final int[] distinctIndex;
+    private final ASTNode[] asts;
+    private final Exception[] errors;
+    private final int errorCount;
+    private final long dedupeNanos;
+    private final long warmUpNanos;
+    private final long parseNanos;
+
+    BulkParseResult(int[] distinctIndex, ASTNode[] asts, Exception[] errors,
+                    long dedupeNanos, long warmUpNanos, long parseNanos) {
+        this.distinctIndex = distinctIndex;
+        this.asts = asts;
+        this.errors = errors;
+        int failed = 0;
+        for (int index : distinctIndex) {
+            if (errors[index] != null) {
+                failed++;
+            }
+        }
+        this.errorCount = failed;
+        this.dedupeNanos = dedupeNanos;
+        this.warmUpNanos = warmUpNanos;
+        this.parseNanos = parseNanos;
+    }
+
+    /**
+     * Returns the number of input formulas.
+     */
+    public int size() {
+        return distinctIndex.length;
+    }
+
+    /**
+     * Returns the AST of the formula at the given input position, or null if it failed to parse.
+     */
+    public ASTNode getAst(int index) {
+        return asts[distinctIndex[index]];
+    }
+
+    /**
+     * Returns the parse error of the formula at the given input position, or null if it parsed.
+     */
+    public Exception getError(int index) {
+        return errors[distinctIndex[index]];
+    }
+
+    public boolean hasError(int index) {
+        return getError(index) != null;
+    }
+
+    /**
+     * Returns the parse errors keyed by input position, in input order.
+     */
+    public Map<Integer, Exception> getErrors() {
+        Map<Integer, Exception> failures = new LinkedHashMap<>();
+        for (int i = 0; i < distinctIndex.length; i++) {
+            Exception error = errors[distinctIndex[i]];
+            if (error != null) {
+                failures.put(i, error);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Returns the number of input formulas that failed to parse, counting repeats.
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the number of distinct formula texts, i.e. how many were actually parsed.
+     */
+    public int getDistinctCount() {
+        return asts.length;
+    }
+
+    /**
+     * Returns the time spent finding distinct texts.
+     */
+    public long getDedupeNanos() {
+        return dedupeNanos;
+    }
+
+    /**
+     * Returns the time spent parsing sequentially to fill ANTLR's shared DFA cache.
+     */
+    public long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    /**
+     * Returns the wall-clock time of the parallel parse.
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Returns the wall-clock time of the whole batch.
+     */
+    public long getElapsedNanos() {
+        return dedupeNanos + warmUpNanos + parseNanos;
+    }
+
+    /**
+     * Returns input formulas handled per second of wall-clock time, repeats included.
+     */
+    public double getFormulasPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : size() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d formulas (%d distinct, %d errors) in %.1f ms: %.0f formulas/s"
+                        + " [dedupe %.1f ms, warm-up %.1f ms, parse %.1f ms]",
+                size(), getDistinctCount(), errorCount, getElapsedNanos() / 1e6, getFormulasPerSecond(),
+                dedupeNanos / 1e6, warmUpNanos / 1e6, parseNanos / 1e6);
+    }
+}
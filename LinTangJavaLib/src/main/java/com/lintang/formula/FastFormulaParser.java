@@ -0,0 +1,255 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.NoViableAltException;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.IntervalSet;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+/**
+ * High-throughput ANTLR parsing pipeline for bulk formula parsing.
+ *
+ * <p>Compared to {@link FormulaParserUtil#parse(String)} it:
+ * <ul>
+ *   <li>keeps one lexer/parser pair per thread and resets it for every formula,</li>
+ *   <li>parses in SLL prediction mode with a bail-out strategy first and only retries
+ *       in full LL mode when SLL fails,</li>
+ *   <li>builds the AST during the parse with {@link FormulaASTListener} instead of
+ *       building a parse tree and walking it again.</li>
+ * </ul>
+ *
+ * <p>Unlike the reference parser it never recovers from syntax or token errors. Malformed input
+ * is reported by {@link #tryParse(String)} as a {@link ParseResult} with a positioned
+ * {@link ParseDiagnostic}, or by {@link #parse(String)} as an {@link IllegalArgumentException}.
+ *
+ * <p>Errors take a fast path: the lexer and parser ATN simulators are subclassed to record the
+ * diagnostic and unwind with one preallocated, stackless exception where ANTLR would create a
+ * {@link RecognitionException} with a stack trace and hand it to error listeners. A failed SLL
+ * parse is only retried in LL mode when SLL resolved a conflict that needed full context on the
+ * way, as it makes the same predictions as LL otherwise; so a malformed formula is parsed once,
+ * like a valid one.
+ */
+public final class FastFormulaParser {
+
+    private static final ThreadLocal<FastFormulaParser> PER_THREAD = ThreadLocal.withInitial(FastFormulaParser::new);
+
+    /**
+     * Unwinds a failed parse. Shared by all threads; it carries no state and no stack trace.
+     */
+    private static final ParseCancellationException BAIL = new ParseCancellationException() {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    };
+
+    private final FormulaLexer lexer;
+    private final CommonTokenStream tokens;
+    private final FormulaParser parser;
+    private final FormulaASTListener listener = new FormulaASTListener();
+    private ParseDiagnostic diagnostic;
+    private boolean conflictResolved;
+
+    private FastFormulaParser() {
+        lexer = new FormulaLexer(null);
+        lexer.removeErrorListeners();
+        lexer.setInterpreter(new BailingLexerSimulator(lexer));
+        tokens = new CommonTokenStream(lexer);
+        parser = new FormulaParser(tokens);
+        parser.removeErrorListeners();
+        parser.setInterpreter(new BailingParserSimulator(parser));
+        parser.setBuildParseTree(false);
+        parser.setErrorHandler(new AbortingBailStrategy());
+        parser.addParseListener(listener);
+    }
+
+    /**
+     * Parses a formula string on the calling thread's reusable parser.
+     *
+     * @param formula The formula string to parse
+     * @return The root node of the AST
+     * @throws IllegalArgumentException If the formula is null or malformed
+     */
+    public static ASTNode parse(String formula) {
+        if (formula == null) {
+            throw new IllegalArgumentException("Formula must not be null");
+        }
+        return tryParse(formula).getAstOrThrow();
+    }
+
+    /**
+     * Parses a formula string on the calling thread's reusable parser without throwing for
+     * malformed input.
+     *
+     * @param formula The formula string to parse
+     * @return The AST, or the position and description of the first error
+     * @throws IllegalArgumentException If the formula is null
+     */
+    public static ParseResult tryParse(String formula) {
+        if (formula == null) {
+            throw new IllegalArgumentException("Formula must not be null");
+        }
+        return PER_THREAD.get().parseFormula(formula);
+    }
+
+    private ParseResult parseFormula(String formula) {
+        try {
+            ASTNode ast = parseWith(formula, PredictionMode.SLL);
+            if (ast == null && conflictResolved) {
+                // SLL can reject input that full LL accepts, but only by guessing at a conflict
+                ast = parseWith(formula, PredictionMode.LL);
+            }
+            return ast != null ? ParseResult.success(formula, ast) : ParseResult.failure(formula, diagnostic);
+        } finally {
+            diagnostic = null;
+            listener.reset();
+        }
+    }
+
+    /**
+     * Returns the AST, or null with {@link #diagnostic} set if the formula is malformed.
+     */
+    private ASTNode parseWith(String formula, PredictionMode mode) {
+        listener.reset();
+        diagnostic = null;
+        conflictResolved = false;
+        lexer.setInputStream(CharStreams.fromString(formula));
+        tokens.setTokenSource(lexer);
+        parser.setTokenStream(tokens);
+        parser.getInterpreter().setPredictionMode(mode);
+        try {
+            parser.formula();
+            return listener.getResult();
+        } catch (ParseCancellationException e) {
+            if (diagnostic == null) {
+                diagnostic = new ParseDiagnostic(0, formula.length(), 1, 0, "invalid formula");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Records the first error of a parse and returns the exception to unwind with.
+     */
+    private ParseCancellationException fail(ParseDiagnostic error) {
+        listener.abort();
+        if (diagnostic == null) {
+            diagnostic = error;
+        }
+        return BAIL;
+    }
+
+    private ParseCancellationException failAt(Token token, String message) {
+        int length = token.getType() == Token.EOF ? 0 : token.getStopIndex() - token.getStartIndex() + 1;
+        return fail(new ParseDiagnostic(token.getStartIndex(), length, token.getLine(), token.getCharPositionInLine(), message));
+    }
+
+    private static String describe(Token token) {
+        return token.getType() == Token.EOF ? "end of formula" : "'" + token.getText() + "'";
+    }
+
+    /**
+     * Reports tokens the parser cannot continue with, in place of a {@link NoViableAltException},
+     * and notes SLL predictions that picked an alternative where full context was needed.
+     */
+    private final class BailingParserSimulator extends ParserATNSimulator {
+        BailingParserSimulator(FormulaParser parser) {
+            super(parser, FormulaParser._ATN, FormulaParser._decisionToDFA, FormulaParser._sharedContextCache);
+        }
+
+        @Override
+        protected DFAState getExistingTargetState(DFAState previousD, int t) {
+            return noteConflict(super.getExistingTargetState(previousD, t));
+        }
+
+        @Override
+        protected DFAState computeTargetState(DFA dfa, DFAState previousD, int t) {
+            return noteConflict(super.computeTargetState(dfa, previousD, t));
+        }
+
+        private DFAState noteConflict(DFAState state) {
+            if (state != null && state.requiresFullContext) {
+                conflictResolved = true;
+            }
+            return state;
+        }
+
+        @Override
+        protected NoViableAltException noViableAlt(TokenStream input, ParserRuleContext outerContext,
+                                                   ATNConfigSet configs, int startIndex) {
+            throw failAt(input.LT(1), "unexpected " + describe(input.LT(1)));
+        }
+    }
+
+    /**
+     * Reports characters that start no token, in place of a lexer error. The lexer fails when
+     * it has seen no accept state since the token started and is not simply at the end of input.
+     */
+    private final class BailingLexerSimulator extends LexerATNSimulator {
+        private boolean accepted;
+
+        BailingLexerSimulator(FormulaLexer lexer) {
+            super(lexer, FormulaLexer._ATN, FormulaLexer._decisionToDFA, FormulaLexer._sharedContextCache);
+        }
+
+        @Override
+        public int match(CharStream input, int mode) {
+            accepted = false;
+            return super.match(input, mode);
+        }
+
+        @Override
+        protected void captureSimState(SimState settings, CharStream input, DFAState dfaState) {
+            accepted = true;
+            super.captureSimState(settings, input, dfaState);
+        }
+
+        @Override
+        protected int failOrAccept(SimState prevAccept, CharStream input, ATNConfigSet reach, int t) {
+            if (!accepted && !(t == CharStream.EOF && input.index() == startIndex)) {
+                Lexer recognizer = recog;
+                int stop = Math.min(input.index(), input.size() - 1);
+                String text = input.getText(Interval.of(startIndex, stop));
+                throw fail(new ParseDiagnostic(startIndex, text.length(), recognizer._tokenStartLine,
+                        recognizer._tokenStartCharPositionInLine, "unrecognized input '" + text + "'"));
+            }
+            return super.failOrAccept(prevAccept, input, reach, t);
+        }
+    }
+
+    /**
+     * Bails out on the first syntax error without creating a {@link RecognitionException}.
+     */
+    private final class AbortingBailStrategy extends BailErrorStrategy {
+        @Override
+        public void recover(Parser recognizer, RecognitionException e) {
+            Token token = e.getOffendingToken() != null ? e.getOffendingToken() : recognizer.getCurrentToken();
+            throw failAt(token, "unexpected " + describe(token));
+        }
+
+        @Override
+        public Token recoverInline(Parser recognizer) {
+            Token token = recognizer.getCurrentToken();
+            IntervalSet expectedTokens = recognizer.getExpectedTokens();
+            String expected = expectedTokens.size() == 1 && expectedTokens.contains(Token.EOF)
+                    ? "end of formula" : expectedTokens.toString(recognizer.getVocabulary());
+            throw failAt(token, "expected " + expected + " but found " + describe(token));
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.lintang.formula;
 
 import com.lintang.formula.ast.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Custom visitor implementation that builds an AST from the ANTLR parse tree.
  * This class extends the generated FormulaBaseVisitor.
@@ -101,15 +104,15 @@ public class FormulaASTBuilder extends FormulaBaseVisitor<ASTNode> {
     @Override
     public ASTNode visitFunctionCall(FormulaParser.FunctionCallContext ctx) {
         String functionName = ctx.IDENTIFIER().getText();
-        FunctionCallNode functionNode = new FunctionCallNode(functionName);
+        List<ASTNode> arguments = new ArrayList<>();
 
         if (ctx.argList() != null) {
             for (FormulaParser.ExpressionContext exprCtx : ctx.argList().expression()) {
-                functionNode.addArgument(visit(exprCtx));
+                arguments.add(visit(exprCtx));
             }
         }
 
-        return functionNode;
+        return new FunctionCallNode(functionName, arguments);
     }
 
     @Override
@@ -0,0 +1,163 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.*;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parse listener that builds the AST while the parser runs, so no parse tree is needed.
+ * Operands and operator tokens are pushed onto stacks as they are matched and folded
+ * into AST nodes when the enclosing rule exits. Instances are reusable via {@link #reset()}.
+ * The owning parser must call {@link #abort()} before bailing out of a parse.
+ */
+class FormulaASTListener implements ParseTreeListener {
+    private final List<ASTNode> operands = new ArrayList<>();
+    private final List<String> functionNames = new ArrayList<>();
+    private int[] operators = new int[16];
+    private int operatorCount;
+    // Operand/operator stack heights recorded when a folding rule is entered
+    private int[] marks = new int[32];
+    private int markCount;
+    // Set when the parse bails out; rule exits still fire while the parser unwinds
+    private boolean aborted;
+
+    void reset() {
+        aborted = false;
+        operands.clear();
+        functionNames.clear();
+        operatorCount = 0;
+        markCount = 0;
+    }
+
+    void abort() {
+        aborted = true;
+    }
+
+    ASTNode getResult() {
+        if (operands.size() != 1) {
+            throw new IllegalStateException("Incomplete formula AST");
+        }
+        return operands.get(0);
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+        if (aborted) {
+            return;
+        }
+        switch (ctx.getRuleIndex()) {
+            case FormulaParser.RULE_additive, FormulaParser.RULE_multiplicative,
+                 FormulaParser.RULE_unary, FormulaParser.RULE_power,
+                 FormulaParser.RULE_functionCall -> pushMark();
+            default -> { }
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+        if (aborted) {
+            return;
+        }
+        switch (ctx.getRuleIndex()) {
+            case FormulaParser.RULE_additive, FormulaParser.RULE_multiplicative,
+                 FormulaParser.RULE_power -> foldBinary();
+            case FormulaParser.RULE_unary -> foldUnary();
+            case FormulaParser.RULE_functionCall -> foldFunctionCall();
+            default -> { }
+        }
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        Token token = node.getSymbol();
+        switch (token.getType()) {
+            case FormulaLexer.NUMBER -> operands.add(new NumberNode(Double.parseDouble(token.getText())));
+            case FormulaLexer.STRING -> {
+                String text = token.getText();
+                operands.add(new StringNode(text.substring(1, text.length() - 1)));
+            }
+            case FormulaLexer.BOOLEAN -> operands.add(new BooleanNode(Boolean.parseBoolean(token.getText())));
+            case FormulaLexer.CELL_REF -> operands.add(new CellRefNode(token.getText()));
+            case FormulaLexer.CELL_RANGE -> operands.add(new CellRangeNode(token.getText()));
+            case FormulaLexer.IDENTIFIER -> functionNames.add(token.getText());
+            case FormulaLexer.PLUS, FormulaLexer.MINUS, FormulaLexer.MUL,
+                 FormulaLexer.DIV, FormulaLexer.POWER -> pushOperator(token.getType());
+            default -> { }
+        }
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        throw new IllegalStateException("Unexpected error node: " + node.getText());
+    }
+
+    private void foldBinary() {
+        int operatorMark = marks[--markCount];
+        int operandMark = marks[--markCount];
+        int firstOperator = operatorMark;
+        ASTNode result = operands.get(operandMark);
+        for (int i = operandMark + 1; i < operands.size(); i++) {
+            String operator = operatorText(operators[firstOperator++]);
+            result = new BinaryOpNode(operator, result, operands.get(i));
+        }
+        truncateOperands(operandMark);
+        operands.add(result);
+        operatorCount = operatorMark;
+    }
+
+    private void foldUnary() {
+        int operatorMark = marks[--markCount];
+        markCount--;
+        if (operatorCount > operatorMark) {
+            int last = operands.size() - 1;
+            operands.set(last, new UnaryOpNode(operatorText(operators[operatorMark]), operands.get(last)));
+            operatorCount = operatorMark;
+        }
+    }
+
+    private void foldFunctionCall() {
+        markCount--;
+        int operandMark = marks[--markCount];
+        String name = functionNames.remove(functionNames.size() - 1);
+        FunctionCallNode function = new FunctionCallNode(name, operands.subList(operandMark, operands.size()));
+        truncateOperands(operandMark);
+        operands.add(function);
+    }
+
+    private void truncateOperands(int size) {
+        operands.subList(size, operands.size()).clear();
+    }
+
+    private void pushMark() {
+        if (markCount + 2 > marks.length) {
+            marks = Arrays.copyOf(marks, marks.length * 2);
+        }
+        marks[markCount++] = operands.size();
+        marks[markCount++] = operatorCount;
+    }
+
+    private void pushOperator(int tokenType) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operators.length * 2);
+        }
+        operators[operatorCount++] = tokenType;
+    }
+
+    private static String operatorText(int tokenType) {
+        return switch (tokenType) {
+            case FormulaLexer.PLUS -> "+";
+            case FormulaLexer.MINUS -> "-";
+            case FormulaLexer.MUL -> "*";
+            case FormulaLexer.DIV -> "/";
+            case FormulaLexer.POWER -> "^";
+            default -> throw new IllegalArgumentException("Not an operator token: " + tokenType);
+        };
+    }
+}
@@ -0,0 +1,103 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cache.BoundedCache;
+import com.lintang.formula.cache.CacheStats;
+import com.lintang.formula.serial.FormulaArchive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded, thread-safe cache of parsed formulas keyed by formula text.
+ * Workbooks repeat the same formula text many times (filled-down columns), so
+ * caching the AST skips the lexer, parser and AST builder for every repeat.
+ *
+ * <p>Cached ASTs are shared between callers and must be treated as read-only.
+ * Formulas that fail to parse are not cached. The default parser is
+ * {@link FormulaParserUtil#parseFast(String)}, which rejects malformed input instead of
+ * recovering from it, so a cache hit never stands for a formula that was repaired.
+ */
+public class FormulaCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /** Default weight budget, measured in formula characters. */
+    public static final long DEFAULT_MAX_WEIGHT = 4_000_000L;
+
+    private final BoundedCache<String, ASTNode> cache;
+    private final ParseFunction parser;
+
+    public FormulaCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT);
+    }
+
+    public FormulaCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, FormulaParserUtil::parseFast);
+    }
+
+    /**
+     * @param maxEntries Maximum number of cached formulas
+     * @param maxWeight Maximum total length of the cached formula texts
+     * @param parser Parser used on cache misses
+     */
+    public FormulaCache(int maxEntries, long maxWeight, ParseFunction parser) {
+        this.cache = new BoundedCache<>(maxEntries, maxWeight, (formula, ast) -> formula.length());
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the AST for the formula, parsing it only if it is not cached yet.
+     *
+     * @param formula The formula string to parse
+     * @return The shared root node of the AST
+     * @throws Exception If parsing fails
+     */
+    public ASTNode parse(String formula) throws Exception {
+        if (formula == null) {
+            return parser.parse(null);
+        }
+        return cache.get(formula, parser::parse);
+    }
+
+    /**
+     * Adds the formulas of an archive keyed by formula text, e.g. one written by an earlier
+     * invocation, so that they are never parsed. Formulas already cached are kept. Formulas
+     * longer than the weight budget are skipped, and if the archive holds more formulas than
+     * the cache, the ones added first are evicted again.
+     *
+     * @return The number of formulas added and still cached afterwards
+     */
+    public int preload(FormulaArchive archive) {
+        List<String> stored = new ArrayList<>();
+        for (int i = 0; i < archive.size(); i++) {
+            String key = archive.getKey(i);
+            if (!cache.containsKey(key)) {
+                cache.putIfAbsent(key, archive.get(i));
+                stored.add(key);
+            }
+        }
+        int added = 0;
+        for (String key : stored) {
+            if (cache.containsKey(key)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Returns hit, miss and eviction counters, useful for sizing the cache.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -33,6 +33,31 @@ public class FormulaParserUtil {
         return builder.visit(parseTree);
     }
 
+    /**
+     * Parses a formula string with the reusable, SLL-first pipeline of {@link FastFormulaParser}.
+     * Produces the same AST as {@link #parse(String)} for valid input but rejects any malformed
+     * input instead of recovering from it.
+     *
+     * @param formula The formula string to parse
+     * @return The root node of the AST
+     * @throws IllegalArgumentException If the formula is null or malformed
+     */
+    public static ASTNode parseFast(String formula) {
+        return FastFormulaParser.parse(formula);
+    }
+
+    /**
+     * Parses a formula string like {@link #parseFast(String)} but reports malformed input as
+     * positioned diagnostics instead of throwing.
+     *
+     * @param formula The formula string to parse
+     * @return The AST, or the diagnostics explaining why the formula was rejected
+     * @throws IllegalArgumentException If the formula is null
+     */
+    public static ParseResult tryParse(String formula) {
+        return FastFormulaParser.tryParse(formula);
+    }
+
     /**
      * Parses a formula and returns the AST as a pretty-printed string.
      *
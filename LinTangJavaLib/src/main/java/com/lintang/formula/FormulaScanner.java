@@ -0,0 +1,212 @@
+package com.lintang.formula;
+
+/**
+ * Hand-written tokenizer for the {@code Formula.g4} lexer rules.
+ * Follows ANTLR's lexing semantics: the longest match wins and ties go to the rule
+ * defined first in the grammar (BOOLEAN, NUMBER, STRING, CELL_RANGE, CELL_REF, IDENTIFIER).
+ * Token types reuse the constants generated in {@link FormulaLexer}.
+ */
+final class FormulaScanner {
+    private final CharSequence input;
+    private final int length;
+    private int position;
+
+    private int tokenType;
+    private int tokenStart;
+    private int tokenEnd;
+
+    FormulaScanner(CharSequence input) {
+        this.input = input;
+        this.length = input.length();
+    }
+
+    int tokenType() {
+        return tokenType;
+    }
+
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    String tokenText() {
+        return input.subSequence(tokenStart, tokenEnd).toString();
+    }
+
+    /**
+     * Returns the numeric value of the current NUMBER token.
+     * Short integers are converted without creating a String, which is exact below 2^53.
+     */
+    double numberValue() {
+        if (tokenEnd - tokenStart <= 15) {
+            long value = 0;
+            int i = tokenStart;
+            while (i < tokenEnd && isDigit(input.charAt(i))) {
+                value = value * 10 + (input.charAt(i++) - '0');
+            }
+            if (i == tokenEnd) {
+                return value;
+            }
+        }
+        return Double.parseDouble(tokenText());
+    }
+
+    /**
+     * Advances to the next token, skipping whitespace.
+     *
+     * @throws IllegalArgumentException If no lexer rule matches at the current position
+     */
+    void next() {
+        while (position < length && isWhitespace(input.charAt(position))) {
+            position++;
+        }
+        tokenStart = position;
+        if (position == length) {
+            tokenType = FormulaLexer.EOF;
+            tokenEnd = position;
+            return;
+        }
+        char c = input.charAt(position);
+        int end;
+        switch (c) {
+            case '(' -> { tokenType = FormulaLexer.LPAREN; end = position + 1; }
+            case ')' -> { tokenType = FormulaLexer.RPAREN; end = position + 1; }
+            case '+' -> { tokenType = FormulaLexer.PLUS; end = position + 1; }
+            case '-' -> { tokenType = FormulaLexer.MINUS; end = position + 1; }
+            case '*' -> { tokenType = FormulaLexer.MUL; end = position + 1; }
+            case '/' -> { tokenType = FormulaLexer.DIV; end = position + 1; }
+            case '^' -> { tokenType = FormulaLexer.POWER; end = position + 1; }
+            case ',' -> { tokenType = FormulaLexer.COMMA; end = position + 1; }
+            case '"' -> { tokenType = FormulaLexer.STRING; end = scanString(position); }
+            default -> {
+                if (isDigit(c) || c == '.') {
+                    tokenType = FormulaLexer.NUMBER;
+                    end = scanNumber(position);
+                } else if (isLetter(c) || c == '_') {
+                    end = scanWord(position);
+                } else {
+                    end = -1;
+                }
+            }
+        }
+        if (end < 0) {
+            throw new IllegalArgumentException("Invalid formula: unexpected character '" + c
+                    + "' at position " + position);
+        }
+        tokenEnd = end;
+        position = end;
+    }
+
+    private int scanString(int start) {
+        for (int i = start + 1; i < length; i++) {
+            char c = input.charAt(i);
+            if (c == '"') {
+                return i + 1;
+            }
+            if (c == '\r' || c == '\n') {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private int scanNumber(int start) {
+        int i = skipDigits(start);
+        if (i == start) {
+            // '.' DIGIT+
+            int end = skipDigits(start + 1);
+            return end > start + 1 ? end : -1;
+        }
+        if (i < length && input.charAt(i) == '.') {
+            i = skipDigits(i + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Scans BOOLEAN, CELL_RANGE, CELL_REF and IDENTIFIER candidates and keeps the longest.
+     */
+    private int scanWord(int start) {
+        int identifierEnd = start + 1;
+        while (identifierEnd < length && isIdentifierPart(input.charAt(identifierEnd))) {
+            identifierEnd++;
+        }
+        int cellEnd = scanCellRef(start);
+        int rangeEnd = -1;
+        if (cellEnd > 0 && cellEnd < length && input.charAt(cellEnd) == ':') {
+            rangeEnd = scanCellRef(cellEnd + 1);
+        }
+        int booleanEnd = matches(start, "TRUE") ? start + 4 : matches(start, "FALSE") ? start + 5 : -1;
+
+        tokenType = FormulaLexer.BOOLEAN;
+        int end = booleanEnd;
+        if (rangeEnd > end) {
+            tokenType = FormulaLexer.CELL_RANGE;
+            end = rangeEnd;
+        }
+        if (cellEnd > end) {
+            tokenType = FormulaLexer.CELL_REF;
+            end = cellEnd;
+        }
+        if (identifierEnd > end) {
+            tokenType = FormulaLexer.IDENTIFIER;
+            end = identifierEnd;
+        }
+        return end;
+    }
+
+    /**
+     * Matches {@code [A-Z]+ [0-9]+} and returns its end, or -1.
+     */
+    private int scanCellRef(int start) {
+        int i = start;
+        while (i < length && isUpperCase(input.charAt(i))) {
+            i++;
+        }
+        if (i == start) {
+            return -1;
+        }
+        int digitsStart = i;
+        i = skipDigits(i);
+        return i > digitsStart ? i : -1;
+    }
+
+    private boolean matches(int start, String keyword) {
+        if (start + keyword.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (input.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipDigits(int start) {
+        int i = start;
+        while (i < length && isDigit(input.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpperCase(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLetter(char c) {
+        return isUpperCase(c) || (c >= 'a' && c <= 'z');
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,55 @@
+package com.lintang.formula;
+
+/**
+ * A problem found while parsing a formula, with its position in the formula text.
+ */
+public final class ParseDiagnostic {
+    private final int offset;
+    private final int length;
+    private final int line;
+    private final int column;
+    private final String message;
+
+    /**
+     * @param offset Zero-based character offset where the problem starts
+     * @param length Number of characters involved; zero at the end of the formula
+     * @param line One-based line number
+     * @param column Zero-based column within the line
+     * @param message Description of the problem
+     */
+    public ParseDiagnostic(int offset, int length, int line, int column, String message) {
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the position and message in ANTLR's {@code line:column message} form.
+     */
+    @Override
+    public String toString() {
+        return line + ":" + column + " " + message;
+    }
+}
@@ -0,0 +1,20 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+
+/**
+ * A strategy that turns formula text into an AST.
+ * {@link FormulaParserUtil#parse(String)} is the reference implementation.
+ */
+@FunctionalInterface
+public interface ParseFunction {
+
+    /**
+     * Parses a formula string and returns the AST.
+     *
+     * @param formula The formula string to parse
+     * @return The root node of the AST
+     * @throws Exception If parsing fails
+     */
+    ASTNode parse(String formula) throws Exception;
+}
@@ -0,0 +1,70 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+
+import java.util.List;
+
+/**
+ * Outcome of {@link FastFormulaParser#tryParse(String)}: either the AST or the diagnostics that
+ * explain why the formula was rejected. Failing to parse is an ordinary result, so checking
+ * large imports for malformed formulas creates no exceptions.
+ */
+public final class ParseResult {
+    private final String formula;
+    private final ASTNode ast;
+    private final List<ParseDiagnostic> diagnostics;
+
+    private ParseResult(String formula, ASTNode ast, List<ParseDiagnostic> diagnostics) {
+        this.formula = formula;
+        this.ast = ast;
+        this.diagnostics = diagnostics;
+    }
+
+    static ParseResult success(String formula, ASTNode ast) {
+        return new ParseResult(formula, ast, List.of());
+    }
+
+    static ParseResult failure(String formula, ParseDiagnostic diagnostic) {
+        return new ParseResult(formula, null, List.of(diagnostic));
+    }
+
+    public String getFormula() {
+        return formula;
+    }
+
+    public boolean isSuccess() {
+        return ast != null;
+    }
+
+    /**
+     * Returns the root node of the AST, or null if the formula was rejected.
+     */
+    public ASTNode getAst() {
+        return ast;
+    }
+
+    /**
+     * Returns the problems found, in formula order; empty on success. Parsing stops at the first
+     * syntax error, so a rejected formula currently has exactly one.
+     */
+    public List<ParseDiagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Returns the AST, or throws the exception {@link FastFormulaParser#parse(String)} throws.
+     *
+     * @throws IllegalArgumentException If the formula was rejected
+     */
+    public ASTNode getAstOrThrow() {
+        if (ast == null) {
+            throw new IllegalArgumentException("Invalid formula: " + formula + " (" + diagnostics.get(0) + ")");
+        }
+        return ast;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? "ParseResult{ast=" + ast + '}' : "ParseResult{diagnostics=" + diagnostics + '}';
+    }
+}
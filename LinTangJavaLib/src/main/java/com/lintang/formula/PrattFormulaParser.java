@@ -0,0 +1,159 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written precedence-climbing parser for the {@code Formula.g4} grammar.
+ * Produces the same AST nodes as {@link FormulaParserUtil#parse(String)} directly from the
+ * characters, without any ANTLR runtime objects. The ANTLR parser remains the reference
+ * implementation; like {@link FastFormulaParser}, malformed input is rejected rather than recovered.
+ *
+ * <p>Binary operators are all left-associative. A unary sign may start an operand of
+ * {@code +}, {@code -}, {@code *} and {@code /} and applies to the following power chain,
+ * so {@code -2^2} is {@code -(2^2)}, while {@code 2^-3} and {@code --5} are rejected as in the grammar.
+ */
+public final class PrattFormulaParser {
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+    private static final int UNARY = 3;
+    private static final int POWER = 4;
+
+    private final FormulaScanner scanner;
+
+    private PrattFormulaParser(CharSequence formula) {
+        this.scanner = new FormulaScanner(formula);
+    }
+
+    /**
+     * Parses a formula string and returns the AST.
+     *
+     * @param formula The formula to parse
+     * @return The root node of the AST
+     * @throws IllegalArgumentException If the formula is null or malformed
+     */
+    public static ASTNode parse(CharSequence formula) {
+        if (formula == null) {
+            throw new IllegalArgumentException("Formula must not be null");
+        }
+        PrattFormulaParser parser = new PrattFormulaParser(formula);
+        parser.scanner.next();
+        ASTNode result = parser.parseBinary(ADDITIVE);
+        parser.expect(FormulaLexer.EOF);
+        return result;
+    }
+
+    /**
+     * Parses a formula held in a character array without copying it.
+     */
+    public static ASTNode parse(char[] formula) {
+        if (formula == null) {
+            throw new IllegalArgumentException("Formula must not be null");
+        }
+        return parse(CharBuffer.wrap(formula));
+    }
+
+    private ASTNode parseBinary(int minPrecedence) {
+        ASTNode left = parseOperand(minPrecedence);
+        while (true) {
+            int precedence = binaryPrecedence(scanner.tokenType());
+            if (precedence < minPrecedence) {
+                return left;
+            }
+            String operator = operatorText(scanner.tokenType());
+            scanner.next();
+            ASTNode right = parseBinary(precedence + 1);
+            left = new BinaryOpNode(operator, left, right);
+        }
+    }
+
+    private ASTNode parseOperand(int minPrecedence) {
+        int type = scanner.tokenType();
+        if (minPrecedence <= UNARY && (type == FormulaLexer.PLUS || type == FormulaLexer.MINUS)) {
+            String operator = operatorText(type);
+            scanner.next();
+            return new UnaryOpNode(operator, parseBinary(POWER));
+        }
+        return parsePrimary();
+    }
+
+    private ASTNode parsePrimary() {
+        ASTNode node;
+        switch (scanner.tokenType()) {
+            case FormulaLexer.NUMBER -> node = new NumberNode(scanner.numberValue());
+            case FormulaLexer.STRING -> {
+                String text = scanner.tokenText();
+                node = new StringNode(text.substring(1, text.length() - 1));
+            }
+            case FormulaLexer.BOOLEAN -> node = new BooleanNode(scanner.tokenText().equals("TRUE"));
+            case FormulaLexer.CELL_REF -> node = new CellRefNode(scanner.tokenText());
+            case FormulaLexer.CELL_RANGE -> node = new CellRangeNode(scanner.tokenText());
+            case FormulaLexer.LPAREN -> {
+                scanner.next();
+                node = parseBinary(ADDITIVE);
+                expect(FormulaLexer.RPAREN);
+                return node;
+            }
+            case FormulaLexer.IDENTIFIER -> {
+                return parseFunctionCall();
+            }
+            default -> throw unexpectedToken();
+        }
+        scanner.next();
+        return node;
+    }
+
+    private ASTNode parseFunctionCall() {
+        String name = scanner.tokenText();
+        scanner.next();
+        expect(FormulaLexer.LPAREN);
+        List<ASTNode> arguments = new ArrayList<>();
+        if (scanner.tokenType() != FormulaLexer.RPAREN) {
+            arguments.add(parseBinary(ADDITIVE));
+            while (scanner.tokenType() == FormulaLexer.COMMA) {
+                scanner.next();
+                arguments.add(parseBinary(ADDITIVE));
+            }
+        }
+        expect(FormulaLexer.RPAREN);
+        return new FunctionCallNode(name, arguments);
+    }
+
+    private void expect(int tokenType) {
+        if (scanner.tokenType() != tokenType) {
+            throw unexpectedToken();
+        }
+        if (tokenType != FormulaLexer.EOF) {
+            scanner.next();
+        }
+    }
+
+    private IllegalArgumentException unexpectedToken() {
+        String found = scanner.tokenType() == FormulaLexer.EOF ? "end of input" : "'" + scanner.tokenText() + "'";
+        return new IllegalArgumentException("Invalid formula: unexpected " + found
+                + " at position " + scanner.tokenStart());
+    }
+
+    private static int binaryPrecedence(int tokenType) {
+        return switch (tokenType) {
+            case FormulaLexer.PLUS, FormulaLexer.MINUS -> ADDITIVE;
+            case FormulaLexer.MUL, FormulaLexer.DIV -> MULTIPLICATIVE;
+            case FormulaLexer.POWER -> POWER;
+            default -> -1;
+        };
+    }
+
+    private static String operatorText(int tokenType) {
+        return switch (tokenType) {
+            case FormulaLexer.PLUS -> "+";
+            case FormulaLexer.MINUS -> "-";
+            case FormulaLexer.MUL -> "*";
+            case FormulaLexer.DIV -> "/";
+            case FormulaLexer.POWER -> "^";
+            default -> throw new IllegalArgumentException("Not an operator token: " + tokenType);
+        };
+    }
+}
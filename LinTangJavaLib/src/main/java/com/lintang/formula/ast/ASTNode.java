@@ -2,7 +2,26 @@ package com.lintang.formula.ast;
 
 /**
  * Base class for all AST nodes in Excel formula abstract syntax tree.
+ *
+ * <p>Children are also exposed by index, left to right, so traversals such as
+ * {@link PostOrderIterator} can walk any tree with an explicit stack instead of recursion.
  */
 public abstract class ASTNode {
     public abstract <T> T accept(ASTVisitor<T> visitor);
+
+    /**
+     * Returns the number of child nodes; zero for leaves.
+     */
+    public int getChildCount() {
+        return 0;
+    }
+
+    /**
+     * Returns the child at the given position, left to right.
+     *
+     * @throws IndexOutOfBoundsException If there is no such child
+     */
+    public ASTNode getChild(int index) {
+        throw new IndexOutOfBoundsException("Node has no child " + index);
+    }
 }
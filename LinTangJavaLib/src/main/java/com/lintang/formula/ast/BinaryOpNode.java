@@ -26,6 +26,20 @@ public class BinaryOpNode extends ASTNode {
         return right;
     }
 
+    @Override
+    public int getChildCount() {
+        return 2;
+    }
+
+    @Override
+    public ASTNode getChild(int index) {
+        return switch (index) {
+            case 0 -> left;
+            case 1 -> right;
+            default -> throw new IndexOutOfBoundsException("Binary operation has no child " + index);
+        };
+    }
+
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visit(this);
@@ -1,29 +1,90 @@
 package com.lintang.formula.ast;
 
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
+
 /**
  * AST node representing a cell range (e.g., A1:B10).
+ * Both corners are parsed straight from the range text, without splitting it, into a
+ * {@link CellRectangle} when the node is created.
  */
 public class CellRangeNode extends ASTNode {
-    private final String startCell;
-    private final String endCell;
+    private final String cellRange;
+    private final int colon;
+    private final CellRectangle rectangle;
 
     public CellRangeNode(String cellRange) {
-        String[] parts = cellRange.split(":");
-        this.startCell = parts[0];
-        this.endCell = parts[1];
+        this(cellRange, cellRange.indexOf(':'));
     }
 
     public CellRangeNode(String startCell, String endCell) {
-        this.startCell = startCell;
-        this.endCell = endCell;
+        this(startCell + ":" + endCell, startCell.length());
+    }
+
+    private CellRangeNode(String cellRange, int colon) {
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid cell range: " + cellRange);
+        }
+        this.cellRange = cellRange;
+        this.colon = colon;
+        long start = CellAddress.tryParsePacked(cellRange, 0, colon);
+        long end = CellAddress.tryParsePacked(cellRange, colon + 1, cellRange.length());
+        this.rectangle = start < 0 || end < 0 ? null : CellRectangle.of(start, end);
     }
 
     public String getStartCell() {
-        return startCell;
+        return cellRange.substring(0, colon);
     }
 
     public String getEndCell() {
-        return endCell;
+        return cellRange.substring(colon + 1);
+    }
+
+    /**
+     * Returns the range as written, e.g. {@code A1:B10}.
+     */
+    public String getCellRange() {
+        return cellRange;
+    }
+
+    /**
+     * Returns the normalized bounds of the range, or null if it is not made of valid A1-style references.
+     */
+    public CellRectangle getRectangle() {
+        return rectangle;
+    }
+
+    /**
+     * Returns the zero-based top row, or -1 if the range is not made of valid A1-style references.
+     */
+    public int getFirstRow() {
+        return rectangle == null ? -1 : rectangle.getFirstRow();
+    }
+
+    public int getFirstColumn() {
+        return rectangle == null ? -1 : rectangle.getFirstColumn();
+    }
+
+    public int getLastRow() {
+        return rectangle == null ? -1 : rectangle.getLastRow();
+    }
+
+    public int getLastColumn() {
+        return rectangle == null ? -1 : rectangle.getLastColumn();
+    }
+
+    /**
+     * Returns true if both ends of the range were parsed into coordinates.
+     */
+    public boolean isValid() {
+        return rectangle != null;
+    }
+
+    /**
+     * Returns the number of cells covered by the range.
+     */
+    public long getCellCount() {
+        return rectangle == null ? 0 : rectangle.getCellCount();
     }
 
     @Override
@@ -34,8 +95,8 @@ public class CellRangeNode extends ASTNode {
     @Override
     public String toString() {
         return "CellRangeNode{" +
-                "startCell='" + startCell + '\'' +
-                ", endCell='" + endCell + '\'' +
+                "startCell='" + getStartCell() + '\'' +
+                ", endCell='" + getEndCell() + '\'' +
                 '}';
     }
 }
@@ -1,19 +1,53 @@
 package com.lintang.formula.ast;
 
+import com.lintang.formula.cell.CellAddress;
+
 /**
  * AST node representing a cell reference (e.g., A1, B2).
+ * The reference is parsed once, when the node is created, into a packed address
+ * (see {@link CellAddress#pack}).
  */
 public class CellRefNode extends ASTNode {
     private final String cellRef;
+    private final long address;
 
     public CellRefNode(String cellRef) {
         this.cellRef = cellRef;
+        this.address = CellAddress.tryParsePacked(cellRef, 0, cellRef.length());
     }
 
     public String getCellRef() {
         return cellRef;
     }
 
+    /**
+     * Returns the zero-based row, or -1 if the reference is not a valid A1-style reference.
+     */
+    public int getRow() {
+        return address < 0 ? -1 : CellAddress.packedRow(address);
+    }
+
+    /**
+     * Returns the zero-based column, or -1 if the reference is not a valid A1-style reference.
+     */
+    public int getColumn() {
+        return address < 0 ? -1 : CellAddress.packedColumn(address);
+    }
+
+    /**
+     * Returns the packed address, or -1 if the reference is not a valid A1-style reference.
+     */
+    public long getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns true if the reference was parsed into coordinates.
+     */
+    public boolean isValid() {
+        return address >= 0;
+    }
+
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visit(this);
@@ -1,10 +1,10 @@
 package com.lintang.formula.ast;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * AST node representing a function call (e.g., SUM(A1:A10)).
+ * The argument list is immutable, so nodes can be shared between formulas.
  */
 public class FunctionCallNode extends ASTNode {
     private final String functionName;
@@ -12,12 +12,12 @@ public class FunctionCallNode extends ASTNode {
 
     public FunctionCallNode(String functionName) {
         this.functionName = functionName;
-        this.arguments = new ArrayList<>();
+        this.arguments = List.of();
     }
 
     public FunctionCallNode(String functionName, List<ASTNode> arguments) {
         this.functionName = functionName;
-        this.arguments = new ArrayList<>(arguments);
+        this.arguments = List.copyOf(arguments);
     }
 
     public String getFunctionName() {
@@ -28,8 +28,14 @@ public class FunctionCallNode extends ASTNode {
         return arguments;
     }
 
-    public void addArgument(ASTNode argument) {
-        this.arguments.add(argument);
+    @Override
+    public int getChildCount() {
+        return arguments.size();
+    }
+
+    @Override
+    public ASTNode getChild(int index) {
+        return arguments.get(index);
     }
 
     @Override
@@ -0,0 +1,209 @@
+package com.lintang.formula.ast;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Hash-consing factory for AST nodes. Structurally identical subtrees are created once and
+ * shared, so the formulas of a workbook form a DAG: interning {@code A1*B1 + 1} and
+ * {@code A1*B1 - 2} yields one {@code A1*B1} node referenced by both.
+ *
+ * <p>Children are interned before their parents, so structural equality of a node reduces to
+ * its operator or value plus the identity of its children, and lookups never walk subtrees.
+ * Numbers are keyed by their bit pattern, so {@code 0.0} and {@code -0.0} stay distinct.
+ *
+ * <p>Operator, function-call and range nodes handed out more than once are reported by
+ * {@link #isShared(ASTNode)}; evaluation can compute those once per recalculation.
+ *
+ * <p>Thread-safe. Nodes are kept until {@link #clear()}, so use one interner per workbook.
+ */
+public class NodeInterner implements ASTVisitor<ASTNode> {
+
+    private record NumberKey(long bits) { }
+    private record StringKey(String value) { }
+    private record CellRefKey(String cellRef) { }
+    private record CellRangeKey(String cellRange) { }
+    private record BinaryKey(String operator, ASTNode left, ASTNode right) { }
+    private record UnaryKey(String operator, ASTNode operand) { }
+    private record FunctionKey(String name, List<ASTNode> arguments) { }
+
+    private static final BooleanNode TRUE = new BooleanNode(true);
+    private static final BooleanNode FALSE = new BooleanNode(false);
+
+    private final Map<Object, ASTNode> nodes = new ConcurrentHashMap<>();
+    private final Set<ASTNode> shared = ConcurrentHashMap.newKeySet();
+
+    public NumberNode number(double value) {
+        return (NumberNode) lookup(new NumberKey(Double.doubleToRawLongBits(value)), () -> new NumberNode(value), false);
+    }
+
+    public StringNode string(String value) {
+        return (StringNode) lookup(new StringKey(value), () -> new StringNode(value), false);
+    }
+
+    public BooleanNode bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public CellRefNode cellRef(String cellRef) {
+        return (CellRefNode) lookup(new CellRefKey(cellRef), () -> new CellRefNode(cellRef), false);
+    }
+
+    public CellRangeNode cellRange(String startCell, String endCell) {
+        return cellRange(startCell + ":" + endCell);
+    }
+
+    /**
+     * Returns the shared node for a range written as {@code start:end}.
+     */
+    public CellRangeNode cellRange(String cellRange) {
+        return (CellRangeNode) lookup(new CellRangeKey(cellRange), () -> new CellRangeNode(cellRange), true);
+    }
+
+    /**
+     * Returns the binary node over the given children, which must already be interned.
+     */
+    public BinaryOpNode binary(String operator, ASTNode left, ASTNode right) {
+        return (BinaryOpNode) lookup(new BinaryKey(operator, left, right),
+                () -> new BinaryOpNode(operator, left, right), true);
+    }
+
+    /**
+     * Returns the unary node over the given operand, which must already be interned.
+     */
+    public UnaryOpNode unary(String operator, ASTNode operand) {
+        return (UnaryOpNode) lookup(new UnaryKey(operator, operand), () -> new UnaryOpNode(operator, operand), true);
+    }
+
+    /**
+     * Returns the call node over the given arguments, which must already be interned.
+     */
+    public FunctionCallNode function(String name, List<ASTNode> arguments) {
+        List<ASTNode> copy = List.copyOf(arguments);
+        return (FunctionCallNode) lookup(new FunctionKey(name, copy), () -> new FunctionCallNode(name, copy), true);
+    }
+
+    /**
+     * Returns the interned equivalent of a tree built by any parser. Subtrees that were seen
+     * before, in this or any earlier formula, are replaced by the existing nodes.
+     */
+    public ASTNode intern(ASTNode ast) {
+        return ast.accept(this);
+    }
+
+    /**
+     * Returns true if the interner handed out this operator, call or range node more than once.
+     */
+    public boolean isShared(ASTNode node) {
+        return shared.contains(node);
+    }
+
+    /**
+     * Returns the number of distinct nodes.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    public int getSharedCount() {
+        return shared.size();
+    }
+
+    public void clear() {
+        nodes.clear();
+        shared.clear();
+    }
+
+    private ASTNode lookup(Object key, Supplier<ASTNode> factory, boolean trackSharing) {
+        ASTNode existing = nodes.get(key);
+        if (existing != null) {
+            if (trackSharing) {
+                shared.add(existing);
+            }
+            return existing;
+        }
+        ASTNode created = factory.get();
+        existing = nodes.putIfAbsent(key, created);
+        if (existing != null) {
+            if (trackSharing) {
+                shared.add(existing);
+            }
+            return existing;
+        }
+        return created;
+    }
+
+    @Override
+    public ASTNode visit(BinaryOpNode node) {
+        return internTree(node);
+    }
+
+    @Override
+    public ASTNode visit(UnaryOpNode node) {
+        return internTree(node);
+    }
+
+    @Override
+    public ASTNode visit(NumberNode node) {
+        return number(node.getValue());
+    }
+
+    @Override
+    public ASTNode visit(StringNode node) {
+        return string(node.getValue());
+    }
+
+    @Override
+    public ASTNode visit(BooleanNode node) {
+        return bool(node.getValue());
+    }
+
+    @Override
+    public ASTNode visit(CellRefNode node) {
+        return cellRef(node.getCellRef());
+    }
+
+    @Override
+    public ASTNode visit(CellRangeNode node) {
+        return cellRange(node.getCellRange());
+    }
+
+    @Override
+    public ASTNode visit(FunctionCallNode node) {
+        return internTree(node);
+    }
+
+    /**
+     * Interns a subtree in post-order with a {@link PostOrderIterator}, so children are interned
+     * before their parents without recursion; when a node is returned, its interned children are
+     * the topmost entries of the result stack.
+     */
+    private ASTNode internTree(ASTNode root) {
+        ASTNode[] results = new ASTNode[16];
+        int top = 0;
+        PostOrderIterator nodes = new PostOrderIterator(root);
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            top -= node.getChildCount();
+            ASTNode interned;
+            if (node instanceof BinaryOpNode binary) {
+                interned = binary(binary.getOperator(), results[top], results[top + 1]);
+            } else if (node instanceof UnaryOpNode unary) {
+                interned = unary(unary.getOperator(), results[top]);
+            } else if (node instanceof FunctionCallNode call) {
+                interned = function(call.getFunctionName(), Arrays.asList(results).subList(top, top + call.getChildCount()));
+            } else {
+                interned = node.accept(this);
+            }
+            if (top == results.length) {
+                results = Arrays.copyOf(results, top * 2);
+            }
+            results[top++] = interned;
+        }
+        return results[0];
+    }
+}
@@ -0,0 +1,89 @@
+package com.lintang.formula.ast;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Iterates over a tree in post-order, children left to right before their parent, using an
+ * explicit stack instead of recursion, so trees of any depth can be walked on a small thread
+ * stack. Visitors that compute a value per node consume the iteration with a value stack:
+ * when a node is returned, the values of its children are the topmost entries.
+ *
+ * <p>An optional predicate stops the descent: nodes it rejects are returned as if they were
+ * leaves, e.g. function calls whose arguments are evaluated lazily by the function, and
+ * {@link #childrenVisited()} tells such nodes apart from the others.
+ *
+ * <p>Iterating a DAG built by {@link NodeInterner} returns shared nodes once per parent.
+ */
+public final class PostOrderIterator implements Iterator<ASTNode> {
+    private final Predicate<ASTNode> descend;
+    private ASTNode[] nodes = new ASTNode[16];
+    private int[] nextChild = new int[16];
+    private int size;
+    private boolean childrenVisited;
+
+    public PostOrderIterator(ASTNode root) {
+        this(root, node -> true);
+    }
+
+    /**
+     * @param root Node to start from; it is returned last
+     * @param descend Returns true for nodes whose children should be visited
+     */
+    public PostOrderIterator(ASTNode root, Predicate<ASTNode> descend) {
+        this.descend = descend;
+        push(root);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return size > 0;
+    }
+
+    @Override
+    public ASTNode next() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        while (true) {
+            int top = size - 1;
+            ASTNode node = nodes[top];
+            if (nextChild[top] < node.getChildCount() && (nextChild[top] > 0 || descend.test(node))) {
+                push(node.getChild(nextChild[top]++));
+            } else {
+                childrenVisited = nextChild[top] > 0;
+                nodes[top] = null;
+                size = top;
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of ancestors of the node last returned that are still to be returned,
+     * which is its depth below the root.
+     */
+    public int getDepth() {
+        return size;
+    }
+
+    /**
+     * Returns true if the children of the node last returned were returned before it, i.e. it
+     * has children and the predicate accepted it.
+     */
+    public boolean childrenVisited() {
+        return childrenVisited;
+    }
+
+    private void push(ASTNode node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            nextChild = Arrays.copyOf(nextChild, size * 2);
+        }
+        nodes[size] = node;
+        nextChild[size] = 0;
+        size++;
+    }
+}
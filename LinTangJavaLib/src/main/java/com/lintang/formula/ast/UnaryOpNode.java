@@ -20,6 +20,19 @@ public class UnaryOpNode extends ASTNode {
         return operand;
     }
 
+    @Override
+    public int getChildCount() {
+        return 1;
+    }
+
+    @Override
+    public ASTNode getChild(int index) {
+        if (index != 0) {
+            throw new IndexOutOfBoundsException("Unary operation has no child " + index);
+        }
+        return operand;
+    }
+
     @Override
     public <T> T accept(ASTVisitor<T> visitor) {
         return visitor.visit(this);
@@ -0,0 +1,376 @@
+package com.lintang.formula.batch;
+
+import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.Arrays;
+
+/**
+ * One formula template evaluated over many rows at once, like a spreadsheet formula filled down
+ * a column. References in the template are relative to its anchor row: compiled with anchor row 0,
+ * {@code A1 * B1} computes {@code A[r] * B[r]} for every row {@code r}, and {@code A2 - A1} the
+ * difference to the previous row.
+ *
+ * <p>The template is compiled into a postfix program whose instructions work on chunks of
+ * {@value #CHUNK_SIZE} rows: a cell reference copies a slice of its column, and each operator is
+ * one loop over whole chunks, which the JIT vectorizes. Templates are compiled with an explicit
+ * stack rather than by recursion. Function calls are evaluated row by row
+ * through {@link ClosureCompiler} closures on a row-shifted view of the data.
+ *
+ * <p>Rows in which evaluation fails, for example on division by zero or a reference shifted
+ * above the first row, get {@code NaN}; the other rows are unaffected. Blank cells read as 0.0.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ */
+public final class BatchFormula {
+
+    public static final int CHUNK_SIZE = 1024;
+
+    private static final byte CONSTANT = 0;
+    private static final byte CELL = 1;
+    private static final byte ADD = 2;
+    private static final byte SUBTRACT = 3;
+    private static final byte MULTIPLY = 4;
+    private static final byte DIVIDE = 5;
+    private static final byte POWER = 6;
+    private static final byte NEGATE = 7;
+    private static final byte CALL = 8;
+    /** Binary operators with a constant right operand: opcode + CONSTANT_RIGHT. */
+    private static final byte CONSTANT_RIGHT = 16;
+
+    private final byte[] opcodes;
+    private final double[] constants;
+    private final int[] columns;
+    private final int[] rowOffsets;
+    private final CompiledFormula[] calls;
+    private final int anchorRow;
+    private final int maxDepth;
+
+    private BatchFormula(Builder builder, int anchorRow) {
+        this.opcodes = Arrays.copyOf(builder.opcodes, builder.size);
+        this.constants = Arrays.copyOf(builder.constants, builder.size);
+        this.columns = Arrays.copyOf(builder.columns, builder.size);
+        this.rowOffsets = Arrays.copyOf(builder.rowOffsets, builder.size);
+        this.calls = Arrays.copyOf(builder.calls, builder.size);
+        this.anchorRow = anchorRow;
+        this.maxDepth = builder.maxDepth;
+    }
+
+    /**
+     * Compiles a template whose references are relative to the given zero-based anchor row.
+     *
+     * @throws UnsupportedOperationException If the template contains strings, multi-cell ranges
+     *                                       outside function calls or unknown functions
+     */
+    public static BatchFormula compile(ASTNode template, int anchorRow) {
+        return compile(template, anchorRow, FunctionRegistry.standard());
+    }
+
+    public static BatchFormula compile(ASTNode template, int anchorRow, FunctionRegistry functions) {
+        if (anchorRow < 0) {
+            throw new IllegalArgumentException("Negative anchor row: " + anchorRow);
+        }
+        Builder builder = new Builder(anchorRow, functions);
+        builder.build(template);
+        return new BatchFormula(builder, anchorRow);
+    }
+
+    /**
+     * Evaluates the template for rows {@code firstRow} to {@code firstRow + rowCount - 1}.
+     */
+    public double[] evaluate(ColumnarCellStore data, int firstRow, int rowCount) {
+        double[] result = new double[rowCount];
+        evaluateInto(data, firstRow, rowCount, result, 0);
+        return result;
+    }
+
+    /**
+     * Evaluates the template for rows {@code 0} to {@code rowCount - 1} of the given columns,
+     * where {@code columns[0]} is column A.
+     */
+    public double[] evaluate(double[][] columns, int rowCount) {
+        return evaluate(ColumnarCellStore.ofColumns(columns), 0, rowCount);
+    }
+
+    /**
+     * Evaluates the template for {@code rowCount} rows starting at {@code firstRow} and writes
+     * the results to {@code out} starting at {@code outOffset}.
+     */
+    public void evaluateInto(ColumnarCellStore data, int firstRow, int rowCount, double[] out, int outOffset) {
+        if (firstRow < 0 || rowCount < 0) {
+            throw new IllegalArgumentException("Invalid rows: " + firstRow + " + " + rowCount);
+        }
+        double[][] stack = new double[maxDepth][Math.min(CHUNK_SIZE, Math.max(rowCount, 1))];
+        RowShiftedSource shifted = new RowShiftedSource(data);
+        for (int start = 0; start < rowCount; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, rowCount - start);
+            run(data, shifted, firstRow + start, length, stack);
+            System.arraycopy(stack[0], 0, out, outOffset + start, length);
+        }
+    }
+
+    public int getAnchorRow() {
+        return anchorRow;
+    }
+
+    private void run(ColumnarCellStore data, RowShiftedSource shifted, int row, int length, double[][] stack) {
+        int top = -1;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            byte opcode = opcodes[pc];
+            switch (opcode) {
+                case CONSTANT -> Arrays.fill(stack[++top], 0, length, constants[pc]);
+                case CELL -> load(data.columnValues(columns[pc]), row + rowOffsets[pc], length, stack[++top]);
+                case CALL -> call(calls[pc], shifted, row, length, stack[++top]);
+                case NEGATE -> {
+                    double[] a = stack[top];
+                    for (int i = 0; i < length; i++) {
+                        a[i] = -a[i];
+                    }
+                }
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER -> {
+                    binary(opcode, stack[top - 1], stack[top], length);
+                    top--;
+                }
+                default -> binaryConstant((byte) (opcode - CONSTANT_RIGHT), stack[top], constants[pc], length);
+            }
+        }
+    }
+
+    private static void load(double[] column, int from, int length, double[] target) {
+        int i = 0;
+        for (; i < length && from + i < 0; i++) {
+            target[i] = Double.NaN;
+        }
+        int available = Math.min(length, column.length - from);
+        if (available > i) {
+            System.arraycopy(column, from + i, target, i, available - i);
+            i = available;
+        }
+        Arrays.fill(target, i, length, 0.0);
+    }
+
+    private void call(CompiledFormula call, RowShiftedSource shifted, int row, int length, double[] target) {
+        for (int i = 0; i < length; i++) {
+            shifted.setOffset(row + i - anchorRow);
+            try {
+                target[i] = call.evaluate(shifted);
+            } catch (RuntimeException e) {
+                target[i] = Double.NaN;
+            }
+        }
+    }
+
+    private static void binary(byte opcode, double[] a, double[] b, int length) {
+        switch (opcode) {
+            case ADD -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] += b[i];
+                }
+            }
+            case SUBTRACT -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] -= b[i];
+                }
+            }
+            case MULTIPLY -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] *= b[i];
+                }
+            }
+            case DIVIDE -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] = b[i] == 0 ? Double.NaN : a[i] / b[i];
+                }
+            }
+            default -> {
+                // NaN marks a failed row; Math.pow(NaN, 0) would turn it back into 1
+                for (int i = 0; i < length; i++) {
+                    a[i] = Double.isNaN(a[i]) ? a[i] : Math.pow(a[i], b[i]);
+                }
+            }
+        }
+    }
+
+    private static void binaryConstant(byte opcode, double[] a, double b, int length) {
+        switch (opcode) {
+            case ADD -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] += b;
+                }
+            }
+            case SUBTRACT -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] -= b;
+                }
+            }
+            case MULTIPLY -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] *= b;
+                }
+            }
+            case DIVIDE -> {
+                if (b == 0) {
+                    Arrays.fill(a, 0, length, Double.NaN);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        a[i] /= b;
+                    }
+                }
+            }
+            default -> {
+                for (int i = 0; i < length; i++) {
+                    a[i] = Double.isNaN(a[i]) ? a[i] : Math.pow(a[i], b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits the postfix program while tracking the operand stack depth.
+     */
+    private static final class Builder implements ASTVisitor<Void> {
+        private final int anchorRow;
+        private final FunctionRegistry functions;
+        private byte[] opcodes = new byte[16];
+        private double[] constants = new double[16];
+        private int[] columns = new int[16];
+        private int[] rowOffsets = new int[16];
+        private CompiledFormula[] calls = new CompiledFormula[16];
+        private int size;
+        private int depth;
+        private int maxDepth;
+
+        Builder(int anchorRow, FunctionRegistry functions) {
+            this.anchorRow = anchorRow;
+            this.functions = functions;
+        }
+
+        private int emit(byte opcode, int stackEffect) {
+            if (size == opcodes.length) {
+                int capacity = size * 2;
+                opcodes = Arrays.copyOf(opcodes, capacity);
+                constants = Arrays.copyOf(constants, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+                rowOffsets = Arrays.copyOf(rowOffsets, capacity);
+                calls = Arrays.copyOf(calls, capacity);
+            }
+            opcodes[size] = opcode;
+            depth += stackEffect;
+            maxDepth = Math.max(maxDepth, depth);
+            return size++;
+        }
+
+        /**
+         * Emits a template. Postfix order is post-order, so the tree is walked with a
+         * {@link PostOrderIterator} and operators are emitted as they are returned. A number is
+         * held back until the next node, so it can become the constant of the operator it is the
+         * right operand of; function calls are compiled whole.
+         */
+        void build(ASTNode root) {
+            PostOrderIterator nodes = new PostOrderIterator(root, node -> !(node instanceof FunctionCallNode));
+            NumberNode held = null;
+            while (nodes.hasNext()) {
+                ASTNode node = nodes.next();
+                if (node instanceof BinaryOpNode binary && held != null && binary.getRight() == held) {
+                    int pc = emit((byte) (opcode(binary) + CONSTANT_RIGHT), 0);
+                    constants[pc] = held.getValue();
+                    held = null;
+                    continue;
+                }
+                if (held != null) {
+                    held.accept(this);
+                    held = null;
+                }
+                if (node instanceof NumberNode number) {
+                    held = number;
+                } else if (node instanceof BinaryOpNode binary) {
+                    emit(opcode(binary), -1);
+                } else if (node instanceof UnaryOpNode unary) {
+                    switch (unary.getOperator()) {
+                        case "+" -> { }
+                        case "-" -> emit(NEGATE, 0);
+                        default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                    }
+                } else {
+                    node.accept(this);
+                }
+            }
+            if (held != null) {
+                held.accept(this);
+            }
+        }
+
+        private static byte opcode(BinaryOpNode node) {
+            return switch (node.getOperator()) {
+                case "+" -> ADD;
+                case "-" -> SUBTRACT;
+                case "*" -> MULTIPLY;
+                case "/" -> DIVIDE;
+                case "^" -> POWER;
+                default -> throw new IllegalArgumentException("Unknown operator: " + node.getOperator());
+            };
+        }
+
+        @Override
+        public Void visit(BinaryOpNode node) {
+            build(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryOpNode node) {
+            build(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberNode node) {
+            constants[emit(CONSTANT, 1)] = node.getValue();
+            return null;
+        }
+
+        @Override
+        public Void visit(StringNode node) {
+            throw new UnsupportedOperationException("String evaluation not supported");
+        }
+
+        @Override
+        public Void visit(BooleanNode node) {
+            constants[emit(CONSTANT, 1)] = node.getValue() ? 1.0 : 0.0;
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRefNode node) {
+            if (!node.isValid()) {
+                throw new IllegalArgumentException("Invalid cell reference: " + node.getCellRef());
+            }
+            cell(node.getRow(), node.getColumn());
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRangeNode node) {
+            if (!node.isValid() || node.getCellCount() != 1) {
+                throw new UnsupportedOperationException("Cell ranges are only supported as function arguments");
+            }
+            cell(node.getFirstRow(), node.getFirstColumn());
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCallNode node) {
+            calls[emit(CALL, 1)] = ClosureCompiler.compile(node, functions);
+            return null;
+        }
+
+        private void cell(int row, int column) {
+            int pc = emit(CELL, 1);
+            columns[pc] = column;
+            rowOffsets[pc] = row - anchorRow;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.lintang.formula.batch;
+
+import com.lintang.formula.cell.CellSource;
+
+/**
+ * View of a cell source with every row moved by a settable offset, so a formula compiled for
+ * its template row reads the row being evaluated. Rows shifted above the first row are errors.
+ */
+final class RowShiftedSource implements CellSource {
+    private final CellSource source;
+    private int offset;
+
+    RowShiftedSource(CellSource source) {
+        this.source = source;
+    }
+
+    void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public double getNumber(int row, int column) {
+        return source.getNumber(shift(row), column);
+    }
+
+    @Override
+    public boolean isBlank(int row, int column) {
+        return source.isBlank(shift(row), column);
+    }
+
+    private int shift(int row) {
+        int shifted = row + offset;
+        if (shifted < 0) {
+            throw new IllegalArgumentException("Reference above the first row");
+        }
+        return shifted;
+    }
+}
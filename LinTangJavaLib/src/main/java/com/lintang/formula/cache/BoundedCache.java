@@ -0,0 +1,173 @@
+package com.lintang.formula.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe LRU cache bounded both by entry count and by total weight.
+ * Values are computed outside the lock, so a slow loader never blocks readers;
+ * two threads missing on the same key may both compute it and the first one wins.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class BoundedCache<K, V> {
+
+    /**
+     * Computes the weight of an entry. Weights must be non-negative.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    /**
+     * Computes the value for a missing key.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long totalWeight;
+
+    /**
+     * Creates a cache where every entry weighs 1, i.e. bounded by entry count only.
+     */
+    public BoundedCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE, (key, value) -> 1L);
+    }
+
+    public BoundedCache(int maxEntries, long maxWeight, Weigher<? super K, ? super V> weigher) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached value for the key, or null if absent. Counts as a hit or a miss.
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value for the key, loading and caching it on a miss.
+     * Failed loads are not cached and propagate the loader's exception.
+     */
+    public V get(K key, Loader<? super K, ? extends V> loader) throws Exception {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        return putIfAbsent(key, loader.load(key));
+    }
+
+    /**
+     * Stores the value unless the key is already cached, and returns the value now cached.
+     * Entries heavier than the whole weight budget are returned but not stored.
+     */
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        long weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight for key: " + key);
+        }
+        if (weight > maxWeight) {
+            return value;
+        }
+        synchronized (entries) {
+            Entry<V> existing = entries.get(key);
+            if (existing != null) {
+                return existing.value;
+            }
+            entries.put(key, new Entry<>(value, weight));
+            totalWeight += weight;
+            evictIfNeeded();
+        }
+        return value;
+    }
+
+    /**
+     * Returns true if the key is cached, without counting a hit or a miss or refreshing its
+     * recency.
+     */
+    public boolean containsKey(K key) {
+        synchronized (entries) {
+            return entries.containsKey(key);
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            Entry<V> removed = entries.remove(key);
+            if (removed != null) {
+                totalWeight -= removed.weight;
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalWeight = 0;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public CacheStats stats() {
+        synchronized (entries) {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), totalWeight);
+        }
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalWeight > maxWeight) && eldest.hasNext()) {
+            Entry<V> entry = eldest.next().getValue();
+            eldest.remove();
+            totalWeight -= entry.weight;
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.lintang.formula.cell;
+
+/**
+ * Conversions between A1-style cell references and zero-based coordinates.
+ */
+public final class CellAddress {
+
+    private CellAddress() {
+    }
+
+    /**
+     * Returns the zero-based row of an A1-style reference, e.g. 9 for {@code B10}.
+     *
+     * @throws IllegalArgumentException If the reference is not of the form {@code [A-Z]+[0-9]+}
+     */
+    public static int parseRow(CharSequence cellRef) {
+        int digits = lettersEnd(cellRef);
+        long row = 0;
+        for (int i = digits; i < cellRef.length(); i++) {
+            char c = cellRef.charAt(i);
+            if (c < '0' || c > '9') {
+                throw invalid(cellRef);
+            }
+            row = row * 10 + (c - '0');
+            if (row > Integer.MAX_VALUE) {
+                throw invalid(cellRef);
+            }
+        }
+        if (digits == cellRef.length() || row == 0) {
+            throw invalid(cellRef);
+        }
+        return (int) (row - 1);
+    }
+
+    /**
+     * Returns the zero-based column of an A1-style reference, e.g. 1 for {@code B10} and 26 for {@code AA1}.
+     *
+     * @throws IllegalArgumentException If the reference does not start with column letters
+     */
+    public static int parseColumn(CharSequence cellRef) {
+        int end = lettersEnd(cellRef);
+        long column = 0;
+        for (int i = 0; i < end; i++) {
+            column = column * 26 + (cellRef.charAt(i) - 'A' + 1);
+            if (column > Integer.MAX_VALUE) {
+                throw invalid(cellRef);
+            }
+        }
+        return (int) (column - 1);
+    }
+
+    /**
+     * Parses an A1-style reference into {@code {row, column}}, or returns null if it is not valid.
+     */
+    public static int[] tryParse(CharSequence cellRef) {
+        long address = tryParsePacked(cellRef, 0, cellRef.length());
+        return address < 0 ? null : new int[] {packedRow(address), packedColumn(address)};
+    }
+
+    /**
+     * Parses the characters {@code [from, to)} of the text as an A1-style reference into a packed
+     * address (see {@link #pack}), or returns -1 if they are not a valid reference. Nothing is
+     * allocated, so references inside a longer text such as {@code A1:B10} need no substrings.
+     */
+    public static long tryParsePacked(CharSequence text, int from, int to) {
+        int i = from;
+        long column = 0;
+        while (i < to && text.charAt(i) >= 'A' && text.charAt(i) <= 'Z') {
+            column = column * 26 + (text.charAt(i++) - 'A' + 1);
+            if (column > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        if (i == from || i == to) {
+            return -1;
+        }
+        long row = 0;
+        for (; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            row = row * 10 + (c - '0');
+            if (row > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return row == 0 ? -1 : pack((int) (row - 1), (int) (column - 1));
+    }
+
+    /**
+     * Returns true if the text is an A1-style reference within the supported coordinate range.
+     */
+    public static boolean isValid(CharSequence cellRef) {
+        return tryParsePacked(cellRef, 0, cellRef.length()) >= 0;
+    }
+
+    /**
+     * Returns the column letters for a zero-based column index, e.g. {@code AA} for 26.
+     */
+    public static String columnName(int column) {
+        if (column < 0) {
+            throw new IllegalArgumentException("Negative column: " + column);
+        }
+        StringBuilder name = new StringBuilder();
+        for (int c = column + 1; c > 0; c = (c - 1) / 26) {
+            name.append((char) ('A' + (c - 1) % 26));
+        }
+        return name.reverse().toString();
+    }
+
+    /**
+     * Formats zero-based coordinates as an A1-style reference.
+     */
+    public static String toString(int row, int column) {
+        if (row < 0) {
+            throw new IllegalArgumentException("Negative row: " + row);
+        }
+        return columnName(column) + (row + 1);
+    }
+
+    /**
+     * Packs zero-based coordinates into one {@code long}: the row in the high 32 bits and the
+     * column in the low 32 bits. Packed addresses sort in row-major order.
+     */
+    public static long pack(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFF_FFFFL);
+    }
+
+    public static int packedRow(long address) {
+        return (int) (address >>> 32);
+    }
+
+    public static int packedColumn(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Formats a packed address as an A1-style reference.
+     */
+    public static String toString(long address) {
+        return toString(packedRow(address), packedColumn(address));
+    }
+
+    private static int lettersEnd(CharSequence cellRef) {
+        int i = 0;
+        while (i < cellRef.length() && cellRef.charAt(i) >= 'A' && cellRef.charAt(i) <= 'Z') {
+            i++;
+        }
+        if (i == 0) {
+            throw invalid(cellRef);
+        }
+        return i;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence cellRef) {
+        return new IllegalArgumentException("Invalid cell reference: " + cellRef);
+    }
+}
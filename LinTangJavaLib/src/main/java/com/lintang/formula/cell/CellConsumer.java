@@ -0,0 +1,9 @@
+package com.lintang.formula.cell;
+
+/**
+ * Receives cell values during a range scan, one primitive value at a time.
+ */
+@FunctionalInterface
+public interface CellConsumer {
+    void accept(double value);
+}
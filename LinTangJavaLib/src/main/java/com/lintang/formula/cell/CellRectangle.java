@@ -0,0 +1,111 @@
+package com.lintang.formula.cell;
+
+/**
+ * Immutable rectangle of cells with inclusive, zero-based bounds, e.g. the cells of {@code A1:B10}.
+ * Bounds are normalized so that the first row and column are never greater than the last ones.
+ */
+public final class CellRectangle {
+    private final int firstRow;
+    private final int firstColumn;
+    private final int lastRow;
+    private final int lastColumn;
+
+    /**
+     * Creates the rectangle spanned by two corners given in any order.
+     *
+     * @throws IllegalArgumentException If a coordinate is negative
+     */
+    public CellRectangle(int row1, int column1, int row2, int column2) {
+        if (row1 < 0 || column1 < 0 || row2 < 0 || column2 < 0) {
+            throw new IllegalArgumentException("Negative range bound: " + row1 + "," + column1 + ":" + row2 + "," + column2);
+        }
+        this.firstRow = Math.min(row1, row2);
+        this.firstColumn = Math.min(column1, column2);
+        this.lastRow = Math.max(row1, row2);
+        this.lastColumn = Math.max(column1, column2);
+    }
+
+    /**
+     * Creates the rectangle spanned by two packed corner addresses (see {@link CellAddress#pack}).
+     */
+    public static CellRectangle of(long corner1, long corner2) {
+        return new CellRectangle(CellAddress.packedRow(corner1), CellAddress.packedColumn(corner1),
+                CellAddress.packedRow(corner2), CellAddress.packedColumn(corner2));
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    public int getRowCount() {
+        return lastRow - firstRow + 1;
+    }
+
+    public int getColumnCount() {
+        return lastColumn - firstColumn + 1;
+    }
+
+    /**
+     * Returns the number of cells covered by the rectangle.
+     */
+    public long getCellCount() {
+        return (long) getRowCount() * getColumnCount();
+    }
+
+    public boolean isSingleCell() {
+        return firstRow == lastRow && firstColumn == lastColumn;
+    }
+
+    public boolean contains(int row, int column) {
+        return row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn;
+    }
+
+    /**
+     * Returns true if the rectangle contains the packed address.
+     */
+    public boolean contains(long address) {
+        return contains(CellAddress.packedRow(address), CellAddress.packedColumn(address));
+    }
+
+    public boolean intersects(CellRectangle other) {
+        return firstRow <= other.lastRow && other.firstRow <= lastRow
+                && firstColumn <= other.lastColumn && other.firstColumn <= lastColumn;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CellRectangle other)) {
+            return false;
+        }
+        return firstRow == other.firstRow && firstColumn == other.firstColumn
+                && lastRow == other.lastRow && lastColumn == other.lastColumn;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((firstRow * 31 + firstColumn) * 31 + lastRow) * 31 + lastColumn;
+    }
+
+    /**
+     * Returns the rectangle in A1 notation, e.g. {@code A1:B10}.
+     */
+    @Override
+    public String toString() {
+        return CellAddress.toString(firstRow, firstColumn) + ":" + CellAddress.toString(lastRow, lastColumn);
+    }
+}
@@ -0,0 +1,38 @@
+package com.lintang.formula.cell;
+
+/**
+ * Provides cell values to formula evaluation.
+ * Rows and columns are zero-based, so {@code A1} is row 0, column 0.
+ */
+public interface CellSource {
+
+    /**
+     * Returns the numeric value of a cell. Blank cells read as 0.0.
+     *
+     * @param row Zero-based row index
+     * @param column Zero-based column index
+     * @return The cell value
+     */
+    double getNumber(int row, int column);
+
+    /**
+     * Returns true if the cell holds no value. Sources without blanks can keep the default.
+     */
+    default boolean isBlank(int row, int column) {
+        return false;
+    }
+
+    /**
+     * Passes the value of every non-blank cell in the rectangle to the consumer,
+     * column by column and top to bottom within a column. Bounds are inclusive.
+     */
+    default void scan(int firstRow, int firstColumn, int lastRow, int lastColumn, CellConsumer consumer) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                if (!isBlank(row, column)) {
+                    consumer.accept(getNumber(row, column));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.lintang.formula.cell;
+
+import com.lintang.formula.function.RangeKernels;
+
+/**
+ * Segment trees over one column of a {@link ColumnarCellStore} answering SUM, COUNT, MIN and MAX
+ * of any row interval in O(log n), and updated in O(log n) when a cell changes.
+ *
+ * <p>The leaves are blocks of 64 rows, matching the words of the validity bitmap, padded to a
+ * power of two, so the trees take about a fifth of the memory of the column itself. A query
+ * combines the full blocks from the trees and scans the at most 126 rows of the partial blocks
+ * at either end. Nodes are recomputed from their children, so infinities or NaN leave the tree
+ * as soon as the cell holding them changes.
+ *
+ * <p>COUNT, MIN and MAX are exact, so a query returns exactly what any scan of the same rows
+ * would. Floating-point sums depend on the order of the additions, so sums use one fixed order
+ * whether or not the column is indexed, defined by {@link #sum(double[], int, int)}: the full
+ * blocks of the interval are split into aligned power-of-two runs, and the partial blocks and
+ * runs are added from left to right. A run of up to 16 blocks is one pass of the range kernel,
+ * and a longer run is the sum of its two halves, just as the tree stores its nodes, so scanning
+ * in that order gives the same bits as a query of the index. Each tree update therefore repeats
+ * kernel passes over at most 1,024 rows per level up to that size.
+ *
+ * <p>Indexes are created and kept up to date by the store; see
+ * {@link ColumnarCellStore#aggregateIndex(int)}.
+ */
+public final class ColumnAggregateIndex {
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final RangeKernels KERNELS = RangeKernels.preferred();
+    // Runs of up to this many blocks are summed in one kernel pass, longer ones pairwise
+    private static final int KERNEL_BLOCKS = 16;
+
+    private final double[] values;
+    private final long[] bits;
+    private final int blocks;
+    // Nodes 1..blocks-1 are inner nodes, blocks..2*blocks-1 the leaves
+    private final double[] sums;
+    private final int[] counts;
+    private final double[] mins;
+    private final double[] maxs;
+
+    /**
+     * Builds the index over the backing arrays of a column, which the store keeps using.
+     */
+    ColumnAggregateIndex(double[] values, long[] bits) {
+        this.values = values;
+        this.bits = bits;
+        // A power of two, so every aligned run of blocks is exactly one node
+        this.blocks = Integer.highestOneBit(Math.max(1, (values.length + BLOCK_SIZE - 1) >>> BLOCK_SHIFT) * 2 - 1);
+        this.sums = new double[2 * blocks];
+        this.counts = new int[2 * blocks];
+        this.mins = new double[2 * blocks];
+        this.maxs = new double[2 * blocks];
+        for (int block = 0; block < blocks; block++) {
+            computeLeaf(block);
+        }
+        for (int node = blocks - 1; node > 0; node--) {
+            computeNode(node);
+        }
+    }
+
+    /**
+     * Returns true if the index was built over these arrays, i.e. the column has not been
+     * reallocated or replaced since.
+     */
+    boolean isOver(double[] columnValues, long[] columnBits) {
+        return values == columnValues && bits == columnBits;
+    }
+
+    /**
+     * Recomputes the leaf holding the row and its ancestors after the row changed.
+     */
+    void update(int row) {
+        int block = row >>> BLOCK_SHIFT;
+        computeLeaf(block);
+        for (int node = (block + blocks) >>> 1; node > 0; node >>>= 1) {
+            computeNode(node);
+        }
+    }
+
+    /**
+     * Sums the rows {@code [from, to)} of a column in the fixed order described above, so the
+     * result is bit for bit what {@link #sum(int, int)} returns for an index over the column.
+     * Blank rows must hold {@code 0.0}.
+     */
+    public static double sum(double[] values, int from, int to) {
+        to = Math.min(to, values.length);
+        int first = firstFullBlock(from);
+        int last = lastFullBlock(to);
+        if (first >= last) {
+            return KERNELS.sum(values, from, to);
+        }
+        double sum = KERNELS.sum(values, from, first << BLOCK_SHIFT);
+        for (int block = first; block < last; ) {
+            int run = runLength(block, last);
+            sum += sumBlocks(values, block, run);
+            block += run;
+        }
+        return sum + KERNELS.sum(values, last << BLOCK_SHIFT, to);
+    }
+
+    /**
+     * Returns the sum of the rows in {@code [from, to)}, blank rows counting as zero.
+     */
+    public double sum(int from, int to) {
+        to = Math.min(to, values.length);
+        int first = firstFullBlock(from);
+        int last = lastFullBlock(to);
+        if (first >= last) {
+            return KERNELS.sum(values, from, to);
+        }
+        double sum = KERNELS.sum(values, from, first << BLOCK_SHIFT);
+        for (int block = first; block < last; ) {
+            int run = runLength(block, last);
+            sum += sums[(block + blocks) / run];
+            block += run;
+        }
+        return sum + KERNELS.sum(values, last << BLOCK_SHIFT, to);
+    }
+
+    /**
+     * Returns the number of non-blank rows in {@code [from, to)}.
+     */
+    public long count(int from, int to) {
+        to = Math.min(to, values.length);
+        int first = firstFullBlock(from);
+        int last = lastFullBlock(to);
+        if (first >= last) {
+            return countRows(from, to);
+        }
+        long count = countRows(from, first << BLOCK_SHIFT);
+        for (int lo = first + blocks, hi = last + blocks; lo < hi; lo >>>= 1, hi >>>= 1) {
+            if ((lo & 1) != 0) {
+                count += counts[lo++];
+            }
+            if ((hi & 1) != 0) {
+                count += counts[--hi];
+            }
+        }
+        return count + countRows(last << BLOCK_SHIFT, to);
+    }
+
+    /**
+     * Returns the smallest non-blank value in {@code [from, to)}, or
+     * {@link Double#POSITIVE_INFINITY} if there is none.
+     */
+    public double min(int from, int to) {
+        return extreme(from, to, false);
+    }
+
+    /**
+     * Returns the largest non-blank value in {@code [from, to)}, or
+     * {@link Double#NEGATIVE_INFINITY} if there is none.
+     */
+    public double max(int from, int to) {
+        return extreme(from, to, true);
+    }
+
+    private double extreme(int from, int to, boolean max) {
+        to = Math.min(to, values.length);
+        int first = firstFullBlock(from);
+        int last = lastFullBlock(to);
+        if (first >= last) {
+            return extremeRows(from, to, max);
+        }
+        double[] tree = max ? maxs : mins;
+        double result = extremeRows(from, first << BLOCK_SHIFT, max);
+        for (int lo = first + blocks, hi = last + blocks; lo < hi; lo >>>= 1, hi >>>= 1) {
+            if ((lo & 1) != 0) {
+                result = combine(result, tree[lo++], max);
+            }
+            if ((hi & 1) != 0) {
+                result = combine(result, tree[--hi], max);
+            }
+        }
+        return combine(result, extremeRows(last << BLOCK_SHIFT, to, max), max);
+    }
+
+    private void computeLeaf(int block) {
+        int from = block << BLOCK_SHIFT;
+        int to = Math.min(from + BLOCK_SIZE, values.length);
+        int node = block + blocks;
+        sums[node] = sumNode(node);
+        counts[node] = (int) countRows(from, to);
+        mins[node] = extremeRows(from, to, false);
+        maxs[node] = extremeRows(from, to, true);
+    }
+
+    private void computeNode(int node) {
+        int left = 2 * node;
+        int right = left + 1;
+        sums[node] = sumNode(node);
+        counts[node] = counts[left] + counts[right];
+        mins[node] = Math.min(mins[left], mins[right]);
+        maxs[node] = Math.max(maxs[left], maxs[right]);
+    }
+
+    /**
+     * Returns the length of the longest aligned power-of-two run of blocks starting at the block
+     * and ending at or before {@code last}.
+     */
+    private static int runLength(int block, int last) {
+        int run = block == 0 ? Integer.highestOneBit(last) : Integer.lowestOneBit(block);
+        while (block + run > last) {
+            run >>>= 1;
+        }
+        return run;
+    }
+
+    /**
+     * Sums an aligned run of full blocks as the tree sums the node covering it.
+     */
+    private static double sumBlocks(double[] values, int block, int run) {
+        if (run <= KERNEL_BLOCKS) {
+            int from = block << BLOCK_SHIFT;
+            return KERNELS.sum(values, from, from + (run << BLOCK_SHIFT));
+        }
+        int half = run >>> 1;
+        return sumBlocks(values, block, half) + sumBlocks(values, block + half, half);
+    }
+
+    private double sumNode(int node) {
+        int run = blocks / Integer.highestOneBit(node);
+        if (run > KERNEL_BLOCKS) {
+            return sums[2 * node] + sums[2 * node + 1];
+        }
+        int from = (node * run - blocks) << BLOCK_SHIFT;
+        int to = Math.min(from + (run << BLOCK_SHIFT), values.length);
+        return from < to ? KERNELS.sum(values, from, to) : 0;
+    }
+
+    private long countRows(int from, int to) {
+        long count = 0;
+        for (int row = from; row < to; row++) {
+            if ((bits[row >>> 6] & (1L << row)) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private double extremeRows(int from, int to, boolean max) {
+        double result = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        for (int row = from; row < to; row++) {
+            if ((bits[row >>> 6] & (1L << row)) != 0) {
+                result = combine(result, values[row], max);
+            }
+        }
+        return result;
+    }
+
+    private static double combine(double a, double b, boolean max) {
+        return max ? Math.max(a, b) : Math.min(a, b);
+    }
+
+    private static int firstFullBlock(int from) {
+        return (from + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    }
+
+    private static int lastFullBlock(int to) {
+        return to >>> BLOCK_SHIFT;
+    }
+}
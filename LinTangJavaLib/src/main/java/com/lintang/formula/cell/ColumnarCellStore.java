@@ -0,0 +1,257 @@
+package com.lintang.formula.cell;
+
+import java.util.Arrays;
+
+/**
+ * Grid of numeric cells stored column by column in primitive arrays.
+ * Each column is a {@code double[]} plus a validity bitmap with one bit per row, so blank
+ * cells cost no objects and range scans are tight loops over contiguous memory.
+ *
+ * <p>Columns that are aggregated often get a {@link ColumnAggregateIndex}, built lazily and
+ * updated on every write; see {@link #aggregateIndex(int)}.
+ *
+ * <p>Columns grow on demand. Reads are safe from any number of threads once writing has
+ * finished; concurrent writes must be synchronized by the caller.
+ */
+public class ColumnarCellStore implements CellSource {
+    private static final double[] NO_VALUES = new double[0];
+    private static final long[] NO_BITS = new long[0];
+    private static final int MIN_ROW_CAPACITY = 64;
+
+    /** Default number of aggregations of a column before it is indexed. */
+    public static final int DEFAULT_INDEX_THRESHOLD = 16;
+
+    private double[][] values;
+    private long[][] validity;
+    private int rowCount;
+    private ColumnAggregateIndex[] indexes;
+    private int[] aggregations;
+    private int indexThreshold = DEFAULT_INDEX_THRESHOLD;
+
+    public ColumnarCellStore() {
+        this(0, 0);
+    }
+
+    /**
+     * Creates a store with capacity for the given number of rows and columns.
+     */
+    public ColumnarCellStore(int rows, int columns) {
+        values = new double[columns][];
+        validity = new long[columns][];
+        indexes = new ColumnAggregateIndex[columns];
+        aggregations = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            values[column] = new double[rows];
+            validity[column] = new long[wordsFor(rows)];
+        }
+    }
+
+    /**
+     * Creates a store whose columns are the given arrays, with every cell present.
+     * The arrays are used directly, not copied.
+     */
+    public static ColumnarCellStore ofColumns(double[]... columns) {
+        ColumnarCellStore store = new ColumnarCellStore();
+        for (int column = 0; column < columns.length; column++) {
+            store.setColumn(column, columns[column]);
+        }
+        return store;
+    }
+
+    @Override
+    public double getNumber(int row, int column) {
+        if (column >= values.length || row >= values[column].length) {
+            return 0.0;
+        }
+        return values[column][row];
+    }
+
+    @Override
+    public boolean isBlank(int row, int column) {
+        if (column >= validity.length || row >= values[column].length) {
+            return true;
+        }
+        return (validity[column][row >>> 6] & (1L << row)) == 0;
+    }
+
+    public void setNumber(int row, int column, double value) {
+        checkCoordinates(row, column);
+        ensureCapacity(row, column);
+        values[column][row] = value;
+        validity[column][row >>> 6] |= 1L << row;
+        rowCount = Math.max(rowCount, row + 1);
+        updateIndex(row, column);
+    }
+
+    /**
+     * Makes a cell blank again.
+     */
+    public void clear(int row, int column) {
+        checkCoordinates(row, column);
+        if (column < values.length && row < values[column].length) {
+            values[column][row] = 0.0;
+            validity[column][row >>> 6] &= ~(1L << row);
+            updateIndex(row, column);
+        }
+    }
+
+    /**
+     * Replaces a whole column with the given array, marking every row present.
+     * The array is used directly, not copied.
+     */
+    public void setColumn(int column, double[] columnValues) {
+        checkCoordinates(0, column);
+        ensureColumns(column);
+        long[] bits = new long[wordsFor(columnValues.length)];
+        Arrays.fill(bits, -1L);
+        if ((columnValues.length & 63) != 0) {
+            // Rows past the end of the array must stay blank if the column grows later
+            bits[bits.length - 1] = (1L << columnValues.length) - 1;
+        }
+        values[column] = columnValues;
+        validity[column] = bits;
+        rowCount = Math.max(rowCount, columnValues.length);
+        // Rebuilt over the new array on the next aggregation
+        indexes[column] = null;
+    }
+
+    /**
+     * Returns one more than the highest row ever written.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return values.length;
+    }
+
+    /**
+     * Returns the backing values of a column for direct scans. The array may be shorter or
+     * longer than {@link #getRowCount()}; rows past its end are blank, and blank rows inside it
+     * always hold {@code 0.0}. Must not be modified.
+     */
+    public double[] columnValues(int column) {
+        return column < values.length ? values[column] : NO_VALUES;
+    }
+
+    /**
+     * Returns the validity bitmap of a column: bit {@code row & 63} of word {@code row >>> 6}
+     * is set when the row holds a value. Must not be modified.
+     */
+    public long[] columnValidity(int column) {
+        return column < validity.length ? validity[column] : NO_BITS;
+    }
+
+    /**
+     * Counts an aggregation over the column and returns its index, building it on the
+     * aggregation that reaches the threshold. Returns null while the column is aggregated less
+     * often, or if it does not exist.
+     *
+     * <p>Callers should only ask for long row intervals, which the index answers faster than a
+     * scan; every call counts towards the threshold. Safe to call from concurrent readers.
+     */
+    public ColumnAggregateIndex aggregateIndex(int column) {
+        if (column < 0 || column >= indexes.length) {
+            return null;
+        }
+        ColumnAggregateIndex index = indexes[column];
+        if (index != null) {
+            return index;
+        }
+        // Racing readers may lose an increment, which only delays the index
+        if (++aggregations[column] < indexThreshold) {
+            return null;
+        }
+        return buildIndex(column);
+    }
+
+    /**
+     * Sets how many aggregations of a column create its index; {@link Integer#MAX_VALUE}
+     * disables indexing. Existing indexes are kept.
+     */
+    public void setIndexThreshold(int aggregations) {
+        if (aggregations <= 0) {
+            throw new IllegalArgumentException("Index threshold must be positive: " + aggregations);
+        }
+        this.indexThreshold = aggregations;
+    }
+
+    /**
+     * Returns true if the column currently has an aggregate index.
+     */
+    public boolean isIndexed(int column) {
+        return column >= 0 && column < indexes.length && indexes[column] != null;
+    }
+
+    private synchronized ColumnAggregateIndex buildIndex(int column) {
+        ColumnAggregateIndex index = indexes[column];
+        if (index == null) {
+            index = new ColumnAggregateIndex(values[column], validity[column]);
+            indexes[column] = index;
+        }
+        return index;
+    }
+
+    private void updateIndex(int row, int column) {
+        ColumnAggregateIndex index = indexes[column];
+        if (index == null) {
+            return;
+        }
+        if (index.isOver(values[column], validity[column])) {
+            index.update(row);
+        } else {
+            // The column grew; rebuilt over the new arrays on the next aggregation
+            indexes[column] = null;
+        }
+    }
+
+    @Override
+    public void scan(int firstRow, int firstColumn, int lastRow, int lastColumn, CellConsumer consumer) {
+        int endColumn = Math.min(lastColumn, values.length - 1);
+        for (int column = Math.max(firstColumn, 0); column <= endColumn; column++) {
+            double[] columnValues = values[column];
+            long[] bits = validity[column];
+            int endRow = Math.min(lastRow, columnValues.length - 1);
+            for (int row = Math.max(firstRow, 0); row <= endRow; row++) {
+                if ((bits[row >>> 6] & (1L << row)) != 0) {
+                    consumer.accept(columnValues[row]);
+                }
+            }
+        }
+    }
+
+    private void ensureCapacity(int row, int column) {
+        ensureColumns(column);
+        double[] columnValues = values[column];
+        if (row >= columnValues.length) {
+            int capacity = Math.max(MIN_ROW_CAPACITY, Math.max(row + 1, columnValues.length * 2));
+            values[column] = Arrays.copyOf(columnValues, capacity);
+            validity[column] = Arrays.copyOf(validity[column], wordsFor(capacity));
+        }
+    }
+
+    private void ensureColumns(int column) {
+        if (column >= values.length) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, column + 1);
+            validity = Arrays.copyOf(validity, column + 1);
+            indexes = Arrays.copyOf(indexes, column + 1);
+            aggregations = Arrays.copyOf(aggregations, column + 1);
+            for (int i = oldLength; i <= column; i++) {
+                values[i] = NO_VALUES;
+                validity[i] = NO_BITS;
+            }
+        }
+    }
+
+    private static void checkCoordinates(int row, int column) {
+        if (row < 0 || column < 0) {
+            throw new IllegalArgumentException("Negative cell coordinates: row " + row + ", column " + column);
+        }
+    }
+
+    private static int wordsFor(int rows) {
+        return (rows + 63) >>> 6;
+    }
+}
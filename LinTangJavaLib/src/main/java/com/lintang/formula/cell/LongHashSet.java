@@ -0,0 +1,136 @@
+package com.lintang.formula.cell;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive {@code long} values, used for packed cell addresses
+ * (see {@link CellAddress#pack}) so that collecting references neither boxes nor allocates per element.
+ * Iteration order is unspecified. Not thread-safe.
+ */
+public final class LongHashSet {
+    private static final long EMPTY = 0L;
+
+    private long[] slots;
+    private int size;
+    private boolean containsEmpty;
+
+    public LongHashSet() {
+        this(8);
+    }
+
+    /**
+     * Creates a set that holds the expected number of values without resizing.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+        slots = new long[capacity];
+    }
+
+    /**
+     * Adds the value and returns true if it was not already present.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            long current = slots[i];
+            if (current == value) {
+                return false;
+            }
+            if (current == EMPTY) {
+                slots[i] = value;
+                if (++size * 2 > slots.length) {
+                    rehash(slots.length * 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+            long current = slots[i];
+            if (current == value) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (containsEmpty) {
+            action.accept(EMPTY);
+        }
+        for (long value : slots) {
+            if (value != EMPTY) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Returns the values in ascending order; for packed addresses this is row-major order.
+     */
+    public long[] toSortedArray() {
+        long[] values = new long[size];
+        int count = 0;
+        if (containsEmpty) {
+            values[count++] = EMPTY;
+        }
+        for (long value : slots) {
+            if (value != EMPTY) {
+                values[count++] = value;
+            }
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int i = slot(value, mask);
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    private static int slot(long value, int mask) {
+        long hash = value * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
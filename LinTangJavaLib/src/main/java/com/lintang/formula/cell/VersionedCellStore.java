@@ -0,0 +1,193 @@
+package com.lintang.formula.cell;
+
+import java.util.Arrays;
+
+/**
+ * Columnar store that stamps every cell with the store version at which its value last changed,
+ * so that results computed from the store can be checked against their inputs cheaply.
+ *
+ * <p>The store version starts at 0 and is incremented by every write that changes a cell; writing
+ * the value a cell already holds keeps its version. Cells never written have version 0. Each
+ * column also remembers its latest change, so checking a range skips unchanged columns without
+ * looking at their rows, and keeps a max tree over blocks of 64 row stamps, so checking a range
+ * of a changed column reads O(log n) tree nodes plus at most 126 rows at its ends. Stamps only
+ * grow, so a write updates the tree by overwriting the ancestors of its block.
+ *
+ * <p>Like {@link ColumnarCellStore}, reads are safe from any number of threads once writing has
+ * finished; concurrent writes must be synchronized by the caller.
+ */
+public class VersionedCellStore extends ColumnarCellStore {
+    private static final int BLOCK_SHIFT = 6;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final long[] NO_VERSIONS = new long[0];
+    private static final long[] NO_BLOCKS = new long[2];
+
+    private long[][] versions = new long[0][];
+    // Per column: nodes 1..blocks-1 are inner nodes, blocks..2*blocks-1 the latest stamp per block
+    private long[][] blockVersions = new long[0][];
+    private long[] columnVersions = new long[0];
+    private long version;
+
+    public VersionedCellStore() {
+        super();
+    }
+
+    /**
+     * Creates a store with capacity for the given number of rows and columns.
+     */
+    public VersionedCellStore(int rows, int columns) {
+        super(rows, columns);
+    }
+
+    /**
+     * Returns the current store version, i.e. the version of the latest change.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the version at which the cell last changed, or 0 if it was never written.
+     */
+    public long getVersion(int row, int column) {
+        if (column >= versions.length || row >= versions[column].length) {
+            return 0;
+        }
+        return versions[column][row];
+    }
+
+    /**
+     * Returns true if any cell in the rectangle changed after the given version. Bounds are
+     * inclusive.
+     */
+    public boolean changedSince(long since, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        int endColumn = Math.min(lastColumn, versions.length - 1);
+        int from = Math.max(firstRow, 0);
+        for (int column = Math.max(firstColumn, 0); column <= endColumn; column++) {
+            if (columnVersions[column] <= since) {
+                continue;
+            }
+            long[] columnStamps = versions[column];
+            int to = (int) Math.min((long) lastRow + 1, columnStamps.length);
+            int firstBlock = (from + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+            int lastBlock = to >>> BLOCK_SHIFT;
+            if (firstBlock >= lastBlock) {
+                if (changedRows(columnStamps, since, from, to)) {
+                    return true;
+                }
+            } else if (changedRows(columnStamps, since, from, firstBlock << BLOCK_SHIFT)
+                    || changedBlocks(blockVersions[column], since, firstBlock, lastBlock)
+                    || changedRows(columnStamps, since, lastBlock << BLOCK_SHIFT, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean changedRows(long[] stamps, long since, int from, int to) {
+        for (int row = from; row < to; row++) {
+            if (stamps[row] > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if any block in {@code [from, to)} changed after the given version.
+     */
+    private static boolean changedBlocks(long[] tree, long since, int from, int to) {
+        int blocks = tree.length >>> 1;
+        for (int lo = from + blocks, hi = to + blocks; lo < hi; lo >>>= 1, hi >>>= 1) {
+            if ((lo & 1) != 0 && tree[lo++] > since) {
+                return true;
+            }
+            if ((hi & 1) != 0 && tree[--hi] > since) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setNumber(int row, int column, double value) {
+        if (row >= 0 && column >= 0 && !isBlank(row, column)
+                && Double.compare(getNumber(row, column), value) == 0) {
+            return;
+        }
+        super.setNumber(row, column, value);
+        stamp(row, column);
+    }
+
+    @Override
+    public void clear(int row, int column) {
+        if (row >= 0 && column >= 0 && isBlank(row, column)) {
+            return;
+        }
+        super.clear(row, column);
+        stamp(row, column);
+    }
+
+    /**
+     * Replaces a whole column, which counts as one change of every row it had or now has.
+     * Writing to the array afterwards bypasses the versions, so replace the column instead.
+     */
+    @Override
+    public void setColumn(int column, double[] columnValues) {
+        super.setColumn(column, columnValues);
+        ensureVersionColumns(column);
+        version++;
+        long[] stamps = new long[Math.max(versions[column].length, columnValues.length)];
+        Arrays.fill(stamps, version);
+        versions[column] = stamps;
+        long[] tree = new long[2 * blocksFor(stamps.length)];
+        Arrays.fill(tree, version);
+        blockVersions[column] = tree;
+        columnVersions[column] = version;
+    }
+
+    private void stamp(int row, int column) {
+        ensureVersionColumns(column);
+        long[] stamps = versions[column];
+        if (row >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(row + 1, stamps.length * 2));
+            versions[column] = stamps;
+            blockVersions[column] = buildBlocks(stamps);
+        }
+        version++;
+        stamps[row] = version;
+        long[] tree = blockVersions[column];
+        for (int node = (tree.length >>> 1) + (row >>> BLOCK_SHIFT); node > 0; node >>>= 1) {
+            tree[node] = version;
+        }
+        columnVersions[column] = version;
+    }
+
+    private static long[] buildBlocks(long[] stamps) {
+        int blocks = blocksFor(stamps.length);
+        long[] tree = new long[2 * blocks];
+        for (int row = 0; row < stamps.length; row++) {
+            int leaf = blocks + (row >>> BLOCK_SHIFT);
+            tree[leaf] = Math.max(tree[leaf], stamps[row]);
+        }
+        for (int node = blocks - 1; node > 0; node--) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+        return tree;
+    }
+
+    private static int blocksFor(int rows) {
+        return Math.max(1, (rows + BLOCK_SIZE - 1) >>> BLOCK_SHIFT);
+    }
+
+    private void ensureVersionColumns(int column) {
+        if (column >= versions.length) {
+            int oldLength = versions.length;
+            versions = Arrays.copyOf(versions, column + 1);
+            blockVersions = Arrays.copyOf(blockVersions, column + 1);
+            columnVersions = Arrays.copyOf(columnVersions, column + 1);
+            Arrays.fill(versions, oldLength, column + 1, NO_VERSIONS);
+            Arrays.fill(blockVersions, oldLength, column + 1, NO_BLOCKS);
+        }
+    }
+}
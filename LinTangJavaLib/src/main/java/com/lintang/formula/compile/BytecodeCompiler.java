@@ -0,0 +1,239 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.function.FunctionRegistry;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a formula AST into a hidden class implementing {@link CompiledFormula}.
+ * The generated {@code evaluate} method works on primitive doubles only: literals become constants,
+ * cell references become {@link CellSource#getNumber(int, int)} calls with constant coordinates,
+ * and operators become JVM arithmetic instructions. Hidden classes are unloaded once the
+ * returned instance is no longer reachable.
+ *
+ * <p>Function calls are closure-compiled by {@link ClosureCompiler}, which resolves them once,
+ * and invoked from the generated code through an array field of the hidden class; the range
+ * loops they run gain nothing from being inlined into generated bytecode.
+ *
+ * <p>The tree is walked with an explicit stack, so deep formulas fail with
+ * {@link UnsupportedOperationException} once the method outgrows the 64KB limit rather than
+ * overflowing the thread stack while generating it.
+ *
+ * <p>Supports numbers, booleans, cell references, function calls and the unary/binary operators
+ * of the grammar. Other nodes are rejected with {@link UnsupportedOperationException}.
+ */
+public final class BytecodeCompiler implements ASTVisitor<Void>, Opcodes {
+
+    private static final String CLASS_NAME = Type.getInternalName(BytecodeCompiler.class) + "$Generated";
+    private static final String CELL_SOURCE = Type.getInternalName(CellSource.class);
+    private static final String SELF = Type.getInternalName(BytecodeCompiler.class);
+    private static final String CALLS_DESCRIPTOR = "[" + Type.getDescriptor(CompiledFormula.class);
+
+    private final MethodVisitor method;
+    private final FunctionRegistry functions;
+    private final List<CompiledFormula> calls;
+
+    private BytecodeCompiler(MethodVisitor method, FunctionRegistry functions, List<CompiledFormula> calls) {
+        this.method = method;
+        this.functions = functions;
+        this.calls = calls;
+    }
+
+    /**
+     * Compiles the AST into a new hidden class and returns an instance of it.
+     *
+     * @param ast The formula to compile
+     * @return The compiled formula
+     * @throws UnsupportedOperationException If the formula contains nodes that cannot be compiled
+     *                                       or the generated method would be too large
+     */
+    public static CompiledFormula compile(ASTNode ast) {
+        return compile(ast, FunctionRegistry.standard());
+    }
+
+    /**
+     * Compiles the AST into a new hidden class, resolving function calls against the given registry.
+     *
+     * @throws UnsupportedOperationException If the formula contains nodes that cannot be compiled,
+     *                                       calls an unknown function or would be too large
+     */
+    public static CompiledFormula compile(ASTNode ast, FunctionRegistry functions) {
+        List<CompiledFormula> calls = new ArrayList<>();
+        byte[] bytes = generate(ast, functions, calls);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledFormula) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, CompiledFormula[].class))
+                    .invoke(calls.toArray(new CompiledFormula[0]));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load compiled formula", e);
+        }
+    }
+
+    /**
+     * Generates the class file. Function calls are compiled into {@code calls}, whose order
+     * matches the indexes used by the generated code.
+     */
+    static byte[] generate(ASTNode ast, FunctionRegistry functions, List<CompiledFormula> calls) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null, "java/lang/Object",
+                new String[] {Type.getInternalName(CompiledFormula.class)});
+        writer.visitField(ACC_PRIVATE | ACC_FINAL, "calls", CALLS_DESCRIPTOR, null, null).visitEnd();
+
+        MethodVisitor constructor = writer.visitMethod(ACC_PUBLIC, "<init>", "(" + CALLS_DESCRIPTOR + ")V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitVarInsn(ALOAD, 1);
+        constructor.visitFieldInsn(PUTFIELD, CLASS_NAME, "calls", CALLS_DESCRIPTOR);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor evaluate = writer.visitMethod(ACC_PUBLIC, "evaluate", "(L" + CELL_SOURCE + ";)D", null, null);
+        evaluate.visitCode();
+        new BytecodeCompiler(evaluate, functions, calls).emit(ast);
+        evaluate.visitInsn(DRETURN);
+        evaluate.visitMaxs(0, 0);
+        evaluate.visitEnd();
+
+        writer.visitEnd();
+        try {
+            return writer.toByteArray();
+        } catch (IndexOutOfBoundsException e) {
+            // ASM reports methods over the 64KB limit this way (MethodTooLargeException)
+            throw new UnsupportedOperationException("Formula is too large to compile", e);
+        }
+    }
+
+    /**
+     * Division with the same semantics as the interpreter; called from generated code.
+     */
+    static double divide(double left, double right) {
+        if (right == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        return left / right;
+    }
+
+    @Override
+    public Void visit(BinaryOpNode node) {
+        emit(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(UnaryOpNode node) {
+        emit(node);
+        return null;
+    }
+
+    @Override
+    public Void visit(NumberNode node) {
+        pushConstant(node.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(StringNode node) {
+        throw new UnsupportedOperationException("String evaluation not supported");
+    }
+
+    @Override
+    public Void visit(BooleanNode node) {
+        pushConstant(node.getValue() ? 1.0 : 0.0);
+        return null;
+    }
+
+    @Override
+    public Void visit(CellRefNode node) {
+        if (!node.isValid()) {
+            throw new IllegalArgumentException("Invalid cell reference: " + node.getCellRef());
+        }
+        method.visitVarInsn(ALOAD, 1);
+        pushInt(node.getRow());
+        pushInt(node.getColumn());
+        method.visitMethodInsn(INVOKEINTERFACE, CELL_SOURCE, "getNumber", "(II)D", true);
+        return null;
+    }
+
+    @Override
+    public Void visit(CellRangeNode node) {
+        throw new UnsupportedOperationException("Cell ranges cannot be compiled");
+    }
+
+    @Override
+    public Void visit(FunctionCallNode node) {
+        int index = calls.size();
+        calls.add(ClosureCompiler.compile(node, functions));
+        method.visitVarInsn(ALOAD, 0);
+        method.visitFieldInsn(GETFIELD, CLASS_NAME, "calls", CALLS_DESCRIPTOR);
+        pushInt(index);
+        method.visitInsn(AALOAD);
+        method.visitVarInsn(ALOAD, 1);
+        method.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(CompiledFormula.class), "evaluate",
+                "(L" + CELL_SOURCE + ";)D", true);
+        return null;
+    }
+
+    /**
+     * Emits a subtree in post-order with a {@link PostOrderIterator}, which is the order the
+     * operand stack needs: operands first, then their operator. Function calls are emitted whole.
+     */
+    private void emit(ASTNode root) {
+        PostOrderIterator nodes = new PostOrderIterator(root, node -> !(node instanceof FunctionCallNode));
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            if (node instanceof BinaryOpNode binary) {
+                switch (binary.getOperator()) {
+                    case "+" -> method.visitInsn(DADD);
+                    case "-" -> method.visitInsn(DSUB);
+                    case "*" -> method.visitInsn(DMUL);
+                    case "/" -> method.visitMethodInsn(INVOKESTATIC, SELF, "divide", "(DD)D", false);
+                    case "^" -> method.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false);
+                    default -> throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+                }
+            } else if (node instanceof UnaryOpNode unary) {
+                switch (unary.getOperator()) {
+                    case "+" -> { }
+                    case "-" -> method.visitInsn(DNEG);
+                    default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                }
+            } else {
+                node.accept(this);
+            }
+        }
+    }
+
+    private void pushConstant(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            method.visitInsn(DCONST_0);
+        } else if (value == 1.0) {
+            method.visitInsn(DCONST_1);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            method.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            method.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            method.visitIntInsn(SIPUSH, value);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+}
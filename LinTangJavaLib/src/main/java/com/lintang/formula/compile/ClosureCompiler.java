@@ -0,0 +1,232 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.*;
+import com.lintang.formula.function.FormulaFunction;
+import com.lintang.formula.function.FunctionArgument;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles a formula AST into a tree of primitive-specialized {@link CompiledFormula} closures.
+ * Operator dispatch, cell coordinates and constants are resolved once at compile time, so
+ * evaluation is a chain of direct double arithmetic with no boxing and no allocation.
+ * Cheaper to produce than {@link BytecodeCompiler} output, which makes it the middle tier
+ * between interpretation and bytecode.
+ *
+ * <p>Function calls are resolved against a {@link FunctionRegistry} once per call site, and
+ * their range arguments are turned into {@link FunctionArgument} bounds up front.
+ *
+ * <p>Supports the same nodes as {@link BytecodeCompiler}; others are rejected with
+ * {@link UnsupportedOperationException}.
+ *
+ * <p>The tree is compiled with an explicit stack, but evaluating a closure calls the closures of
+ * its operands, so the thread stack grows with the height of the formula. Formulas nested deeper
+ * than {@link #MAX_DEPTH} are therefore rejected and stay on the interpreter, which evaluates
+ * operators of any depth without recursion.
+ */
+public final class ClosureCompiler implements ASTVisitor<CompiledFormula> {
+
+    /** Largest formula height, counted in nodes from the root to the deepest leaf, that is compiled. */
+    public static final int MAX_DEPTH = 1_000;
+
+    private static final ClosureCompiler INSTANCE = new ClosureCompiler(FunctionRegistry.standard());
+
+    private final FunctionRegistry functions;
+    private final SharedExpressionCompiler shared;
+
+    private ClosureCompiler(FunctionRegistry functions) {
+        this(functions, null);
+    }
+
+    ClosureCompiler(FunctionRegistry functions, SharedExpressionCompiler shared) {
+        this.functions = functions;
+        this.shared = shared;
+    }
+
+    /**
+     * Compiles the AST into a closure tree.
+     *
+     * @param ast The formula to compile
+     * @return The compiled formula
+     * @throws UnsupportedOperationException If the formula contains nodes that cannot be compiled
+     *                                       or is nested deeper than {@link #MAX_DEPTH}
+     */
+    public static CompiledFormula compile(ASTNode ast) {
+        return ast.accept(INSTANCE);
+    }
+
+    /**
+     * Compiles the AST into a closure tree, resolving function calls against the given registry.
+     *
+     * @throws UnsupportedOperationException If the formula contains nodes that cannot be compiled,
+     *                                       calls an unknown function or is nested deeper than
+     *                                       {@link #MAX_DEPTH}
+     */
+    public static CompiledFormula compile(ASTNode ast, FunctionRegistry functions) {
+        return ast.accept(functions == FunctionRegistry.standard() ? INSTANCE : new ClosureCompiler(functions));
+    }
+
+    @Override
+    public CompiledFormula visit(BinaryOpNode node) {
+        return compileTree(node);
+    }
+
+    @Override
+    public CompiledFormula visit(UnaryOpNode node) {
+        return compileTree(node);
+    }
+
+    @Override
+    public CompiledFormula visit(NumberNode node) {
+        double value = node.getValue();
+        return source -> value;
+    }
+
+    @Override
+    public CompiledFormula visit(StringNode node) {
+        throw new UnsupportedOperationException("String evaluation not supported");
+    }
+
+    @Override
+    public CompiledFormula visit(BooleanNode node) {
+        double value = node.getValue() ? 1.0 : 0.0;
+        return source -> value;
+    }
+
+    @Override
+    public CompiledFormula visit(CellRefNode node) {
+        if (!node.isValid()) {
+            throw new IllegalArgumentException("Invalid cell reference: " + node.getCellRef());
+        }
+        int row = node.getRow();
+        int column = node.getColumn();
+        return source -> source.getNumber(row, column);
+    }
+
+    @Override
+    public CompiledFormula visit(CellRangeNode node) {
+        throw new UnsupportedOperationException("Cell ranges cannot be compiled");
+    }
+
+    @Override
+    public CompiledFormula visit(FunctionCallNode node) {
+        return compileTree(node);
+    }
+
+    /**
+     * Compiles a subtree in post-order with a {@link PostOrderIterator}; when a node is returned,
+     * the closures of its children and their heights are the topmost entries of the result
+     * stacks. Ranges leave a null entry that only a function call may consume. Shared subtrees
+     * compiled before are not walked again.
+     */
+    CompiledFormula compileTree(ASTNode root) {
+        CompiledFormula[] results = new CompiledFormula[16];
+        int[] heights = new int[16];
+        int top = 0;
+        PostOrderIterator nodes = new PostOrderIterator(root, node -> shared == null || shared.lookup(node) == null);
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            CompiledFormula formula;
+            int height = 1;
+            if (node.getChildCount() > 0 && !nodes.childrenVisited()) {
+                SharedExpressionCompiler.Memoized known = shared.lookup(node);
+                formula = known;
+                height = known.getHeight();
+            } else {
+                top -= node.getChildCount();
+                for (int i = 0; i < node.getChildCount(); i++) {
+                    height = Math.max(height, heights[top + i] + 1);
+                }
+                if (height > MAX_DEPTH) {
+                    throw new UnsupportedOperationException("Formula is nested deeper than " + MAX_DEPTH + " levels");
+                }
+                formula = compileNode(node, results, top);
+                if (shared != null && !(node instanceof CellRangeNode)) {
+                    formula = shared.share(node, formula, height);
+                }
+            }
+            if (top == results.length) {
+                results = Arrays.copyOf(results, top * 2);
+                heights = Arrays.copyOf(heights, top * 2);
+            }
+            results[top] = formula;
+            heights[top++] = height;
+        }
+        return scalar(results[0]);
+    }
+
+    /**
+     * Compiles one node from the closures of its children, the results from {@code from} on.
+     */
+    private CompiledFormula compileNode(ASTNode node, CompiledFormula[] results, int from) {
+        if (node instanceof BinaryOpNode binary) {
+            CompiledFormula left = scalar(results[from]);
+            if (binary.getRight() instanceof NumberNode number) {
+                return withConstantRight(binary.getOperator(), left, number.getValue());
+            }
+            CompiledFormula right = scalar(results[from + 1]);
+            return switch (binary.getOperator()) {
+                case "+" -> source -> left.evaluate(source) + right.evaluate(source);
+                case "-" -> source -> left.evaluate(source) - right.evaluate(source);
+                case "*" -> source -> left.evaluate(source) * right.evaluate(source);
+                case "/" -> source -> BytecodeCompiler.divide(left.evaluate(source), right.evaluate(source));
+                case "^" -> source -> Math.pow(left.evaluate(source), right.evaluate(source));
+                default -> throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+            };
+        }
+        if (node instanceof UnaryOpNode unary) {
+            CompiledFormula operand = scalar(results[from]);
+            return switch (unary.getOperator()) {
+                case "+" -> operand;
+                case "-" -> source -> -operand.evaluate(source);
+                default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+            };
+        }
+        if (node instanceof FunctionCallNode call) {
+            FormulaFunction function = functions.lookup(call.getFunctionName());
+            List<ASTNode> argumentNodes = call.getArguments();
+            FunctionArgument[] arguments = new FunctionArgument[argumentNodes.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = argument(argumentNodes.get(i), results[from + i]);
+            }
+            function.validate(arguments);
+            return source -> function.apply(source, arguments);
+        }
+        // Ranges are compiled by the function call taking them
+        return node instanceof CellRangeNode ? null : node.accept(this);
+    }
+
+    private static FunctionArgument argument(ASTNode node, CompiledFormula compiled) {
+        if (node instanceof CellRangeNode range) {
+            if (!range.isValid()) {
+                throw new IllegalArgumentException("Invalid cell range: " + range.getCellRange());
+            }
+            return FunctionArgument.range(range.getFirstRow(), range.getFirstColumn(),
+                    range.getLastRow(), range.getLastColumn());
+        }
+        return FunctionArgument.scalar(compiled);
+    }
+
+    private static CompiledFormula scalar(CompiledFormula compiled) {
+        if (compiled == null) {
+            throw new UnsupportedOperationException("Cell ranges cannot be compiled");
+        }
+        return compiled;
+    }
+
+    /**
+     * Specializes the very common {@code expression op constant} shape to save one virtual call.
+     */
+    private static CompiledFormula withConstantRight(String operator, CompiledFormula left, double constant) {
+        return switch (operator) {
+            case "+" -> source -> left.evaluate(source) + constant;
+            case "-" -> source -> left.evaluate(source) - constant;
+            case "*" -> source -> left.evaluate(source) * constant;
+            case "/" -> source -> BytecodeCompiler.divide(left.evaluate(source), constant);
+            case "^" -> source -> Math.pow(left.evaluate(source), constant);
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        };
+    }
+}
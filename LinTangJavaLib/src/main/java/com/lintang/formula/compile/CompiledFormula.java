@@ -0,0 +1,20 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.cell.CellSource;
+
+/**
+ * A formula prepared for repeated evaluation against cell data.
+ * Implementations are stateless with respect to the source and safe to share between threads.
+ */
+@FunctionalInterface
+public interface CompiledFormula {
+
+    /**
+     * Evaluates the formula.
+     *
+     * @param source Cell values referenced by the formula
+     * @return The numeric result
+     * @throws ArithmeticException On division by zero
+     */
+    double evaluate(CellSource source);
+}
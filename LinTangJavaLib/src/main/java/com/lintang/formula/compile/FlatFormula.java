@@ -0,0 +1,406 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.function.FormulaFunction;
+import com.lintang.formula.function.FunctionArgument;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A formula stored as parallel primitive arrays in postfix order instead of a tree of node
+ * objects: one opcode and two {@code int} operands per node plus a constant pool. A formula is
+ * a handful of arrays however many nodes it has, and evaluation is one loop over them with an
+ * explicit value stack, so it touches contiguous memory and never recurses. Conversion walks
+ * the operators with an explicit stack too, so chains of any length convert.
+ *
+ * <p>Operands by opcode: constants index the pool; cells hold their zero-based row and column;
+ * ranges, strings and invalid references index a string table holding their text (ranges also
+ * index a table of bounds); function calls index a call-site table. Each argument of a call is a
+ * {@code FlatFormula} of its own, evaluated only when the function asks for it, so functions
+ * keep the lazy {@link FunctionArgument} contract.
+ *
+ * <p>Any AST converts and {@link #toAST()} gives it back, with cell references in canonical form.
+ * Evaluation follows {@code EvaluationVisitor}: strings are rejected with
+ * {@link UnsupportedOperationException}, a range used as a value must cover one cell, and
+ * division by zero throws {@link ArithmeticException}. Unknown functions and invalid arguments
+ * are reported when the formula is evaluated, not when it is converted. Instances are immutable
+ * and thread-safe.
+ */
+public final class FlatFormula implements CompiledFormula {
+
+    private static final byte CONSTANT = 0;
+    private static final byte CELL = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte ADD = 4;
+    private static final byte SUBTRACT = 5;
+    private static final byte MULTIPLY = 6;
+    private static final byte DIVIDE = 7;
+    private static final byte POWER = 8;
+    private static final byte NEGATE = 9;
+    private static final byte PLUS = 10;
+    private static final byte CALL = 11;
+    private static final byte RANGE = 12;
+    private static final byte STRING = 13;
+    private static final byte INVALID_CELL = 14;
+
+    private final byte[] opcodes;
+    private final int[] operandA;
+    private final int[] operandB;
+    private final double[] constants;
+    private final String[] strings;
+    /** Range bounds as {firstRow, firstColumn, lastRow, lastColumn} quadruples. */
+    private final int[] ranges;
+    private final Call[] calls;
+    private final int maxStackDepth;
+
+    private FlatFormula(Builder builder) {
+        int length = builder.length;
+        this.opcodes = Arrays.copyOf(builder.opcodes, length);
+        this.operandA = Arrays.copyOf(builder.operandA, length);
+        this.operandB = Arrays.copyOf(builder.operandB, length);
+        this.constants = builder.constants.stream().mapToDouble(Double::doubleValue).toArray();
+        this.strings = builder.strings.toArray(new String[0]);
+        this.ranges = builder.ranges.stream().mapToInt(Integer::intValue).toArray();
+        this.calls = builder.calls.toArray(new Call[0]);
+        this.maxStackDepth = builder.maxDepth;
+    }
+
+    /**
+     * Converts an AST, resolving function calls against the standard registry.
+     */
+    public static FlatFormula fromAST(ASTNode ast) {
+        return fromAST(ast, FunctionRegistry.standard());
+    }
+
+    /**
+     * Converts an AST, resolving function calls against the given registry.
+     */
+    public static FlatFormula fromAST(ASTNode ast, FunctionRegistry functions) {
+        Builder builder = new Builder(functions);
+        builder.build(ast);
+        return new FlatFormula(builder);
+    }
+
+    /**
+     * Rebuilds the AST in postfix order with an explicit node stack.
+     */
+    public ASTNode toAST() {
+        ASTNode[] stack = new ASTNode[maxStackDepth];
+        int top = 0;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            int a = operandA[pc];
+            switch (opcodes[pc]) {
+                case CONSTANT -> stack[top++] = new NumberNode(constants[a]);
+                case CELL -> stack[top++] = new CellRefNode(CellAddress.toString(a, operandB[pc]));
+                case INVALID_CELL -> stack[top++] = new CellRefNode(strings[a]);
+                case TRUE -> stack[top++] = new BooleanNode(true);
+                case FALSE -> stack[top++] = new BooleanNode(false);
+                case STRING -> stack[top++] = new StringNode(strings[a]);
+                case RANGE -> stack[top++] = new CellRangeNode(strings[a]);
+                case CALL -> stack[top++] = calls[a].toAST();
+                case NEGATE, PLUS -> stack[top - 1] = new UnaryOpNode(opcodes[pc] == NEGATE ? "-" : "+", stack[top - 1]);
+                default -> {
+                    ASTNode right = stack[--top];
+                    stack[top - 1] = new BinaryOpNode(operator(opcodes[pc]), stack[top - 1], right);
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    @Override
+    public double evaluate(CellSource source) {
+        return evaluate(source, new double[maxStackDepth]);
+    }
+
+    /**
+     * Evaluates with a caller-provided value stack of at least {@link #getMaxStackDepth()} slots,
+     * so evaluating many formulas in a loop allocates nothing.
+     */
+    public double evaluate(CellSource source, double[] stack) {
+        int top = 0;
+        byte[] opcodes = this.opcodes;
+        int[] operandA = this.operandA;
+        for (int pc = 0; pc < opcodes.length; pc++) {
+            switch (opcodes[pc]) {
+                case CONSTANT -> stack[top++] = constants[operandA[pc]];
+                case CELL -> stack[top++] = source.getNumber(operandA[pc], operandB[pc]);
+                case TRUE -> stack[top++] = 1.0;
+                case FALSE -> stack[top++] = 0.0;
+                case ADD -> {
+                    top--;
+                    stack[top - 1] += stack[top];
+                }
+                case SUBTRACT -> {
+                    top--;
+                    stack[top - 1] -= stack[top];
+                }
+                case MULTIPLY -> {
+                    top--;
+                    stack[top - 1] *= stack[top];
+                }
+                case DIVIDE -> {
+                    top--;
+                    stack[top - 1] = BytecodeCompiler.divide(stack[top - 1], stack[top]);
+                }
+                case POWER -> {
+                    top--;
+                    stack[top - 1] = Math.pow(stack[top - 1], stack[top]);
+                }
+                case NEGATE -> stack[top - 1] = -stack[top - 1];
+                case PLUS -> { }
+                case CALL -> stack[top++] = calls[operandA[pc]].evaluate(source);
+                case RANGE -> stack[top++] = rangeValue(source, pc);
+                case STRING -> throw new UnsupportedOperationException("String evaluation not supported");
+                case INVALID_CELL -> throw new IllegalArgumentException("Invalid cell reference: " + strings[operandA[pc]]);
+                default -> throw new IllegalStateException("Unknown opcode: " + opcodes[pc]);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Returns the number of AST nodes stored, not counting function arguments.
+     */
+    public int getNodeCount() {
+        return opcodes.length;
+    }
+
+    /**
+     * Returns the number of value-stack slots evaluation needs.
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    private double rangeValue(CellSource source, int pc) {
+        int bounds = operandB[pc];
+        if (bounds < 0) {
+            throw new IllegalArgumentException("Invalid cell range: " + strings[operandA[pc]]);
+        }
+        if (ranges[bounds] != ranges[bounds + 2] || ranges[bounds + 1] != ranges[bounds + 3]) {
+            throw new IllegalArgumentException("Cell range " + strings[operandA[pc]] + " cannot be used as a single value");
+        }
+        return source.getNumber(ranges[bounds], ranges[bounds + 1]);
+    }
+
+    /**
+     * Returns the range bounds if the formula is a lone range, or null otherwise.
+     */
+    private FunctionArgument asRange() {
+        if (opcodes.length != 1 || opcodes[0] != RANGE) {
+            return null;
+        }
+        int bounds = operandB[0];
+        if (bounds < 0) {
+            throw new IllegalArgumentException("Invalid cell range: " + strings[operandA[0]]);
+        }
+        return FunctionArgument.range(ranges[bounds], ranges[bounds + 1], ranges[bounds + 2], ranges[bounds + 3]);
+    }
+
+    private static String operator(byte opcode) {
+        return switch (opcode) {
+            case ADD -> "+";
+            case SUBTRACT -> "-";
+            case MULTIPLY -> "*";
+            case DIVIDE -> "/";
+            case POWER -> "^";
+            default -> throw new IllegalStateException("Not a binary opcode: " + opcode);
+        };
+    }
+
+    /**
+     * A function call site with its arguments, resolved at conversion time. Resolution errors
+     * are kept and thrown on evaluation, so any AST can be converted.
+     */
+    private static final class Call implements CompiledFormula {
+        private final String name;
+        private final FlatFormula[] arguments;
+        private final FormulaFunction function;
+        private final FunctionArgument[] bound;
+        private final RuntimeException error;
+
+        Call(String name, FlatFormula[] arguments, FunctionRegistry functions) {
+            this.name = name;
+            this.arguments = arguments;
+            FormulaFunction resolved = null;
+            FunctionArgument[] resolvedArguments = null;
+            RuntimeException failure = null;
+            try {
+                resolved = functions.lookup(name);
+                resolvedArguments = new FunctionArgument[arguments.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    FunctionArgument range = arguments[i].asRange();
+                    resolvedArguments[i] = range != null ? range : FunctionArgument.scalar(arguments[i]);
+                }
+                resolved.validate(resolvedArguments);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            this.function = resolved;
+            this.bound = resolvedArguments;
+            this.error = failure;
+        }
+
+        @Override
+        public double evaluate(CellSource source) {
+            if (error != null) {
+                throw error;
+            }
+            return function.apply(source, bound);
+        }
+
+        ASTNode toAST() {
+            List<ASTNode> nodes = new ArrayList<>(arguments.length);
+            for (FlatFormula argument : arguments) {
+                nodes.add(argument.toAST());
+            }
+            return new FunctionCallNode(name, nodes);
+        }
+    }
+
+    /**
+     * Emits the postfix program while tracking the depth of the value stack.
+     */
+    private static final class Builder implements ASTVisitor<Void> {
+        private final FunctionRegistry functions;
+        private byte[] opcodes = new byte[16];
+        private int[] operandA = new int[16];
+        private int[] operandB = new int[16];
+        private int length;
+        private int depth;
+        private int maxDepth;
+        private final List<Double> constants = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final List<Integer> ranges = new ArrayList<>();
+        private final List<Call> calls = new ArrayList<>();
+
+        Builder(FunctionRegistry functions) {
+            this.functions = functions;
+        }
+
+        private void emit(byte opcode, int a, int b, int stackEffect) {
+            if (length == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, length * 2);
+                operandA = Arrays.copyOf(operandA, length * 2);
+                operandB = Arrays.copyOf(operandB, length * 2);
+            }
+            opcodes[length] = opcode;
+            operandA[length] = a;
+            operandB[length] = b;
+            length++;
+            depth += stackEffect;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        private int string(String value) {
+            strings.add(value);
+            return strings.size() - 1;
+        }
+
+        /**
+         * Emits a subtree. Postfix order is post-order, so the tree is walked with a
+         * {@link PostOrderIterator} and operators are emitted as they are returned; function
+         * calls are not descended into, since they convert their arguments separately.
+         */
+        void build(ASTNode root) {
+            PostOrderIterator nodes = new PostOrderIterator(root, node -> !(node instanceof FunctionCallNode));
+            while (nodes.hasNext()) {
+                ASTNode node = nodes.next();
+                if (node instanceof BinaryOpNode binary) {
+                    byte opcode = switch (binary.getOperator()) {
+                        case "+" -> ADD;
+                        case "-" -> SUBTRACT;
+                        case "*" -> MULTIPLY;
+                        case "/" -> DIVIDE;
+                        case "^" -> POWER;
+                        default -> throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+                    };
+                    emit(opcode, 0, 0, -1);
+                } else if (node instanceof UnaryOpNode unary) {
+                    byte opcode = switch (unary.getOperator()) {
+                        case "+" -> PLUS;
+                        case "-" -> NEGATE;
+                        default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                    };
+                    emit(opcode, 0, 0, 0);
+                } else {
+                    node.accept(this);
+                }
+            }
+        }
+
+        @Override
+        public Void visit(BinaryOpNode node) {
+            build(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryOpNode node) {
+            build(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberNode node) {
+            constants.add(node.getValue());
+            emit(CONSTANT, constants.size() - 1, 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(StringNode node) {
+            emit(STRING, string(node.getValue()), 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(BooleanNode node) {
+            emit(node.getValue() ? TRUE : FALSE, 0, 0, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRefNode node) {
+            if (node.isValid()) {
+                emit(CELL, node.getRow(), node.getColumn(), 1);
+            } else {
+                emit(INVALID_CELL, string(node.getCellRef()), 0, 1);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRangeNode node) {
+            int bounds = -1;
+            if (node.isValid()) {
+                bounds = ranges.size();
+                ranges.add(node.getFirstRow());
+                ranges.add(node.getFirstColumn());
+                ranges.add(node.getLastRow());
+                ranges.add(node.getLastColumn());
+            }
+            emit(RANGE, string(node.getCellRange()), bounds, 1);
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCallNode node) {
+            List<ASTNode> argumentNodes = node.getArguments();
+            FlatFormula[] arguments = new FlatFormula[argumentNodes.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = fromAST(argumentNodes.get(i), functions);
+            }
+            calls.add(new Call(node.getFunctionName(), arguments, functions));
+            emit(CALL, calls.size() - 1, 0, 1);
+            return null;
+        }
+    }
+}
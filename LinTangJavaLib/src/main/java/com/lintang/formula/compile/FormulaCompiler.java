@@ -0,0 +1,105 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cache.BoundedCache;
+import com.lintang.formula.cache.CacheStats;
+import com.lintang.formula.function.FunctionRegistry;
+import com.lintang.formula.visitor.ConstantFoldingVisitor;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+
+/**
+ * Entry point for tiered formula evaluation.
+ * {@link #prepare(ASTNode)} returns a formula that is interpreted at first, closure-compiled by
+ * {@link ClosureCompiler} after {@code closureThreshold} evaluations and compiled to bytecode by
+ * {@link BytecodeCompiler} after {@code compileThreshold} evaluations.
+ * Formulas are constant-folded once when prepared. Compiled classes are cached per canonical
+ * formula text, so identical formulas share one class.
+ */
+public class FormulaCompiler {
+
+    public static final int DEFAULT_CLOSURE_THRESHOLD = 2;
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1_000;
+    public static final int DEFAULT_MAX_COMPILED = 10_000;
+
+    private final int closureThreshold;
+    private final int compileThreshold;
+    private final FunctionRegistry functions;
+    private final BoundedCache<String, CompiledFormula> compiled;
+
+    public FormulaCompiler() {
+        this(DEFAULT_CLOSURE_THRESHOLD, DEFAULT_COMPILE_THRESHOLD, DEFAULT_MAX_COMPILED);
+    }
+
+    /**
+     * @param compileThreshold Number of evaluations before a formula is compiled to bytecode
+     * @param maxCompiled Maximum number of compiled formula classes kept in the cache
+     */
+    public FormulaCompiler(int compileThreshold, int maxCompiled) {
+        this(Math.min(DEFAULT_CLOSURE_THRESHOLD, compileThreshold), compileThreshold, maxCompiled);
+    }
+
+    /**
+     * @param closureThreshold Number of interpreted evaluations before a formula is closure-compiled
+     * @param compileThreshold Number of evaluations before a formula is compiled to bytecode
+     * @param maxCompiled Maximum number of compiled formula classes kept in the cache
+     */
+    public FormulaCompiler(int closureThreshold, int compileThreshold, int maxCompiled) {
+        this(closureThreshold, compileThreshold, maxCompiled, FunctionRegistry.standard());
+    }
+
+    /**
+     * @param closureThreshold Number of interpreted evaluations before a formula is closure-compiled
+     * @param compileThreshold Number of evaluations before a formula is compiled to bytecode
+     * @param maxCompiled Maximum number of compiled formula classes kept in the cache
+     * @param functions Functions available to formulas on every tier
+     */
+    public FormulaCompiler(int closureThreshold, int compileThreshold, int maxCompiled, FunctionRegistry functions) {
+        if (closureThreshold < 0) {
+            throw new IllegalArgumentException("closureThreshold must not be negative: " + closureThreshold);
+        }
+        if (compileThreshold < closureThreshold) {
+            throw new IllegalArgumentException("compileThreshold must not be below closureThreshold: " + compileThreshold);
+        }
+        this.closureThreshold = closureThreshold;
+        this.compileThreshold = compileThreshold;
+        this.functions = functions;
+        this.compiled = new BoundedCache<>(maxCompiled);
+    }
+
+    /**
+     * Simplifies the AST with {@link ConstantFoldingVisitor} and wraps it in a tiered formula
+     * that starts out interpreted.
+     */
+    public TieredFormula prepare(ASTNode ast) {
+        return new TieredFormula(ConstantFoldingVisitor.fold(ast), this, closureThreshold, compileThreshold);
+    }
+
+    /**
+     * Returns the compiled form of the AST, generating and caching a class on first use.
+     *
+     * @throws UnsupportedOperationException If the formula cannot be compiled
+     */
+    public CompiledFormula compile(ASTNode ast) {
+        String key = canonicalText(ast);
+        CompiledFormula formula = compiled.getIfPresent(key);
+        if (formula == null) {
+            formula = compiled.putIfAbsent(key, BytecodeCompiler.compile(ast, functions));
+        }
+        return formula;
+    }
+
+    public FunctionRegistry getFunctions() {
+        return functions;
+    }
+
+    /**
+     * Returns hit, miss and eviction counters of the compiled class cache.
+     */
+    public CacheStats stats() {
+        return compiled.stats();
+    }
+
+    private static String canonicalText(ASTNode ast) {
+        return ast.accept(new FormulaStringBuilder());
+    }
+}
@@ -0,0 +1,124 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.NodeInterner;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Closure compiler for formulas interned by a {@link NodeInterner} that evaluates common
+ * subexpressions once per recalculation. Every subtree the interner reports as shared is
+ * compiled once into a memoizing closure, and all formulas containing it call that closure.
+ * The first call after {@link #beginRecalculation()} computes the value; later calls in the
+ * same recalculation return it.
+ *
+ * <p>Memoized values are only valid while the cells they read do not change, so callers must
+ * start a new recalculation whenever cell values change. Evaluating formulas in dependency order
+ * satisfies this within a recalculation: a shared subtree is only evaluated once every cell it
+ * reads has its final value. Sharing is decided when a formula is compiled; subtrees that
+ * become shared later are memoized for formulas compiled from then on.
+ *
+ * <p>Shared subtrees compiled before are not walked again when a later formula contains them.
+ *
+ * <p>Thread-safe. Concurrent first calls may both compute the value, which is the same.
+ */
+public class SharedExpressionCompiler {
+
+    private final NodeInterner interner;
+    private final ClosureCompiler compiler;
+    private final Map<ASTNode, Memoized> compiled = new ConcurrentHashMap<>();
+    private volatile long recalculation;
+
+    public SharedExpressionCompiler(NodeInterner interner) {
+        this(interner, FunctionRegistry.standard());
+    }
+
+    public SharedExpressionCompiler(NodeInterner interner, FunctionRegistry functions) {
+        this.interner = interner;
+        this.compiler = new ClosureCompiler(functions, this);
+    }
+
+    /**
+     * Compiles an interned AST.
+     *
+     * @throws UnsupportedOperationException If the formula contains nodes that cannot be compiled
+     */
+    public CompiledFormula compile(ASTNode ast) {
+        return compiler.compileTree(ast);
+    }
+
+    /**
+     * Returns the memoizing closure compiled for a shared subtree, or null if there is none yet.
+     */
+    Memoized lookup(ASTNode node) {
+        return compiled.get(node);
+    }
+
+    /**
+     * Returns the closure to use for a freshly compiled subtree: a memoizing wrapper if the
+     * subtree is shared, the one another thread registered first if any.
+     *
+     * @param height Height of the subtree, kept so formulas that reuse it can check their own
+     */
+    CompiledFormula share(ASTNode node, CompiledFormula formula, int height) {
+        if (!interner.isShared(node)) {
+            return formula;
+        }
+        Memoized memoized = new Memoized(formula, height);
+        Memoized existing = compiled.putIfAbsent(node, memoized);
+        return existing != null ? existing : memoized;
+    }
+
+    /**
+     * Invalidates all memoized values. Must not run concurrently with evaluation.
+     */
+    public void beginRecalculation() {
+        recalculation++;
+    }
+
+    /**
+     * Forgets all compiled subexpressions, e.g. after the interner was cleared. Formulas already
+     * compiled keep working but no longer share their values with formulas compiled afterwards.
+     */
+    public void clear() {
+        compiled.clear();
+    }
+
+    /**
+     * Returns the number of distinct shared subexpressions compiled so far.
+     */
+    public int getSharedCount() {
+        return compiled.size();
+    }
+
+    final class Memoized implements CompiledFormula {
+        private final CompiledFormula delegate;
+        private final int height;
+        private volatile long computedIn = -1;
+        private double value;
+
+        Memoized(CompiledFormula delegate, int height) {
+            this.delegate = delegate;
+            this.height = height;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        @Override
+        public double evaluate(CellSource source) {
+            long current = recalculation;
+            if (computedIn == current) {
+                return value;
+            }
+            double result = delegate.evaluate(source);
+            value = result;
+            computedIn = current;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.lintang.formula.compile;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.visitor.EvaluationVisitor;
+
+/**
+ * A formula that moves through evaluation tiers as it gets hot:
+ * interpreted with {@link EvaluationVisitor}, then closure-compiled by {@link ClosureCompiler},
+ * then compiled to bytecode by {@link BytecodeCompiler}. A formula that a tier cannot compile
+ * stays on the tier it reached.
+ *
+ * <p>Safe to share between threads. The evaluation counter is deliberately unsynchronized,
+ * so a switch may happen a few evaluations late under contention; every tier computes the same result.
+ */
+public class TieredFormula implements CompiledFormula {
+
+    public enum Tier {
+        INTERPRETED,
+        CLOSURE,
+        BYTECODE
+    }
+
+    private final ASTNode ast;
+    private final FormulaCompiler compiler;
+    private final int closureThreshold;
+    private final int compileThreshold;
+    private int evaluations;
+    private boolean settled;
+    private volatile Tier tier = Tier.INTERPRETED;
+    private volatile CompiledFormula current;
+
+    TieredFormula(ASTNode ast, FormulaCompiler compiler, int closureThreshold, int compileThreshold) {
+        this.ast = ast;
+        this.compiler = compiler;
+        this.closureThreshold = closureThreshold;
+        this.compileThreshold = compileThreshold;
+        this.current = source -> ast.accept(new EvaluationVisitor(source, compiler.getFunctions()));
+    }
+
+    @Override
+    public double evaluate(CellSource source) {
+        if (!settled) {
+            countEvaluation();
+        }
+        return current.evaluate(source);
+    }
+
+    /**
+     * Returns the tier currently used for evaluation.
+     */
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Returns true once evaluation has switched to compiled bytecode.
+     */
+    public boolean isCompiled() {
+        return tier == Tier.BYTECODE;
+    }
+
+    public ASTNode getAst() {
+        return ast;
+    }
+
+    private void countEvaluation() {
+        int count = ++evaluations;
+        if (count > compileThreshold) {
+            promote(Tier.BYTECODE);
+            settled = true;
+        } else if (count > closureThreshold && tier == Tier.INTERPRETED) {
+            promote(Tier.CLOSURE);
+        }
+    }
+
+    private void promote(Tier target) {
+        try {
+            if (target == Tier.CLOSURE || tier == Tier.INTERPRETED) {
+                current = ClosureCompiler.compile(ast, compiler.getFunctions());
+                tier = Tier.CLOSURE;
+            }
+            if (target == Tier.BYTECODE) {
+                current = compiler.compile(ast);
+                tier = Tier.BYTECODE;
+            }
+        } catch (UnsupportedOperationException e) {
+            settled = true;
+        }
+    }
+}
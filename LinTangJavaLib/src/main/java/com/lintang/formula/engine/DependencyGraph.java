@@ -0,0 +1,245 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.cell.LongHashSet;
+import com.lintang.formula.visitor.CellReferenceExtractor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Forward and reverse dependencies between formula cells and the cells they read, keyed by
+ * packed addresses (see {@link CellAddress#pack(int, int)}).
+ *
+ * <p>Forward edges are the precedents found by {@link CellReferenceExtractor}. Reverse edges for
+ * single cells are a hash lookup; range precedents are kept as rectangles in a {@link RectangleIndex},
+ * so a large range costs one entry instead of one per cell, and the formulas whose ranges cover
+ * a cell are found in logarithmic time however many formulas read ranges.
+ *
+ * <p>{@link #recalculationOrder(long[])} walks the reverse edges breadth-first to find every
+ * formula transitively affected by a change, then orders them with Kahn's algorithm. Both passes
+ * use explicit queues, so chains of any length are handled without recursion, and formulas left
+ * over by Kahn's algorithm are exactly those on or downstream of a cycle. Kahn's algorithm runs
+ * in waves, so the order is grouped into levels whose formulas do not read each other.
+ *
+ * <p>Not thread-safe.
+ */
+public class DependencyGraph {
+
+    private final Map<Long, Vertex> formulas = new HashMap<>();
+    private final Map<Long, Set<Vertex>> cellDependents = new HashMap<>();
+    private final RectangleIndex<Vertex> rangeReaders = new RectangleIndex<>();
+    private long lookupStamp;
+
+    /**
+     * A formula cell with its precedents and scratch state for ordering.
+     */
+    private static final class Vertex {
+        final long address;
+        final long[] cells;
+        final CellRectangle[] ranges;
+        boolean dirty;
+        int pending;
+        List<Vertex> dirtyDependents;
+        /** Stamp of the last dependent lookup that returned this vertex, to report it once. */
+        long seen;
+
+        Vertex(long address, long[] cells, CellRectangle[] ranges) {
+            this.address = address;
+            this.cells = cells;
+            this.ranges = ranges;
+        }
+    }
+
+    /**
+     * Records the formula of a cell, replacing any previous formula and its edges.
+     * References that are not plain cells or ranges, such as sheet-qualified ones, are ignored.
+     */
+    public void setFormula(long address, ASTNode formula) {
+        remove(address);
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        formula.accept(extractor);
+
+        LongHashSet cells = extractor.getCells();
+        List<CellRectangle> ranges = new ArrayList<>(extractor.getRanges().size());
+        for (CellRectangle range : extractor.getRanges()) {
+            if (range.isSingleCell()) {
+                cells.add(CellAddress.pack(range.getFirstRow(), range.getFirstColumn()));
+            } else {
+                ranges.add(range);
+            }
+        }
+
+        Vertex vertex = new Vertex(address, cells.toSortedArray(), ranges.toArray(new CellRectangle[0]));
+        formulas.put(address, vertex);
+        for (long cell : vertex.cells) {
+            cellDependents.computeIfAbsent(cell, key -> new LinkedHashSet<>()).add(vertex);
+        }
+        for (CellRectangle range : vertex.ranges) {
+            rangeReaders.insert(range, vertex);
+        }
+    }
+
+    /**
+     * Forgets the formula of a cell, if any. Formulas reading the cell keep their edges to it.
+     */
+    public void remove(long address) {
+        Vertex vertex = formulas.remove(address);
+        if (vertex == null) {
+            return;
+        }
+        for (long cell : vertex.cells) {
+            Set<Vertex> dependents = cellDependents.get(cell);
+            if (dependents != null) {
+                dependents.remove(vertex);
+                if (dependents.isEmpty()) {
+                    cellDependents.remove(cell);
+                }
+            }
+        }
+        for (CellRectangle range : vertex.ranges) {
+            rangeReaders.remove(range, vertex);
+        }
+    }
+
+    public boolean isFormula(long address) {
+        return formulas.containsKey(address);
+    }
+
+    public int getFormulaCount() {
+        return formulas.size();
+    }
+
+    /**
+     * Returns the single cells read by a formula, or an empty array if the cell holds no formula.
+     */
+    public long[] getPrecedentCells(long address) {
+        Vertex vertex = formulas.get(address);
+        return vertex == null ? new long[0] : vertex.cells.clone();
+    }
+
+    /**
+     * Returns the formula cells that read the given cell directly, through a reference or a range.
+     */
+    public long[] getDependents(long address) {
+        List<Vertex> dependents = new ArrayList<>();
+        collectDependents(address, dependents);
+        long[] result = new long[dependents.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = dependents.get(i).address;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the formulas to recompute after the given cells changed, in dependency order.
+     * Changed cells that hold formulas are included themselves.
+     */
+    public RecalculationOrder recalculationOrder(long[] changed) {
+        List<Vertex> dirty = new ArrayList<>();
+        ArrayDeque<Vertex> queue = new ArrayDeque<>();
+        List<Vertex> dependents = new ArrayList<>();
+
+        for (long address : changed) {
+            Vertex vertex = formulas.get(address);
+            if (vertex != null) {
+                markDirty(vertex, dirty, queue);
+            } else {
+                dependents.clear();
+                collectDependents(address, dependents);
+                for (Vertex dependent : dependents) {
+                    markDirty(dependent, dirty, queue);
+                }
+            }
+        }
+
+        // Find the affected subgraph; each edge inside it is visited exactly once
+        while (!queue.isEmpty()) {
+            Vertex vertex = queue.poll();
+            List<Vertex> out = new ArrayList<>();
+            collectDependents(vertex.address, out);
+            for (Vertex dependent : out) {
+                dependent.pending++;
+                markDirty(dependent, dirty, queue);
+            }
+            vertex.dirtyDependents = out;
+        }
+
+        // Kahn's algorithm over the affected subgraph, one wave per topological level
+        long[] order = new long[dirty.size()];
+        int ordered = 0;
+        int[] levelStarts = new int[8];
+        int levels = 0;
+        List<Vertex> level = new ArrayList<>();
+        for (Vertex vertex : dirty) {
+            if (vertex.pending == 0) {
+                level.add(vertex);
+            }
+        }
+        while (!level.isEmpty()) {
+            if (levels + 1 == levelStarts.length) {
+                levelStarts = Arrays.copyOf(levelStarts, levelStarts.length * 2);
+            }
+            levelStarts[levels++] = ordered;
+            List<Vertex> next = new ArrayList<>();
+            for (Vertex vertex : level) {
+                order[ordered++] = vertex.address;
+                for (Vertex dependent : vertex.dirtyDependents) {
+                    if (--dependent.pending == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            level = next;
+        }
+        levelStarts[levels] = ordered;
+
+        long[] circular = new long[dirty.size() - ordered];
+        int circularCount = 0;
+        for (Vertex vertex : dirty) {
+            if (vertex.pending > 0) {
+                circular[circularCount++] = vertex.address;
+            }
+            vertex.dirty = false;
+            vertex.pending = 0;
+            vertex.dirtyDependents = null;
+        }
+        return new RecalculationOrder(Arrays.copyOf(order, ordered), Arrays.copyOf(levelStarts, levels + 1), circular);
+    }
+
+    private static void markDirty(Vertex vertex, List<Vertex> dirty, ArrayDeque<Vertex> queue) {
+        if (!vertex.dirty) {
+            vertex.dirty = true;
+            dirty.add(vertex);
+            queue.add(vertex);
+        }
+    }
+
+    private void collectDependents(long address, List<Vertex> out) {
+        long stamp = ++lookupStamp;
+        Set<Vertex> direct = cellDependents.get(address);
+        if (direct != null) {
+            for (Vertex dependent : direct) {
+                dependent.seen = stamp;
+                out.add(dependent);
+            }
+        }
+        if (!rangeReaders.isEmpty()) {
+            // A formula may reach the cell directly and through several ranges; report it once
+            rangeReaders.search(CellAddress.packedRow(address), CellAddress.packedColumn(address), reader -> {
+                if (reader.seen != stamp) {
+                    reader.seen = stamp;
+                    out.add(reader);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.visitor.FormulaCanonicalizer;
+import com.lintang.formula.visitor.FormulaFingerprint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Groups the formulas of a workbook by template: formulas whose canonical forms are equal once
+ * references are taken relative to their own cell, such as {@code =A1+B1} in {@code C1} filled
+ * down to {@code =A1000+B1000} in {@code C1000}. Formulas are matched by
+ * {@link FormulaFingerprint#relative relative fingerprint}, so grouping costs one hash pass per
+ * formula and no tree comparisons.
+ *
+ * <p>Each template keeps the first formula added to it and that formula's cell as the anchor.
+ * A template can be compiled and cached once and evaluated for any of its cells by shifting
+ * references by the cell's offset from the anchor, as {@code BatchFormula} does for rows.
+ *
+ * <p>Not thread-safe.
+ */
+public class FormulaTemplates {
+
+    private final Map<FormulaFingerprint, Template> templates = new LinkedHashMap<>();
+    private final Map<Long, Template> byCell = new HashMap<>();
+
+    /**
+     * A group of formulas that are the same up to a shift of their references.
+     */
+    public static final class Template {
+        private final FormulaFingerprint fingerprint;
+        private final ASTNode formula;
+        private final long anchor;
+        private long[] cells = new long[4];
+        private int cellCount;
+
+        private Template(FormulaFingerprint fingerprint, ASTNode formula, long anchor) {
+            this.fingerprint = fingerprint;
+            this.formula = formula;
+            this.anchor = anchor;
+        }
+
+        public FormulaFingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Returns the formula of the anchor cell, as it was added.
+         */
+        public ASTNode getFormula() {
+            return formula;
+        }
+
+        /**
+         * Returns the packed address of the cell the formula was taken from.
+         */
+        public long getAnchor() {
+            return anchor;
+        }
+
+        /**
+         * Returns the packed addresses of every cell sharing the template, in the order added.
+         */
+        public long[] getCells() {
+            return Arrays.copyOf(cells, cellCount);
+        }
+
+        public int getCellCount() {
+            return cellCount;
+        }
+
+        /**
+         * Returns the template in R1C1 notation, e.g. {@code (RC[-2] + RC[-1])}.
+         */
+        public String toR1C1() {
+            return FormulaCanonicalizer.toR1C1(formula, CellAddress.packedRow(anchor), CellAddress.packedColumn(anchor));
+        }
+
+        private void addCell(long address) {
+            if (cellCount == cells.length) {
+                cells = Arrays.copyOf(cells, cellCount * 2);
+            }
+            cells[cellCount++] = address;
+        }
+
+        @Override
+        public String toString() {
+            return toR1C1() + " x" + cellCount;
+        }
+    }
+
+    /**
+     * Adds the formula of a cell and returns its template.
+     *
+     * @throws IllegalArgumentException If a formula was already added for the cell
+     */
+    public Template add(long address, ASTNode formula) {
+        if (byCell.containsKey(address)) {
+            throw new IllegalArgumentException("Formula already added for " + CellAddress.toString(address));
+        }
+        FormulaFingerprint fingerprint = FormulaFingerprint.relative(formula,
+                CellAddress.packedRow(address), CellAddress.packedColumn(address));
+        Template template = templates.computeIfAbsent(fingerprint, key -> new Template(key, formula, address));
+        template.addCell(address);
+        byCell.put(address, template);
+        return template;
+    }
+
+    /**
+     * Returns the template of a cell, or null if no formula was added for it.
+     */
+    public Template getTemplate(long address) {
+        return byCell.get(address);
+    }
+
+    /**
+     * Returns the templates in the order they were first seen.
+     */
+    public Collection<Template> getTemplates() {
+        return Collections.unmodifiableCollection(templates.values());
+    }
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+
+    public int getFormulaCount() {
+        return byCell.size();
+    }
+}
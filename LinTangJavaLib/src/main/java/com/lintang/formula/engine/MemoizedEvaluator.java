@@ -0,0 +1,179 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cache.BoundedCache;
+import com.lintang.formula.cache.CacheStats;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.cell.VersionedCellStore;
+import com.lintang.formula.function.FunctionRegistry;
+import com.lintang.formula.visitor.CellReferenceExtractor;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaFingerprint;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates formulas against a {@link VersionedCellStore} and remembers the results, so a
+ * formula whose inputs have not changed since it was last evaluated is not evaluated again.
+ * Suited to dashboards that evaluate the same formulas on every refresh while only a few
+ * inputs change.
+ *
+ * <p>Results are keyed by {@link FormulaFingerprint}, so formulas that differ only in spelling
+ * share one entry. Each entry records the store version it was computed at and the cells and
+ * ranges the formula references, found once with {@link CellReferenceExtractor}; it is reused
+ * while none of them has a newer version. Entries are kept in a {@link BoundedCache}, bounded by
+ * count and by the total number of recorded references, and the least recently used are evicted.
+ *
+ * <p>Functions must be deterministic, since a result is reused as long as the cells it reads
+ * are unchanged. Evaluation errors are thrown as by {@link EvaluationVisitor} and not cached.
+ * Lookups are thread-safe as long as the store is not written concurrently.
+ */
+public class MemoizedEvaluator {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /** Default weight budget, measured in recorded cell and range references. */
+    public static final long DEFAULT_MAX_WEIGHT = 1_000_000L;
+
+    private final VersionedCellStore cells;
+    private final EvaluationVisitor evaluator;
+    private final BoundedCache<FormulaFingerprint, Entry> cache;
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder evaluated = new LongAdder();
+
+    public MemoizedEvaluator(VersionedCellStore cells) {
+        this(cells, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, FunctionRegistry.standard());
+    }
+
+    /**
+     * @param cells Cell values and versions
+     * @param maxEntries Maximum number of cached results
+     * @param maxWeight Maximum total number of references recorded by the cached results
+     * @param functions Functions available to the formulas
+     */
+    public MemoizedEvaluator(VersionedCellStore cells, int maxEntries, long maxWeight, FunctionRegistry functions) {
+        this.cells = cells;
+        this.evaluator = new EvaluationVisitor(cells, functions);
+        this.cache = new BoundedCache<>(maxEntries, maxWeight, (key, entry) -> entry.getWeight());
+    }
+
+    /**
+     * Returns the value of the formula, evaluating it only if it is not cached or its inputs
+     * have changed.
+     */
+    public double evaluate(ASTNode formula) {
+        return evaluate(FormulaFingerprint.of(formula), formula);
+    }
+
+    /**
+     * Like {@link #evaluate(ASTNode)}, with a fingerprint the caller already has, so a refresh
+     * only checks versions and does not hash the formula again.
+     *
+     * @param fingerprint {@code FormulaFingerprint.of(formula)}
+     */
+    public double evaluate(FormulaFingerprint fingerprint, ASTNode formula) {
+        Entry entry = cache.getIfPresent(fingerprint);
+        if (entry != null) {
+            Result cached = entry.result;
+            if (!entry.changedSince(cached.version, cells)) {
+                reused.increment();
+                return cached.value;
+            }
+        }
+        long version = cells.getVersion();
+        double value = formula.accept(evaluator);
+        evaluated.increment();
+        if (entry == null) {
+            cache.putIfAbsent(fingerprint, Entry.of(formula, new Result(value, version)));
+        } else {
+            // Same fingerprint, same references: only the result is replaced
+            entry.result = new Result(value, version);
+        }
+        return value;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of evaluations answered from the cache.
+     */
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    /**
+     * Returns the number of formulas actually evaluated, because they were not cached or their
+     * inputs had changed.
+     */
+    public long getEvaluatedCount() {
+        return evaluated.sum();
+    }
+
+    /**
+     * Returns size, weight and eviction counters of the cache. Its hit count includes lookups
+     * that found an entry whose inputs had changed.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * A value and the store version it was computed at.
+     */
+    private static final class Result {
+        final double value;
+        final long version;
+
+        Result(double value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The references a formula depends on and its latest result.
+     */
+    private static final class Entry {
+        final long[] cells;
+        final CellRectangle[] ranges;
+        volatile Result result;
+
+        Entry(long[] cells, CellRectangle[] ranges, Result result) {
+            this.cells = cells;
+            this.ranges = ranges;
+            this.result = result;
+        }
+
+        static Entry of(ASTNode formula, Result result) {
+            CellReferenceExtractor extractor = new CellReferenceExtractor();
+            formula.accept(extractor);
+            return new Entry(extractor.getCells().toSortedArray(),
+                    extractor.getRanges().toArray(new CellRectangle[0]), result);
+        }
+
+        long getWeight() {
+            return 1 + cells.length + ranges.length;
+        }
+
+        boolean changedSince(long version, VersionedCellStore store) {
+            if (store.getVersion() == version) {
+                return false;
+            }
+            for (long cell : cells) {
+                if (store.getVersion(CellAddress.packedRow(cell), CellAddress.packedColumn(cell)) > version) {
+                    return true;
+                }
+            }
+            for (CellRectangle range : ranges) {
+                if (store.changedSince(version, range.getFirstRow(), range.getFirstColumn(),
+                        range.getLastRow(), range.getLastColumn())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.FormulaParserUtil;
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.NodeInterner;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.compile.SharedExpressionCompiler;
+import com.lintang.formula.visitor.ConstantFoldingVisitor;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * A sheet of values and formulas that recalculates incrementally.
+ * Edits only record which cells changed; {@link #recalculate()} then recomputes just the formulas
+ * that transitively depend on those cells, in dependency order, using a {@link DependencyGraph}.
+ * Formulas are evaluated through {@link FormulaCompiler}, so frequently recomputed formulas
+ * are compiled.
+ *
+ * <p>With a {@link RecalculationScheduler}, independent formulas are evaluated concurrently;
+ * results are the same as with sequential recalculation.
+ *
+ * <p>In shared-subexpression mode, formulas are interned into a DAG by a {@link NodeInterner}
+ * and compiled by a {@link SharedExpressionCompiler}, so identical subtrees are stored once
+ * and computed once per recalculation. Neither forgets nodes on its own, so once more formulas
+ * have been replaced or removed than are left, both are rebuilt from the remaining formulas;
+ * editing a cell over and over keeps the DAG proportional to the formulas in the sheet.
+ *
+ * <p>A formula that fails to evaluate, for example on division by zero, yields {@code NaN}.
+ * Formulas caught in a circular reference are not evaluated and stay pending until the cycle is broken.
+ *
+ * <p>Not thread-safe.
+ */
+public class RecalculationEngine {
+
+    /** Replaced or removed formulas tolerated before a rebuild of the DAG, however few remain. */
+    static final int MIN_REPLACED_BEFORE_REBUILD = 64;
+
+    private final ColumnarCellStore cells;
+    private final FormulaCompiler compiler;
+    private final RecalculationScheduler scheduler;
+    private final NodeInterner interner;
+    private final SharedExpressionCompiler sharedCompiler;
+    private final DependencyGraph graph = new DependencyGraph();
+    private final Map<Long, CompiledFormula> formulas = new HashMap<>();
+    private final Set<Long> changed = new LinkedHashSet<>();
+    // Shared-subexpression mode only: the interned root of every formula, and edits since the last rebuild
+    private final Map<Long, ASTNode> sharedFormulas = new HashMap<>();
+    private int replacedFormulas;
+
+    public RecalculationEngine() {
+        this(new ColumnarCellStore(), new FormulaCompiler());
+    }
+
+    /**
+     * @param cells Store holding input values and receiving formula results
+     * @param compiler Compiler used to prepare formulas for evaluation
+     */
+    public RecalculationEngine(ColumnarCellStore cells, FormulaCompiler compiler) {
+        this(cells, compiler, null);
+    }
+
+    /**
+     * @param cells Store holding input values and receiving formula results
+     * @param compiler Compiler used to prepare formulas for evaluation
+     * @param scheduler Scheduler for parallel recalculation, or null to recalculate on the calling thread
+     */
+    public RecalculationEngine(ColumnarCellStore cells, FormulaCompiler compiler, RecalculationScheduler scheduler) {
+        this(cells, compiler, scheduler, false);
+    }
+
+    /**
+     * @param cells Store holding input values and receiving formula results
+     * @param compiler Compiler used to prepare formulas for evaluation
+     * @param scheduler Scheduler for parallel recalculation, or null to recalculate on the calling thread
+     * @param shareSubexpressions True to intern formulas and compute common subexpressions once
+     *                            per recalculation
+     */
+    public RecalculationEngine(ColumnarCellStore cells, FormulaCompiler compiler, RecalculationScheduler scheduler,
+                               boolean shareSubexpressions) {
+        this.cells = cells;
+        this.compiler = compiler;
+        this.scheduler = scheduler;
+        this.interner = shareSubexpressions ? new NodeInterner() : null;
+        this.sharedCompiler = shareSubexpressions ? new SharedExpressionCompiler(interner, compiler.getFunctions()) : null;
+    }
+
+    /**
+     * Sets an input value, replacing any formula in the cell.
+     *
+     * @throws IllegalArgumentException If the reference is not a valid cell
+     */
+    public void setValue(String cellRef, double value) {
+        setValue(CellAddress.parseRow(cellRef), CellAddress.parseColumn(cellRef), value);
+    }
+
+    public void setValue(int row, int column, double value) {
+        long address = CellAddress.pack(row, column);
+        removeFormula(address);
+        cells.setNumber(row, column, value);
+        changed.add(address);
+    }
+
+    /**
+     * Sets the formula of a cell. The formula is evaluated on the next {@link #recalculate()}.
+     *
+     * @throws IllegalArgumentException If the reference or the formula is invalid
+     */
+    public void setFormula(String cellRef, String formula) {
+        setFormula(CellAddress.parseRow(cellRef), CellAddress.parseColumn(cellRef), FormulaParserUtil.parseFast(formula));
+    }
+
+    public void setFormula(int row, int column, ASTNode formula) {
+        long address = CellAddress.pack(row, column);
+        graph.setFormula(address, formula);
+        if (interner == null) {
+            formulas.put(address, compiler.prepare(formula));
+        } else {
+            ASTNode interned = interner.intern(ConstantFoldingVisitor.fold(formula));
+            formulas.put(address, compileShared(interned));
+            if (sharedFormulas.put(address, interned) != null) {
+                formulaReplaced();
+            }
+        }
+        changed.add(address);
+    }
+
+    /**
+     * Makes a cell blank, removing any value or formula.
+     */
+    public void clear(String cellRef) {
+        clear(CellAddress.parseRow(cellRef), CellAddress.parseColumn(cellRef));
+    }
+
+    public void clear(int row, int column) {
+        long address = CellAddress.pack(row, column);
+        removeFormula(address);
+        cells.clear(row, column);
+        changed.add(address);
+    }
+
+    /**
+     * Returns the current value of a cell. Formula results are only current after {@link #recalculate()}.
+     */
+    public double getValue(String cellRef) {
+        return getValue(CellAddress.parseRow(cellRef), CellAddress.parseColumn(cellRef));
+    }
+
+    public double getValue(int row, int column) {
+        return cells.getNumber(row, column);
+    }
+
+    public boolean isFormula(int row, int column) {
+        return graph.isFormula(CellAddress.pack(row, column));
+    }
+
+    /**
+     * Returns true if there are edits not yet reflected in formula results.
+     */
+    public boolean isDirty() {
+        return !changed.isEmpty();
+    }
+
+    /**
+     * Recomputes every formula affected by edits since the last recalculation.
+     *
+     * @return The number of formulas evaluated
+     * @throws IllegalStateException If some affected formulas are part of a circular reference;
+     *                               all other affected formulas have been recomputed by then
+     */
+    public int recalculate() {
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        long[] roots = new long[changed.size()];
+        int i = 0;
+        for (long address : changed) {
+            roots[i++] = address;
+        }
+        changed.clear();
+
+        RecalculationOrder order = graph.recalculationOrder(roots);
+        if (sharedCompiler != null) {
+            sharedCompiler.beginRecalculation();
+        }
+        if (scheduler != null) {
+            scheduler.run(order, this::evaluate, cells);
+        } else {
+            for (long address : order.getCells()) {
+                cells.setNumber(CellAddress.packedRow(address), CellAddress.packedColumn(address), evaluate(address));
+            }
+        }
+        if (order.hasCycle()) {
+            StringJoiner names = new StringJoiner(", ");
+            for (long address : order.getCircularCells()) {
+                changed.add(address);
+                names.add(CellAddress.toString(address));
+            }
+            throw new IllegalStateException("Circular reference involving " + names);
+        }
+        return order.getCells().length;
+    }
+
+    /**
+     * Returns the store holding values and formula results.
+     */
+    public CellSource getCells() {
+        return cells;
+    }
+
+    public DependencyGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the interner holding the formula DAG, or null unless subexpressions are shared.
+     */
+    public NodeInterner getInterner() {
+        return interner;
+    }
+
+    private CompiledFormula compileShared(ASTNode interned) {
+        try {
+            return sharedCompiler.compile(interned);
+        } catch (RuntimeException e) {
+            // Strings, unknown functions and invalid arguments: let the interpreter report them on evaluation
+            return compiler.prepare(interned);
+        }
+    }
+
+    private double evaluate(long address) {
+        try {
+            return formulas.get(address).evaluate(cells);
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void removeFormula(long address) {
+        if (formulas.remove(address) != null) {
+            graph.remove(address);
+            if (sharedFormulas.remove(address) != null) {
+                formulaReplaced();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the DAG once the subtrees of replaced formulas may outnumber the live ones. The
+     * cost of a rebuild is proportional to the formulas left, so it is amortized over the edits.
+     */
+    private void formulaReplaced() {
+        if (++replacedFormulas <= Math.max(MIN_REPLACED_BEFORE_REBUILD, sharedFormulas.size())) {
+            return;
+        }
+        replacedFormulas = 0;
+        interner.clear();
+        sharedCompiler.clear();
+        // Intern every formula before compiling any, so sharing is decided over all of them
+        for (Map.Entry<Long, ASTNode> entry : sharedFormulas.entrySet()) {
+            entry.setValue(interner.intern(entry.getValue()));
+        }
+        for (Map.Entry<Long, ASTNode> entry : sharedFormulas.entrySet()) {
+            formulas.put(entry.getKey(), compileShared(entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.lintang.formula.engine;
+
+/**
+ * The formula cells to recompute after a set of changes, as packed addresses
+ * (see {@link com.lintang.formula.cell.CellAddress#pack(int, int)}).
+ * Every cell comes after all dirty cells it reads. The cells are grouped into topological
+ * levels: no cell reads another cell of its own level, so a level can be evaluated in any
+ * order, or concurrently, once the previous levels are done. Cells on or downstream of a
+ * circular reference cannot be ordered and are reported separately.
+ */
+public final class RecalculationOrder {
+    private static final long[] NONE = new long[0];
+
+    private final long[] cells;
+    private final int[] levelStarts;
+    private final long[] circularCells;
+
+    RecalculationOrder(long[] cells, int[] levelStarts, long[] circularCells) {
+        this.cells = cells;
+        this.levelStarts = levelStarts;
+        this.circularCells = circularCells.length == 0 ? NONE : circularCells;
+    }
+
+    /**
+     * Returns the cells to recompute, in topological order.
+     */
+    public long[] getCells() {
+        return cells;
+    }
+
+    public int getLevelCount() {
+        return levelStarts.length - 1;
+    }
+
+    /**
+     * Returns the index in {@link #getCells()} of the first cell of a level.
+     */
+    public int getLevelStart(int level) {
+        return levelStarts[level];
+    }
+
+    /**
+     * Returns the index in {@link #getCells()} just past the last cell of a level.
+     */
+    public int getLevelEnd(int level) {
+        return levelStarts[level + 1];
+    }
+
+    /**
+     * Returns dirty cells that are part of, or depend on, a circular reference.
+     */
+    public long[] getCircularCells() {
+        return circularCells;
+    }
+
+    public boolean hasCycle() {
+        return circularCells.length > 0;
+    }
+}
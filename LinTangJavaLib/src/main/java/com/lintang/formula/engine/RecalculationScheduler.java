@@ -0,0 +1,114 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.ColumnarCellStore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Evaluates a {@link RecalculationOrder} level by level on a {@link ForkJoinPool}.
+ * Each level is split recursively into chunks of at most {@code chunkSize} formulas, so cheap
+ * formulas are not scheduled one task each and idle workers steal the remaining halves.
+ * Levels no larger than one chunk run on the calling thread.
+ *
+ * <p>Workers only read the cell store and write results into a per-level array; the results
+ * are stored on the calling thread once the level is done, before the next level starts.
+ * The store therefore never sees concurrent writes, and since no formula reads a cell of its
+ * own level, the results are identical to sequential evaluation in order.
+ */
+public class RecalculationScheduler {
+
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    /**
+     * Creates a scheduler on the common pool.
+     */
+    public RecalculationScheduler() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool Pool running the chunks
+     * @param chunkSize Maximum number of formulas evaluated by one task
+     */
+    public RecalculationScheduler(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluates every cell of the order and stores the results.
+     *
+     * @param order Cells to evaluate, grouped into levels
+     * @param evaluator Computes the value of a formula cell from the store; called concurrently
+     *                  for cells of the same level and must not throw
+     * @param cells Store read by the evaluator and receiving the results
+     */
+    public void run(RecalculationOrder order, LongToDoubleFunction evaluator, ColumnarCellStore cells) {
+        long[] addresses = order.getCells();
+        double[] results = new double[0];
+        for (int level = 0; level < order.getLevelCount(); level++) {
+            int start = order.getLevelStart(level);
+            int end = order.getLevelEnd(level);
+            if (end - start <= chunkSize) {
+                for (int i = start; i < end; i++) {
+                    long address = addresses[i];
+                    cells.setNumber(CellAddress.packedRow(address), CellAddress.packedColumn(address),
+                            evaluator.applyAsDouble(address));
+                }
+                continue;
+            }
+            if (results.length < end - start) {
+                results = new double[end - start];
+            }
+            pool.invoke(new Chunk(addresses, start, start, end, results, evaluator));
+            for (int i = start; i < end; i++) {
+                long address = addresses[i];
+                cells.setNumber(CellAddress.packedRow(address), CellAddress.packedColumn(address), results[i - start]);
+            }
+        }
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    private final class Chunk extends RecursiveAction {
+        private final long[] addresses;
+        private final int levelStart;
+        private final int from;
+        private final int to;
+        private final double[] results;
+        private final LongToDoubleFunction evaluator;
+
+        Chunk(long[] addresses, int levelStart, int from, int to, double[] results, LongToDoubleFunction evaluator) {
+            this.addresses = addresses;
+            this.levelStart = levelStart;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    results[i - levelStart] = evaluator.applyAsDouble(addresses[i]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(addresses, levelStart, from, middle, results, evaluator),
+                    new Chunk(addresses, levelStart, middle, to, results, evaluator));
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.lintang.formula.engine;
+
+import com.lintang.formula.cell.CellRectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * R-tree over cell rectangles, answering "which ranges contain this cell?" and "which ranges
+ * overlap this area?" in time logarithmic in the number of ranges instead of with a scan.
+ *
+ * <p>Follows Guttman's R-tree with the quadratic split. Inserts descend to the leaf whose bounds
+ * grow least; deletes remove nodes left with fewer than {@link #MIN_ENTRIES} entries and reinsert
+ * their entries, so the tree stays balanced under any sequence of edits. Bounds are stored in
+ * flat {@code int} arrays per node, so queries allocate nothing but the traversal.
+ *
+ * <p>The same value may be indexed under several rectangles; each (rectangle, value) pair is an
+ * entry of its own. Not thread-safe.
+ *
+ * @param <T> Type of the values attached to rectangles
+ */
+public final class RectangleIndex<T> {
+
+    static final int MAX_ENTRIES = 16;
+    static final int MIN_ENTRIES = 6;
+
+    private Node root = new Node(true);
+    private int size;
+
+    /**
+     * A tree node: up to {@link #MAX_ENTRIES} child nodes or values (one more while splitting),
+     * with the bounds of each as {firstRow, firstColumn, lastRow, lastColumn} quadruples.
+     */
+    private static final class Node {
+        final boolean leaf;
+        final int[] boxes = new int[4 * (MAX_ENTRIES + 1)];
+        final Object[] entries = new Object[MAX_ENTRIES + 1];
+        int count;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(int firstRow, int firstColumn, int lastRow, int lastColumn, Object entry) {
+            int i = 4 * count;
+            boxes[i] = firstRow;
+            boxes[i + 1] = firstColumn;
+            boxes[i + 2] = lastRow;
+            boxes[i + 3] = lastColumn;
+            entries[count++] = entry;
+        }
+
+        void addChild(Node child) {
+            add(0, 0, 0, 0, child);
+            updateBox(count - 1);
+        }
+
+        void removeAt(int index) {
+            count--;
+            System.arraycopy(boxes, 4 * count, boxes, 4 * index, 4);
+            entries[index] = entries[count];
+            entries[count] = null;
+        }
+
+        /**
+         * Recomputes the bounds of child {@code index} from its own entries.
+         */
+        void updateBox(int index) {
+            Node child = (Node) entries[index];
+            int[] from = child.boxes;
+            int i = 4 * index;
+            boxes[i] = from[0];
+            boxes[i + 1] = from[1];
+            boxes[i + 2] = from[2];
+            boxes[i + 3] = from[3];
+            for (int j = 4; j < 4 * child.count; j += 4) {
+                boxes[i] = Math.min(boxes[i], from[j]);
+                boxes[i + 1] = Math.min(boxes[i + 1], from[j + 1]);
+                boxes[i + 2] = Math.max(boxes[i + 2], from[j + 2]);
+                boxes[i + 3] = Math.max(boxes[i + 3], from[j + 3]);
+            }
+        }
+
+        boolean intersects(int index, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            int i = 4 * index;
+            return boxes[i] <= lastRow && firstRow <= boxes[i + 2]
+                    && boxes[i + 1] <= lastColumn && firstColumn <= boxes[i + 3];
+        }
+
+        boolean contains(int index, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            int i = 4 * index;
+            return boxes[i] <= firstRow && firstColumn >= boxes[i + 1]
+                    && lastRow <= boxes[i + 2] && lastColumn <= boxes[i + 3];
+        }
+
+        boolean equals(int index, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+            int i = 4 * index;
+            return boxes[i] == firstRow && boxes[i + 1] == firstColumn
+                    && boxes[i + 2] == lastRow && boxes[i + 3] == lastColumn;
+        }
+    }
+
+    /**
+     * Indexes the value under the rectangle.
+     */
+    public void insert(CellRectangle range, T value) {
+        insert(range.getFirstRow(), range.getFirstColumn(), range.getLastRow(), range.getLastColumn(), value);
+    }
+
+    /**
+     * Indexes the value under the rectangle with the given inclusive bounds.
+     *
+     * @throws IllegalArgumentException If a first bound is greater than the matching last bound
+     */
+    public void insert(int firstRow, int firstColumn, int lastRow, int lastColumn, T value) {
+        if (firstRow > lastRow || firstColumn > lastColumn) {
+            throw new IllegalArgumentException("Rectangle bounds are not normalized: "
+                    + firstRow + "," + firstColumn + ":" + lastRow + "," + lastColumn);
+        }
+        insertEntry(firstRow, firstColumn, lastRow, lastColumn, value);
+        size++;
+    }
+
+    /**
+     * Removes one entry of the value under exactly this rectangle.
+     *
+     * @return false if there was no such entry
+     */
+    public boolean remove(CellRectangle range, T value) {
+        return remove(range.getFirstRow(), range.getFirstColumn(), range.getLastRow(), range.getLastColumn(), value);
+    }
+
+    /**
+     * Removes one entry of the value under exactly the rectangle with the given bounds.
+     *
+     * @return false if there was no such entry
+     */
+    public boolean remove(int firstRow, int firstColumn, int lastRow, int lastColumn, T value) {
+        List<Node> orphans = new ArrayList<>();
+        if (!remove(root, firstRow, firstColumn, lastRow, lastColumn, value, orphans)) {
+            return false;
+        }
+        size--;
+        while (!root.leaf && root.count <= 1) {
+            root = root.count == 0 ? new Node(true) : (Node) root.entries[0];
+        }
+        for (Node orphan : orphans) {
+            reinsert(orphan);
+        }
+        return true;
+    }
+
+    /**
+     * Passes every value whose rectangle contains the cell to the action.
+     */
+    public void search(int row, int column, Consumer<? super T> action) {
+        search(root, row, column, row, column, action);
+    }
+
+    /**
+     * Passes every value whose rectangle overlaps the area to the action.
+     */
+    public void search(CellRectangle area, Consumer<? super T> action) {
+        search(root, area.getFirstRow(), area.getFirstColumn(), area.getLastRow(), area.getLastColumn(), action);
+    }
+
+    /**
+     * Returns the number of (rectangle, value) entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root = new Node(true);
+        size = 0;
+    }
+
+    private void insertEntry(int firstRow, int firstColumn, int lastRow, int lastColumn, Object value) {
+        Node sibling = insert(root, firstRow, firstColumn, lastRow, lastColumn, value);
+        if (sibling != null) {
+            Node grown = new Node(false);
+            grown.addChild(root);
+            grown.addChild(sibling);
+            root = grown;
+        }
+    }
+
+    /**
+     * Inserts below the node and returns the new sibling if the node had to split.
+     */
+    private static Node insert(Node node, int firstRow, int firstColumn, int lastRow, int lastColumn, Object value) {
+        if (node.leaf) {
+            node.add(firstRow, firstColumn, lastRow, lastColumn, value);
+            return node.count > MAX_ENTRIES ? split(node) : null;
+        }
+        int best = chooseSubtree(node, firstRow, firstColumn, lastRow, lastColumn);
+        Node child = (Node) node.entries[best];
+        Node sibling = insert(child, firstRow, firstColumn, lastRow, lastColumn, value);
+        if (sibling == null) {
+            int i = 4 * best;
+            node.boxes[i] = Math.min(node.boxes[i], firstRow);
+            node.boxes[i + 1] = Math.min(node.boxes[i + 1], firstColumn);
+            node.boxes[i + 2] = Math.max(node.boxes[i + 2], lastRow);
+            node.boxes[i + 3] = Math.max(node.boxes[i + 3], lastColumn);
+            return null;
+        }
+        node.updateBox(best);
+        node.addChild(sibling);
+        return node.count > MAX_ENTRIES ? split(node) : null;
+    }
+
+    /**
+     * Picks the child whose bounds need the least enlargement, preferring the smaller one on ties.
+     */
+    private static int chooseSubtree(Node node, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        int best = 0;
+        long bestGrowth = Long.MAX_VALUE;
+        long bestArea = Long.MAX_VALUE;
+        int[] boxes = node.boxes;
+        for (int index = 0; index < node.count; index++) {
+            int i = 4 * index;
+            long area = area(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+            long growth = area(Math.min(boxes[i], firstRow), Math.min(boxes[i + 1], firstColumn),
+                    Math.max(boxes[i + 2], lastRow), Math.max(boxes[i + 3], lastColumn)) - area;
+            if (growth < bestGrowth || (growth == bestGrowth && area < bestArea)) {
+                best = index;
+                bestGrowth = growth;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Quadratic split: the overfull node keeps one group and the returned sibling gets the other.
+     */
+    private static Node split(Node node) {
+        int total = node.count;
+        int[] boxes = node.boxes.clone();
+        Object[] entries = node.entries.clone();
+        Node sibling = new Node(node.leaf);
+        node.count = 0;
+        Arrays.fill(node.entries, null);
+
+        // Seeds: the pair that would waste the most area if grouped together
+        int seedA = 0;
+        int seedB = 1;
+        long worstWaste = Long.MIN_VALUE;
+        for (int a = 0; a < total; a++) {
+            for (int b = a + 1; b < total; b++) {
+                long waste = area(Math.min(boxes[4 * a], boxes[4 * b]), Math.min(boxes[4 * a + 1], boxes[4 * b + 1]),
+                        Math.max(boxes[4 * a + 2], boxes[4 * b + 2]), Math.max(boxes[4 * a + 3], boxes[4 * b + 3]))
+                        - area(boxes, a) - area(boxes, b);
+                if (waste > worstWaste) {
+                    worstWaste = waste;
+                    seedA = a;
+                    seedB = b;
+                }
+            }
+        }
+        boolean[] assigned = new boolean[total];
+        int[] boundsA = new int[4];
+        int[] boundsB = new int[4];
+        assign(node, boundsA, boxes, entries, seedA, true);
+        assign(sibling, boundsB, boxes, entries, seedB, true);
+        assigned[seedA] = true;
+        assigned[seedB] = true;
+
+        for (int remaining = total - 2; remaining > 0; remaining--) {
+            if (node.count + remaining <= MIN_ENTRIES || sibling.count + remaining <= MIN_ENTRIES) {
+                Node target = node.count + remaining <= MIN_ENTRIES ? node : sibling;
+                int[] bounds = target == node ? boundsA : boundsB;
+                for (int e = 0; e < total; e++) {
+                    if (!assigned[e]) {
+                        assigned[e] = true;
+                        assign(target, bounds, boxes, entries, e, false);
+                    }
+                }
+                break;
+            }
+            // Next: the entry with the strongest preference for one group
+            int next = -1;
+            long nextGrowthA = 0;
+            long nextGrowthB = 0;
+            long strongest = -1;
+            for (int e = 0; e < total; e++) {
+                if (assigned[e]) {
+                    continue;
+                }
+                long growthA = growth(boundsA, boxes, e);
+                long growthB = growth(boundsB, boxes, e);
+                long preference = Math.abs(growthA - growthB);
+                if (preference > strongest) {
+                    strongest = preference;
+                    next = e;
+                    nextGrowthA = growthA;
+                    nextGrowthB = growthB;
+                }
+            }
+            boolean toA;
+            if (nextGrowthA != nextGrowthB) {
+                toA = nextGrowthA < nextGrowthB;
+            } else {
+                long areaA = area(boundsA[0], boundsA[1], boundsA[2], boundsA[3]);
+                long areaB = area(boundsB[0], boundsB[1], boundsB[2], boundsB[3]);
+                toA = areaA != areaB ? areaA < areaB : node.count <= sibling.count;
+            }
+            assigned[next] = true;
+            assign(toA ? node : sibling, toA ? boundsA : boundsB, boxes, entries, next, false);
+        }
+        return sibling;
+    }
+
+    private static void assign(Node target, int[] bounds, int[] boxes, Object[] entries, int e, boolean first) {
+        int i = 4 * e;
+        target.add(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3], entries[e]);
+        if (first) {
+            System.arraycopy(boxes, i, bounds, 0, 4);
+        } else {
+            bounds[0] = Math.min(bounds[0], boxes[i]);
+            bounds[1] = Math.min(bounds[1], boxes[i + 1]);
+            bounds[2] = Math.max(bounds[2], boxes[i + 2]);
+            bounds[3] = Math.max(bounds[3], boxes[i + 3]);
+        }
+    }
+
+    private static boolean remove(Node node, int firstRow, int firstColumn, int lastRow, int lastColumn,
+                                  Object value, List<Node> orphans) {
+        if (node.leaf) {
+            for (int index = 0; index < node.count; index++) {
+                if (node.equals(index, firstRow, firstColumn, lastRow, lastColumn)
+                        && Objects.equals(node.entries[index], value)) {
+                    node.removeAt(index);
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int index = 0; index < node.count; index++) {
+            if (!node.contains(index, firstRow, firstColumn, lastRow, lastColumn)) {
+                continue;
+            }
+            Node child = (Node) node.entries[index];
+            if (remove(child, firstRow, firstColumn, lastRow, lastColumn, value, orphans)) {
+                if (child.count < MIN_ENTRIES) {
+                    node.removeAt(index);
+                    orphans.add(child);
+                } else {
+                    node.updateBox(index);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void reinsert(Node orphan) {
+        for (int index = 0; index < orphan.count; index++) {
+            if (orphan.leaf) {
+                int i = 4 * index;
+                insertEntry(orphan.boxes[i], orphan.boxes[i + 1], orphan.boxes[i + 2], orphan.boxes[i + 3],
+                        orphan.entries[index]);
+            } else {
+                reinsert((Node) orphan.entries[index]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void search(Node node, int firstRow, int firstColumn, int lastRow, int lastColumn,
+                                   Consumer<? super T> action) {
+        for (int index = 0; index < node.count; index++) {
+            if (node.intersects(index, firstRow, firstColumn, lastRow, lastColumn)) {
+                if (node.leaf) {
+                    action.accept((T) node.entries[index]);
+                } else {
+                    search((Node) node.entries[index], firstRow, firstColumn, lastRow, lastColumn, action);
+                }
+            }
+        }
+    }
+
+    private static long growth(int[] bounds, int[] boxes, int e) {
+        int i = 4 * e;
+        return area(Math.min(bounds[0], boxes[i]), Math.min(bounds[1], boxes[i + 1]),
+                Math.max(bounds[2], boxes[i + 2]), Math.max(bounds[3], boxes[i + 3]))
+                - area(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    private static long area(int[] boxes, int e) {
+        int i = 4 * e;
+        return area(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]);
+    }
+
+    private static long area(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        return ((long) lastRow - firstRow + 1) * ((long) lastColumn - firstColumn + 1);
+    }
+}
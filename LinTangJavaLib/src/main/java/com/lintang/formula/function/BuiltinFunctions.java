@@ -0,0 +1,149 @@
+package com.lintang.formula.function;
+
+import com.lintang.formula.cell.CellSource;
+
+import java.util.Map;
+
+/**
+ * The standard functions. Range arguments go through {@link RangeAggregates}; scalar arguments
+ * are evaluated as single values.
+ */
+final class BuiltinFunctions {
+
+    private BuiltinFunctions() {
+    }
+
+    static void registerAll(Map<String, FormulaFunction> functions) {
+        functions.put("SUM", new Sum());
+        functions.put("AVERAGE", new Average());
+        functions.put("MIN", new Extreme("MIN", false));
+        functions.put("MAX", new Extreme("MAX", true));
+        functions.put("COUNT", new Count());
+        functions.put("SUMPRODUCT", new SumProduct());
+    }
+
+    private static void requireArguments(String name, FunctionArgument[] arguments) {
+        if (arguments.length == 0) {
+            throw new IllegalArgumentException(name + " requires at least one argument");
+        }
+    }
+
+    private static double sum(CellSource source, FunctionArgument[] arguments) {
+        double sum = 0;
+        for (FunctionArgument argument : arguments) {
+            sum += argument.isRange() ? RangeAggregates.sum(source, argument) : argument.evaluate(source);
+        }
+        return sum;
+    }
+
+    private static long count(CellSource source, FunctionArgument[] arguments) {
+        long count = 0;
+        for (FunctionArgument argument : arguments) {
+            if (argument.isRange()) {
+                count += RangeAggregates.count(source, argument);
+            } else {
+                argument.evaluate(source);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final class Sum implements FormulaFunction {
+        @Override
+        public void validate(FunctionArgument[] arguments) {
+            requireArguments("SUM", arguments);
+        }
+
+        @Override
+        public double apply(CellSource source, FunctionArgument[] arguments) {
+            return sum(source, arguments);
+        }
+    }
+
+    private static final class Average implements FormulaFunction {
+        @Override
+        public void validate(FunctionArgument[] arguments) {
+            requireArguments("AVERAGE", arguments);
+        }
+
+        @Override
+        public double apply(CellSource source, FunctionArgument[] arguments) {
+            long count = count(source, arguments);
+            if (count == 0) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return sum(source, arguments) / count;
+        }
+    }
+
+    private static final class Count implements FormulaFunction {
+        @Override
+        public void validate(FunctionArgument[] arguments) {
+            requireArguments("COUNT", arguments);
+        }
+
+        @Override
+        public double apply(CellSource source, FunctionArgument[] arguments) {
+            return count(source, arguments);
+        }
+    }
+
+    private static final class Extreme implements FormulaFunction {
+        private final String name;
+        private final boolean max;
+
+        Extreme(String name, boolean max) {
+            this.name = name;
+            this.max = max;
+        }
+
+        @Override
+        public void validate(FunctionArgument[] arguments) {
+            requireArguments(name, arguments);
+        }
+
+        @Override
+        public double apply(CellSource source, FunctionArgument[] arguments) {
+            double identity = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            double result = identity;
+            boolean seen = false;
+            for (FunctionArgument argument : arguments) {
+                double value;
+                if (argument.isRange()) {
+                    value = max ? RangeAggregates.max(source, argument) : RangeAggregates.min(source, argument);
+                    // The identity is also what a range of blanks gives, so count only then
+                    seen |= value != identity || RangeAggregates.count(source, argument) > 0;
+                } else {
+                    value = argument.evaluate(source);
+                    seen = true;
+                }
+                result = max ? Math.max(result, value) : Math.min(result, value);
+            }
+            // Like spreadsheets, an aggregate over nothing but blanks is zero
+            return seen ? result : 0;
+        }
+    }
+
+    private static final class SumProduct implements FormulaFunction {
+        @Override
+        public void validate(FunctionArgument[] arguments) {
+            requireArguments("SUMPRODUCT", arguments);
+            FunctionArgument first = arguments[0];
+            for (FunctionArgument argument : arguments) {
+                if (!argument.isRange()) {
+                    throw new IllegalArgumentException("SUMPRODUCT arguments must be cell ranges");
+                }
+                if (argument.getRowCount() != first.getRowCount()
+                        || argument.getColumnCount() != first.getColumnCount()) {
+                    throw new IllegalArgumentException("SUMPRODUCT ranges must have the same dimensions");
+                }
+            }
+        }
+
+        @Override
+        public double apply(CellSource source, FunctionArgument[] arguments) {
+            return RangeAggregates.sumProduct(source, arguments);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.lintang.formula.function;
+
+import com.lintang.formula.cell.CellSource;
+
+/**
+ * A spreadsheet function such as SUM. Implementations must be stateless so that one instance
+ * can serve every call site on every thread.
+ */
+public interface FormulaFunction {
+
+    /**
+     * Checks the arguments of a call site once, before it is evaluated.
+     *
+     * @throws IllegalArgumentException If the arguments are not acceptable for this function
+     */
+    default void validate(FunctionArgument[] arguments) {
+    }
+
+    /**
+     * Evaluates the function.
+     *
+     * @param source Cell values for range and scalar arguments
+     * @param arguments Arguments previously accepted by {@link #validate(FunctionArgument[])}
+     * @return The numeric result
+     */
+    double apply(CellSource source, FunctionArgument[] arguments);
+}
@@ -0,0 +1,76 @@
+package com.lintang.formula.function;
+
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.CompiledFormula;
+
+/**
+ * One argument of a function call, resolved before evaluation: either a rectangular cell range
+ * with zero-based inclusive bounds, or a scalar expression.
+ */
+public final class FunctionArgument {
+    private final CompiledFormula scalar;
+    private final int firstRow;
+    private final int firstColumn;
+    private final int lastRow;
+    private final int lastColumn;
+
+    private FunctionArgument(CompiledFormula scalar, int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        this.scalar = scalar;
+        this.firstRow = firstRow;
+        this.firstColumn = firstColumn;
+        this.lastRow = lastRow;
+        this.lastColumn = lastColumn;
+    }
+
+    public static FunctionArgument scalar(CompiledFormula expression) {
+        return new FunctionArgument(expression, -1, -1, -1, -1);
+    }
+
+    public static FunctionArgument range(int firstRow, int firstColumn, int lastRow, int lastColumn) {
+        if (firstRow < 0 || firstColumn < 0 || lastRow < firstRow || lastColumn < firstColumn) {
+            throw new IllegalArgumentException("Invalid range bounds: rows " + firstRow + "-" + lastRow
+                    + ", columns " + firstColumn + "-" + lastColumn);
+        }
+        return new FunctionArgument(null, firstRow, firstColumn, lastRow, lastColumn);
+    }
+
+    public boolean isRange() {
+        return scalar == null;
+    }
+
+    /**
+     * Evaluates a scalar argument.
+     *
+     * @throws IllegalStateException If this argument is a range
+     */
+    public double evaluate(CellSource source) {
+        if (scalar == null) {
+            throw new IllegalStateException("Range argument has no scalar value");
+        }
+        return scalar.evaluate(source);
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+
+    public int getLastRow() {
+        return lastRow;
+    }
+
+    public int getLastColumn() {
+        return lastColumn;
+    }
+
+    public int getRowCount() {
+        return lastRow - firstRow + 1;
+    }
+
+    public int getColumnCount() {
+        return lastColumn - firstColumn + 1;
+    }
+}
@@ -0,0 +1,72 @@
+package com.lintang.formula.function;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps function names to implementations. Names are case-insensitive.
+ * Compilers look functions up once per call site, so lookups never happen during evaluation
+ * of compiled formulas.
+ */
+public class FunctionRegistry {
+
+    private static final FunctionRegistry STANDARD = new FunctionRegistry(true);
+
+    private final Map<String, FormulaFunction> functions = new ConcurrentHashMap<>();
+    private final boolean frozen;
+
+    /**
+     * Creates a registry holding the standard functions, to which more can be added.
+     */
+    public FunctionRegistry() {
+        this(false);
+    }
+
+    private FunctionRegistry(boolean frozen) {
+        BuiltinFunctions.registerAll(functions);
+        this.frozen = frozen;
+    }
+
+    /**
+     * Returns the shared, read-only registry of built-in functions.
+     */
+    public static FunctionRegistry standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Adds or replaces a function.
+     *
+     * @throws UnsupportedOperationException On the shared standard registry
+     */
+    public FunctionRegistry register(String name, FormulaFunction function) {
+        if (frozen) {
+            throw new UnsupportedOperationException("The standard function registry is read-only");
+        }
+        functions.put(name.toUpperCase(Locale.ROOT), function);
+        return this;
+    }
+
+    /**
+     * Returns the function with the given name.
+     *
+     * @throws UnsupportedOperationException If no such function is registered
+     */
+    public FormulaFunction lookup(String name) {
+        FormulaFunction function = functions.get(name.toUpperCase(Locale.ROOT));
+        if (function == null) {
+            throw new UnsupportedOperationException("Unknown function: " + name);
+        }
+        return function;
+    }
+
+    public boolean contains(String name) {
+        return functions.containsKey(name.toUpperCase(Locale.ROOT));
+    }
+
+    public Set<String> names() {
+        return Set.copyOf(functions.keySet());
+    }
+}
@@ -0,0 +1,28 @@
+package com.lintang.formula.function;
+
+/**
+ * Resolves the Vector API kernels once. {@link VectorKernels} is only loaded after the incubator
+ * module is known to be resolved, so a JVM without it never links against the vector classes.
+ */
+final class KernelSelection {
+
+    static final RangeKernels VECTOR = loadVectorKernels();
+
+    private KernelSelection() {
+    }
+
+    private static RangeKernels loadVectorKernels() {
+        if (!Boolean.parseBoolean(System.getProperty("lintang.formula.vector", "true"))) {
+            return null;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (RangeKernels) Class.forName("com.lintang.formula.function.VectorKernels")
+                    .getDeclaredField("INSTANCE").get(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
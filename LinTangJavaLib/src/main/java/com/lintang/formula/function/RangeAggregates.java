@@ -0,0 +1,212 @@
+package com.lintang.formula.function;
+
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnAggregateIndex;
+import com.lintang.formula.cell.ColumnarCellStore;
+
+/**
+ * Aggregates over rectangular ranges. Blank cells are skipped.
+ *
+ * <p>On a {@link ColumnarCellStore} each column segment is handed to {@link RangeKernels} as a
+ * slice of the backing array, relying on blank rows holding {@code 0.0}: SUM and SUMPRODUCT
+ * need no validity checks at all, COUNT is a popcount over the bitmap, and MIN/MAX take the
+ * kernel path whenever the segment has no blanks. Segments of at least {@value #INDEXED_ROWS}
+ * rows in a column the store has indexed are answered by its {@link ColumnAggregateIndex}
+ * instead, so overlapping ranges over the same column, such as running totals, do not scan it
+ * again. SUM (and so AVERAGE) sums such segments in the index's fixed block order, see
+ * {@link ColumnAggregateIndex#sum(double[], int, int)}, also while the column is not indexed, so
+ * a formula's result does not change when its column becomes indexed. Other sources are read
+ * cell by cell.
+ */
+public final class RangeAggregates {
+
+    private static final RangeKernels KERNELS = RangeKernels.preferred();
+
+    /** Shorter column segments are scanned faster than the index is queried. */
+    static final int INDEXED_ROWS = 1024;
+
+    private RangeAggregates() {
+    }
+
+    public static double sum(CellSource source, FunctionArgument range) {
+        if (source instanceof ColumnarCellStore) {
+            ColumnarCellStore store = (ColumnarCellStore) source;
+            double sum = 0;
+            for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+                double[] values = store.columnValues(column);
+                int from = range.getFirstRow();
+                int to = Math.min(range.getLastRow() + 1, values.length);
+                if (from >= to) {
+                    continue;
+                }
+                ColumnAggregateIndex index = index(store, column, from, to);
+                if (index != null) {
+                    sum += index.sum(from, to);
+                } else if (to - from >= INDEXED_ROWS) {
+                    sum += ColumnAggregateIndex.sum(values, from, to);
+                } else {
+                    sum += KERNELS.sum(values, from, to);
+                }
+            }
+            return sum;
+        }
+        double sum = 0;
+        for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+            for (int row = range.getFirstRow(); row <= range.getLastRow(); row++) {
+                if (!source.isBlank(row, column)) {
+                    sum += source.getNumber(row, column);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of non-blank cells in the range.
+     */
+    public static long count(CellSource source, FunctionArgument range) {
+        if (source instanceof ColumnarCellStore) {
+            ColumnarCellStore store = (ColumnarCellStore) source;
+            long count = 0;
+            for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+                long[] bits = store.columnValidity(column);
+                int to = Math.min(range.getLastRow() + 1, bits.length << 6);
+                ColumnAggregateIndex index = index(store, column, range.getFirstRow(), to);
+                count += index != null
+                        ? index.count(range.getFirstRow(), to)
+                        : countBits(bits, range.getFirstRow(), to);
+            }
+            return count;
+        }
+        long count = 0;
+        for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+            for (int row = range.getFirstRow(); row <= range.getLastRow(); row++) {
+                if (!source.isBlank(row, column)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the smallest non-blank value, or {@link Double#POSITIVE_INFINITY} if there is none.
+     */
+    public static double min(CellSource source, FunctionArgument range) {
+        return extreme(source, range, false);
+    }
+
+    /**
+     * Returns the largest non-blank value, or {@link Double#NEGATIVE_INFINITY} if there is none.
+     */
+    public static double max(CellSource source, FunctionArgument range) {
+        return extreme(source, range, true);
+    }
+
+    /**
+     * Returns the sum of the element-wise products of equally shaped ranges.
+     * Blank cells count as zero.
+     */
+    public static double sumProduct(CellSource source, FunctionArgument[] ranges) {
+        FunctionArgument first = ranges[0];
+        int rows = first.getRowCount();
+        if (ranges.length == 2 && source instanceof ColumnarCellStore) {
+            ColumnarCellStore store = (ColumnarCellStore) source;
+            FunctionArgument second = ranges[1];
+            double sum = 0;
+            for (int offset = 0; offset < first.getColumnCount(); offset++) {
+                double[] left = store.columnValues(first.getFirstColumn() + offset);
+                double[] right = store.columnValues(second.getFirstColumn() + offset);
+                // Rows past the end of either array are blank, so their products are zero
+                int length = Math.min(rows, Math.min(
+                        left.length - first.getFirstRow(), right.length - second.getFirstRow()));
+                if (length > 0) {
+                    sum += KERNELS.dot(left, first.getFirstRow(), right, second.getFirstRow(), length);
+                }
+            }
+            return sum;
+        }
+        double sum = 0;
+        for (int columnOffset = 0; columnOffset < first.getColumnCount(); columnOffset++) {
+            for (int rowOffset = 0; rowOffset < rows; rowOffset++) {
+                double product = 1;
+                for (FunctionArgument range : ranges) {
+                    product *= source.getNumber(range.getFirstRow() + rowOffset, range.getFirstColumn() + columnOffset);
+                }
+                sum += product;
+            }
+        }
+        return sum;
+    }
+
+    private static double extreme(CellSource source, FunctionArgument range, boolean max) {
+        double result = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        if (source instanceof ColumnarCellStore) {
+            ColumnarCellStore store = (ColumnarCellStore) source;
+            for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+                double[] values = store.columnValues(column);
+                long[] bits = store.columnValidity(column);
+                int from = range.getFirstRow();
+                int to = Math.min(range.getLastRow() + 1, values.length);
+                if (from >= to) {
+                    continue;
+                }
+                double segment;
+                ColumnAggregateIndex index = index(store, column, from, to);
+                if (index != null) {
+                    segment = max ? index.max(from, to) : index.min(from, to);
+                } else if (countBits(bits, from, to) == to - from) {
+                    segment = max ? KERNELS.max(values, from, to) : KERNELS.min(values, from, to);
+                } else {
+                    segment = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+                    for (int row = from; row < to; row++) {
+                        if ((bits[row >>> 6] & (1L << row)) != 0) {
+                            segment = max ? Math.max(segment, values[row]) : Math.min(segment, values[row]);
+                        }
+                    }
+                }
+                result = max ? Math.max(result, segment) : Math.min(result, segment);
+            }
+            return result;
+        }
+        for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+            for (int row = range.getFirstRow(); row <= range.getLastRow(); row++) {
+                if (!source.isBlank(row, column)) {
+                    double value = source.getNumber(row, column);
+                    result = max ? Math.max(result, value) : Math.min(result, value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the column if the segment {@code [from, to)} is long enough to use
+     * one, counting the aggregation towards the store's threshold.
+     */
+    private static ColumnAggregateIndex index(ColumnarCellStore store, int column, int from, int to) {
+        return to - from >= INDEXED_ROWS ? store.aggregateIndex(column) : null;
+    }
+
+    /**
+     * Counts the set bits of {@code bits} in the half-open row interval {@code [from, to)}.
+     */
+    static long countBits(long[] bits, int from, int to) {
+        to = Math.min(to, bits.length << 6);
+        if (from >= to) {
+            return 0;
+        }
+        int firstWord = from >>> 6;
+        int lastWord = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (firstWord == lastWord) {
+            return Long.bitCount(bits[firstWord] & firstMask & lastMask);
+        }
+        long count = Long.bitCount(bits[firstWord] & firstMask);
+        for (int word = firstWord + 1; word < lastWord; word++) {
+            count += Long.bitCount(bits[word]);
+        }
+        return count + Long.bitCount(bits[lastWord] & lastMask);
+    }
+}
@@ -0,0 +1,53 @@
+package com.lintang.formula.function;
+
+/**
+ * Tight loops over primitive column segments, used by the range aggregates.
+ * All bounds are half-open: {@code from} inclusive, {@code to} exclusive.
+ *
+ * <p>{@link #preferred()} uses the {@code jdk.incubator.vector} module when the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}, and falls back to unrolled scalar loops
+ * otherwise. Setting the system property {@code lintang.formula.vector=false} forces the scalar
+ * loops.
+ */
+public interface RangeKernels {
+
+    double sum(double[] values, int from, int to);
+
+    /** Returns {@link Double#POSITIVE_INFINITY} for an empty segment. */
+    double min(double[] values, int from, int to);
+
+    /** Returns {@link Double#NEGATIVE_INFINITY} for an empty segment. */
+    double max(double[] values, int from, int to);
+
+    double dot(double[] left, int leftFrom, double[] right, int rightFrom, int length);
+
+    /**
+     * Returns the fastest kernels available in this JVM.
+     */
+    static RangeKernels preferred() {
+        RangeKernels vector = KernelSelection.VECTOR;
+        return vector != null ? vector : ScalarKernels.INSTANCE;
+    }
+
+    static RangeKernels scalar() {
+        return ScalarKernels.INSTANCE;
+    }
+
+    /**
+     * Returns the Vector API kernels.
+     *
+     * @throws UnsupportedOperationException If {@code jdk.incubator.vector} is not available
+     */
+    static RangeKernels vector() {
+        RangeKernels vector = KernelSelection.VECTOR;
+        if (vector == null) {
+            throw new UnsupportedOperationException(
+                    "jdk.incubator.vector is not available; start the JVM with --add-modules jdk.incubator.vector");
+        }
+        return vector;
+    }
+
+    static boolean isVectorAvailable() {
+        return KernelSelection.VECTOR != null;
+    }
+}
@@ -0,0 +1,75 @@
+package com.lintang.formula.function;
+
+/**
+ * Portable kernels. Four independent accumulators break the loop-carried dependency so the JIT
+ * can keep several additions in flight.
+ */
+final class ScalarKernels implements RangeKernels {
+
+    static final ScalarKernels INSTANCE = new ScalarKernels();
+
+    private ScalarKernels() {
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = from;
+        for (int upper = to - 3; i < upper; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < to; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        double m0 = Double.POSITIVE_INFINITY, m1 = Double.POSITIVE_INFINITY;
+        int i = from;
+        for (int upper = to - 1; i < upper; i += 2) {
+            m0 = Math.min(m0, values[i]);
+            m1 = Math.min(m1, values[i + 1]);
+        }
+        for (; i < to; i++) {
+            m0 = Math.min(m0, values[i]);
+        }
+        return Math.min(m0, m1);
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        double m0 = Double.NEGATIVE_INFINITY, m1 = Double.NEGATIVE_INFINITY;
+        int i = from;
+        for (int upper = to - 1; i < upper; i += 2) {
+            m0 = Math.max(m0, values[i]);
+            m1 = Math.max(m1, values[i + 1]);
+        }
+        for (; i < to; i++) {
+            m0 = Math.max(m0, values[i]);
+        }
+        return Math.max(m0, m1);
+    }
+
+    @Override
+    public double dot(double[] left, int leftFrom, double[] right, int rightFrom, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int offset = rightFrom - leftFrom;
+        int to = leftFrom + length;
+        int i = leftFrom;
+        for (int upper = to - 3; i < upper; i += 4) {
+            s0 += left[i] * right[i + offset];
+            s1 += left[i + 1] * right[i + 1 + offset];
+            s2 += left[i + 2] * right[i + 2 + offset];
+            s3 += left[i + 3] * right[i + 3 + offset];
+        }
+        for (; i < to; i++) {
+            s0 += left[i] * right[i + offset];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
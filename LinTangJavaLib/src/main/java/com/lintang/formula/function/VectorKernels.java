@@ -0,0 +1,77 @@
+package com.lintang.formula.function;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels built on the incubating Vector API, using the widest double species of the CPU.
+ * Only loaded through {@link KernelSelection}.
+ */
+final class VectorKernels implements RangeKernels {
+
+    static final VectorKernels INSTANCE = new VectorKernels();
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    @Override
+    public double sum(double[] values, int from, int to) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            acc = acc.add(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double min(double[] values, int from, int to) {
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY);
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            acc = acc.min(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double min = acc.reduceLanes(VectorOperators.MIN);
+        for (; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    @Override
+    public double max(double[] values, int from, int to) {
+        DoubleVector acc = DoubleVector.broadcast(SPECIES, Double.NEGATIVE_INFINITY);
+        int i = from;
+        for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += SPECIES.length()) {
+            acc = acc.max(DoubleVector.fromArray(SPECIES, values, i));
+        }
+        double max = acc.reduceLanes(VectorOperators.MAX);
+        for (; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    @Override
+    public double dot(double[] left, int leftFrom, double[] right, int rightFrom, int length) {
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+            DoubleVector a = DoubleVector.fromArray(SPECIES, left, leftFrom + i);
+            DoubleVector b = DoubleVector.fromArray(SPECIES, right, rightFrom + i);
+            acc = acc.add(a.mul(b));
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += left[leftFrom + i] * right[rightFrom + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,306 @@
+package com.lintang.formula.serial;
+
+import com.lintang.formula.ast.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only archive of parsed formulas in a compact binary format, for warm starts that skip
+ * parsing: decoding a formula is a single pass over a few bytes per node.
+ *
+ * <p>Layout, big-endian:
+ * <pre>
+ * int    magic "LTFA"
+ * short  version (1), short flags (0)
+ * int    string count, then per string: varint UTF-8 length, UTF-8 bytes
+ * int    formula count, then per formula: varint key index, varint length, node bytes
+ * </pre>
+ * Nodes are written in prefix order as a one-byte tag followed by operands: string-table indexes
+ * as varints for operators, function names, references and literals, small non-negative integers
+ * as varints, other numbers as 8-byte doubles, and an argument count for function calls.
+ * Varints are unsigned LEB128. Formulas are written and read with explicit stacks, so chains of
+ * any length round-trip.
+ *
+ * <p>Opening an archive reads the string table and the position of every formula; formulas are
+ * decoded on each {@link #get} call, so callers that need them repeatedly should keep the result.
+ * Archives are thread-safe once opened.
+ */
+public final class FormulaArchive {
+
+    static final int MAGIC = 0x4C54_4641; // "LTFA"
+    static final int VERSION = 1;
+
+    static final byte DOUBLE = 0;
+    static final byte INTEGER = 1;
+    static final byte STRING = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte CELL_REF = 5;
+    static final byte CELL_RANGE = 6;
+    static final byte BINARY = 7;
+    static final byte UNARY = 8;
+    static final byte FUNCTION = 9;
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final String[] keys;
+    private final int[] offsets;
+    private final Map<String, Integer> indexes;
+
+    private FormulaArchive(ByteBuffer buffer) {
+        this.buffer = buffer;
+        ByteBuffer in = buffer.duplicate();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a formula archive");
+            }
+            int version = in.getShort() & 0xFFFF;
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported formula archive version: " + version);
+            }
+            in.getShort();
+            strings = new String[count(in)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[length(in)];
+                in.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            keys = new String[count(in)];
+            offsets = new int[keys.length];
+            indexes = new HashMap<>(keys.length * 4 / 3 + 1);
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = string(readVarInt(in));
+                int length = length(in);
+                offsets[i] = in.position();
+                in.position(offsets[i] + length);
+                indexes.put(keys[i], i);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated or corrupt formula archive", e);
+        }
+    }
+
+    /**
+     * Memory-maps an archive file, such as one cached in {@code /tmp} by an earlier invocation.
+     * Formulas are decoded straight from the mapping; the file may be deleted after opening.
+     */
+    public static FormulaArchive open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new FormulaArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Loads an archive bundled on the classpath, e.g. {@code /formulas.ltfa} packaged with a Lambda.
+     *
+     * @throws IOException If the resource does not exist or cannot be read
+     */
+    public static FormulaArchive openResource(String name) throws IOException {
+        try (InputStream in = FormulaArchive.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Formula archive resource not found: " + name);
+            }
+            return new FormulaArchive(ByteBuffer.wrap(in.readAllBytes()));
+        }
+    }
+
+    /**
+     * Maps {@code cacheFile} if it exists, otherwise loads the bundled resource.
+     */
+    public static FormulaArchive open(Path cacheFile, String fallbackResource) throws IOException {
+        return Files.isRegularFile(cacheFile) ? open(cacheFile) : openResource(fallbackResource);
+    }
+
+    /**
+     * Reads an archive from bytes produced by {@link FormulaArchiveWriter#toByteArray()}.
+     *
+     * @throws IllegalArgumentException If the bytes are not a supported, complete archive
+     */
+    public static FormulaArchive wrap(byte[] bytes) {
+        return new FormulaArchive(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Encodes one formula into a self-contained archive stored under the empty key.
+     */
+    public static byte[] encode(ASTNode formula) {
+        return new FormulaArchiveWriter().add("", formula).toByteArray();
+    }
+
+    /**
+     * Decodes a formula encoded with {@link #encode(ASTNode)}.
+     */
+    public static ASTNode decode(byte[] bytes) {
+        return wrap(bytes).get(0);
+    }
+
+    /**
+     * Returns the number of formulas.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public boolean contains(String key) {
+        return indexes.containsKey(key);
+    }
+
+    /**
+     * Decodes the formula stored at the given position.
+     *
+     * @throws IndexOutOfBoundsException If there is no such formula
+     * @throws IllegalArgumentException If the formula is corrupt
+     */
+    public ASTNode get(int index) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offsets[index]);
+        try {
+            return readNode(in);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupt formula " + keys[index] + " in archive", e);
+        }
+    }
+
+    /**
+     * Decodes the formula stored under the key, or returns null if there is none.
+     */
+    public ASTNode get(String key) {
+        Integer index = indexes.get(key);
+        return index == null ? null : get(index);
+    }
+
+    /**
+     * Decodes every formula, keyed and ordered as written.
+     */
+    public Map<String, ASTNode> toMap() {
+        Map<String, ASTNode> formulas = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+        for (int i = 0; i < keys.length; i++) {
+            formulas.put(keys[i], get(i));
+        }
+        return formulas;
+    }
+
+    /**
+     * Decodes the nodes of one formula. Prefix order is read with an explicit stack of the
+     * operators still waiting for operands and a stack of the operands decoded so far; once an
+     * operator has all of them, it is built and becomes an operand of the one below.
+     */
+    private ASTNode readNode(ByteBuffer in) {
+        byte[] tags = new byte[16];
+        String[] names = new String[16];
+        int[] arities = new int[16];
+        int[] pending = new int[16];
+        ASTNode[] operands = new ASTNode[16];
+        int operators = 0;
+        int top = 0;
+        while (true) {
+            byte tag = in.get();
+            ASTNode node = switch (tag) {
+                case DOUBLE -> new NumberNode(in.getDouble());
+                case INTEGER -> new NumberNode(readVarInt(in));
+                case STRING -> new StringNode(string(readVarInt(in)));
+                case TRUE -> new BooleanNode(true);
+                case FALSE -> new BooleanNode(false);
+                case CELL_REF -> new CellRefNode(string(readVarInt(in)));
+                case CELL_RANGE -> new CellRangeNode(string(readVarInt(in)));
+                case BINARY, UNARY, FUNCTION -> null;
+                default -> throw new IllegalArgumentException("Unknown node tag " + tag + " in formula archive");
+            };
+            if (node == null) {
+                String name = string(readVarInt(in));
+                int arity = tag == BINARY ? 2 : tag == UNARY ? 1 : length(in);
+                if (operators == tags.length) {
+                    tags = Arrays.copyOf(tags, operators * 2);
+                    names = Arrays.copyOf(names, operators * 2);
+                    arities = Arrays.copyOf(arities, operators * 2);
+                    pending = Arrays.copyOf(pending, operators * 2);
+                }
+                tags[operators] = tag;
+                names[operators] = name;
+                arities[operators] = arity;
+                pending[operators] = arity;
+                operators++;
+                if (arity > 0) {
+                    continue;
+                }
+                node = build(tags[--operators], names[operators], operands, top, 0);
+            }
+            while (true) {
+                if (operators == 0) {
+                    return node;
+                }
+                if (top == operands.length) {
+                    operands = Arrays.copyOf(operands, top * 2);
+                }
+                operands[top++] = node;
+                if (--pending[operators - 1] > 0) {
+                    break;
+                }
+                operators--;
+                top -= arities[operators];
+                node = build(tags[operators], names[operators], operands, top, arities[operators]);
+            }
+        }
+    }
+
+    private static ASTNode build(byte tag, String name, ASTNode[] operands, int from, int arity) {
+        return switch (tag) {
+            case BINARY -> new BinaryOpNode(name, operands[from], operands[from + 1]);
+            case UNARY -> new UnaryOpNode(name, operands[from]);
+            default -> new FunctionCallNode(name, new ArrayList<>(Arrays.asList(operands).subList(from, from + arity)));
+        };
+    }
+
+    private String string(int index) {
+        if (index >= strings.length) {
+            throw new IllegalArgumentException("String index " + index + " out of range in formula archive");
+        }
+        return strings[index];
+    }
+
+    private static int count(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Corrupt count in formula archive: " + count);
+        }
+        return count;
+    }
+
+    private static int length(ByteBuffer in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Truncated or corrupt formula archive");
+        }
+        return length;
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in formula archive");
+    }
+}
@@ -0,0 +1,245 @@
+package com.lintang.formula.serial;
+
+import com.lintang.formula.ast.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes parsed formulas into the binary format read by {@link FormulaArchive}.
+ *
+ * <p>Each formula is stored under a key, typically its formula text (so the archive can warm a
+ * {@code FormulaCache}) or the address of the cell holding it. Identifiers, operators, cell
+ * references and string literals are written once to a shared string table and referenced by
+ * index; see {@link FormulaArchive} for the layout. Not thread-safe.
+ */
+public final class FormulaArchiveWriter {
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private final Set<String> keys = new HashSet<>();
+    private final Output body = new Output();
+    private final Output node = new Output();
+    private final Encoder encoder = new Encoder();
+    private int count;
+
+    /**
+     * Appends a formula under the given key.
+     *
+     * @throws IllegalArgumentException If the key was already added
+     */
+    public FormulaArchiveWriter add(String key, ASTNode formula) {
+        if (!keys.add(key)) {
+            throw new IllegalArgumentException("Duplicate formula key: " + key);
+        }
+        node.size = 0;
+        encoder.encode(formula);
+        body.writeVarInt(intern(key));
+        body.writeVarInt(node.size);
+        body.write(node.bytes, 0, node.size);
+        count++;
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the complete archive: header, string table and formulas.
+     */
+    public byte[] toByteArray() {
+        Output out = new Output();
+        out.writeInt(FormulaArchive.MAGIC);
+        out.writeShort(FormulaArchive.VERSION);
+        out.writeShort(0);
+        out.writeInt(stringTable.size());
+        for (String string : stringTable) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            out.writeVarInt(utf8.length);
+            out.write(utf8, 0, utf8.length);
+        }
+        out.writeInt(count);
+        out.write(body.bytes, 0, body.size);
+        return Arrays.copyOf(out.bytes, out.size);
+    }
+
+    /**
+     * Writes the archive to a file, replacing it atomically so that concurrent readers, such as
+     * other invocations sharing {@code /tmp}, never map a partially written file.
+     */
+    public void write(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, toByteArray());
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private int intern(String string) {
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = stringTable.size();
+            strings.put(string, index);
+            stringTable.add(string);
+        }
+        return index;
+    }
+
+    private final class Encoder implements ASTVisitor<Void> {
+
+        /**
+         * Writes a subtree in pre-order, each node before its children, with an explicit stack
+         * onto which children are pushed right to left.
+         */
+        void encode(ASTNode root) {
+            ASTNode[] stack = new ASTNode[16];
+            int size = 1;
+            stack[0] = root;
+            while (size > 0) {
+                ASTNode current = stack[--size];
+                if (current instanceof BinaryOpNode binary) {
+                    node.write(FormulaArchive.BINARY);
+                    node.writeVarInt(intern(binary.getOperator()));
+                } else if (current instanceof UnaryOpNode unary) {
+                    node.write(FormulaArchive.UNARY);
+                    node.writeVarInt(intern(unary.getOperator()));
+                } else if (current instanceof FunctionCallNode function) {
+                    node.write(FormulaArchive.FUNCTION);
+                    node.writeVarInt(intern(function.getFunctionName()));
+                    node.writeVarInt(function.getArguments().size());
+                } else {
+                    current.accept(this);
+                }
+                int childCount = current.getChildCount();
+                if (size + childCount > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + childCount));
+                }
+                for (int i = childCount - 1; i >= 0; i--) {
+                    stack[size++] = current.getChild(i);
+                }
+            }
+        }
+
+        @Override
+        public Void visit(BinaryOpNode binary) {
+            encode(binary);
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryOpNode unary) {
+            encode(unary);
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberNode number) {
+            double value = number.getValue();
+            int integer = (int) value;
+            if (integer == value && integer >= 0 && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+                node.write(FormulaArchive.INTEGER);
+                node.writeVarInt(integer);
+            } else {
+                node.write(FormulaArchive.DOUBLE);
+                node.writeLong(Double.doubleToRawLongBits(value));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(StringNode string) {
+            node.write(FormulaArchive.STRING);
+            node.writeVarInt(intern(string.getValue()));
+            return null;
+        }
+
+        @Override
+        public Void visit(BooleanNode bool) {
+            node.write(bool.getValue() ? FormulaArchive.TRUE : FormulaArchive.FALSE);
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRefNode cell) {
+            node.write(FormulaArchive.CELL_REF);
+            node.writeVarInt(intern(cell.getCellRef()));
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRangeNode range) {
+            node.write(FormulaArchive.CELL_RANGE);
+            node.writeVarInt(intern(range.getCellRange()));
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCallNode function) {
+            encode(function);
+            return null;
+        }
+    }
+
+    /**
+     * Growable big-endian byte buffer.
+     */
+    private static final class Output {
+        byte[] bytes = new byte[256];
+        int size;
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeShort(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeInt(int value) {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        /** Unsigned LEB128: seven bits per byte, high bit set on all but the last. */
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
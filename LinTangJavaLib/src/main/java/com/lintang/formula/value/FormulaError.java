@@ -0,0 +1,36 @@
+package com.lintang.formula.value;
+
+/**
+ * Spreadsheet error values. They are ordinary results of evaluation, passed on by the operators
+ * and functions that receive them, rather than exceptions.
+ */
+public enum FormulaError {
+    /** Division by zero, or an average of no values. */
+    DIV0("#DIV/0!"),
+    /** A reference to a cell outside the sheet. */
+    REF("#REF!"),
+    /** An operand of the wrong type, such as text that is not a number. */
+    VALUE("#VALUE!"),
+    /** A call to an unknown function. */
+    NAME("#NAME?"),
+    /** A result that is not a finite number. */
+    NUM("#NUM!");
+
+    private final String code;
+
+    FormulaError(String code) {
+        this.code = code;
+    }
+
+    /**
+     * Returns the error as a spreadsheet displays it, e.g. {@code #DIV/0!}.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
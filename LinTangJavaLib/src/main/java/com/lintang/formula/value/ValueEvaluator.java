@@ -0,0 +1,525 @@
+package com.lintang.formula.value;
+
+import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.function.FormulaFunction;
+import com.lintang.formula.function.FunctionArgument;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates formulas to typed values: numbers, strings, booleans, blanks and spreadsheet errors.
+ * Unlike {@link com.lintang.formula.visitor.EvaluationVisitor}, expected spreadsheet errors such
+ * as division by zero or a reference outside the sheet become {@link FormulaError} values that
+ * operators and functions pass on, and no exception is thrown for them.
+ *
+ * <p>Values live on a stack of parallel arrays (type tags, numbers, and string or error
+ * references) that is reused across evaluations, and the result is copied into a caller-owned
+ * {@link ValueSlot}, so operators and cell references allocate no value objects. Calls to
+ * registry functions still bind their arguments as {@link FunctionArgument}s on every call, as
+ * {@code EvaluationVisitor} does. Operators are walked with an explicit stack like
+ * {@code EvaluationVisitor}; only nested function calls recurse.
+ *
+ * <p>{@code IF}, {@code IFERROR}, {@code AND}, {@code OR}, {@code NOT} and {@code ISERROR} are
+ * evaluated here, lazily: {@code IF} evaluates only the chosen branch, {@code IFERROR} its
+ * fallback only on error, and {@code AND}/{@code OR} stop at the first argument that decides the
+ * result. Other functions come from the {@link FunctionRegistry}; their scalar arguments are
+ * coerced to numbers, and the first argument that is an error becomes the result of the call.
+ * Unknown functions evaluate to {@code #NAME?}.
+ *
+ * <p>Operands are coerced like in spreadsheets: booleans count as 1 and 0, blanks as 0 (or
+ * FALSE), and strings only if they hold a number (or {@code TRUE}/{@code FALSE}); otherwise
+ * the result is {@code #VALUE!}. Results that are not finite numbers become {@code #NUM!}.
+ *
+ * <p>Instances keep their stacks between calls and are not thread-safe; use one per thread.
+ */
+public final class ValueEvaluator {
+    private final CellSource cellSource;
+    private final FunctionRegistry functions;
+
+    private ASTNode[] nodes = new ASTNode[16];
+    private boolean[] expanded = new boolean[16];
+    private int nodeCount;
+
+    private ValueType[] types = new ValueType[16];
+    private double[] numbers = new double[16];
+    private Object[] references = new Object[16];
+    private int top;
+
+    /** First error among the scalar arguments of the registry function being called. */
+    private FormulaError argumentError;
+
+    public ValueEvaluator() {
+        this(null);
+    }
+
+    public ValueEvaluator(CellSource cellSource) {
+        this(cellSource, FunctionRegistry.standard());
+    }
+
+    public ValueEvaluator(CellSource cellSource, FunctionRegistry functions) {
+        this.cellSource = cellSource;
+        this.functions = functions;
+    }
+
+    /**
+     * Evaluates a formula into the given slot.
+     *
+     * @throws UnsupportedOperationException If the formula reads cells and there is no cell source
+     * @throws IllegalArgumentException If a function rejects the number or kind of its arguments
+     */
+    public void evaluate(ASTNode ast, ValueSlot result) {
+        try {
+            run(ast);
+            int index = top - 1;
+            result.set(types[index], numbers[index], types[index] == ValueType.STRING ? (String) references[index] : null,
+                    types[index] == ValueType.ERROR ? (FormulaError) references[index] : null);
+        } finally {
+            Arrays.fill(references, 0, top, null);
+            top = 0;
+            nodeCount = 0;
+            argumentError = null;
+        }
+    }
+
+    /**
+     * Evaluates a formula into a new slot.
+     */
+    public ValueSlot evaluate(ASTNode ast) {
+        ValueSlot result = new ValueSlot();
+        evaluate(ast, result);
+        return result;
+    }
+
+    /**
+     * Evaluates a subtree and pushes its value. Nested calls for function arguments use the
+     * stacks above the caller's entries and leave them as they were.
+     */
+    private void run(ASTNode root) {
+        int base = nodeCount;
+        pushNode(root);
+        while (nodeCount > base) {
+            int index = --nodeCount;
+            ASTNode node = nodes[index];
+            if (node instanceof BinaryOpNode binary) {
+                if (expanded[index]) {
+                    applyBinary(binary.getOperator());
+                } else {
+                    expanded[index] = true;
+                    nodeCount++;
+                    pushNode(binary.getRight());
+                    pushNode(binary.getLeft());
+                }
+            } else if (node instanceof UnaryOpNode unary) {
+                if (expanded[index]) {
+                    applyUnary(unary.getOperator());
+                } else {
+                    expanded[index] = true;
+                    nodeCount++;
+                    pushNode(unary.getOperand());
+                }
+            } else if (node instanceof FunctionCallNode call) {
+                call(call);
+            } else {
+                pushLeaf(node);
+            }
+        }
+    }
+
+    private void pushNode(ASTNode node) {
+        if (nodeCount == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodeCount * 2);
+            expanded = Arrays.copyOf(expanded, nodeCount * 2);
+        }
+        nodes[nodeCount] = node;
+        expanded[nodeCount] = false;
+        nodeCount++;
+    }
+
+    private void pushLeaf(ASTNode node) {
+        if (node instanceof NumberNode number) {
+            push(ValueType.NUMBER, number.getValue(), null);
+        } else if (node instanceof StringNode string) {
+            push(ValueType.STRING, 0, string.getValue());
+        } else if (node instanceof BooleanNode bool) {
+            push(ValueType.BOOLEAN, bool.getValue() ? 1 : 0, null);
+        } else if (node instanceof CellRefNode cell) {
+            requireCells();
+            if (!cell.isValid()) {
+                push(ValueType.ERROR, 0, FormulaError.REF);
+            } else {
+                pushCell(cell.getRow(), cell.getColumn());
+            }
+        } else if (node instanceof CellRangeNode range) {
+            requireCells();
+            if (!range.isValid()) {
+                push(ValueType.ERROR, 0, FormulaError.REF);
+            } else if (range.getCellCount() != 1) {
+                // Multi-cell ranges are only meaningful as function arguments
+                push(ValueType.ERROR, 0, FormulaError.VALUE);
+            } else {
+                pushCell(range.getFirstRow(), range.getFirstColumn());
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown node type: " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void pushCell(int row, int column) {
+        if (cellSource.isBlank(row, column)) {
+            push(ValueType.BLANK, 0, null);
+        } else {
+            push(ValueType.NUMBER, cellSource.getNumber(row, column), null);
+        }
+    }
+
+    private void push(ValueType type, double number, Object reference) {
+        if (top == types.length) {
+            types = Arrays.copyOf(types, top * 2);
+            numbers = Arrays.copyOf(numbers, top * 2);
+            references = Arrays.copyOf(references, top * 2);
+        }
+        set(top++, type, number, reference);
+    }
+
+    private void set(int index, ValueType type, double number, Object reference) {
+        types[index] = type;
+        numbers[index] = number;
+        references[index] = reference;
+    }
+
+    private void pushError(FormulaError error) {
+        push(ValueType.ERROR, 0, error);
+    }
+
+    private void pushBoolean(boolean value) {
+        push(ValueType.BOOLEAN, value ? 1 : 0, null);
+    }
+
+    private void pop() {
+        references[--top] = null;
+    }
+
+    private void requireCells() {
+        if (cellSource == null) {
+            throw new UnsupportedOperationException("Cell reference evaluation requires actual cell data");
+        }
+    }
+
+    private void applyBinary(String operator) {
+        int right = top - 1;
+        int left = top - 2;
+        if (toNumber(left)) {
+            if (!toNumber(right)) {
+                set(left, ValueType.ERROR, 0, references[right]);
+            } else {
+                double a = numbers[left];
+                double b = numbers[right];
+                switch (operator) {
+                    case "+" -> setNumber(left, a + b);
+                    case "-" -> setNumber(left, a - b);
+                    case "*" -> setNumber(left, a * b);
+                    case "/" -> {
+                        if (b == 0) {
+                            set(left, ValueType.ERROR, 0, FormulaError.DIV0);
+                        } else {
+                            setNumber(left, a / b);
+                        }
+                    }
+                    case "^" -> setNumber(left, Math.pow(a, b));
+                    default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+                }
+            }
+        }
+        pop();
+    }
+
+    private void applyUnary(String operator) {
+        int index = top - 1;
+        switch (operator) {
+            case "+" -> {
+                // Like spreadsheets, unary plus leaves its operand unchanged, even text
+            }
+            case "-" -> {
+                if (toNumber(index)) {
+                    numbers[index] = -numbers[index];
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown unary operator: " + operator);
+        }
+    }
+
+    private void setNumber(int index, double value) {
+        if (Double.isFinite(value)) {
+            set(index, ValueType.NUMBER, value, null);
+        } else {
+            set(index, ValueType.ERROR, 0, FormulaError.NUM);
+        }
+    }
+
+    /**
+     * Converts the value at the index to a number in place.
+     *
+     * @return False if it is, or became, an error
+     */
+    private boolean toNumber(int index) {
+        switch (types[index]) {
+            case NUMBER:
+                return true;
+            case BOOLEAN:
+            case BLANK:
+                types[index] = ValueType.NUMBER;
+                return true;
+            case STRING:
+                String text = ((String) references[index]).strip();
+                if (isNumeric(text)) {
+                    set(index, ValueType.NUMBER, Double.parseDouble(text), null);
+                    return true;
+                }
+                set(index, ValueType.ERROR, 0, FormulaError.VALUE);
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts the value at the index to a boolean in place.
+     *
+     * @return False if it is, or became, an error
+     */
+    private boolean toBoolean(int index) {
+        switch (types[index]) {
+            case BOOLEAN:
+                return true;
+            case NUMBER:
+            case BLANK:
+                set(index, ValueType.BOOLEAN, numbers[index] != 0 ? 1 : 0, null);
+                return true;
+            case STRING:
+                String text = (String) references[index];
+                if (text.equalsIgnoreCase("TRUE") || text.equalsIgnoreCase("FALSE")) {
+                    set(index, ValueType.BOOLEAN, text.equalsIgnoreCase("TRUE") ? 1 : 0, null);
+                    return true;
+                }
+                set(index, ValueType.ERROR, 0, FormulaError.VALUE);
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true for an optionally signed decimal number with an optional exponent, so text is
+     * checked without catching {@link NumberFormatException}. Only ASCII digits count, as in
+     * {@link Double#parseDouble(String)}.
+     */
+    static boolean isNumeric(String text) {
+        int i = 0;
+        int length = text.length();
+        if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void call(FunctionCallNode node) {
+        String name = node.getFunctionName();
+        List<ASTNode> arguments = node.getArguments();
+        if (name.equalsIgnoreCase("IF")) {
+            requireArguments(name, arguments, 2, 3);
+            conditional(arguments);
+        } else if (name.equalsIgnoreCase("IFERROR")) {
+            requireArguments(name, arguments, 2, 2);
+            run(arguments.get(0));
+            if (types[top - 1] == ValueType.ERROR) {
+                pop();
+                run(arguments.get(1));
+            }
+        } else if (name.equalsIgnoreCase("AND") || name.equalsIgnoreCase("OR")) {
+            requireArguments(name, arguments, 1, Integer.MAX_VALUE);
+            logical(arguments, name.equalsIgnoreCase("OR"));
+        } else if (name.equalsIgnoreCase("NOT")) {
+            requireArguments(name, arguments, 1, 1);
+            run(arguments.get(0));
+            if (toBoolean(top - 1)) {
+                numbers[top - 1] = 1 - numbers[top - 1];
+            }
+        } else if (name.equalsIgnoreCase("ISERROR")) {
+            requireArguments(name, arguments, 1, 1);
+            run(arguments.get(0));
+            set(top - 1, ValueType.BOOLEAN, types[top - 1] == ValueType.ERROR ? 1 : 0, null);
+        } else if (functions.contains(name)) {
+            callRegistered(functions.lookup(name), arguments);
+        } else {
+            pushError(FormulaError.NAME);
+        }
+    }
+
+    private static void requireArguments(String name, List<ASTNode> arguments, int min, int max) {
+        if (arguments.size() < min || arguments.size() > max) {
+            String expected = min == max ? String.valueOf(min)
+                    : max == Integer.MAX_VALUE ? "at least " + min : min + " to " + max;
+            throw new IllegalArgumentException(name + " requires " + expected + " argument" + (max == 1 ? "" : "s"));
+        }
+    }
+
+    private void conditional(List<ASTNode> arguments) {
+        run(arguments.get(0));
+        if (!toBoolean(top - 1)) {
+            return;
+        }
+        boolean condition = numbers[top - 1] != 0;
+        pop();
+        if (condition) {
+            run(arguments.get(1));
+        } else if (arguments.size() == 3) {
+            run(arguments.get(2));
+        } else {
+            pushBoolean(false);
+        }
+    }
+
+    /**
+     * Evaluates AND ({@code or} false) or OR up to the first argument that decides the result.
+     * Blank cells are skipped; if nothing but blanks was seen, the result is {@code #VALUE!}.
+     */
+    private void logical(List<ASTNode> arguments, boolean or) {
+        boolean seen = false;
+        for (ASTNode argument : arguments) {
+            if (argument instanceof CellRangeNode range) {
+                requireCells();
+                if (!range.isValid()) {
+                    pushError(FormulaError.REF);
+                    return;
+                }
+                for (int column = range.getFirstColumn(); column <= range.getLastColumn(); column++) {
+                    for (int row = range.getFirstRow(); row <= range.getLastRow(); row++) {
+                        if (!cellSource.isBlank(row, column)) {
+                            seen = true;
+                            if ((cellSource.getNumber(row, column) != 0) == or) {
+                                pushBoolean(or);
+                                return;
+                            }
+                        }
+                    }
+                }
+                continue;
+            }
+            run(argument);
+            if (types[top - 1] == ValueType.BLANK) {
+                pop();
+                continue;
+            }
+            if (!toBoolean(top - 1)) {
+                return;
+            }
+            boolean value = numbers[top - 1] != 0;
+            pop();
+            seen = true;
+            if (value == or) {
+                pushBoolean(or);
+                return;
+            }
+        }
+        if (seen) {
+            pushBoolean(!or);
+        } else {
+            pushError(FormulaError.VALUE);
+        }
+    }
+
+    private void callRegistered(FormulaFunction function, List<ASTNode> argumentNodes) {
+        FunctionArgument[] arguments = new FunctionArgument[argumentNodes.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            ASTNode node = argumentNodes.get(i);
+            if (node instanceof CellRangeNode range) {
+                requireCells();
+                if (!range.isValid()) {
+                    pushError(FormulaError.REF);
+                    return;
+                }
+                arguments[i] = FunctionArgument.range(range.getFirstRow(), range.getFirstColumn(),
+                        range.getLastRow(), range.getLastColumn());
+            } else {
+                arguments[i] = FunctionArgument.scalar(source -> scalarArgument(node));
+            }
+        }
+        function.validate(arguments);
+
+        FormulaError outer = argumentError;
+        argumentError = null;
+        double value;
+        try {
+            value = function.apply(cellSource, arguments);
+        } catch (ArithmeticException e) {
+            // Functions signal division by zero, e.g. an average of nothing, by throwing
+            value = Double.NaN;
+            if (argumentError == null) {
+                argumentError = FormulaError.DIV0;
+            }
+        }
+        FormulaError error = argumentError;
+        argumentError = outer;
+        if (error != null) {
+            pushError(error);
+        } else {
+            push(ValueType.NUMBER, 0, null);
+            setNumber(top - 1, value);
+        }
+    }
+
+    /**
+     * Evaluates a scalar argument for a registry function. An error is remembered for the call
+     * and read as NaN, which the function's result then ignores.
+     */
+    private double scalarArgument(ASTNode node) {
+        run(node);
+        double value;
+        if (toNumber(top - 1)) {
+            value = numbers[top - 1];
+        } else {
+            if (argumentError == null) {
+                argumentError = (FormulaError) references[top - 1];
+            }
+            value = Double.NaN;
+        }
+        pop();
+        return value;
+    }
+}
@@ -0,0 +1,99 @@
+package com.lintang.formula.value;
+
+/**
+ * A mutable holder for one formula value: a type tag with a primitive number, plus a string or
+ * error reference. Callers reuse one slot across evaluations, so producing a result allocates
+ * nothing. Booleans are stored as 1.0 or 0.0.
+ */
+public final class ValueSlot {
+    private ValueType type = ValueType.BLANK;
+    private double number;
+    private String string;
+    private FormulaError error;
+
+    public ValueType getType() {
+        return type;
+    }
+
+    public boolean isError() {
+        return type == ValueType.ERROR;
+    }
+
+    /**
+     * Returns the number; 1.0 or 0.0 for booleans and 0.0 for blanks.
+     *
+     * @throws IllegalStateException If the value is a string or an error
+     */
+    public double getNumber() {
+        if (type == ValueType.STRING || type == ValueType.ERROR) {
+            throw new IllegalStateException("Not a number: " + this);
+        }
+        return number;
+    }
+
+    /**
+     * @throws IllegalStateException If the value is not a boolean
+     */
+    public boolean getBoolean() {
+        if (type != ValueType.BOOLEAN) {
+            throw new IllegalStateException("Not a boolean: " + this);
+        }
+        return number != 0;
+    }
+
+    /**
+     * Returns the string, or null if the value is not a string.
+     */
+    public String getString() {
+        return string;
+    }
+
+    /**
+     * Returns the error, or null if the value is not an error.
+     */
+    public FormulaError getError() {
+        return error;
+    }
+
+    public void setNumber(double value) {
+        set(ValueType.NUMBER, value, null, null);
+    }
+
+    public void setBoolean(boolean value) {
+        set(ValueType.BOOLEAN, value ? 1 : 0, null, null);
+    }
+
+    public void setString(String value) {
+        set(ValueType.STRING, 0, value, null);
+    }
+
+    public void setError(FormulaError value) {
+        set(ValueType.ERROR, 0, null, value);
+    }
+
+    public void setBlank() {
+        set(ValueType.BLANK, 0, null, null);
+    }
+
+    void set(ValueType type, double number, String string, FormulaError error) {
+        this.type = type;
+        this.number = number;
+        this.string = string;
+        this.error = error;
+    }
+
+    /**
+     * Returns the value as a spreadsheet displays it: numbers, {@code TRUE}/{@code FALSE}, the
+     * text itself, the error code, or an empty string for blanks.
+     */
+    @Override
+    public String toString() {
+        return switch (type) {
+            case NUMBER -> String.valueOf(number);
+            case BOOLEAN -> number != 0 ? "TRUE" : "FALSE";
+            case STRING -> string;
+            case ERROR -> error.getCode();
+            case BLANK -> "";
+        };
+    }
+}
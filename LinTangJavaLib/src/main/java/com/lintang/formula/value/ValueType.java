@@ -0,0 +1,14 @@
+package com.lintang.formula.value;
+
+/**
+ * The kinds of value a formula can produce.
+ */
+public enum ValueType {
+    NUMBER,
+    STRING,
+    BOOLEAN,
+    /** A spreadsheet error such as {@code #DIV/0!}; see {@link FormulaError}. */
+    ERROR,
+    /** An empty cell. */
+    BLANK
+}
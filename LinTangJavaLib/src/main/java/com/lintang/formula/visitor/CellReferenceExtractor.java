@@ -1,31 +1,66 @@
 package com.lintang.formula.visitor;
 
 import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.cell.LongHashSet;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Visitor that extracts all cell references from a formula.
  * Demonstrates practical use of the visitor pattern for AST analysis.
+ *
+ * <p>References are collected from the coordinates the nodes parsed when they were created:
+ * single cells as packed addresses (see {@link CellAddress#pack}) and ranges as distinct
+ * {@link CellRectangle}s, so extraction neither parses nor builds strings. Operators and
+ * function calls are walked with a {@link PostOrderIterator}, so trees of any depth are handled
+ * without recursion.
  */
 public class CellReferenceExtractor implements ASTVisitor<Void> {
-    private final Set<String> cellReferences = new HashSet<>();
+    private final LongHashSet cells = new LongHashSet();
+    private final List<CellRectangle> ranges = new ArrayList<>();
+    private final Set<CellRectangle> seenRanges = new HashSet<>();
+    private final Set<String> invalidReferences = new HashSet<>();
 
+    /**
+     * Returns the packed addresses of the single cells referenced, without duplicates.
+     */
+    public LongHashSet getCells() {
+        return cells;
+    }
+
+    /**
+     * Returns the distinct ranges referenced, in the order they first appear.
+     */
+    public List<CellRectangle> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Returns every reference as A1-style text: cells such as {@code B5} and ranges such as
+     * {@code A1:A10}, normalized so the top-left corner comes first. References that are not
+     * valid coordinates are returned as written. The set is built on each call.
+     */
     public Set<String> getCellReferences() {
-        return cellReferences;
+        Set<String> references = new HashSet<>(invalidReferences);
+        cells.forEach(cell -> references.add(CellAddress.toString(cell)));
+        for (CellRectangle range : ranges) {
+            references.add(range.toString());
+        }
+        return references;
     }
 
     @Override
     public Void visit(BinaryOpNode node) {
-        node.getLeft().accept(this);
-        node.getRight().accept(this);
-        return null;
+        return collect(node);
     }
 
     @Override
     public Void visit(UnaryOpNode node) {
-        node.getOperand().accept(this);
-        return null;
+        return collect(node);
     }
 
     @Override
@@ -45,20 +80,40 @@ public class CellReferenceExtractor implements ASTVisitor<Void> {
 
     @Override
     public Void visit(CellRefNode node) {
-        cellReferences.add(node.getCellRef());
+        if (node.isValid()) {
+            cells.add(node.getAddress());
+        } else {
+            invalidReferences.add(node.getCellRef());
+        }
         return null;
     }
 
     @Override
     public Void visit(CellRangeNode node) {
-        cellReferences.add(node.getStartCell() + ":" + node.getEndCell());
+        CellRectangle range = node.getRectangle();
+        if (range == null) {
+            invalidReferences.add(node.getCellRange());
+        } else if (seenRanges.add(range)) {
+            ranges.add(range);
+        }
         return null;
     }
 
     @Override
     public Void visit(FunctionCallNode node) {
-        for (ASTNode arg : node.getArguments()) {
-            arg.accept(this);
+        return collect(node);
+    }
+
+    /**
+     * Records the references among the leaves of a subtree.
+     */
+    private Void collect(ASTNode root) {
+        PostOrderIterator nodes = new PostOrderIterator(root);
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            if (node instanceof CellRefNode || node instanceof CellRangeNode) {
+                node.accept(this);
+            }
         }
         return null;
     }
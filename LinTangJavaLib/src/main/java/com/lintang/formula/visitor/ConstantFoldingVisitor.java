@@ -0,0 +1,211 @@
+package com.lintang.formula.visitor;
+
+import com.lintang.formula.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Visitor that returns a simplified copy of the AST with the same value as the original
+ * under {@link EvaluationVisitor}. Unchanged subtrees are shared with the input.
+ *
+ * <ul>
+ *   <li>Operators on number or boolean literals are folded into a number, unless the result
+ *       would be infinite or NaN, or the operation is a division by zero, which must still
+ *       fail when the formula is evaluated.</li>
+ *   <li>Identities that are exact for every double are removed: {@code x*1}, {@code 1*x},
+ *       {@code x/1}, {@code x-0}, {@code x^1}, {@code +x} and {@code -(-x)}. {@code x+0} is kept
+ *       because it turns {@code -0.0} into {@code 0.0}; {@code x*0} and {@code x^0} are kept
+ *       because they would hide errors raised by {@code x}.</li>
+ *   <li>An identity is not removed when {@code x} is a range or string, whose meaning would
+ *       change without the surrounding operator.</li>
+ * </ul>
+ *
+ * Function calls are never folded, since their implementation is only known at evaluation time.
+ * Trees are walked with an explicit stack rather than by recursion, so chains of any length can
+ * be folded.
+ * {@link #getRemovedNodeCount()} reports how many nodes were removed so far.
+ */
+public class ConstantFoldingVisitor implements ASTVisitor<ASTNode> {
+    private int removedNodes;
+
+    /**
+     * Returns a simplified copy of the AST.
+     */
+    public static ASTNode fold(ASTNode ast) {
+        return ast.accept(new ConstantFoldingVisitor());
+    }
+
+    public int getRemovedNodeCount() {
+        return removedNodes;
+    }
+
+    @Override
+    public ASTNode visit(BinaryOpNode node) {
+        return rewrite(node);
+    }
+
+    @Override
+    public ASTNode visit(UnaryOpNode node) {
+        return rewrite(node);
+    }
+
+    @Override
+    public ASTNode visit(NumberNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(StringNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(BooleanNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(CellRefNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(CellRangeNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(FunctionCallNode node) {
+        return rewrite(node);
+    }
+
+    /**
+     * Folds a subtree in post-order with a {@link PostOrderIterator}; when a node is returned,
+     * its folded children are the topmost entries of the result stack.
+     */
+    private ASTNode rewrite(ASTNode root) {
+        ASTNode[] results = new ASTNode[16];
+        int top = 0;
+        PostOrderIterator nodes = new PostOrderIterator(root);
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            top -= node.getChildCount();
+            ASTNode folded;
+            if (node instanceof BinaryOpNode binary) {
+                folded = foldBinary(binary, results[top], results[top + 1]);
+            } else if (node instanceof UnaryOpNode unary) {
+                folded = foldUnary(unary, results[top]);
+            } else if (node instanceof FunctionCallNode call) {
+                folded = foldCall(call, results, top);
+            } else {
+                folded = node;
+            }
+            if (top == results.length) {
+                results = Arrays.copyOf(results, top * 2);
+            }
+            results[top++] = folded;
+        }
+        return results[0];
+    }
+
+    private ASTNode foldBinary(BinaryOpNode node, ASTNode left, ASTNode right) {
+        String operator = node.getOperator();
+
+        if (isConstant(left) && isConstant(right)) {
+            double folded = apply(operator, valueOf(left), valueOf(right));
+            if (Double.isFinite(folded) && !(operator.equals("/") && valueOf(right) == 0)) {
+                removedNodes += 2;
+                return new NumberNode(folded);
+            }
+        }
+        if (isNumber(right, 1) && isPlainValue(left)
+                && (operator.equals("*") || operator.equals("/") || operator.equals("^"))) {
+            removedNodes += 2;
+            return left;
+        }
+        if (isNumber(right, 0) && isPlainValue(left) && operator.equals("-")) {
+            removedNodes += 2;
+            return left;
+        }
+        if (isNumber(left, 1) && isPlainValue(right) && operator.equals("*")) {
+            removedNodes += 2;
+            return right;
+        }
+        if (left == node.getLeft() && right == node.getRight()) {
+            return node;
+        }
+        return new BinaryOpNode(operator, left, right);
+    }
+
+    private ASTNode foldUnary(UnaryOpNode node, ASTNode operand) {
+        String operator = node.getOperator();
+
+        if (isConstant(operand) && (operator.equals("-") || operator.equals("+"))) {
+            removedNodes += 1;
+            return new NumberNode(operator.equals("-") ? -valueOf(operand) : valueOf(operand));
+        }
+        if (operator.equals("+") && isPlainValue(operand)) {
+            removedNodes += 1;
+            return operand;
+        }
+        if (operator.equals("-") && operand instanceof UnaryOpNode inner
+                && inner.getOperator().equals("-") && isPlainValue(inner.getOperand())) {
+            removedNodes += 2;
+            return inner.getOperand();
+        }
+        if (operand == node.getOperand()) {
+            return node;
+        }
+        return new UnaryOpNode(operator, operand);
+    }
+
+    /**
+     * Rebuilds a call from its folded arguments, the results from {@code from} on.
+     */
+    private static ASTNode foldCall(FunctionCallNode node, ASTNode[] results, int from) {
+        List<ASTNode> arguments = new ArrayList<>(node.getArguments().size());
+        boolean changed = false;
+        for (int i = 0; i < node.getArguments().size(); i++) {
+            ASTNode folded = results[from + i];
+            changed |= folded != node.getArguments().get(i);
+            arguments.add(folded);
+        }
+        return changed ? new FunctionCallNode(node.getFunctionName(), arguments) : node;
+    }
+
+    private static boolean isConstant(ASTNode node) {
+        return node instanceof NumberNode || node instanceof BooleanNode;
+    }
+
+    private static double valueOf(ASTNode node) {
+        if (node instanceof BooleanNode bool) {
+            return bool.getValue() ? 1.0 : 0.0;
+        }
+        return ((NumberNode) node).getValue();
+    }
+
+    private static boolean isNumber(ASTNode node, double value) {
+        return node instanceof NumberNode number && Double.compare(number.getValue(), value) == 0;
+    }
+
+    /**
+     * Returns true if the node evaluates the same with or without an identity operator around it.
+     */
+    private static boolean isPlainValue(ASTNode node) {
+        return !(node instanceof CellRangeNode) && !(node instanceof StringNode);
+    }
+
+    private static double apply(String operator, double left, double right) {
+        return switch (operator) {
+            case "+" -> left + right;
+            case "-" -> left - right;
+            case "*" -> left * right;
+            case "/" -> left / right;
+            case "^" -> Math.pow(left, right);
+            // Not folded, so evaluation reports the unknown operator
+            default -> Double.NaN;
+        };
+    }
+}
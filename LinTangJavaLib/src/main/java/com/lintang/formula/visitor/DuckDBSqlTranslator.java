@@ -0,0 +1,337 @@
+package com.lintang.formula.visitor;
+
+import com.lintang.formula.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Visitor that translates a formula into an equivalent DuckDB SQL expression over the
+ * {@code parquet_data} view, so the formula is evaluated by DuckDB instead of row by row in Java.
+ *
+ * <p>The formula is a template for one row, as with {@code BatchFormula}: a cell reference in the
+ * anchor row (row 1 by default) stands for that column of the current Parquet row, and column
+ * letters map to Parquet columns by position ({@code A} is the first mapped name). Single-column
+ * ranges are allowed inside SUM, AVERAGE, COUNT, MIN, MAX and SUMPRODUCT:
+ * <ul>
+ *   <li>A range from the anchor row down to row {@value #WHOLE_COLUMN_ROWS}, e.g.
+ *       {@code A1:A1048576}, is the spreadsheet spelling of a whole column and stands for the
+ *       whole Parquet column. It becomes a SQL aggregate, or a window aggregate
+ *       ({@code OVER ()}) when the formula also reads the current row, so every row still gets a
+ *       value.</li>
+ *   <li>Any other range keeps its bounds relative to the current row, as when the template is
+ *       filled down: {@code SUM(A1:A3)} sums the current row and the next two. It becomes a
+ *       window aggregate over {@code ROWS BETWEEN ...}, ordered by the file's
+ *       {@value #ROW_ORDER} column. Near the first and last rows the frame is cut off, as if the
+ *       rows outside the file were blank.</li>
+ * </ul>
+ *
+ * <p>Semantics follow the Java evaluator: columns are read as {@code DOUBLE}, blank (NULL) cells
+ * count as 0 in arithmetic and are skipped by aggregates, and division by zero yields NULL where
+ * Java would report an error. Formulas that have no faithful SQL equivalent are rejected with
+ * an {@link UnsupportedOperationException} explaining why.
+ */
+public class DuckDBSqlTranslator implements ASTVisitor<String> {
+
+    /** The view {@code DuckDBUtils.executeQuery} creates over the Parquet file. */
+    public static final String TABLE = "parquet_data";
+
+    /** Row number column that {@code read_parquet(..., file_row_number = true)} adds. */
+    public static final String ROW_ORDER = "file_row_number";
+
+    /** Number of rows in a spreadsheet column; a range ending here reaches the end of the column. */
+    public static final int WHOLE_COLUMN_ROWS = 1_048_576;
+
+    private final List<String> columns;
+    private final int anchorRow;
+    private boolean window;
+    private boolean framed;
+
+    /**
+     * Creates a translator whose row-1 references map to the given Parquet columns.
+     *
+     * @param columns Parquet column names in column-letter order: A, B, C, ...
+     */
+    public DuckDBSqlTranslator(List<String> columns) {
+        this(columns, 0);
+    }
+
+    /**
+     * Creates a translator for templates written for another row.
+     *
+     * @param columns   Parquet column names in column-letter order
+     * @param anchorRow Zero-based row whose references map to the current Parquet row
+     */
+    public DuckDBSqlTranslator(List<String> columns, int anchorRow) {
+        if (anchorRow < 0) {
+            throw new IllegalArgumentException("Negative anchor row: " + anchorRow);
+        }
+        this.columns = List.copyOf(columns);
+        this.anchorRow = anchorRow;
+    }
+
+    /**
+     * Translates the formula into a SQL expression.
+     *
+     * @throws UnsupportedOperationException If the formula cannot be expressed in SQL; the
+     *                                       message names the offending part
+     */
+    public String translate(ASTNode ast) {
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+        framed = extractor.getRanges().stream().anyMatch(range -> !isWholeColumn(range.getFirstRow(), range.getLastRow()));
+        window = framed || !extractor.getCells().isEmpty() && !extractor.getRanges().isEmpty();
+        return ast.accept(this);
+    }
+
+    /**
+     * Returns true if the translated expression collapses the table into a single row, i.e.
+     * the formula only aggregates whole columns and never reads the current row.
+     */
+    public boolean isAggregate(ASTNode ast) {
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+        return extractor.getCells().isEmpty() && !extractor.getRanges().isEmpty()
+                && extractor.getRanges().stream().allMatch(range -> isWholeColumn(range.getFirstRow(), range.getLastRow()));
+    }
+
+    /**
+     * Builds a query selecting the translated formula from {@link #TABLE} under the given alias.
+     * Formulas with relative ranges are ordered by {@link #ROW_ORDER}, which the view must
+     * provide.
+     *
+     * @throws UnsupportedOperationException If the formula cannot be expressed in SQL
+     */
+    public String toQuery(ASTNode ast, String alias) {
+        String expression = translate(ast);
+        return "SELECT " + expression + " AS " + quote(alias) + " FROM " + TABLE
+                + (framed ? " ORDER BY " + ROW_ORDER : "");
+    }
+
+    /**
+     * Quotes a SQL identifier, doubling embedded quotes.
+     */
+    public static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    @Override
+    public String visit(BinaryOpNode node) {
+        return translateOperators(node);
+    }
+
+    @Override
+    public String visit(UnaryOpNode node) {
+        return translateOperators(node);
+    }
+
+    /**
+     * Translates the operators of a subtree in post-order with a {@link PostOrderIterator}; when
+     * an operator is returned, the SQL of its operands is on top of the result stack. Function
+     * calls are translated whole.
+     */
+    private String translateOperators(ASTNode root) {
+        String[] results = new String[16];
+        int top = 0;
+        PostOrderIterator nodes = new PostOrderIterator(root, node -> !(node instanceof FunctionCallNode));
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            String sql;
+            if (node instanceof BinaryOpNode binary) {
+                String right = results[--top];
+                String left = results[--top];
+                sql = switch (binary.getOperator()) {
+                    case "+", "-", "*" -> "(" + left + " " + binary.getOperator() + " " + right + ")";
+                    case "/" -> "(" + left + " / NULLIF(" + right + ", 0))";
+                    case "^" -> "POWER(" + left + ", " + right + ")";
+                    default -> throw new IllegalArgumentException("Unknown operator: " + binary.getOperator());
+                };
+            } else if (node instanceof UnaryOpNode unary) {
+                String operand = results[--top];
+                sql = switch (unary.getOperator()) {
+                    case "+" -> operand;
+                    // the space keeps "- -1.0" from becoming a "--" comment
+                    case "-" -> "(- " + operand + ")";
+                    default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                };
+            } else {
+                sql = node.accept(this);
+            }
+            if (top == results.length) {
+                results = Arrays.copyOf(results, top * 2);
+            }
+            results[top++] = sql;
+        }
+        return results[0];
+    }
+
+    @Override
+    public String visit(NumberNode node) {
+        double value = node.getValue();
+        if (!Double.isFinite(value)) {
+            throw new UnsupportedOperationException("Non-finite number cannot be translated to SQL: " + value);
+        }
+        String literal = String.valueOf(value);
+        return value < 0 ? "(" + literal + ")" : literal;
+    }
+
+    @Override
+    public String visit(StringNode node) {
+        throw new UnsupportedOperationException("String literals cannot be translated to SQL");
+    }
+
+    @Override
+    public String visit(BooleanNode node) {
+        return node.getValue() ? "1.0" : "0.0";
+    }
+
+    @Override
+    public String visit(CellRefNode node) {
+        if (!node.isValid()) {
+            throw new IllegalArgumentException("Invalid cell reference: " + node.getCellRef());
+        }
+        if (node.getRow() != anchorRow) {
+            throw new UnsupportedOperationException("Cell " + node.getCellRef() + " is not in row " + (anchorRow + 1)
+                    + "; only the current Parquet row can be referenced");
+        }
+        return "COALESCE(" + column(node.getColumn(), node.getCellRef()) + ", 0)";
+    }
+
+    @Override
+    public String visit(CellRangeNode node) {
+        throw new UnsupportedOperationException("Range " + node.getCellRange()
+                + " can only be translated as an argument of SUM, AVERAGE, COUNT, MIN, MAX or SUMPRODUCT");
+    }
+
+    @Override
+    public String visit(FunctionCallNode node) {
+        String name = node.getFunctionName().toUpperCase(Locale.ROOT);
+        List<ASTNode> arguments = node.getArguments();
+        if (!List.of("SUM", "AVERAGE", "COUNT", "MIN", "MAX", "SUMPRODUCT").contains(name)) {
+            throw new UnsupportedOperationException("Function " + node.getFunctionName() + " has no SQL translation");
+        }
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException(name + " requires at least one argument");
+        }
+        return switch (name) {
+            case "SUM" -> join(parts(arguments, "SUM", true), " + ");
+            case "COUNT" -> join(counts(arguments), " + ");
+            case "AVERAGE" -> average(arguments);
+            case "MIN" -> "COALESCE(" + call("LEAST", parts(arguments, "MIN", false)) + ", 0)";
+            case "MAX" -> "COALESCE(" + call("GREATEST", parts(arguments, "MAX", false)) + ", 0)";
+            default -> sumProduct(arguments);
+        };
+    }
+
+    private String average(List<ASTNode> arguments) {
+        if (arguments.size() == 1 && arguments.get(0) instanceof CellRangeNode range) {
+            return aggregate("AVG", rangeColumn(range), range);
+        }
+        return "(" + join(parts(arguments, "SUM", true), " + ")
+                + " / NULLIF(" + join(counts(arguments), " + ") + ", 0))";
+    }
+
+    private String sumProduct(List<ASTNode> arguments) {
+        List<String> factors = new ArrayList<>();
+        for (ASTNode argument : arguments) {
+            if (!(argument instanceof CellRangeNode range)) {
+                throw new IllegalArgumentException("SUMPRODUCT arguments must be cell ranges");
+            }
+            String factor = rangeColumn(range);
+            CellRangeNode first = (CellRangeNode) arguments.get(0);
+            if (range.getLastRow() - range.getFirstRow() != first.getLastRow() - first.getFirstRow()) {
+                throw new IllegalArgumentException("SUMPRODUCT ranges must have the same dimensions");
+            }
+            if (range.getFirstRow() != first.getFirstRow()) {
+                throw new UnsupportedOperationException("SUMPRODUCT ranges " + first.getCellRange() + " and "
+                        + range.getCellRange() + " start in different rows; only ranges over the same rows"
+                        + " multiply values of the same Parquet row");
+            }
+            factors.add(factor);
+        }
+        return "COALESCE(" + aggregate("SUM", join(factors, " * "), (CellRangeNode) arguments.get(0)) + ", 0)";
+    }
+
+    /**
+     * Translates each argument: ranges become the given aggregate, scalars are translated as is.
+     */
+    private List<String> parts(List<ASTNode> arguments, String aggregate, boolean blankAsZero) {
+        List<String> parts = new ArrayList<>(arguments.size());
+        for (ASTNode argument : arguments) {
+            if (argument instanceof CellRangeNode range) {
+                String value = aggregate(aggregate, rangeColumn(range), range);
+                parts.add(blankAsZero ? "COALESCE(" + value + ", 0)" : value);
+            } else {
+                parts.add(argument.accept(this));
+            }
+        }
+        return parts;
+    }
+
+    private List<String> counts(List<ASTNode> arguments) {
+        List<String> counts = new ArrayList<>(arguments.size());
+        for (ASTNode argument : arguments) {
+            if (argument instanceof CellRangeNode range) {
+                counts.add(aggregate("COUNT", rangeColumn(range), range));
+            } else {
+                argument.accept(this);
+                counts.add("1");
+            }
+        }
+        return counts;
+    }
+
+    private String rangeColumn(CellRangeNode range) {
+        String text = range.getCellRange();
+        if (!range.isValid()) {
+            throw new IllegalArgumentException("Invalid cell range: " + text);
+        }
+        if (range.getFirstColumn() != range.getLastColumn()) {
+            throw new UnsupportedOperationException("Range " + text
+                    + " spans several columns; only single-column ranges map to a Parquet column");
+        }
+        return column(range.getFirstColumn(), text);
+    }
+
+    private String column(int column, String reference) {
+        if (column >= columns.size()) {
+            throw new UnsupportedOperationException("Column " + reference.replaceAll("[0-9:].*", "")
+                    + " of " + reference + " is not mapped to a Parquet column");
+        }
+        return "CAST(" + quote(columns.get(column)) + " AS DOUBLE)";
+    }
+
+    /**
+     * Aggregates the expression over the rows the range stands for: the whole column, or a frame
+     * relative to the current row.
+     */
+    private String aggregate(String function, String expression, CellRangeNode range) {
+        String call = function + "(" + expression + ")";
+        if (isWholeColumn(range.getFirstRow(), range.getLastRow())) {
+            return call + (window ? " OVER ()" : "");
+        }
+        return call + " OVER (ORDER BY " + ROW_ORDER + " ROWS BETWEEN " + frameBound(range.getFirstRow() - anchorRow)
+                + " AND " + frameBound(range.getLastRow() - anchorRow) + ")";
+    }
+
+    private boolean isWholeColumn(int firstRow, int lastRow) {
+        return firstRow == anchorRow && lastRow == WHOLE_COLUMN_ROWS - 1;
+    }
+
+    private static String frameBound(int offset) {
+        if (offset == 0) {
+            return "CURRENT ROW";
+        }
+        return offset < 0 ? -offset + " PRECEDING" : offset + " FOLLOWING";
+    }
+
+    private static String call(String function, List<String> arguments) {
+        return arguments.size() == 1 ? arguments.get(0) : function + "(" + String.join(", ", arguments) + ")";
+    }
+
+    private static String join(List<String> parts, String separator) {
+        return parts.size() == 1 ? parts.get(0) : "(" + String.join(separator, parts) + ")";
+    }
+}
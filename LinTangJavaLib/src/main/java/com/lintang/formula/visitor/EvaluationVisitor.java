@@ -1,41 +1,52 @@
 package com.lintang.formula.visitor;
 
 import com.lintang.formula.ast.*;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.function.FormulaFunction;
+import com.lintang.formula.function.FunctionArgument;
+import com.lintang.formula.function.FunctionRegistry;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Visitor that evaluates the formula AST (simple evaluation without actual cell values).
+ * Visitor that evaluates the formula AST.
+ * Cell references are read from a {@link CellSource}; without one, only constant formulas can be evaluated.
+ * Function calls are looked up in a {@link FunctionRegistry}, the standard one by default.
  * Demonstrates how to implement a custom visitor for AST traversal.
+ * For strings, blanks and spreadsheet error values, use {@link com.lintang.formula.value.ValueEvaluator}.
+ *
+ * <p>Operators are evaluated in post-order with an explicit node stack and a value stack
+ * rather than by recursion, so chains of any length fit on the thread stack. Function calls are
+ * not descended into: their arguments are evaluated when the function asks for them, so only
+ * the nesting of function calls adds to the thread stack.
  */
 public class EvaluationVisitor implements ASTVisitor<Double> {
+    private final CellSource cellSource;
+    private final FunctionRegistry functions;
+
+    public EvaluationVisitor() {
+        this(null);
+    }
+
+    public EvaluationVisitor(CellSource cellSource) {
+        this(cellSource, FunctionRegistry.standard());
+    }
+
+    public EvaluationVisitor(CellSource cellSource, FunctionRegistry functions) {
+        this.cellSource = cellSource;
+        this.functions = functions;
+    }
 
     @Override
     public Double visit(BinaryOpNode node) {
-        double left = node.getLeft().accept(this);
-        double right = node.getRight().accept(this);
-
-        return switch (node.getOperator()) {
-            case "+" -> left + right;
-            case "-" -> left - right;
-            case "*" -> left * right;
-            case "/" -> {
-                if (right == 0) {
-                    throw new ArithmeticException("Division by zero");
-                }
-                yield left / right;
-            }
-            case "^" -> Math.pow(left, right);
-            default -> throw new IllegalArgumentException("Unknown operator: " + node.getOperator());
-        };
+        return evaluate(node);
     }
 
     @Override
     public Double visit(UnaryOpNode node) {
-        double operand = node.getOperand().accept(this);
-        return switch (node.getOperator()) {
-            case "+" -> operand;
-            case "-" -> -operand;
-            default -> throw new IllegalArgumentException("Unknown unary operator: " + node.getOperator());
-        };
+        return evaluate(node);
     }
 
     @Override
@@ -55,16 +66,125 @@ public class EvaluationVisitor implements ASTVisitor<Double> {
 
     @Override
     public Double visit(CellRefNode node) {
-        throw new UnsupportedOperationException("Cell reference evaluation requires actual cell data");
+        if (cellSource == null) {
+            throw new UnsupportedOperationException("Cell reference evaluation requires actual cell data");
+        }
+        if (!node.isValid()) {
+            throw new IllegalArgumentException("Invalid cell reference: " + node.getCellRef());
+        }
+        return cellSource.getNumber(node.getRow(), node.getColumn());
     }
 
+    /**
+     * A range used as a plain value must cover exactly one cell; multi-cell ranges are only
+     * meaningful as function arguments.
+     */
     @Override
     public Double visit(CellRangeNode node) {
-        throw new UnsupportedOperationException("Cell range evaluation requires actual cell data");
+        if (cellSource == null) {
+            throw new UnsupportedOperationException("Cell range evaluation requires actual cell data");
+        }
+        if (!node.isValid()) {
+            throw new IllegalArgumentException("Invalid cell range: " + node.getCellRange());
+        }
+        if (node.getCellCount() != 1) {
+            throw new IllegalArgumentException("Cell range " + node.getCellRange()
+                    + " cannot be used as a single value");
+        }
+        return cellSource.getNumber(node.getFirstRow(), node.getFirstColumn());
     }
 
     @Override
     public Double visit(FunctionCallNode node) {
-        throw new UnsupportedOperationException("Function evaluation not fully implemented");
+        FormulaFunction function = functions.lookup(node.getFunctionName());
+        List<ASTNode> argumentNodes = node.getArguments();
+        FunctionArgument[] arguments = new FunctionArgument[argumentNodes.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = argument(argumentNodes.get(i));
+        }
+        function.validate(arguments);
+        return function.apply(cellSource, arguments);
+    }
+
+    private FunctionArgument argument(ASTNode node) {
+        if (node instanceof CellRangeNode range) {
+            if (cellSource == null) {
+                throw new UnsupportedOperationException("Cell range evaluation requires actual cell data");
+            }
+            if (!range.isValid()) {
+                throw new IllegalArgumentException("Invalid cell range: " + range.getCellRange());
+            }
+            return FunctionArgument.range(range.getFirstRow(), range.getFirstColumn(),
+                    range.getLastRow(), range.getLastColumn());
+        }
+        CompiledFormula scalar = source -> node.accept(this);
+        return FunctionArgument.scalar(scalar);
+    }
+
+    /**
+     * Evaluates a subtree in post-order, left operand before right as with recursion. An operator
+     * is pushed back onto the node stack, marked as expanded, below its operands; when it is
+     * popped again, the values of its operands are on top of the value stack.
+     */
+    private double evaluate(ASTNode root) {
+        ASTNode[] nodes = new ASTNode[16];
+        boolean[] expanded = new boolean[16];
+        double[] values = new double[16];
+        int size = 1;
+        int top = 0;
+        nodes[0] = root;
+        while (size > 0) {
+            ASTNode node = nodes[--size];
+            if (size + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                expanded = Arrays.copyOf(expanded, nodes.length);
+            }
+            if (node instanceof BinaryOpNode binary) {
+                if (expanded[size]) {
+                    double right = values[--top];
+                    values[top - 1] = apply(binary.getOperator(), values[top - 1], right);
+                } else {
+                    expanded[size++] = true;
+                    nodes[size] = binary.getRight();
+                    expanded[size++] = false;
+                    nodes[size] = binary.getLeft();
+                    expanded[size++] = false;
+                }
+            } else if (node instanceof UnaryOpNode unary) {
+                if (expanded[size]) {
+                    values[top - 1] = switch (unary.getOperator()) {
+                        case "+" -> values[top - 1];
+                        case "-" -> -values[top - 1];
+                        default -> throw new IllegalArgumentException("Unknown unary operator: " + unary.getOperator());
+                    };
+                } else {
+                    expanded[size++] = true;
+                    nodes[size] = unary.getOperand();
+                    expanded[size++] = false;
+                }
+            } else {
+                if (top == values.length) {
+                    values = Arrays.copyOf(values, top * 2);
+                }
+                values[top++] = node instanceof NumberNode number ? number.getValue() : node.accept(this);
+            }
+        }
+        return values[0];
+    }
+
+    private static double apply(String operator, double left, double right) {
+        return switch (operator) {
+            case "+" -> left + right;
+            case "-" -> left - right;
+            case "*" -> left * right;
+            case "/" -> {
+                if (right == 0) {
+                    throw new ArithmeticException("Division by zero");
+                }
+                yield left / right;
+            }
+            case "^" -> Math.pow(left, right);
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        };
     }
 }
@@ -0,0 +1,264 @@
+package com.lintang.formula.visitor;
+
+import com.lintang.formula.ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Visitor that returns the canonical form of an AST, so that formulas which differ only in
+ * spelling compare, print and fingerprint the same. Grouping parentheses never reach the AST,
+ * so {@code A1+B1} and {@code (A1)+(B1)} already parse to equal trees; on top of that:
+ *
+ * <ul>
+ *   <li>Function names are upper-cased, as function lookup ignores case.</li>
+ *   <li>Ranges are written top-left to bottom-right, so {@code B10:A1} becomes {@code A1:B10}.</li>
+ *   <li>Unary plus is removed, except in front of a range, where it turns a range argument
+ *       into a scalar one.</li>
+ *   <li>Negated number literals become negative numbers, so {@code -5} is the same whether the
+ *       parser produced a literal or a unary minus.</li>
+ * </ul>
+ *
+ * Operands are never reordered and nothing is folded, so the canonical form evaluates exactly
+ * like the original, including which error is raised first. Trees are rewritten and printed
+ * with explicit stacks, so formulas of any depth are handled without recursion.
+ *
+ * <p>{@link #toR1C1(ASTNode, int, int)} prints the canonical form with references relative to
+ * the cell holding the formula, so a formula filled down or across prints the same in every
+ * cell; {@link FormulaFingerprint} hashes the same forms without building them.
+ */
+public class FormulaCanonicalizer implements ASTVisitor<ASTNode> {
+
+    private static final FormulaCanonicalizer INSTANCE = new FormulaCanonicalizer();
+
+    /**
+     * Returns the canonical form of the AST.
+     */
+    public static ASTNode canonicalize(ASTNode ast) {
+        return ast.accept(INSTANCE);
+    }
+
+    /**
+     * Prints the canonical form with every reference relative to the given zero-based cell, e.g.
+     * {@code (RC[-2] + R[-1]C)} for {@code A2 + C1} in {@code C2}. Invalid references are
+     * printed as written.
+     */
+    public static String toR1C1(ASTNode ast, int anchorRow, int anchorColumn) {
+        StringBuilder out = new StringBuilder();
+        canonicalize(ast).accept(new RelativePrinter(out, anchorRow, anchorColumn));
+        return out.toString();
+    }
+
+    /**
+     * Returns true if a unary plus in front of the node must be kept.
+     */
+    static boolean keepsUnaryPlus(ASTNode operand) {
+        return operand instanceof CellRangeNode;
+    }
+
+    @Override
+    public ASTNode visit(BinaryOpNode node) {
+        return rewrite(node);
+    }
+
+    @Override
+    public ASTNode visit(UnaryOpNode node) {
+        return rewrite(node);
+    }
+
+    private static ASTNode unary(UnaryOpNode node, ASTNode operand) {
+        if (node.getOperator().equals("+") && !keepsUnaryPlus(operand)) {
+            return operand;
+        }
+        if (node.getOperator().equals("-") && operand instanceof NumberNode number) {
+            return new NumberNode(-number.getValue());
+        }
+        return new UnaryOpNode(node.getOperator(), operand);
+    }
+
+    @Override
+    public ASTNode visit(NumberNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(StringNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(BooleanNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(CellRefNode node) {
+        return node;
+    }
+
+    @Override
+    public ASTNode visit(CellRangeNode node) {
+        if (!node.isValid()) {
+            return node;
+        }
+        String normalized = node.getRectangle().toString();
+        return normalized.equals(node.getCellRange()) ? node : new CellRangeNode(normalized);
+    }
+
+    @Override
+    public ASTNode visit(FunctionCallNode node) {
+        return rewrite(node);
+    }
+
+    /**
+     * Rewrites a subtree in post-order with a {@link PostOrderIterator}; when a node is returned,
+     * its canonical children are the topmost entries of the result stack.
+     */
+    private ASTNode rewrite(ASTNode root) {
+        ASTNode[] results = new ASTNode[16];
+        int top = 0;
+        PostOrderIterator nodes = new PostOrderIterator(root);
+        while (nodes.hasNext()) {
+            ASTNode node = nodes.next();
+            top -= node.getChildCount();
+            ASTNode canonical;
+            if (node instanceof BinaryOpNode binary) {
+                canonical = new BinaryOpNode(binary.getOperator(), results[top], results[top + 1]);
+            } else if (node instanceof UnaryOpNode unary) {
+                canonical = unary(unary, results[top]);
+            } else if (node instanceof FunctionCallNode call) {
+                List<ASTNode> arguments = new ArrayList<>(Arrays.asList(results).subList(top, top + call.getChildCount()));
+                canonical = new FunctionCallNode(call.getFunctionName().toUpperCase(Locale.ROOT), arguments);
+            } else {
+                canonical = node.accept(this);
+            }
+            if (top == results.length) {
+                results = Arrays.copyOf(results, top * 2);
+            }
+            results[top++] = canonical;
+        }
+        return results[0];
+    }
+
+    /**
+     * Prints a canonical AST in the style of {@link FormulaStringBuilder} with R1C1 references.
+     */
+    private static final class RelativePrinter implements ASTVisitor<Void> {
+        private final StringBuilder out;
+        private final int anchorRow;
+        private final int anchorColumn;
+
+        RelativePrinter(StringBuilder out, int anchorRow, int anchorColumn) {
+            this.out = out;
+            this.anchorRow = anchorRow;
+            this.anchorColumn = anchorColumn;
+        }
+
+        @Override
+        public Void visit(BinaryOpNode node) {
+            print(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryOpNode node) {
+            print(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberNode node) {
+            out.append(node.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(StringNode node) {
+            out.append('"').append(node.getValue()).append('"');
+            return null;
+        }
+
+        @Override
+        public Void visit(BooleanNode node) {
+            out.append(node.getValue() ? "TRUE" : "FALSE");
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRefNode node) {
+            if (node.isValid()) {
+                reference(node.getRow(), node.getColumn());
+            } else {
+                out.append(node.getCellRef());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRangeNode node) {
+            if (node.isValid()) {
+                reference(node.getFirstRow(), node.getFirstColumn());
+                out.append(':');
+                reference(node.getLastRow(), node.getLastColumn());
+            } else {
+                out.append(node.getCellRange());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCallNode node) {
+            print(node);
+            return null;
+        }
+
+        /**
+         * Prints a subtree with an explicit stack of nodes still to print and the text that
+         * goes between them, pushed in reverse order.
+         */
+        private void print(ASTNode root) {
+            List<Object> stack = new ArrayList<>();
+            stack.add(root);
+            while (!stack.isEmpty()) {
+                Object item = stack.remove(stack.size() - 1);
+                if (item instanceof String text) {
+                    out.append(text);
+                } else if (item instanceof BinaryOpNode binary) {
+                    out.append('(');
+                    stack.add(")");
+                    stack.add(binary.getRight());
+                    stack.add(" " + binary.getOperator() + " ");
+                    stack.add(binary.getLeft());
+                } else if (item instanceof UnaryOpNode unary) {
+                    out.append(unary.getOperator());
+                    stack.add(unary.getOperand());
+                } else if (item instanceof FunctionCallNode call) {
+                    out.append(call.getFunctionName()).append('(');
+                    stack.add(")");
+                    for (int i = call.getChildCount() - 1; i >= 0; i--) {
+                        stack.add(call.getChild(i));
+                        if (i > 0) {
+                            stack.add(", ");
+                        }
+                    }
+                } else {
+                    ((ASTNode) item).accept(this);
+                }
+            }
+        }
+
+        private void reference(int row, int column) {
+            offset('R', row - anchorRow);
+            offset('C', column - anchorColumn);
+        }
+
+        private void offset(char axis, int offset) {
+            out.append(axis);
+            if (offset != 0) {
+                out.append('[').append(offset).append(']');
+            }
+        }
+    }
+}
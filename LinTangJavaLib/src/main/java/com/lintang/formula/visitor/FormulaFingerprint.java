@@ -0,0 +1,303 @@
+package com.lintang.formula.visitor;
+
+import com.lintang.formula.ast.*;
+
+import java.util.Arrays;
+
+/**
+ * 128-bit fingerprint of the canonical form of a formula (see {@link FormulaCanonicalizer}),
+ * for grouping and deduplicating formulas without comparing trees.
+ *
+ * <p>The fingerprint is computed in one pass over the original AST: canonicalization is applied
+ * on the fly and every node is fed to the hash as a few {@code long} words (a kind tag, then
+ * operator characters, number bits, coordinates or text packed four characters per word), so no
+ * intermediate tree or String is built. Tags and lengths make the word sequence unambiguous, so
+ * different canonical forms only collide by chance. The mixing follows MurmurHash3 x64/128; it
+ * is fast and well distributed but not cryptographic. The tree is walked with an explicit stack,
+ * so formulas of any depth can be fingerprinted.
+ *
+ * <p>{@link #of(ASTNode)} hashes references as written, so it identifies the same formula;
+ * {@link #relative(ASTNode, int, int)} hashes them relative to the cell holding the formula,
+ * like {@link FormulaCanonicalizer#toR1C1}, so it identifies a template shared by filled cells.
+ * The two kinds of fingerprint never match each other.
+ */
+public final class FormulaFingerprint {
+    private final long high;
+    private final long low;
+
+    public FormulaFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Fingerprints the formula with absolute references.
+     */
+    public static FormulaFingerprint of(ASTNode ast) {
+        Hasher hasher = new Hasher(false, 0, 0);
+        hasher.hash(ast);
+        return hasher.finish();
+    }
+
+    /**
+     * Fingerprints the formula with references relative to the given zero-based cell.
+     */
+    public static FormulaFingerprint relative(ASTNode ast, int anchorRow, int anchorColumn) {
+        Hasher hasher = new Hasher(true, anchorRow, anchorColumn);
+        hasher.hash(ast);
+        return hasher.finish();
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof FormulaFingerprint other && high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    /**
+     * Returns the fingerprint as 32 hexadecimal digits.
+     */
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * Streams the canonical form of a formula into a MurmurHash3-style 128-bit state.
+     */
+    private static final class Hasher implements ASTVisitor<Void> {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private static final long BINARY = 1;
+        private static final long UNARY = 2;
+        private static final long NUMBER = 3;
+        private static final long STRING = 4;
+        private static final long TRUE = 5;
+        private static final long FALSE = 6;
+        private static final long CELL = 7;
+        private static final long RANGE = 8;
+        private static final long INVALID_REFERENCE = 9;
+        private static final long FUNCTION = 10;
+
+        private final boolean relative;
+        private final int anchorRow;
+        private final int anchorColumn;
+        private long h1;
+        private long h2;
+        private long words;
+
+        Hasher(boolean relative, int anchorRow, int anchorColumn) {
+            this.relative = relative;
+            this.anchorRow = anchorRow;
+            this.anchorColumn = anchorColumn;
+            this.h1 = relative ? 0x5bd1e9955bd1e995L : 0;
+            this.h2 = relative ? 0x27d4eb2f165667c5L : 0;
+        }
+
+        /**
+         * Feeds a subtree in pre-order, each node before its children, with an explicit stack
+         * onto which children are pushed right to left.
+         */
+        void hash(ASTNode root) {
+            ASTNode[] stack = new ASTNode[16];
+            int size = 1;
+            stack[0] = root;
+            // Operand of the last sign fed; a chain of signs below it does not end in a number either
+            ASTNode unsigned = null;
+            while (size > 0) {
+                ASTNode node = stack[--size];
+                int childCount = node.getChildCount();
+                if (node instanceof BinaryOpNode binary) {
+                    word(BINARY);
+                    text(binary.getOperator(), false);
+                } else if (node instanceof UnaryOpNode unary) {
+                    if (node != unsigned && signedNumber(unary)) {
+                        childCount = 0;
+                    } else {
+                        sign(unary);
+                        unsigned = unary.getOperand();
+                    }
+                } else if (node instanceof FunctionCallNode call) {
+                    word(FUNCTION);
+                    text(call.getFunctionName(), true);
+                    word(childCount);
+                } else {
+                    node.accept(this);
+                }
+                if (size + childCount > stack.length) {
+                    stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + childCount));
+                }
+                for (int i = childCount - 1; i >= 0; i--) {
+                    stack[size++] = node.getChild(i);
+                }
+            }
+        }
+
+        /**
+         * Feeds a chain of signs over a number literal as one signed number, which is its
+         * canonical form, and returns true; returns false without feeding anything otherwise.
+         */
+        private boolean signedNumber(UnaryOpNode node) {
+            boolean negate = false;
+            ASTNode operand = node;
+            while (operand instanceof UnaryOpNode unary) {
+                negate ^= unary.getOperator().equals("-");
+                operand = unary.getOperand();
+            }
+            if (operand instanceof NumberNode number) {
+                number(negate ? -number.getValue() : number.getValue());
+                return true;
+            }
+            return false;
+        }
+
+        private void sign(UnaryOpNode node) {
+            if (!node.getOperator().equals("+") || FormulaCanonicalizer.keepsUnaryPlus(node.getOperand())) {
+                word(UNARY);
+                text(node.getOperator(), false);
+            }
+        }
+
+        @Override
+        public Void visit(BinaryOpNode node) {
+            hash(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(UnaryOpNode node) {
+            hash(node);
+            return null;
+        }
+
+        @Override
+        public Void visit(NumberNode node) {
+            number(node.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(StringNode node) {
+            word(STRING);
+            text(node.getValue(), false);
+            return null;
+        }
+
+        @Override
+        public Void visit(BooleanNode node) {
+            word(node.getValue() ? TRUE : FALSE);
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRefNode node) {
+            if (node.isValid()) {
+                word(CELL);
+                cell(node.getRow(), node.getColumn());
+            } else {
+                word(INVALID_REFERENCE);
+                text(node.getCellRef(), false);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(CellRangeNode node) {
+            if (node.isValid()) {
+                word(RANGE);
+                cell(node.getFirstRow(), node.getFirstColumn());
+                cell(node.getLastRow(), node.getLastColumn());
+            } else {
+                word(INVALID_REFERENCE);
+                text(node.getCellRange(), false);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(FunctionCallNode node) {
+            hash(node);
+            return null;
+        }
+
+        private void number(double value) {
+            word(NUMBER);
+            word(Double.doubleToRawLongBits(value));
+        }
+
+        private void cell(int row, int column) {
+            if (relative) {
+                row -= anchorRow;
+                column -= anchorColumn;
+            }
+            word(((long) row << 32) | (column & 0xFFFF_FFFFL));
+        }
+
+        /**
+         * Feeds the length, then the characters four to a word, optionally upper-cased.
+         */
+        private void text(String value, boolean upperCase) {
+            int length = value.length();
+            word(length);
+            long packed = 0;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                packed = (packed << 16) | (upperCase ? Character.toUpperCase(c) : c);
+                if ((i & 3) == 3) {
+                    word(packed);
+                    packed = 0;
+                }
+            }
+            if ((length & 3) != 0) {
+                word(packed);
+            }
+        }
+
+        private void word(long k) {
+            long k1 = Long.rotateLeft(k * C1, 31) * C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            long k2 = Long.rotateLeft(k * C2, 33) * C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+            words++;
+        }
+
+        FormulaFingerprint finish() {
+            long a = h1 ^ words;
+            long b = h2 ^ words;
+            a += b;
+            b += a;
+            a = mix(a);
+            b = mix(b);
+            a += b;
+            b += a;
+            return new FormulaFingerprint(a, b);
+        }
+
+        private static long mix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -2,23 +2,26 @@ package com.lintang.formula.visitor;
 
 import com.lintang.formula.ast.*;
 
+import java.util.Arrays;
+
 /**
  * Visitor that converts an AST back to a formula string (pretty-printing).
  * Demonstrates AST traversal for code generation.
+ *
+ * <p>Operators and function calls are written into one {@link StringBuilder} while walking the
+ * tree with an explicit stack, so deep trees neither recurse nor copy partial strings at every
+ * level. Leaves are printed by their {@code visit} methods.
  */
 public class FormulaStringBuilder implements ASTVisitor<String> {
 
     @Override
     public String visit(BinaryOpNode node) {
-        String left = node.getLeft().accept(this);
-        String right = node.getRight().accept(this);
-        return "(" + left + " " + node.getOperator() + " " + right + ")";
+        return print(node);
     }
 
     @Override
     public String visit(UnaryOpNode node) {
-        String operand = node.getOperand().accept(this);
-        return node.getOperator() + operand;
+        return print(node);
     }
 
     @Override
@@ -43,22 +46,77 @@ public class FormulaStringBuilder implements ASTVisitor<String> {
 
     @Override
     public String visit(CellRangeNode node) {
-        return node.getStartCell() + ":" + node.getEndCell();
+        return node.getCellRange();
     }
 
     @Override
     public String visit(FunctionCallNode node) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(node.getFunctionName()).append("(");
+        return print(node);
+    }
 
-        for (int i = 0; i < node.getArguments().size(); i++) {
-            if (i > 0) {
-                sb.append(", ");
+    /**
+     * Prints a subtree. Each node on the stack remembers how many of its children are done, and
+     * the text around and between children is written as the walk enters, passes and leaves it.
+     */
+    private String print(ASTNode root) {
+        StringBuilder out = new StringBuilder();
+        ASTNode[] nodes = new ASTNode[16];
+        int[] done = new int[16];
+        int size = 1;
+        nodes[0] = root;
+        while (size > 0) {
+            int top = size - 1;
+            ASTNode node = nodes[top];
+            int childCount = node.getChildCount();
+            if (childCount == 0 && !(node instanceof FunctionCallNode)) {
+                out.append(node.accept(this));
+                size = top;
+                continue;
+            }
+            int child = done[top];
+            if (child == 0) {
+                open(node, out);
+            } else if (child < childCount) {
+                separate(node, out);
+            }
+            if (child == childCount) {
+                close(node, out);
+                size = top;
+                continue;
             }
-            sb.append(node.getArguments().get(i).accept(this));
+            done[top]++;
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                done = Arrays.copyOf(done, size * 2);
+            }
+            nodes[size] = node.getChild(child);
+            done[size] = 0;
+            size++;
         }
+        return out.toString();
+    }
 
-        sb.append(")");
-        return sb.toString();
+    private static void open(ASTNode node, StringBuilder out) {
+        if (node instanceof BinaryOpNode) {
+            out.append('(');
+        } else if (node instanceof UnaryOpNode unary) {
+            out.append(unary.getOperator());
+        } else if (node instanceof FunctionCallNode function) {
+            out.append(function.getFunctionName()).append('(');
+        }
+    }
+
+    private static void separate(ASTNode node, StringBuilder out) {
+        if (node instanceof BinaryOpNode binary) {
+            out.append(' ').append(binary.getOperator()).append(' ');
+        } else {
+            out.append(", ");
+        }
+    }
+
+    private static void close(ASTNode node, StringBuilder out) {
+        if (!(node instanceof UnaryOpNode)) {
+            out.append(')');
+        }
     }
 }
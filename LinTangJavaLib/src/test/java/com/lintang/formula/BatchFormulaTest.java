@@ -0,0 +1,130 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.batch.BatchFormula;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for batch evaluation of formula templates over many rows.
+ */
+@DisplayName("Batch Formula Tests")
+class BatchFormulaTest {
+
+    private static final int ROWS = 3000;
+
+    private static ColumnarCellStore data() {
+        Random random = new Random(5);
+        ColumnarCellStore store = ColumnarCellStore.ofColumns(
+                random.doubles(ROWS, -50, 50).toArray(),
+                random.ints(ROWS, -3, 4).asDoubleStream().toArray(),
+                random.doubles(ROWS - 700, 0, 10).toArray());
+        store.clear(17, 0);
+        return store;
+    }
+
+    /**
+     * Reference result: the template interpreted once per row on a row-shifted view.
+     */
+    private static double interpret(ASTNode template, int anchorRow, CellSource data, int row) {
+        int offset = row - anchorRow;
+        CellSource shifted = new CellSource() {
+            @Override
+            public double getNumber(int r, int column) {
+                if (r + offset < 0) {
+                    throw new IllegalArgumentException("Reference above the first row");
+                }
+                return data.getNumber(r + offset, column);
+            }
+
+            @Override
+            public boolean isBlank(int r, int column) {
+                return data.isBlank(r + offset, column);
+            }
+        };
+        try {
+            return template.accept(new EvaluationVisitor(shifted));
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "A1 * B1 + C1",
+        "A1 / B1",
+        "(A1 - 2) ^ 2 - -C1 / 4",
+        "A2 - A1",
+        "A1 / 0 + 1",
+        "(A1 / B1) ^ 0",
+        "SUM(A1:C1) * 2",
+        "AVERAGE(A1:A3) - A2",
+        "MAX(A1, B1, 0) + TRUE",
+        "+A1:A1 * 3"
+    })
+    @DisplayName("Batch results match row-by-row interpretation")
+    void testMatchesInterpreter(String formula) throws Exception {
+        ColumnarCellStore data = data();
+        ASTNode template = FormulaParserUtil.parse(formula);
+
+        double[] result = BatchFormula.compile(template, 0).evaluate(data, 0, ROWS);
+
+        assertThat(result).hasSize(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            assertThat(Double.doubleToLongBits(result[row]))
+                .as("%s at row %d", formula, row)
+                .isEqualTo(Double.doubleToLongBits(interpret(template, 0, data, row)));
+        }
+    }
+
+    @Test
+    @DisplayName("References are relative to the anchor row")
+    void testAnchorRow() throws Exception {
+        ColumnarCellStore data = ColumnarCellStore.ofColumns(new double[] {1, 2, 3, 4, 5});
+        BatchFormula previous = BatchFormula.compile(FormulaParserUtil.parse("A3 - A2"), 2);
+
+        assertThat(previous.evaluate(data, 0, 5)).containsExactly(Double.NaN, 1, 1, 1, 1);
+        assertThat(previous.evaluate(data, 3, 3)).containsExactly(1, 1, -5);
+    }
+
+    @Test
+    @DisplayName("Column arrays can be passed directly")
+    void testColumnArrays() throws Exception {
+        double[] prices = {10, 20, 30};
+        double[] quantities = {1, 2, 3};
+
+        double[] revenue = BatchFormula.compile(FormulaParserUtil.parse("A1 * B1"), 0)
+                .evaluate(new double[][] {prices, quantities}, 3);
+
+        assertThat(revenue).containsExactly(10, 40, 90);
+    }
+
+    @Test
+    @DisplayName("Results can be written into an existing array")
+    void testEvaluateInto() throws Exception {
+        double[] out = new double[2500];
+
+        BatchFormula.compile(FormulaParserUtil.parse("A1 + 1"), 0).evaluateInto(data(), 100, 2400, out, 100);
+
+        assertThat(out[99]).isZero();
+        assertThat(out[100]).isEqualTo(data().getNumber(100, 0) + 1);
+        assertThat(out[2499]).isEqualTo(data().getNumber(2499, 0) + 1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\"text\"", "A1:B2 + 1", "FOO(A1)"})
+    @DisplayName("Unsupported templates are rejected when compiling")
+    void testUnsupported(String formula) {
+        assertThatThrownBy(() -> BatchFormula.compile(FormulaParserUtil.parse(formula), 0))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,107 @@
+package com.lintang.formula;
+
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for parallel bulk parsing.
+ */
+@DisplayName("Bulk Formula Parser Tests")
+class BulkFormulaParserTest {
+
+    @Test
+    @DisplayName("Parallel parse matches sequential parsing in input order")
+    void testMatchesSequentialParse() throws Exception {
+        List<String> formulas = new ArrayList<>();
+        for (int row = 1; row <= 5000; row++) {
+            formulas.add("SUM(A" + row + ":C" + (row + 5) + ") * B" + row + " - " + (row % 7) + " / 2");
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BulkParseResult result = new BulkFormulaParser(FastFormulaParser::parse, pool, 64, 16).parseAll(formulas);
+
+            assertThat(result.size()).isEqualTo(5000);
+            assertThat(result.getErrorCount()).isZero();
+            for (int i = 0; i < formulas.size(); i++) {
+                assertThat(result.getAst(i).accept(new FormulaStringBuilder()))
+                    .isEqualTo(FormulaParserUtil.parse(formulas.get(i)).accept(new FormulaStringBuilder()));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Identical texts are parsed once and share their AST")
+    void testDeduplicates() {
+        AtomicInteger calls = new AtomicInteger();
+        ParseFunction counting = formula -> {
+            calls.incrementAndGet();
+            return FastFormulaParser.parse(formula);
+        };
+        BulkFormulaParser parser = new BulkFormulaParser(counting, ForkJoinPool.commonPool(), 2, 1);
+
+        BulkParseResult result = parser.parseAll(Arrays.asList("A1 + 1", "B2", "A1 + 1", "B2", "A1 + 1"));
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(result.getDistinctCount()).isEqualTo(2);
+        assertThat(result.getAst(4)).isSameAs(result.getAst(0));
+        assertThat(result.getAst(3)).isSameAs(result.getAst(1));
+    }
+
+    @Test
+    @DisplayName("Errors are recorded per formula without failing the batch")
+    void testCollectsErrors() {
+        BulkParseResult result = new BulkFormulaParser()
+            .parseAll(Stream.of("A1 + 1", "A1 +", "SUM(A1:B2)", "A1 +", "(1", null));
+
+        assertThat(result.size()).isEqualTo(6);
+        assertThat(result.getErrorCount()).isEqualTo(4);
+        assertThat(result.getDistinctCount()).isEqualTo(5);
+        assertThat(result.getErrors()).containsOnlyKeys(1, 3, 4, 5);
+        assertThat(result.getError(1)).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("A1 +");
+        assertThat(result.getAst(1)).isNull();
+        assertThat(result.hasError(2)).isFalse();
+        assertThat(result.getAst(2)).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Timings add up and throughput is reported")
+    void testStatistics() {
+        List<String> formulas = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            formulas.add("A" + (i % 100 + 1) + " * 2");
+        }
+
+        BulkParseResult result = new BulkFormulaParser().parseAll(formulas);
+
+        assertThat(result.getDistinctCount()).isEqualTo(100);
+        assertThat(result.getElapsedNanos())
+            .isEqualTo(result.getDedupeNanos() + result.getWarmUpNanos() + result.getParseNanos());
+        assertThat(result.getFormulasPerSecond()).isPositive();
+        assertThat(result.toString()).startsWith("1000 formulas (100 distinct, 0 errors)");
+    }
+
+    @Test
+    @DisplayName("Empty batches and invalid settings")
+    void testEdgeCases() {
+        BulkParseResult empty = new BulkFormulaParser().parseAll(List.of());
+
+        assertThat(empty.size()).isZero();
+        assertThat(empty.getErrors()).isEmpty();
+        assertThatThrownBy(() -> new BulkFormulaParser(FastFormulaParser::parse, ForkJoinPool.commonPool(), 0, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BulkFormulaParser(FastFormulaParser::parse, ForkJoinPool.commonPool(), 1, -1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
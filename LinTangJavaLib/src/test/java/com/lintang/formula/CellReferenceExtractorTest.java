@@ -1,6 +1,8 @@
 package com.lintang.formula;
 
 import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
 import com.lintang.formula.visitor.CellReferenceExtractor;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -142,4 +144,40 @@ class CellReferenceExtractorTest {
             .hasSize(3)
             .containsExactlyInAnyOrder("A1:A10", "B1:B20", "C1:C5");
     }
+
+    @Test
+    @DisplayName("Extract cells as packed addresses")
+    void testExtractPackedCells() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("B5 * C3 + B5");
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+
+        assertThat(extractor.getCells().toSortedArray())
+            .containsExactly(CellAddress.pack(2, 2), CellAddress.pack(4, 1));
+        assertThat(extractor.getRanges()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Extract distinct ranges as normalized rectangles")
+    void testExtractRectangles() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("SUM(B10:A1) + SUM(A1:B10) + COUNT(C1:C5)");
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+
+        assertThat(extractor.getRanges())
+            .containsExactly(new CellRectangle(0, 0, 9, 1), new CellRectangle(0, 2, 4, 2));
+        assertThat(extractor.getCells().isEmpty()).isTrue();
+        assertThat(extractor.getCellReferences()).containsExactlyInAnyOrder("A1:B10", "C1:C5");
+    }
+
+    @Test
+    @DisplayName("Invalid references are kept as text only")
+    void testInvalidReference() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("A0 + A1");
+        CellReferenceExtractor extractor = new CellReferenceExtractor();
+        ast.accept(extractor);
+
+        assertThat(extractor.getCells().size()).isEqualTo(1);
+        assertThat(extractor.getCellReferences()).containsExactlyInAnyOrder("A0", "A1");
+    }
 }
@@ -0,0 +1,138 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.CellRefNode;
+import com.lintang.formula.ast.UnaryOpNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.compile.TieredFormula;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for the closure-compiled evaluation tier.
+ */
+@DisplayName("Closure Compiler Tests")
+class ClosureCompilerTest {
+
+    private static final CellSource CELLS = (row, column) -> (row + 1) * 10.0 + column;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42", "TRUE", "FALSE", "2 + 3 * 4", "(2 + 3) * 4", "10 - 5 - 2", "2 ^ 3 ^ 2", "-2 ^ 2", "+5",
+        "A1 + 1", "A1 - 1", "A1 * 2", "A1 / 4", "A1 ^ 2", "3.5 * A1 + 2.5", "A1 + B2 * C3",
+        "(A1 + B1) * (C1 - D1) / E1", "-A1 ^ 0.5", "A1 * TRUE"
+    })
+    @DisplayName("Closure-compiled formula matches the interpreter")
+    void testClosureMatchesInterpreter(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        double expected = ast.accept(new EvaluationVisitor(CELLS));
+        double actual = ClosureCompiler.compile(ast).evaluate(CELLS);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"A1 / 0", "A1 / (B1 - B1)"})
+    @DisplayName("Division by zero throws like the interpreter")
+    void testDivisionByZero(String formula) throws Exception {
+        CompiledFormula compiled = ClosureCompiler.compile(FormulaParserUtil.parse(formula));
+
+        assertThatThrownBy(() -> compiled.evaluate(CELLS))
+            .isInstanceOf(ArithmeticException.class)
+            .hasMessage("Division by zero");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\"text\"", "FOO(A1)", "A1:B2"})
+    @DisplayName("Unsupported nodes are rejected at compile time")
+    void testUnsupportedNodesRejected(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        assertThatThrownBy(() -> ClosureCompiler.compile(ast))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Tiered formula moves from interpreter to closures to bytecode")
+    void testTierProgression() throws Exception {
+        FormulaCompiler compiler = new FormulaCompiler(2, 5, 100);
+        TieredFormula formula = compiler.prepare(FormulaParserUtil.parse("A1 * 2 + B1"));
+
+        formula.evaluate(CELLS);
+        formula.evaluate(CELLS);
+        assertThat(formula.getTier()).isEqualTo(TieredFormula.Tier.INTERPRETED);
+
+        formula.evaluate(CELLS);
+        assertThat(formula.getTier()).isEqualTo(TieredFormula.Tier.CLOSURE);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(formula.evaluate(CELLS)).isEqualTo(31.0);
+        }
+        assertThat(formula.getTier()).isEqualTo(TieredFormula.Tier.BYTECODE);
+        assertThat(formula.isCompiled()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Formulas nested deeper than the limit stay interpreted")
+    void testDepthLimit() throws Exception {
+        ASTNode deepest = new CellRefNode("A1");
+        for (int i = 1; i < ClosureCompiler.MAX_DEPTH; i++) {
+            deepest = new BinaryOpNode("-", deepest, new CellRefNode("B1"));
+        }
+        ASTNode tooDeep = new UnaryOpNode("-", deepest);
+
+        assertThat(ClosureCompiler.compile(deepest).evaluate(CELLS))
+            .isEqualTo(deepest.accept(new EvaluationVisitor(CELLS)));
+        assertThatThrownBy(() -> ClosureCompiler.compile(tooDeep))
+            .isInstanceOf(UnsupportedOperationException.class)
+            .hasMessageContaining(String.valueOf(ClosureCompiler.MAX_DEPTH));
+
+        TieredFormula formula = new FormulaCompiler(1, 2, 100).prepare(tooDeep);
+        for (int i = 0; i < 4; i++) {
+            assertThat(formula.evaluate(CELLS)).isEqualTo(tooDeep.accept(new EvaluationVisitor(CELLS)));
+        }
+        assertThat(formula.getTier()).isEqualTo(TieredFormula.Tier.INTERPRETED);
+    }
+
+    @Test
+    @DisplayName("Compiler rejects a bytecode threshold below the closure threshold")
+    void testInvalidThresholds() {
+        assertThatThrownBy(() -> new FormulaCompiler(10, 5, 100))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Evaluation does not allocate")
+    void testEvaluationDoesNotAllocate() throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        CompiledFormula formula = ClosureCompiler.compile(FormulaParserUtil.parse("(A1 + B2 * 3) / (C3 - 1) ^ 2 - -D4"));
+        double sink = 0;
+        for (int i = 0; i < 10_000; i++) {
+            sink += formula.evaluate(CELLS);
+        }
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            sink += formula.evaluate(CELLS);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+        assertThat(sink).isFinite();
+        assertThat(allocated).isLessThan(1024);
+    }
+}
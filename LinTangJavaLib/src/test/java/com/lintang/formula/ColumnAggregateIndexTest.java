@@ -0,0 +1,208 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.ColumnAggregateIndex;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for per-column aggregate indexes and their use by range functions.
+ */
+@DisplayName("Column Aggregate Index Tests")
+class ColumnAggregateIndexTest {
+
+    private static final int ROWS = 5000;
+
+    /**
+     * Random doubles in [-1000, 1000) in column A; about a tenth of the rows are blank.
+     */
+    private static ColumnarCellStore randomColumn(Random random) {
+        ColumnarCellStore store = new ColumnarCellStore();
+        for (int row = 0; row < ROWS; row++) {
+            if (random.nextInt(10) != 0) {
+                store.setNumber(row, 0, random.nextDouble() * 2000 - 1000);
+            }
+        }
+        store.setIndexThreshold(1);
+        return store;
+    }
+
+    private static void assertMatchesScan(ColumnarCellStore store, ColumnAggregateIndex index, int from, int to) {
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int row = from; row < to; row++) {
+            if (!store.isBlank(row, 0)) {
+                double value = store.getNumber(row, 0);
+                count++;
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        assertThat(index.sum(from, to)).as("sum [%d, %d)", from, to)
+            .isEqualTo(ColumnAggregateIndex.sum(store.columnValues(0), from, to))
+            .isCloseTo(sum, within(1e-6));
+        assertThat(index.count(from, to)).as("count [%d, %d)", from, to).isEqualTo(count);
+        assertThat(index.min(from, to)).as("min [%d, %d)", from, to).isEqualTo(min);
+        assertThat(index.max(from, to)).as("max [%d, %d)", from, to).isEqualTo(max);
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3})
+    @DisplayName("Queries match a scan of the same rows, before and after updates")
+    void testMatchesScan(long seed) {
+        Random random = new Random(seed);
+        ColumnarCellStore store = randomColumn(random);
+        ColumnAggregateIndex index = store.aggregateIndex(0);
+
+        assertMatchesScan(store, index, 0, ROWS);
+        assertMatchesScan(store, index, 64, 128);
+        assertMatchesScan(store, index, 63, 65);
+        assertMatchesScan(store, index, 10, 10);
+        assertMatchesScan(store, index, 4000, ROWS + 100);
+        for (int i = 0; i < 500; i++) {
+            int row = random.nextInt(ROWS);
+            if (random.nextInt(4) == 0) {
+                store.clear(row, 0);
+            } else {
+                store.setNumber(row, 0, random.nextDouble() * 2000 - 1000);
+            }
+            int from = random.nextInt(ROWS);
+            assertMatchesScan(store, index, from, from + random.nextInt(ROWS - from + 1));
+        }
+        assertThat(store.aggregateIndex(0)).isSameAs(index);
+    }
+
+    @Test
+    @DisplayName("Running totals sum in one order with or without an index, more accurately than a running sum")
+    void testRunningTotals() {
+        ColumnarCellStore store = new ColumnarCellStore();
+        for (int row = 0; row < ROWS; row++) {
+            store.setNumber(row, 0, 0.1);
+        }
+        double[] values = store.columnValues(0);
+        store.setIndexThreshold(1);
+        ColumnAggregateIndex index = store.aggregateIndex(0);
+
+        double running = 0;
+        for (int row = 0; row < ROWS; row++) {
+            running += 0.1;
+            assertThat(index.sum(0, row + 1)).isEqualTo(ColumnAggregateIndex.sum(values, 0, row + 1));
+        }
+        assertThat(Math.abs(index.sum(0, ROWS) - 500)).isLessThan(Math.abs(running - 500));
+    }
+
+    @Test
+    @DisplayName("Infinity and NaN leave the index when their cell changes")
+    void testNonFiniteValues() {
+        ColumnarCellStore store = randomColumn(new Random(4));
+        ColumnAggregateIndex index = store.aggregateIndex(0);
+
+        store.setNumber(700, 0, Double.POSITIVE_INFINITY);
+        store.setNumber(900, 0, Double.NaN);
+        assertThat(index.max(0, 800)).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(index.min(0, ROWS)).isNaN();
+
+        store.setNumber(700, 0, 1);
+        store.clear(900, 0);
+        assertMatchesScan(store, index, 0, ROWS);
+    }
+
+    @Test
+    @DisplayName("Columns are indexed once aggregated as often as the threshold")
+    void testThreshold() throws Exception {
+        ColumnarCellStore store = randomColumn(new Random(5));
+        store.setIndexThreshold(3);
+        store.setNumber(0, 1, 1);
+        EvaluationVisitor visitor = new EvaluationVisitor(store);
+        ASTNode running = FormulaParserUtil.parse("SUM(B1:B10) + MAX(A1:A3000)");
+        ASTNode shortRange = FormulaParserUtil.parse("SUM(B1:B1000)");
+
+        double unindexed = running.accept(visitor);
+        running.accept(visitor);
+        assertThat(store.isIndexed(0)).isFalse();
+        assertThat(running.accept(visitor)).isEqualTo(unindexed);
+        assertThat(store.isIndexed(0)).isTrue();
+
+        for (int i = 0; i < 10; i++) {
+            shortRange.accept(visitor);
+        }
+        assertThat(store.isIndexed(1)).isFalse();
+        assertThat(store.aggregateIndex(7)).isNull();
+    }
+
+    @Test
+    @DisplayName("Growing or replacing a column drops its index until the next aggregation")
+    void testRebuildAfterReallocation() {
+        ColumnarCellStore store = randomColumn(new Random(6));
+        ColumnAggregateIndex index = store.aggregateIndex(0);
+
+        store.setNumber(20_000, 0, 5);
+        assertThat(store.isIndexed(0)).isFalse();
+        ColumnAggregateIndex grown = store.aggregateIndex(0);
+        assertThat(grown).isNotSameAs(index);
+        assertMatchesScan(store, grown, 0, 20_001);
+
+        store.setColumn(0, new double[] {1, 2, 3});
+        assertThat(store.isIndexed(0)).isFalse();
+        assertThat(store.aggregateIndex(0).max(0, 20_001)).isEqualTo(3.0);
+        assertThat(store.aggregateIndex(0).count(0, 20_001)).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Range functions give the same results with and without indexes")
+    void testFormulasMatchUnindexed() throws Exception {
+        ColumnarCellStore indexed = randomColumn(new Random(7));
+        ColumnarCellStore plain = randomColumn(new Random(7));
+        plain.setIndexThreshold(Integer.MAX_VALUE);
+        indexed.setNumber(2500, 1, 10);
+        plain.setNumber(2500, 1, 10);
+
+        for (String formula : new String[] {"SUM(A1:A4000)", "COUNT(A100:B4100)", "MIN(A1:B5000)",
+                "MAX(A17:A2048)", "AVERAGE(A1:A5000)", "SUM(A1:A30)", "SUM(A1:A1000)", "SUM(A1:A1001)",
+                "SUM(A1:A1025)", "SUM(A3:A4999)", "AVERAGE(A70:B4000)"}) {
+            ASTNode ast = FormulaParserUtil.parse(formula);
+            assertThat(ast.accept(new EvaluationVisitor(indexed)))
+                .as(formula)
+                .isEqualTo(ast.accept(new EvaluationVisitor(plain)));
+        }
+        assertThat(indexed.isIndexed(0)).isTrue();
+        assertThat(plain.isIndexed(0)).isFalse();
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {8, 9, 10, 11, 12})
+    @DisplayName("Results over unchanged cells stay the same before and after indexing")
+    void testResultsStableAcrossThreshold(long seed) throws Exception {
+        ColumnarCellStore store = randomColumn(new Random(seed));
+        store.setIndexThreshold(ColumnarCellStore.DEFAULT_INDEX_THRESHOLD);
+        EvaluationVisitor visitor = new EvaluationVisitor(store);
+
+        for (String formula : new String[] {"SUM(A1:A5000)", "AVERAGE(A3:A4999)", "MIN(A1:A5000)",
+                "MAX(A2:A4000)", "COUNT(A1:A5000)"}) {
+            ASTNode ast = FormulaParserUtil.parse(formula);
+            double first = ast.accept(visitor);
+            for (int i = 0; i < 2 * ColumnarCellStore.DEFAULT_INDEX_THRESHOLD; i++) {
+                assertThat(ast.accept(visitor)).as(formula).isEqualTo(first);
+            }
+        }
+        assertThat(store.isIndexed(0)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Thresholds must be positive")
+    void testInvalidThreshold() {
+        assertThatThrownBy(() -> new ColumnarCellStore().setIndexThreshold(0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,201 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.CellRangeNode;
+import com.lintang.formula.ast.CellRefNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellConsumer;
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.BytecodeCompiler;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the columnar cell store and cell evaluation.
+ */
+@DisplayName("Columnar Cell Store Tests")
+class ColumnarCellStoreTest {
+
+    @Test
+    @DisplayName("Stored values are read back and unset cells are blank")
+    void testSetAndGet() {
+        ColumnarCellStore store = new ColumnarCellStore();
+
+        store.setNumber(0, 0, 1.5);
+        store.setNumber(9, 2, -4.0);
+
+        assertThat(store.getNumber(0, 0)).isEqualTo(1.5);
+        assertThat(store.getNumber(9, 2)).isEqualTo(-4.0);
+        assertThat(store.isBlank(0, 0)).isFalse();
+        assertThat(store.isBlank(1, 0)).isTrue();
+        assertThat(store.isBlank(5, 1)).isTrue();
+        assertThat(store.isBlank(100, 50)).isTrue();
+        assertThat(store.getNumber(100, 50)).isZero();
+        assertThat(store.getRowCount()).isEqualTo(10);
+        assertThat(store.getColumnCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Zero is a value, not a blank")
+    void testZeroIsNotBlank() {
+        ColumnarCellStore store = new ColumnarCellStore();
+
+        store.setNumber(3, 0, 0.0);
+
+        assertThat(store.isBlank(3, 0)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Cleared cell becomes blank")
+    void testClear() {
+        ColumnarCellStore store = new ColumnarCellStore(4, 1);
+        store.setNumber(2, 0, 7.0);
+
+        store.clear(2, 0);
+        store.clear(1000, 1000);
+
+        assertThat(store.isBlank(2, 0)).isTrue();
+        assertThat(store.getNumber(2, 0)).isZero();
+    }
+
+    @Test
+    @DisplayName("Columns grow past their initial capacity")
+    void testGrowth() {
+        ColumnarCellStore store = new ColumnarCellStore(2, 1);
+
+        for (int row = 0; row < 10_000; row += 3) {
+            store.setNumber(row, 0, row);
+        }
+
+        assertThat(store.getNumber(9_999, 0)).isEqualTo(9_999.0);
+        assertThat(store.isBlank(9_998, 0)).isTrue();
+        assertThat(store.columnValues(0).length).isGreaterThanOrEqualTo(10_000);
+    }
+
+    @Test
+    @DisplayName("Adopted columns keep rows past their end blank after growth")
+    void testOfColumns() {
+        ColumnarCellStore store = ColumnarCellStore.ofColumns(new double[] {1, 2, 3}, new double[] {4});
+
+        store.setNumber(10, 0, 5.0);
+
+        assertThat(store.getNumber(2, 0)).isEqualTo(3.0);
+        assertThat(store.isBlank(0, 1)).isFalse();
+        assertThat(store.isBlank(1, 1)).isTrue();
+        assertThat(store.isBlank(5, 0)).isTrue();
+        assertThat(store.getRowCount()).isEqualTo(11);
+    }
+
+    @Test
+    @DisplayName("Range scan visits only present cells")
+    void testScanSkipsBlanks() {
+        ColumnarCellStore store = new ColumnarCellStore();
+        store.setNumber(0, 0, 1);
+        store.setNumber(2, 0, 2);
+        store.setNumber(1, 1, 3);
+        store.setNumber(5, 1, 100);
+        Sum sum = new Sum();
+
+        store.scan(0, 0, 3, 5, sum);
+
+        assertThat(sum.total).isEqualTo(6.0);
+        assertThat(sum.count).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Default range scan matches the columnar scan")
+    void testDefaultScanMatchesColumnarScan() {
+        ColumnarCellStore store = new ColumnarCellStore();
+        for (int row = 0; row < 200; row++) {
+            if (row % 7 != 0) {
+                store.setNumber(row, row % 3, row * 0.5);
+            }
+        }
+        CellSource generic = new CellSource() {
+            @Override
+            public double getNumber(int row, int column) {
+                return store.getNumber(row, column);
+            }
+
+            @Override
+            public boolean isBlank(int row, int column) {
+                return store.isBlank(row, column);
+            }
+        };
+        Sum columnar = new Sum();
+        Sum fallback = new Sum();
+
+        store.scan(10, 0, 150, 2, columnar);
+        generic.scan(10, 0, 150, 2, fallback);
+
+        assertThat(columnar.total).isEqualTo(fallback.total);
+        assertThat(columnar.count).isEqualTo(fallback.count);
+    }
+
+    @Test
+    @DisplayName("Formulas read cell values through every evaluation tier")
+    void testFormulaEvaluationAgainstStore() throws Exception {
+        ColumnarCellStore store = new ColumnarCellStore();
+        store.setNumber(0, 0, 10);
+        store.setNumber(1, 1, 4);
+        ASTNode ast = FormulaParserUtil.parse("A1 * B2 + C3");
+
+        assertThat(ast.accept(new EvaluationVisitor(store))).isEqualTo(40.0);
+        assertThat(ClosureCompiler.compile(ast).evaluate(store)).isEqualTo(40.0);
+        assertThat(BytecodeCompiler.compile(ast).evaluate(store)).isEqualTo(40.0);
+    }
+
+    @Test
+    @DisplayName("Single-cell range evaluates to its cell, larger ranges are rejected")
+    void testRangeAsValue() throws Exception {
+        ColumnarCellStore store = new ColumnarCellStore();
+        store.setNumber(1, 1, 8);
+
+        assertThat(FormulaParserUtil.parse("B2:B2").accept(new EvaluationVisitor(store))).isEqualTo(8.0);
+        assertThatThrownBy(() -> FormulaParserUtil.parse("A1:B2").accept(new EvaluationVisitor(store)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("A1:B2");
+    }
+
+    @Test
+    @DisplayName("Reference nodes carry pre-parsed coordinates")
+    void testPreParsedCoordinates() {
+        CellRefNode ref = new CellRefNode("AB12");
+        CellRangeNode range = new CellRangeNode("C10:A2");
+        CellRefNode invalid = new CellRefNode("Sheet1!A1");
+
+        assertThat(ref.getRow()).isEqualTo(11);
+        assertThat(ref.getColumn()).isEqualTo(27);
+        assertThat(range.getFirstRow()).isEqualTo(1);
+        assertThat(range.getFirstColumn()).isZero();
+        assertThat(range.getLastRow()).isEqualTo(9);
+        assertThat(range.getLastColumn()).isEqualTo(2);
+        assertThat(range.getCellCount()).isEqualTo(27);
+        assertThat(range.getRectangle()).isEqualTo(new CellRectangle(1, 0, 9, 2));
+        assertThat(range.getStartCell()).isEqualTo("C10");
+        assertThat(range.getEndCell()).isEqualTo("A2");
+        assertThat(ref.getAddress()).isEqualTo(CellAddress.pack(11, 27));
+        assertThat(invalid.isValid()).isFalse();
+        assertThat(invalid.getAddress()).isEqualTo(-1);
+        assertThat(new CellRangeNode("A0:B2").getRectangle()).isNull();
+        assertThatThrownBy(() -> invalid.accept(new EvaluationVisitor(new ColumnarCellStore())))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static final class Sum implements CellConsumer {
+        double total;
+        int count;
+
+        @Override
+        public void accept(double value) {
+            total += value;
+            count++;
+        }
+    }
+}
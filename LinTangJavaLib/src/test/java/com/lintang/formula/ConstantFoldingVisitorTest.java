@@ -0,0 +1,129 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.visitor.ConstantFoldingVisitor;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for constant folding and algebraic simplification.
+ */
+@DisplayName("Constant Folding Visitor Tests")
+class ConstantFoldingVisitorTest {
+
+    private static final CellSource CELLS = (row, column) -> (row + 1) * 10 + column - 25;
+
+    private static String text(ASTNode ast) {
+        return ast.accept(new FormulaStringBuilder());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+        "2 * 3 + A1; (6.0 + A1); 2",
+        "A1 * 1; A1; 2",
+        "1 * A1; A1; 2",
+        "A1 / 1; A1; 2",
+        "A1 - 0; A1; 2",
+        "A1 ^ 1; A1; 2",
+        "-(-A1); A1; 2",
+        "-5 + A1; (-5.0 + A1); 1",
+        "TRUE + 1; 2.0; 2",
+        "2 ^ 10; 1024.0; 2",
+        "(1 + 2) * (A1 / 1) - 0; (3.0 * A1); 6",
+        "SUM(A1:A3, 2 * 4); SUM(A1:A3, 8.0); 2",
+        "A1 * (2 - 1); A1; 4",
+        "(0 - 1) ^ 0.5; (-1.0 ^ 0.5); 2"
+    })
+    @DisplayName("Constants are folded and exact identities removed")
+    void testFolding(String formula, String expected, int removed) throws Exception {
+        ConstantFoldingVisitor folder = new ConstantFoldingVisitor();
+
+        ASTNode folded = FormulaParserUtil.parse(formula).accept(folder);
+
+        assertThat(text(folded)).isEqualTo(expected);
+        assertThat(folder.getRemovedNodeCount()).isEqualTo(removed);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "1 / 0",
+        "A1 / 0",
+        "A1 + 0",
+        "0 + A1",
+        "A1 * 0",
+        "A1 ^ 0",
+        "10 ^ 400",
+        "0 / 0",
+        "SUM(A1:A3 * 1)",
+        "\"text\" * 1",
+        "MAX(1, 2)"
+    })
+    @DisplayName("Unsafe simplifications are not applied")
+    void testNotFolded(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+        ConstantFoldingVisitor folder = new ConstantFoldingVisitor();
+
+        ASTNode folded = ast.accept(folder);
+
+        assertThat(folder.getRemovedNodeCount()).isZero();
+        assertThat(text(folded)).isEqualTo(text(ast));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "2 * 3 + A1",
+        "(A1 + 1 * 2) / (B2 - 0) ^ 1",
+        "-(-(A1 - 3 ^ 2)) * 1",
+        "A1 - 0 - B1 * (4 / 2)",
+        "SUM(A1:B3, 1 + 1) / 1",
+        "1 / (A1 - A1 + 0)",
+        "TRUE * C3 + FALSE",
+        "A3 ^ (1 / 2) * 1"
+    })
+    @DisplayName("Folded formulas evaluate exactly like the original")
+    void testSameValue(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+        ASTNode folded = ConstantFoldingVisitor.fold(ast);
+        EvaluationVisitor evaluator = new EvaluationVisitor(CELLS);
+
+        double expected;
+        try {
+            expected = ast.accept(evaluator);
+        } catch (ArithmeticException e) {
+            assertThatThrownBy(() -> folded.accept(evaluator)).isInstanceOf(ArithmeticException.class);
+            return;
+        }
+        assertThat(Double.doubleToLongBits(folded.accept(evaluator))).isEqualTo(Double.doubleToLongBits(expected));
+    }
+
+    @Test
+    @DisplayName("Unchanged subtrees are shared and the input is left intact")
+    void testSharing() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("(A1 + B1) * (2 * 3)");
+        BinaryOpNode root = (BinaryOpNode) ast;
+
+        BinaryOpNode folded = (BinaryOpNode) ConstantFoldingVisitor.fold(ast);
+
+        assertThat(folded.getLeft()).isSameAs(root.getLeft());
+        assertThat(text(ast)).isEqualTo("((A1 + B1) * (2.0 * 3.0))");
+        assertThat(ConstantFoldingVisitor.fold(root.getLeft())).isSameAs(root.getLeft());
+    }
+
+    @Test
+    @DisplayName("Prepared formulas are folded once")
+    void testCompilerFolds() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("A1 * (1 + 1) * 1");
+
+        assertThat(text(new FormulaCompiler().prepare(ast).getAst())).isEqualTo("(A1 * 2.0)");
+    }
+}
@@ -0,0 +1,167 @@
+package com.lintang.formula;
+
+import com.lintang.duckdb.DuckDBUtils;
+import com.lintang.formula.visitor.DuckDBSqlTranslator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for DuckDBSqlTranslator.
+ */
+@DisplayName("DuckDB SQL Translator Tests")
+class DuckDBSqlTranslatorTest {
+
+    private static final List<String> COLUMNS = List.of("price", "quantity", "tax \"rate\"");
+
+    private static String translate(String formula) throws Exception {
+        return new DuckDBSqlTranslator(COLUMNS).translate(FormulaParserUtil.parse(formula));
+    }
+
+    @Test
+    @DisplayName("Row references map to Parquet columns")
+    void testRowReferences() throws Exception {
+        assertThat(translate("A1 * B1 + 2"))
+                .isEqualTo("((COALESCE(CAST(\"price\" AS DOUBLE), 0) * COALESCE(CAST(\"quantity\" AS DOUBLE), 0)) + 2.0)");
+    }
+
+    @Test
+    @DisplayName("Column names are quoted")
+    void testQuotedColumnName() throws Exception {
+        assertThat(translate("C1")).isEqualTo("COALESCE(CAST(\"tax \"\"rate\"\"\" AS DOUBLE), 0)");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "1 / 2|(1.0 / NULLIF(2.0, 0))",
+            "2 ^ 3|POWER(2.0, 3.0)",
+            "-(-1)|(- (- 1.0))",
+            "+4|4.0",
+            "TRUE + FALSE|(1.0 + 0.0)"
+    })
+    @DisplayName("Operators and literals")
+    void testOperators(String formula, String expected) throws Exception {
+        assertThat(translate(formula)).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Aggregates over whole columns collapse to one row")
+    void testAggregates() throws Exception {
+        DuckDBSqlTranslator translator = new DuckDBSqlTranslator(COLUMNS);
+
+        assertThat(translate("SUM(A1:A1048576)")).isEqualTo("COALESCE(SUM(CAST(\"price\" AS DOUBLE)), 0)");
+        assertThat(translate("AVERAGE(B1:B1048576)")).isEqualTo("AVG(CAST(\"quantity\" AS DOUBLE))");
+        assertThat(translate("COUNT(A1048576:A1)")).isEqualTo("COUNT(CAST(\"price\" AS DOUBLE))");
+        assertThat(translate("MAX(A1:A1048576)")).isEqualTo("COALESCE(MAX(CAST(\"price\" AS DOUBLE)), 0)");
+        assertThat(translate("SUMPRODUCT(A1:A1048576, B1:B1048576)"))
+                .isEqualTo("COALESCE(SUM((CAST(\"price\" AS DOUBLE) * CAST(\"quantity\" AS DOUBLE))), 0)");
+        assertThat(translator.isAggregate(FormulaParserUtil.parse("SUM(A1:A1048576) * 2"))).isTrue();
+        assertThat(translator.isAggregate(FormulaParserUtil.parse("SUM(A1:A100) * 2"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("Whole-column aggregates mixed with row references become window aggregates")
+    void testWindowAggregates() throws Exception {
+        assertThat(translate("A1 - AVERAGE(A1:A1048576)"))
+                .isEqualTo("(COALESCE(CAST(\"price\" AS DOUBLE), 0) - AVG(CAST(\"price\" AS DOUBLE)) OVER ())");
+        assertThat(new DuckDBSqlTranslator(COLUMNS).isAggregate(FormulaParserUtil.parse("A1 - AVERAGE(A1:A1048576)")))
+                .isFalse();
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "SUM(A1:A5)|COALESCE(SUM(CAST(\"price\" AS DOUBLE)) OVER (ORDER BY file_row_number ROWS BETWEEN CURRENT ROW AND 4 FOLLOWING), 0)",
+            "COUNT(A7:A9)|COUNT(CAST(\"price\" AS DOUBLE)) OVER (ORDER BY file_row_number ROWS BETWEEN 6 FOLLOWING AND 8 FOLLOWING)",
+            "MAX(A1:A100)|COALESCE(MAX(CAST(\"price\" AS DOUBLE)) OVER (ORDER BY file_row_number ROWS BETWEEN CURRENT ROW AND 99 FOLLOWING), 0)",
+            "AVERAGE(B2:B1048576)|AVG(CAST(\"quantity\" AS DOUBLE)) OVER (ORDER BY file_row_number ROWS BETWEEN 1 FOLLOWING AND 1048575 FOLLOWING)"
+    })
+    @DisplayName("Other ranges become window frames relative to the current row")
+    void testRelativeRanges(String formula, String expected) throws Exception {
+        assertThat(translate(formula)).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Ranges above the anchor row reach back, and framed queries are ordered")
+    void testFramesAroundAnchorRow() throws Exception {
+        DuckDBSqlTranslator translator = new DuckDBSqlTranslator(COLUMNS, 2);
+
+        assertThat(translator.translate(FormulaParserUtil.parse("A3 - SUM(A1:A2)")))
+                .isEqualTo("(COALESCE(CAST(\"price\" AS DOUBLE), 0) - COALESCE(SUM(CAST(\"price\" AS DOUBLE))"
+                        + " OVER (ORDER BY file_row_number ROWS BETWEEN 2 PRECEDING AND 1 PRECEDING), 0))");
+        assertThat(translator.toQuery(FormulaParserUtil.parse("SUMPRODUCT(A1:A3, B1:B3)"), "value"))
+                .isEqualTo("SELECT COALESCE(SUM((CAST(\"price\" AS DOUBLE) * CAST(\"quantity\" AS DOUBLE)))"
+                        + " OVER (ORDER BY file_row_number ROWS BETWEEN 2 PRECEDING AND CURRENT ROW), 0)"
+                        + " AS \"value\" FROM parquet_data ORDER BY file_row_number");
+    }
+
+    @Test
+    @DisplayName("Multiple arguments combine per-argument aggregates")
+    void testMultipleArguments() throws Exception {
+        assertThat(translate("SUM(A1:A1048576, 10)"))
+                .isEqualTo("(COALESCE(SUM(CAST(\"price\" AS DOUBLE)), 0) + 10.0)");
+        assertThat(translate("MIN(A1:A1048576, B1:B1048576)"))
+                .isEqualTo("COALESCE(LEAST(MIN(CAST(\"price\" AS DOUBLE)), MIN(CAST(\"quantity\" AS DOUBLE))), 0)");
+        assertThat(translate("AVERAGE(A1:A1048576, 4)"))
+                .isEqualTo("((COALESCE(SUM(CAST(\"price\" AS DOUBLE)), 0) + 4.0) / NULLIF((COUNT(CAST(\"price\" AS DOUBLE)) + 1), 0))");
+    }
+
+    @Test
+    @DisplayName("Query selects from the Parquet view")
+    void testQuery() throws Exception {
+        String query = new DuckDBSqlTranslator(COLUMNS).toQuery(FormulaParserUtil.parse("A1 * 2"), "value");
+
+        assertThat(query).isEqualTo("SELECT (COALESCE(CAST(\"price\" AS DOUBLE), 0) * 2.0) AS \"value\" FROM parquet_data");
+    }
+
+    @Test
+    @DisplayName("Anchor row selects which references mean the current row")
+    void testAnchorRow() throws Exception {
+        DuckDBSqlTranslator translator = new DuckDBSqlTranslator(COLUMNS, 4);
+
+        assertThat(translator.translate(FormulaParserUtil.parse("B5"))).isEqualTo("COALESCE(CAST(\"quantity\" AS DOUBLE), 0)");
+        assertThatThrownBy(() -> translator.translate(FormulaParserUtil.parse("B1")))
+                .isInstanceOf(UnsupportedOperationException.class)
+                .hasMessageContaining("B1")
+                .hasMessageContaining("row 5");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "A2 + 1|Cell A2 is not in row 1",
+            "D1|Column D of D1 is not mapped",
+            "SUM(A1:B5)|spans several columns",
+            "SUMPRODUCT(A1:A5, B2:B6)|start in different rows",
+            "A1:A5|can only be translated as an argument",
+            "FOO(A1)|Function FOO has no SQL translation",
+            "\"text\"|String literals"
+    })
+    @DisplayName("Untranslatable formulas are rejected with a reason")
+    void testRejected(String formula, String reason) {
+        assertThatThrownBy(() -> translate(formula))
+                .isInstanceOf(UnsupportedOperationException.class)
+                .hasMessageContaining(reason);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "A1 B1|1:3",
+            "A1 + * B1|1:5",
+            "SUM(A1:A5|1:9"
+    })
+    @DisplayName("Malformed formulas are rejected with their position instead of being repaired")
+    void testMalformedRejected(String formula, String position) {
+        assertThatThrownBy(() -> DuckDBUtils.translateFormula(formula, COLUMNS))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(formula)
+                .hasMessageContaining(position);
+        assertThatThrownBy(() -> DuckDBUtils.executeFormula("s3://bucket/data.parquet", formula, COLUMNS, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(DuckDBUtils.translateFormula("A1 * 2", COLUMNS))
+                .isEqualTo("SELECT (COALESCE(CAST(\"price\" AS DOUBLE), 0) * 2.0) AS \"value\" FROM parquet_data");
+    }
+}
@@ -0,0 +1,184 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the reusable, SLL-first parsing pipeline.
+ */
+@DisplayName("Fast Formula Parser Tests")
+class FastFormulaParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42",
+        "3.14",
+        ".5",
+        "\"hello\"",
+        "TRUE",
+        "FALSE",
+        "A1",
+        "A1:B10",
+        "2 + 3 * 4",
+        "(2 + 3) * 4",
+        "10 - 5 - 2",
+        "2 ^ 3 ^ 2",
+        "-5 * (3 + 2)",
+        "+5",
+        "-2 ^ 2",
+        "2 * -3",
+        "SUM()",
+        "SUM(A1:A10)",
+        "SUM(A1, A2, A3) + B5 * C3",
+        "IF(A1, \"yes\", \"no\")",
+        "MAX(A1:A10) - MIN(B1:B10)",
+        "ROUND(AVERAGE(A1:A10, SUM(B1, 2 ^ C3)), 2)",
+        "((2 + 3) * (4 - 1))",
+        "  2   +   3   "
+    })
+    @DisplayName("Produces the same AST as the reference parser")
+    void testMatchesReferenceParser(String formula) throws Exception {
+        ASTNode expected = FormulaParserUtil.parse(formula);
+        ASTNode actual = FormulaParserUtil.parseFast(formula);
+
+        assertThat(actual.toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    @DisplayName("Builds nested function calls with their own arguments")
+    void testNestedFunctionCalls() {
+        ASTNode ast = FastFormulaParser.parse("SUM(A1, MAX(B1, 2), 3)");
+
+        assertThat(ast).isInstanceOf(FunctionCallNode.class);
+        FunctionCallNode sum = (FunctionCallNode) ast;
+        assertThat(sum.getFunctionName()).isEqualTo("SUM");
+        assertThat(sum.getArguments()).hasSize(3);
+        assertThat(sum.getArguments().get(1)).isInstanceOf(FunctionCallNode.class);
+        assertThat(((FunctionCallNode) sum.getArguments().get(1)).getArguments()).hasSize(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   ", "2 +", "\"hello", "2 $ 3", "(2 + 3", "2 3", "--5", "SUM(1,)", "A1:"})
+    @DisplayName("Rejects malformed formulas instead of recovering")
+    void testRejectsMalformedFormulas(String formula) {
+        assertThatThrownBy(() -> FastFormulaParser.parse(formula))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Invalid formula");
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "''            | 0  | 0 | 1:0 unexpected end of formula",
+        "2 +           | 3  | 0 | 1:3 unexpected end of formula",
+        "'\"hello'      | 0  | 6 | 1:0 unrecognized input '\"hello'",
+        "2 $ 3         | 2  | 1 | 1:2 unrecognized input '$'",
+        "(2 + 3        | 6  | 0 | 1:6 expected ')' but found end of formula",
+        "2 3           | 2  | 1 | 1:2 expected end of formula but found '3'",
+        "--5           | 1  | 1 | 1:1 unexpected '-'",
+        "'SUM(1,)'     | 6  | 1 | 1:6 unexpected ')'",
+        "A1:           | 2  | 1 | 1:2 unrecognized input ':'",
+        "SUM(A1 + ) * 2 | 9  | 1 | 1:9 unexpected ')'"
+    })
+    @DisplayName("Reports the position of the first error without throwing")
+    void testTryParseReportsDiagnostics(String formula, int offset, int length, String diagnostic) {
+        ParseResult result = FastFormulaParser.tryParse(formula);
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getAst()).isNull();
+        assertThat(result.getFormula()).isEqualTo(formula);
+        assertThat(result.getDiagnostics()).hasSize(1);
+        ParseDiagnostic error = result.getDiagnostics().get(0);
+        assertThat(error.getOffset()).isEqualTo(offset);
+        assertThat(error.getLength()).isEqualTo(length);
+        assertThat(error.toString()).isEqualTo(diagnostic);
+        assertThatThrownBy(result::getAstOrThrow)
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Invalid formula: " + formula + " (" + diagnostic + ")");
+    }
+
+    @Test
+    @DisplayName("Diagnostics count lines and columns across line breaks")
+    void testTryParseMultiLinePosition() {
+        ParseDiagnostic error = FormulaParserUtil.tryParse("1 +\n  2 * #").getDiagnostics().get(0);
+
+        assertThat(error.getOffset()).isEqualTo(10);
+        assertThat(error.getLine()).isEqualTo(2);
+        assertThat(error.getColumn()).isEqualTo(6);
+        assertThat(error.getMessage()).isEqualTo("unrecognized input '#'");
+    }
+
+    @Test
+    @DisplayName("Successful results carry the same AST as parse")
+    void testTryParseSuccess() {
+        ParseResult result = FastFormulaParser.tryParse("SUM(A1:B2) * 2");
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getDiagnostics()).isEmpty();
+        assertThat(result.getAstOrThrow().toString()).isEqualTo(FastFormulaParser.parse("SUM(A1:B2) * 2").toString());
+        assertThatThrownBy(() -> FastFormulaParser.tryParse(null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Parse null throws exception")
+    void testParseNullThrowsException() {
+        assertThatThrownBy(() -> FastFormulaParser.parse(null))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Parser state is reset after a failure")
+    void testParserStateIsResetAfterFailure() {
+        assertThatThrownBy(() -> FastFormulaParser.parse("SUM(A1, (2 +"))
+            .isInstanceOf(IllegalArgumentException.class);
+
+        ASTNode ast = FastFormulaParser.parse("1 + 2");
+
+        assertThat(ast).isInstanceOf(BinaryOpNode.class);
+        assertThat(((BinaryOpNode) ast).getOperator()).isEqualTo("+");
+    }
+
+    @Test
+    @DisplayName("Parses long chains of operators")
+    void testLongOperatorChain() throws Exception {
+        StringBuilder formula = new StringBuilder("1");
+        for (int i = 0; i < 1000; i++) {
+            formula.append(i % 2 == 0 ? " + " : " * ").append("A").append(i + 1);
+        }
+
+        ASTNode ast = FastFormulaParser.parse(formula.toString());
+
+        assertThat(ast.toString()).isEqualTo(FormulaParserUtil.parse(formula.toString()).toString());
+    }
+
+    @Test
+    @DisplayName("Per-thread parsers produce identical results concurrently")
+    void testConcurrentParsing() throws Exception {
+        String[] formulas = {"SUM(A1:A10) + B2", "(1 + 2) * 3 ^ 2", "-A1 / MAX(B1, C1)", "\"x\""};
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String formula = formulas[i % formulas.length];
+                futures.add(executor.submit(() -> FastFormulaParser.parse(formula).toString()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                String expected = FormulaParserUtil.parse(formulas[i % formulas.length]).toString();
+                assertThat(futures.get(i).get()).isEqualTo(expected);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.NumberNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.FlatFormula;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the flat postfix formula representation.
+ */
+@DisplayName("Flat Formula Tests")
+class FlatFormulaTest {
+
+    private static final CellSource CELLS = (row, column) -> (row + 1) * 10.0 + column;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42", "TRUE", "FALSE", "2 + 3 * 4", "(2 + 3) * 4", "10 - 5 - 2", "2 ^ 3 ^ 2", "-2 ^ 2", "+5",
+        "A1 + B2 * C3", "(A1 + B1) * (C1 - D1) / E1", "-A1 ^ 0.5", "A1 * TRUE", "A1:A1 + 1",
+        "SUM(A1:B3)", "SUM(A1, B2 * 2, C1:C4) / COUNT(A1:A10)", "MAX(A1, MIN(B1:B5, 3)) - AVERAGE(A1:C1)"
+    })
+    @DisplayName("Flat formula evaluates like the interpreter")
+    void testMatchesInterpreter(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        double expected = ast.accept(new EvaluationVisitor(CELLS));
+        FlatFormula flat = FlatFormula.fromAST(ast);
+
+        assertThat(flat.evaluate(CELLS)).isEqualTo(expected);
+        assertThat(flat.evaluate(CELLS, new double[flat.getMaxStackDepth()])).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "2 + 3 * 4", "-(A1 + +B2)", "SUM(A1:B3, 2) * C4", "\"text\"", "FOO(A1, TRUE)", "A1 + 1.5", "A1:B2"
+    })
+    @DisplayName("Conversion round-trips to an equivalent AST")
+    void testRoundTrip(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        ASTNode restored = FlatFormula.fromAST(ast).toAST();
+
+        assertThat(restored.accept(new FormulaStringBuilder())).isEqualTo(ast.accept(new FormulaStringBuilder()));
+    }
+
+    @Test
+    @DisplayName("Node count and stack depth follow the tree shape")
+    void testShape() throws Exception {
+        FlatFormula leftDeep = FlatFormula.fromAST(FormulaParserUtil.parse("A1 + B1 + C1 + D1"));
+        FlatFormula rightDeep = FlatFormula.fromAST(FormulaParserUtil.parse("A1 + (B1 + (C1 + D1))"));
+
+        assertThat(leftDeep.getNodeCount()).isEqualTo(7);
+        assertThat(leftDeep.getMaxStackDepth()).isEqualTo(2);
+        assertThat(rightDeep.getNodeCount()).isEqualTo(7);
+        assertThat(rightDeep.getMaxStackDepth()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Deeply nested formulas evaluate without recursion")
+    void testDeepFormula() {
+        ASTNode ast = new NumberNode(0);
+        for (int i = 0; i < 100_000; i++) {
+            ast = new BinaryOpNode("+", ast, new NumberNode(1));
+        }
+
+        FlatFormula flat = FlatFormula.fromAST(ast);
+
+        assertThat(flat.evaluate(CELLS)).isEqualTo(100_000.0);
+        assertThat(flat.getNodeCount()).isEqualTo(200_001);
+        assertThat(flat.toAST().accept(new FormulaStringBuilder())).isEqualTo(ast.accept(new FormulaStringBuilder()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"A1 / 0", "A1 / (B1 - B1)"})
+    @DisplayName("Division by zero throws like the interpreter")
+    void testDivisionByZero(String formula) throws Exception {
+        FlatFormula flat = FlatFormula.fromAST(FormulaParserUtil.parse(formula));
+
+        assertThatThrownBy(() -> flat.evaluate(CELLS))
+            .isInstanceOf(ArithmeticException.class)
+            .hasMessage("Division by zero");
+    }
+
+    @Test
+    @DisplayName("Unsupported nodes convert but fail on evaluation")
+    void testUnsupportedNodesFailOnEvaluation() throws Exception {
+        FlatFormula string = FlatFormula.fromAST(FormulaParserUtil.parse("\"text\""));
+        FlatFormula unknown = FlatFormula.fromAST(FormulaParserUtil.parse("FOO(A1)"));
+        FlatFormula range = FlatFormula.fromAST(FormulaParserUtil.parse("A1:B2 + 1"));
+
+        assertThatThrownBy(() -> string.evaluate(CELLS))
+            .isInstanceOf(UnsupportedOperationException.class)
+            .hasMessage("String evaluation not supported");
+        assertThatThrownBy(() -> unknown.evaluate(CELLS))
+            .isInstanceOf(UnsupportedOperationException.class)
+            .hasMessageContaining("FOO");
+        assertThatThrownBy(() -> range.evaluate(CELLS))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("Cell range A1:B2 cannot be used as a single value");
+    }
+}
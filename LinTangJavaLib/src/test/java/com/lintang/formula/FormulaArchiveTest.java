@@ -0,0 +1,156 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.NumberNode;
+import com.lintang.formula.serial.FormulaArchive;
+import com.lintang.formula.serial.FormulaArchiveWriter;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for FormulaArchive and FormulaArchiveWriter.
+ */
+@DisplayName("Formula Archive Tests")
+class FormulaArchiveTest {
+
+    private static final List<String> FORMULAS = List.of(
+            "A1 + B2 * 3",
+            "-(A1 ^ 2.5) / 1e300",
+            "SUM(A1:A10, B1:C5) - MAX(D1, 7)",
+            "IF(TRUE, \"yes\", FALSE)",
+            "0.1 + 2147483648 + 4294967296.5",
+            "AVERAGE(A1:A100) * COUNT(B1:B100)");
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "42", "A1 + B2 * 3", "-(A1 ^ 2.5) / 1e300", "SUM(A1:A10, B1:C5) - MAX(D1, 7)",
+            "IF(TRUE, \"yes\", FALSE)", "\"héllo 世界\"", "0.1 + 2147483648 + 4294967296.5"
+    })
+    @DisplayName("Single formulas round-trip")
+    void testRoundTrip(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        ASTNode decoded = FormulaArchive.decode(FormulaArchive.encode(ast));
+
+        assertThat(decoded.accept(new FormulaStringBuilder())).isEqualTo(ast.accept(new FormulaStringBuilder()));
+    }
+
+    @Test
+    @DisplayName("Negative zero and non-integral numbers keep their exact bits")
+    void testNumberBits() {
+        for (double value : new double[] {-0.0, 0.0, 1.0, 3.5, Math.PI, 1e-320, Integer.MAX_VALUE, -1.0}) {
+            NumberNode decoded = (NumberNode) FormulaArchive.decode(FormulaArchive.encode(new NumberNode(value)));
+
+            assertThat(Double.doubleToRawLongBits(decoded.getValue())).isEqualTo(Double.doubleToRawLongBits(value));
+        }
+    }
+
+    @Test
+    @DisplayName("Archives are memory-mapped from a file and keep formulas by key")
+    void testMappedFile(@TempDir Path directory) throws Exception {
+        FormulaArchiveWriter writer = new FormulaArchiveWriter();
+        for (String formula : FORMULAS) {
+            writer.add(formula, FormulaParserUtil.parse(formula));
+        }
+        Path file = directory.resolve("formulas.ltfa");
+        writer.write(file);
+
+        FormulaArchive archive = FormulaArchive.open(file, "/missing.ltfa");
+
+        assertThat(archive.size()).isEqualTo(FORMULAS.size());
+        for (int i = 0; i < FORMULAS.size(); i++) {
+            String formula = FORMULAS.get(i);
+            assertThat(archive.getKey(i)).isEqualTo(formula);
+            assertThat(archive.get(formula).accept(new FormulaStringBuilder()))
+                    .isEqualTo(FormulaParserUtil.parse(formula).accept(new FormulaStringBuilder()));
+        }
+        assertThat(archive.get("B1")).isNull();
+        assertThat(archive.toMap()).containsOnlyKeys(FORMULAS);
+    }
+
+    @Test
+    @DisplayName("Repeated identifiers are stored once in the string table")
+    void testStringTable() throws Exception {
+        String formula = "SUM(A1:A10) * B1 + AVERAGE(A1:A10) / B1";
+        FormulaArchiveWriter writer = new FormulaArchiveWriter();
+        int textSize = 0;
+        for (int row = 1; row <= 1000; row++) {
+            writer.add("C" + row, FormulaParserUtil.parse(formula));
+            textSize += ("C" + row + formula).length();
+        }
+        byte[] bytes = writer.toByteArray();
+
+        assertThat(bytes.length).isLessThan(textSize);
+        assertThat(FormulaArchive.wrap(bytes).get("C1000").accept(new FormulaStringBuilder()))
+                .isEqualTo("((SUM(A1:A10) * B1) + (AVERAGE(A1:A10) / B1))");
+    }
+
+    @Test
+    @DisplayName("Archives preload a formula cache")
+    void testPreloadCache() throws Exception {
+        FormulaArchiveWriter writer = new FormulaArchiveWriter();
+        for (String formula : FORMULAS) {
+            writer.add(formula, FormulaParserUtil.parse(formula));
+        }
+        FormulaCache cache = new FormulaCache(100, 10_000, formula -> {
+            throw new AssertionError("Parsed " + formula);
+        });
+
+        assertThat(cache.preload(FormulaArchive.wrap(writer.toByteArray()))).isEqualTo(FORMULAS.size());
+        assertThat(cache.parse("A1 + B2 * 3").accept(new FormulaStringBuilder())).isEqualTo("(A1 + (B2 * 3.0))");
+    }
+
+    @Test
+    @DisplayName("Preloading counts only the formulas the cache kept")
+    void testPreloadCountsKeptFormulas() throws Exception {
+        FormulaArchiveWriter writer = new FormulaArchiveWriter();
+        for (String formula : List.of("A1 + 1", "SUM(A1:A10) * 2 + AVERAGE(B1:B10)", "A2 + 2", "A3 + 3")) {
+            writer.add(formula, FormulaParserUtil.parse(formula));
+        }
+        FormulaArchive archive = FormulaArchive.wrap(writer.toByteArray());
+
+        FormulaCache tooLight = new FormulaCache(100, 20);
+        assertThat(tooLight.preload(archive)).isEqualTo(3);
+        assertThat(tooLight.size()).isEqualTo(3);
+
+        FormulaCache tooSmall = new FormulaCache(2, 10_000);
+        tooSmall.parse("A1 + 1");
+        assertThat(tooSmall.preload(archive)).isEqualTo(2);
+        assertThat(tooSmall.size()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Duplicate keys, other versions and truncated archives are rejected")
+    void testInvalidArchives() throws Exception {
+        FormulaArchiveWriter writer = new FormulaArchiveWriter().add("x", FormulaParserUtil.parse("A1 + 1"));
+        byte[] bytes = writer.toByteArray();
+
+        assertThatThrownBy(() -> writer.add("x", FormulaParserUtil.parse("1")))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[5] = 9;
+        assertThatThrownBy(() -> FormulaArchive.wrap(otherVersion))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version: 9");
+
+        assertThatThrownBy(() -> FormulaArchive.wrap(Arrays.copyOf(bytes, bytes.length - 2)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FormulaArchive.wrap("not an archive".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FormulaArchive.openResource("/missing.ltfa"))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,160 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cache.BoundedCache;
+import com.lintang.formula.cache.CacheStats;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the bounded parse cache.
+ */
+@DisplayName("Formula Cache Tests")
+class FormulaCacheTest {
+
+    @Test
+    @DisplayName("Repeated formula returns the shared AST")
+    void testRepeatedFormulaReturnsSharedAst() throws Exception {
+        FormulaCache cache = new FormulaCache();
+
+        ASTNode first = cache.parse("A1 * 2 + 1");
+        ASTNode second = cache.parse("A1 * 2 + 1");
+
+        assertThat(second).isSameAs(first);
+        CacheStats stats = cache.stats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(1);
+        assertThat(stats.getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    @DisplayName("Cached AST matches a fresh parse")
+    void testCachedAstMatchesFreshParse() throws Exception {
+        FormulaCache cache = new FormulaCache();
+        String formula = "(10 + 5) * 2 - 10 / 2";
+
+        ASTNode cached = cache.parse(formula);
+
+        assertThat(cached.toString()).isEqualTo(FormulaParserUtil.parse(formula).toString());
+        assertThat(cached.accept(new EvaluationVisitor())).isEqualTo(25.0);
+    }
+
+    @Test
+    @DisplayName("Entry bound evicts least recently used formula")
+    void testEntryBoundEvictsLeastRecentlyUsed() throws Exception {
+        FormulaCache cache = new FormulaCache(2, Long.MAX_VALUE);
+
+        ASTNode one = cache.parse("1");
+        cache.parse("2");
+        cache.parse("1");
+        cache.parse("3");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.stats().getEvictionCount()).isEqualTo(1);
+        assertThat(cache.parse("1")).isSameAs(one);
+    }
+
+    @Test
+    @DisplayName("Weight bound limits total formula length")
+    void testWeightBoundLimitsTotalLength() throws Exception {
+        FormulaCache cache = new FormulaCache(100, 10);
+
+        cache.parse("1+2+3");
+        cache.parse("4+5+6");
+        cache.parse("7+8");
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.getWeight()).isLessThanOrEqualTo(10);
+        assertThat(stats.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Formula heavier than the budget is parsed but not cached")
+    void testOversizedFormulaIsNotCached() throws Exception {
+        FormulaCache cache = new FormulaCache(100, 3);
+
+        ASTNode ast = cache.parse("1 + 2 + 3");
+
+        assertThat(ast).isNotNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1 + * 2", "SUM(A1:A3", "A1 B1"})
+    @DisplayName("Malformed formulas that ANTLR would recover from are rejected, not cached")
+    void testMalformedFormulasAreRejected(String formula) {
+        FormulaCache cache = new FormulaCache();
+
+        assertThatThrownBy(() -> cache.parse(formula)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache.parse(formula)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Parse failures propagate and are not cached")
+    void testParseFailuresAreNotCached() {
+        FormulaCache cache = new FormulaCache();
+
+        assertThatThrownBy(() -> cache.parse("")).isInstanceOf(Exception.class);
+        assertThatThrownBy(() -> cache.parse(null)).isInstanceOf(Exception.class);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("Custom parser is only called on misses")
+    void testCustomParserCalledOnlyOnMisses() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FormulaCache cache = new FormulaCache(10, 1000, formula -> {
+            calls.incrementAndGet();
+            return FormulaParserUtil.parse(formula);
+        });
+
+        for (int i = 0; i < 100; i++) {
+            cache.parse("SUM(A1:A10) + B" + (i % 5 + 1));
+        }
+
+        assertThat(calls.get()).isEqualTo(5);
+        assertThat(cache.stats().getHitCount()).isEqualTo(95);
+    }
+
+    @Test
+    @DisplayName("Concurrent lookups share one cached AST")
+    void testConcurrentLookups() throws Exception {
+        FormulaCache cache = new FormulaCache();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ASTNode>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> cache.parse("A1 + B1 * 2")));
+            }
+            ASTNode cached = cache.parse("A1 + B1 * 2");
+            for (Future<ASTNode> future : futures) {
+                assertThat(future.get().toString()).isEqualTo(cached.toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Bounded cache rejects invalid limits")
+    void testBoundedCacheRejectsInvalidLimits() {
+        assertThatThrownBy(() -> new BoundedCache<String, String>(0))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BoundedCache<String, String>(10, 0, (k, v) -> 1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
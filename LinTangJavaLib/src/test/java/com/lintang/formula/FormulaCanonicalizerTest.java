@@ -0,0 +1,157 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.CellRangeNode;
+import com.lintang.formula.ast.FunctionCallNode;
+import com.lintang.formula.ast.NumberNode;
+import com.lintang.formula.ast.UnaryOpNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.engine.FormulaTemplates;
+import com.lintang.formula.visitor.FormulaCanonicalizer;
+import com.lintang.formula.visitor.FormulaFingerprint;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for formula canonicalization, fingerprints and template grouping.
+ */
+@DisplayName("Formula Canonicalizer Tests")
+class FormulaCanonicalizerTest {
+
+    private static String canonical(String formula) throws Exception {
+        return FormulaCanonicalizer.canonicalize(FormulaParserUtil.parse(formula)).accept(new FormulaStringBuilder());
+    }
+
+    private static FormulaFingerprint fingerprint(String formula) throws Exception {
+        return FormulaFingerprint.of(FormulaParserUtil.parse(formula));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "A1+B1          | (A1)+(B1)",
+        "SUM(A1:B10)    | sum(B10:A1)",
+        "SUM(A1:B10)    | Sum(A10:B1)",
+        "-5 * A1        | -(5) * A1",
+        "5 * A1         | -(-5) * A1",
+        "A1 + 2         | +A1 + +2",
+        "MAX(A1, -B2)   | max(+A1, -(+B2))"
+    })
+    @DisplayName("Spelling variants have the same canonical form and fingerprint")
+    void testEquivalentSpellings(String first, String second) throws Exception {
+        assertThat(canonical(first)).isEqualTo(canonical(second));
+        assertThat(fingerprint(first)).isEqualTo(fingerprint(second));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "A1 + B1        | B1 + A1",
+        "A1 + B1        | A1 - B1",
+        "(A1 + B1) * C1 | A1 + B1 * C1",
+        "SUM(A1:B2)     | SUM(A1:B3)",
+        "SUM(A1:B2)     | SUM(+A1:B2)",
+        "SUM(A1, B1)    | SUM(A1 + B1)",
+        "1              | TRUE",
+        "0              | -0",
+        "\"ab\"         | \"AB\"",
+        "FOO(A1)        | FOOA(1)"
+    })
+    @DisplayName("Different formulas have different fingerprints")
+    void testDistinctFormulas(String first, String second) throws Exception {
+        assertThat(fingerprint(first)).isNotEqualTo(fingerprint(second));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "+A1 + -(3)", "sum(B2:A1, +C1:D2)", "-(-(-2)) ^ (-(+A1))", "IF(A1, \"x\", FALSE)", "-(+(-B1))", "+(-(+2))"
+    })
+    @DisplayName("Fingerprint of a formula equals the fingerprint of its canonical form")
+    void testFingerprintMatchesCanonicalForm(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        assertThat(FormulaFingerprint.of(ast)).isEqualTo(FormulaFingerprint.of(FormulaCanonicalizer.canonicalize(ast)));
+        assertThat(FormulaFingerprint.relative(ast, 4, 2))
+            .isEqualTo(FormulaFingerprint.relative(FormulaCanonicalizer.canonicalize(ast), 4, 2));
+    }
+
+    @Test
+    @DisplayName("Canonicalization keeps unary plus on ranges and folds signed literals")
+    void testCanonicalNodes() throws Exception {
+        ASTNode ast = FormulaCanonicalizer.canonicalize(FormulaParserUtil.parse("sum(+B2:A1, -(-4))"));
+
+        FunctionCallNode call = (FunctionCallNode) ast;
+        assertThat(call.getFunctionName()).isEqualTo("SUM");
+        UnaryOpNode plus = (UnaryOpNode) call.getArguments().get(0);
+        assertThat(plus.getOperator()).isEqualTo("+");
+        assertThat(((CellRangeNode) plus.getOperand()).getCellRange()).isEqualTo("A1:B2");
+        assertThat(((NumberNode) call.getArguments().get(1)).getValue()).isEqualTo(4.0);
+    }
+
+    @Test
+    @DisplayName("Both parsers produce the same fingerprint")
+    void testParsersAgree() throws Exception {
+        for (String formula : List.of("-5 + A1 * 2", "SUM(A1:B3) / -COUNT(C1:C9)", "2 ^ (-A1) - (-3)")) {
+            assertThat(FormulaFingerprint.of(PrattFormulaParser.parse(formula))).isEqualTo(fingerprint(formula));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "A2 + C1              | C2 | (RC[-2] + R[-1]C)",
+        "SUM(A1:A3) * B4      | B4 | (SUM(R[-3]C[-1]:R[-1]C[-1]) * RC)",
+        "sum(A3:A1) + A0      | A1 | (SUM(RC:R[2]C) + A0)"
+    })
+    @DisplayName("R1C1 form prints references relative to the anchor cell")
+    void testR1C1(String formula, String anchor, String expected) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        String relative = FormulaCanonicalizer.toR1C1(ast, CellAddress.parseRow(anchor), CellAddress.parseColumn(anchor));
+
+        assertThat(relative).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Relative fingerprint matches filled formulas but not copies of the same text")
+    void testRelativeFingerprint() throws Exception {
+        FormulaFingerprint row1 = FormulaFingerprint.relative(FormulaParserUtil.parse("A1 * 2 + SUM(B1:B5)"), 0, 2);
+        FormulaFingerprint row9 = FormulaFingerprint.relative(FormulaParserUtil.parse("A9 * 2 + SUM(B9:B13)"), 8, 2);
+        FormulaFingerprint copied = FormulaFingerprint.relative(FormulaParserUtil.parse("A1 * 2 + SUM(B1:B5)"), 8, 2);
+
+        assertThat(row9).isEqualTo(row1);
+        assertThat(copied).isNotEqualTo(row1);
+        assertThat(FormulaFingerprint.of(FormulaParserUtil.parse("A1"))).isNotEqualTo(
+            FormulaFingerprint.relative(FormulaParserUtil.parse("A1"), 0, 0));
+        assertThat(row1.toString()).hasSize(32).matches("[0-9a-f]+");
+    }
+
+    @Test
+    @DisplayName("Templates group filled-down formulas")
+    void testTemplates() throws Exception {
+        FormulaTemplates templates = new FormulaTemplates();
+        for (int row = 0; row < 100; row++) {
+            templates.add(CellAddress.pack(row, 2), FormulaParserUtil.parse("A" + (row + 1) + " + B" + (row + 1)));
+            templates.add(CellAddress.pack(row, 3), FormulaParserUtil.parse("SUM(A1:A" + (row + 1) + ")"));
+        }
+
+        assertThat(templates.getFormulaCount()).isEqualTo(200);
+        // Running totals anchor the range start, so every row is its own template
+        assertThat(templates.getTemplateCount()).isEqualTo(101);
+        FormulaTemplates.Template sum = templates.getTemplate(CellAddress.pack(57, 2));
+        assertThat(sum.getCellCount()).isEqualTo(100);
+        assertThat(sum.getAnchor()).isEqualTo(CellAddress.pack(0, 2));
+        assertThat(sum.getCells()).startsWith(CellAddress.pack(0, 2), CellAddress.pack(1, 2));
+        assertThat(sum.toR1C1()).isEqualTo("(RC[-2] + RC[-1])");
+        assertThat(templates.getTemplates()).first().isSameAs(sum);
+        assertThat(templates.getTemplate(CellAddress.pack(0, 9))).isNull();
+        assertThatThrownBy(() -> templates.add(CellAddress.pack(3, 2), FormulaParserUtil.parse("1")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("C4");
+    }
+}
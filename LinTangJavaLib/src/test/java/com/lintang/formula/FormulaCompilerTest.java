@@ -0,0 +1,152 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.CellRefNode;
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.compile.BytecodeCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.compile.TieredFormula;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for bytecode compilation and tiered evaluation.
+ */
+@DisplayName("Formula Compiler Tests")
+class FormulaCompilerTest {
+
+    // Every cell holds a distinct value derived from its coordinates
+    private static final CellSource CELLS = (row, column) -> (row + 1) * 10.0 + column;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "42", "TRUE", "FALSE", "2 + 3 * 4", "(2 + 3) * 4", "10 - 5 - 2", "2 ^ 3 ^ 2", "-2 ^ 2", "+5",
+        "3.5 * A1 + 2.5", "A1 + B2 * C3", "(A1 + B1) * (C1 - D1) / E1", "AA100 - Z99 / 3", "-A1 ^ 0.5",
+        "0.1 + 0.2", "1 / 3"
+    })
+    @DisplayName("Compiled formula matches the interpreter")
+    void testCompiledMatchesInterpreter(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        double expected = ast.accept(new EvaluationVisitor(CELLS));
+        double actual = BytecodeCompiler.compile(ast).evaluate(CELLS);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    @DisplayName("Compiled division by zero throws like the interpreter")
+    void testCompiledDivisionByZero() throws Exception {
+        CompiledFormula formula = BytecodeCompiler.compile(FormulaParserUtil.parse("A1 / (B1 - B1)"));
+
+        assertThatThrownBy(() -> formula.evaluate(CELLS))
+            .isInstanceOf(ArithmeticException.class)
+            .hasMessage("Division by zero");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\"text\"", "FOO(A1)", "A1:B2"})
+    @DisplayName("Unsupported nodes are rejected at compile time")
+    void testUnsupportedNodesRejected(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        assertThatThrownBy(() -> BytecodeCompiler.compile(ast))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Formula larger than the method size limit is rejected")
+    void testOversizedFormulaRejected() {
+        ASTNode ast = balancedSum(0, 8192);
+
+        assertThatThrownBy(() -> BytecodeCompiler.compile(ast))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Tiered formula is interpreted until the threshold, then compiled")
+    void testTieredFormulaCompilesAfterThreshold() throws Exception {
+        FormulaCompiler compiler = new FormulaCompiler(3, 100);
+        TieredFormula formula = compiler.prepare(FormulaParserUtil.parse("A1 * 2 + B1"));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(formula.evaluate(CELLS)).isEqualTo(31.0);
+            assertThat(formula.isCompiled()).isFalse();
+        }
+        assertThat(formula.evaluate(CELLS)).isEqualTo(31.0);
+        assertThat(formula.isCompiled()).isTrue();
+        assertThat(formula.evaluate((row, column) -> 1.0)).isEqualTo(3.0);
+    }
+
+    @Test
+    @DisplayName("Uncompilable formula stays interpreted")
+    void testUncompilableFormulaStaysInterpreted() throws Exception {
+        FormulaCompiler compiler = new FormulaCompiler(0, 100);
+        TieredFormula formula = compiler.prepare(FormulaParserUtil.parse("\"text\""));
+
+        assertThatThrownBy(() -> formula.evaluate(CELLS)).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(formula.isCompiled()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Identical formulas share one compiled class")
+    void testCompiledClassesAreCachedPerCanonicalFormula() throws Exception {
+        FormulaCompiler compiler = new FormulaCompiler();
+
+        CompiledFormula first = compiler.compile(FormulaParserUtil.parse("A1+B1*2"));
+        CompiledFormula second = compiler.compile(FormulaParserUtil.parse("(A1) + (B1 * 2)"));
+        CompiledFormula other = compiler.compile(FormulaParserUtil.parse("A1+B1*3"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(other).isNotSameAs(first);
+        assertThat(compiler.stats().getHitCount()).isEqualTo(1);
+        assertThat(compiler.stats().getSize()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Interpreter reads cell references from the cell source")
+    void testInterpreterReadsCells() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("A1 + B2");
+
+        assertThat(ast.accept(new EvaluationVisitor(CELLS))).isEqualTo(10.0 + 21.0);
+    }
+
+    @Test
+    @DisplayName("Cell addresses convert to zero-based coordinates and back")
+    void testCellAddressConversions() {
+        assertThat(CellAddress.parseRow("A1")).isZero();
+        assertThat(CellAddress.parseColumn("A1")).isZero();
+        assertThat(CellAddress.parseRow("B10")).isEqualTo(9);
+        assertThat(CellAddress.parseColumn("Z1")).isEqualTo(25);
+        assertThat(CellAddress.parseColumn("AA1")).isEqualTo(26);
+        assertThat(CellAddress.parseColumn("ZZ100")).isEqualTo(701);
+        assertThat(CellAddress.toString(99, 701)).isEqualTo("ZZ100");
+        assertThat(CellAddress.columnName(26)).isEqualTo("AA");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "A", "1", "A0", "a1", "A1B", "A99999999999"})
+    @DisplayName("Invalid cell addresses are rejected")
+    void testInvalidCellAddresses(String cellRef) {
+        assertThatThrownBy(() -> {
+            CellAddress.parseColumn(cellRef);
+            CellAddress.parseRow(cellRef);
+        }).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ASTNode balancedSum(int from, int to) {
+        if (to - from == 1) {
+            return new CellRefNode(CellAddress.toString(from, 1));
+        }
+        int middle = (from + to) >>> 1;
+        return new BinaryOpNode("+", balancedSum(from, middle), balancedSum(middle, to));
+    }
+}
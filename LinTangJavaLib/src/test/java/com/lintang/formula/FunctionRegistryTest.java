@@ -0,0 +1,230 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.BytecodeCompiler;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.function.FunctionArgument;
+import com.lintang.formula.function.FunctionRegistry;
+import com.lintang.formula.function.RangeKernels;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for the built-in functions, their range kernels and their evaluation on every tier.
+ */
+@DisplayName("Function Registry Tests")
+class FunctionRegistryTest {
+
+    /** A1:A5 = 1..5, B1:B5 = 10..50, C1 = 7 with C2:C5 blank, D blank. */
+    private static ColumnarCellStore sheet() {
+        ColumnarCellStore store = ColumnarCellStore.ofColumns(
+                new double[] {1, 2, 3, 4, 5},
+                new double[] {10, 20, 30, 40, 50});
+        store.setNumber(0, 2, 7);
+        return store;
+    }
+
+    private static double[] evaluateAllTiers(String formula, CellSource source) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+        return new double[] {
+                ast.accept(new EvaluationVisitor(source)),
+                ClosureCompiler.compile(ast).evaluate(source),
+                BytecodeCompiler.compile(ast).evaluate(source)
+        };
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+        "SUM(A1:A5); 15",
+        "SUM(A1:B5); 165",
+        "SUM(A1:A5, 10, B1); 35",
+        "SUM(C1:C5); 7",
+        "SUM(D1:D100); 0",
+        "AVERAGE(A1:A5); 3",
+        "AVERAGE(C1:C5, 3); 5",
+        "MIN(A1:B5); 1",
+        "MAX(A1:B5); 50",
+        "MIN(C1:C5); 7",
+        "MAX(D1:D5); 0",
+        "MIN(A1:A5, -3); -3",
+        "COUNT(A1:D5); 11",
+        "COUNT(C1:C5, 1, 2); 3",
+        "SUMPRODUCT(A1:A5, B1:B5); 550",
+        "SUMPRODUCT(A1:A5, B1:B5, A1:A5); 2250",
+        "SUMPRODUCT(A1:B2, A3:B4); 1 * 3 + 2 * 4 + 10 * 30 + 20 * 40",
+        "sum(A1:A5) * 2 + Max(B1:B5); 80",
+        "SUM(A1, MAX(A1:A5) * 2); 11"
+    })
+    @DisplayName("Built-in functions agree on every tier")
+    void testBuiltins(String formula, String expected) throws Exception {
+        double expectedValue = FormulaParserUtil.parse(expected).accept(new EvaluationVisitor());
+
+        assertThat(evaluateAllTiers(formula, sheet())).containsOnly(expectedValue);
+    }
+
+    @Test
+    @DisplayName("Functions work on any cell source, not just the columnar store")
+    void testGenericSource() throws Exception {
+        CellSource grid = (row, column) -> (row + 1) * 10 + column;
+
+        assertThat(evaluateAllTiers("SUM(A1:B3)", grid)).containsOnly(10 + 11 + 20 + 21 + 30 + 31.0);
+        assertThat(evaluateAllTiers("MAX(A1:B3)", grid)).containsOnly(31.0);
+        assertThat(evaluateAllTiers("COUNT(A1:B3)", grid)).containsOnly(6.0);
+        assertThat(evaluateAllTiers("SUMPRODUCT(A1:A2, B1:B2)", grid)).containsOnly(10 * 11 + 20 * 21.0);
+    }
+
+    @Test
+    @DisplayName("Constant-only calls need no cell source")
+    void testConstantArguments() throws Exception {
+        assertThat(FormulaParserUtil.parse("MAX(1, 5, 3)").accept(new EvaluationVisitor())).isEqualTo(5.0);
+    }
+
+    @Test
+    @DisplayName("Infinite values are kept by MIN and MAX, not taken for blanks")
+    void testInfiniteExtremes() throws Exception {
+        ColumnarCellStore store = ColumnarCellStore.ofColumns(
+                new double[] {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY},
+                new double[] {Double.POSITIVE_INFINITY});
+
+        assertThat(evaluateAllTiers("MAX(A1:A2)", store)).containsOnly(Double.NEGATIVE_INFINITY);
+        assertThat(evaluateAllTiers("MAX(A1:A2, D1:D5)", store)).containsOnly(Double.NEGATIVE_INFINITY);
+        assertThat(evaluateAllTiers("MIN(B1:B5)", store)).containsOnly(Double.POSITIVE_INFINITY);
+        assertThat(evaluateAllTiers("MIN(2 ^ 5000)", store)).containsOnly(Double.POSITIVE_INFINITY);
+        assertThat(evaluateAllTiers("MAX(C1:D5)", store)).containsOnly(0.0);
+    }
+
+    @Test
+    @DisplayName("AVERAGE of blanks is a division by zero")
+    void testAverageOfBlanks() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("AVERAGE(D1:D5)");
+
+        assertThatThrownBy(() -> ast.accept(new EvaluationVisitor(sheet())))
+            .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> ClosureCompiler.compile(ast).evaluate(sheet()))
+            .isInstanceOf(ArithmeticException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"SUM()", "SUMPRODUCT(A1:A5, B1:B4)", "SUMPRODUCT(A1:A5, 2)"})
+    @DisplayName("Invalid arguments are rejected when compiling")
+    void testInvalidArguments(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        assertThatThrownBy(() -> ClosureCompiler.compile(ast))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ast.accept(new EvaluationVisitor(sheet())))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Unknown functions are unsupported")
+    void testUnknownFunction() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("MEDIAN(A1:A5)");
+
+        assertThatThrownBy(() -> ClosureCompiler.compile(ast))
+            .isInstanceOf(UnsupportedOperationException.class)
+            .hasMessageContaining("MEDIAN");
+    }
+
+    @Test
+    @DisplayName("Custom functions are resolved from their registry")
+    void testCustomFunction() throws Exception {
+        FunctionRegistry registry = new FunctionRegistry()
+                .register("double", (source, arguments) -> arguments[0].evaluate(source) * 2);
+        ASTNode ast = FormulaParserUtil.parse("DOUBLE(SUM(A1:A5)) + 1");
+
+        assertThat(registry.names()).contains("SUM", "DOUBLE");
+        assertThat(ast.accept(new EvaluationVisitor(sheet(), registry))).isEqualTo(31.0);
+        assertThat(ClosureCompiler.compile(ast, registry).evaluate(sheet())).isEqualTo(31.0);
+        assertThat(BytecodeCompiler.compile(ast, registry).evaluate(sheet())).isEqualTo(31.0);
+        assertThatThrownBy(() -> ClosureCompiler.compile(ast))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Standard registry is read-only")
+    void testStandardRegistryIsFrozen() {
+        assertThatThrownBy(() -> FunctionRegistry.standard().register("X", (source, arguments) -> 0))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Range bounds must be ordered and non-negative")
+    void testRangeBounds() {
+        assertThatThrownBy(() -> FunctionArgument.range(5, 0, 4, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FunctionArgument.range(-1, 0, 4, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Sparse columns match a cell-by-cell reference across bitmap word boundaries")
+    void testSparseColumnsMatchReference() {
+        Random random = new Random(7);
+        ColumnarCellStore store = new ColumnarCellStore();
+        for (int row = 0; row < 500; row++) {
+            if (random.nextInt(3) != 0) {
+                store.setNumber(row, 0, random.nextInt(2000) - 1000);
+            }
+        }
+        CellSource reference = new CellSource() {
+            @Override
+            public double getNumber(int row, int column) {
+                return store.getNumber(row, column);
+            }
+
+            @Override
+            public boolean isBlank(int row, int column) {
+                return store.isBlank(row, column);
+            }
+        };
+
+        for (int i = 0; i < 200; i++) {
+            int first = random.nextInt(520);
+            int last = first + random.nextInt(200);
+            String range = "A" + (first + 1) + ":A" + (last + 1);
+            for (String function : new String[] {"SUM", "MIN", "MAX", "COUNT"}) {
+                CompiledFormula formula = ClosureCompiler.compile(
+                        FormulaParserUtil.parseFast(function + "(" + range + ")"));
+                assertThat(formula.evaluate(store))
+                    .as(function + "(" + range + ")")
+                    .isEqualTo(formula.evaluate(reference));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Vector and scalar kernels agree")
+    void testKernelsAgree() {
+        assumeTrue(RangeKernels.isVectorAvailable(), "jdk.incubator.vector not available");
+        RangeKernels scalar = RangeKernels.scalar();
+        RangeKernels vector = RangeKernels.vector();
+        Random random = new Random(11);
+        double[] left = random.doubles(1000, -100, 100).toArray();
+        double[] right = random.doubles(1000, -100, 100).toArray();
+
+        for (int i = 0; i < 100; i++) {
+            int from = random.nextInt(500);
+            int to = from + random.nextInt(500);
+            assertThat(vector.sum(left, from, to)).isCloseTo(scalar.sum(left, from, to), within(1e-9));
+            assertThat(vector.min(left, from, to)).isEqualTo(scalar.min(left, from, to));
+            assertThat(vector.max(left, from, to)).isEqualTo(scalar.max(left, from, to));
+            assertThat(vector.dot(left, from, right, to - from, to - from))
+                .isCloseTo(scalar.dot(left, from, right, to - from, to - from), within(1e-6));
+        }
+        assertThat(vector.min(left, 3, 3)).isEqualTo(Double.POSITIVE_INFINITY);
+        assertThat(vector.max(left, 3, 3)).isEqualTo(Double.NEGATIVE_INFINITY);
+    }
+}
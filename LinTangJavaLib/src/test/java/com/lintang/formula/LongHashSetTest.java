@@ -0,0 +1,80 @@
+package com.lintang.formula;
+
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.cell.LongHashSet;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for LongHashSet and CellRectangle, the primitive address types.
+ */
+@DisplayName("Packed Address Tests")
+class LongHashSetTest {
+
+    @Test
+    @DisplayName("Set deduplicates and grows past its initial capacity")
+    void testAddAndGrow() {
+        LongHashSet set = new LongHashSet(2);
+        for (int row = 0; row < 1000; row++) {
+            assertThat(set.add(CellAddress.pack(row, row % 7))).isTrue();
+        }
+
+        assertThat(set.add(CellAddress.pack(10, 3))).isFalse();
+        assertThat(set.size()).isEqualTo(1000);
+        assertThat(set.contains(CellAddress.pack(999, 999 % 7))).isTrue();
+        assertThat(set.contains(CellAddress.pack(999, 0))).isFalse();
+        assertThat(set.toSortedArray()).hasSize(1000).isSorted();
+    }
+
+    @Test
+    @DisplayName("Zero is an ordinary value")
+    void testZero() {
+        LongHashSet set = new LongHashSet();
+
+        assertThat(set.contains(0L)).isFalse();
+        assertThat(set.add(0L)).isTrue();
+        assertThat(set.add(0L)).isFalse();
+        assertThat(set.add(-5L)).isTrue();
+
+        List<Long> values = new ArrayList<>();
+        set.forEach(values::add);
+        assertThat(values).containsExactlyInAnyOrder(0L, -5L);
+        assertThat(set.toSortedArray()).containsExactly(-5L, 0L);
+
+        set.clear();
+        assertThat(set.isEmpty()).isTrue();
+        assertThat(set.contains(0L)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Packed addresses parse without substrings")
+    void testTryParsePacked() {
+        assertThat(CellAddress.tryParsePacked("A1:AB12", 3, 7)).isEqualTo(CellAddress.pack(11, 27));
+        assertThat(CellAddress.tryParsePacked("A1:AB12", 0, 2)).isZero();
+        assertThat(CellAddress.tryParsePacked("A0", 0, 2)).isEqualTo(-1);
+        assertThat(CellAddress.tryParsePacked("A1:B2", 0, 5)).isEqualTo(-1);
+        assertThat(CellAddress.tryParsePacked("12", 0, 2)).isEqualTo(-1);
+    }
+
+    @Test
+    @DisplayName("Rectangles normalize corners and test containment")
+    void testRectangle() {
+        CellRectangle range = CellRectangle.of(CellAddress.pack(9, 2), CellAddress.pack(1, 0));
+
+        assertThat(range).isEqualTo(new CellRectangle(1, 0, 9, 2)).hasSameHashCodeAs(new CellRectangle(9, 2, 1, 0));
+        assertThat(range.toString()).isEqualTo("A2:C10");
+        assertThat(range.getCellCount()).isEqualTo(27);
+        assertThat(range.contains(CellAddress.pack(5, 1))).isTrue();
+        assertThat(range.contains(0, 0)).isFalse();
+        assertThat(range.intersects(new CellRectangle(9, 2, 20, 20))).isTrue();
+        assertThat(range.intersects(new CellRectangle(10, 0, 20, 20))).isFalse();
+        assertThat(new CellRectangle(3, 3, 3, 3).isSingleCell()).isTrue();
+        assertThatThrownBy(() -> new CellRectangle(-1, 0, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
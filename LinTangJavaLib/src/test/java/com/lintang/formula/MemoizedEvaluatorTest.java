@@ -0,0 +1,210 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.VersionedCellStore;
+import com.lintang.formula.engine.MemoizedEvaluator;
+import com.lintang.formula.function.FunctionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for cell versions and memoized evaluation.
+ */
+@DisplayName("Memoized Evaluator Tests")
+class MemoizedEvaluatorTest {
+
+    private VersionedCellStore cells;
+    private MemoizedEvaluator evaluator;
+
+    @BeforeEach
+    void setUp() {
+        cells = new VersionedCellStore();
+        for (int row = 0; row < 10; row++) {
+            for (int column = 0; column < 3; column++) {
+                cells.setNumber(row, column, row + 1);
+            }
+        }
+        evaluator = new MemoizedEvaluator(cells);
+    }
+
+    private double evaluate(String formula) throws Exception {
+        return evaluator.evaluate(FormulaParserUtil.parse(formula));
+    }
+
+    @Test
+    @DisplayName("Only writes that change a value advance its version")
+    void testCellVersions() {
+        long version = cells.getVersion();
+
+        cells.setNumber(2, 1, 3);
+        cells.clear(50, 7);
+        assertThat(cells.getVersion()).isEqualTo(version);
+
+        cells.setNumber(2, 1, 4);
+        assertThat(cells.getVersion()).isEqualTo(version + 1);
+        assertThat(cells.getVersion(2, 1)).isEqualTo(version + 1);
+        assertThat(cells.getVersion(2, 0)).isLessThan(version + 1);
+        assertThat(cells.getVersion(99, 99)).isZero();
+
+        cells.clear(2, 1);
+        assertThat(cells.getVersion(2, 1)).isEqualTo(version + 2);
+        assertThat(cells.changedSince(version, 0, 0, 9, 0)).isFalse();
+        assertThat(cells.changedSince(version, 2, 1, 2, 1)).isTrue();
+        assertThat(cells.changedSince(version + 2, 0, 0, 100, 100)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Replacing a column changes every row it had or now has")
+    void testSetColumnVersions() {
+        long version = cells.getVersion();
+
+        cells.setColumn(1, new double[] {1, 2});
+
+        assertThat(cells.getVersion(1, 1)).isEqualTo(version + 1);
+        assertThat(cells.getVersion(9, 1)).isEqualTo(version + 1);
+        assertThat(cells.changedSince(version, 5, 1, 9, 1)).isTrue();
+        assertThatThrownBy(() -> cells.setNumber(-1, 0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Range checks over block versions match a check of every row")
+    void testChangedSinceMatchesRows() {
+        VersionedCellStore store = new VersionedCellStore();
+        Random random = new Random(1);
+        store.setColumn(0, new double[3000]);
+        for (int i = 0; i < 300; i++) {
+            long since = store.getVersion();
+            int column = random.nextInt(2);
+            int row = random.nextInt(5000);
+            if (random.nextInt(5) == 0) {
+                store.clear(row, column);
+            } else {
+                store.setNumber(row, column, i + 1);
+            }
+            since -= random.nextInt(3);
+            for (int check = 0; check < 20; check++) {
+                int firstRow = random.nextInt(5000);
+                int lastRow = firstRow + random.nextInt(random.nextBoolean() ? 130 : 5000);
+                boolean changed = false;
+                for (int c = 0; c <= 1; c++) {
+                    for (int r = firstRow; r <= lastRow; r++) {
+                        changed |= store.getVersion(r, c) > since;
+                    }
+                }
+                assertThat(store.changedSince(since, firstRow, 0, lastRow, 1))
+                    .as("rows %d-%d since %d", firstRow, lastRow, since)
+                    .isEqualTo(changed);
+            }
+        }
+        assertThat(store.changedSince(0, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE)).isTrue();
+        assertThat(store.changedSince(store.getVersion(), 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Results are reused until a referenced cell changes")
+    void testReuseUntilInputChanges() throws Exception {
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(8.0);
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(8.0);
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(1);
+        assertThat(evaluator.getReusedCount()).isEqualTo(1);
+
+        cells.setNumber(5, 0, 100);
+        cells.setNumber(0, 2, 100);
+        cells.setNumber(1, 0, 7);
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(8.0);
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(1);
+
+        cells.setNumber(1, 1, 10);
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(16.0);
+        cells.setNumber(0, 0, 5);
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(24.0);
+        assertThat(evaluate("A1 * 2 + SUM(B1:B3)")).isEqualTo(24.0);
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(3);
+        assertThat(evaluator.getReusedCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Writing the value a cell already holds keeps results cached")
+    void testUnchangedWriteKeepsResult() throws Exception {
+        evaluate("SUM(A1:C10)");
+
+        cells.setNumber(4, 2, 5);
+        cells.setColumn(5, new double[] {1, 2, 3});
+        evaluate("SUM(A1:C10)");
+
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Clearing and replacing cells invalidates dependent results")
+    void testClearAndSetColumnInvalidate() throws Exception {
+        assertThat(evaluate("SUM(A1:A10)")).isEqualTo(55.0);
+
+        cells.clear(9, 0);
+        assertThat(evaluate("SUM(A1:A10)")).isEqualTo(45.0);
+
+        cells.setColumn(0, new double[] {1, 1});
+        assertThat(evaluate("SUM(A1:A10)")).isEqualTo(2.0);
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Formulas with the same fingerprint share one entry")
+    void testSharedByFingerprint() throws Exception {
+        assertThat(evaluate("SUM(A1:B10)")).isEqualTo(110.0);
+        assertThat(evaluate("sum(B10:A1)")).isEqualTo(110.0);
+        assertThat(evaluate("(SUM(A1:B10))")).isEqualTo(110.0);
+
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(1);
+        assertThat(evaluator.stats().getSize()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("The cache is bounded and evicts the least recently used result")
+    void testEviction() throws Exception {
+        evaluator = new MemoizedEvaluator(cells, 2, 100, FunctionRegistry.standard());
+        ASTNode first = FormulaParserUtil.parse("A1 + 1");
+        ASTNode second = FormulaParserUtil.parse("A2 + 1");
+        ASTNode third = FormulaParserUtil.parse("A3 + 1");
+
+        evaluator.evaluate(first);
+        evaluator.evaluate(second);
+        evaluator.evaluate(first);
+        evaluator.evaluate(third);
+        evaluator.evaluate(first);
+        evaluator.evaluate(second);
+
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(4);
+        assertThat(evaluator.stats().getSize()).isEqualTo(2);
+        assertThat(evaluator.stats().getEvictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Results recording more references than the weight budget are not kept")
+    void testWeightBound() throws Exception {
+        evaluator = new MemoizedEvaluator(cells, 10, 3, FunctionRegistry.standard());
+
+        evaluate("A1 + A2 + A3 + A4");
+        evaluate("A1 + A2 + A3 + A4");
+
+        assertThat(evaluator.getEvaluatedCount()).isEqualTo(2);
+        assertThat(evaluator.stats().getWeight()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Evaluation errors are thrown and not cached")
+    void testErrorsNotCached() throws Exception {
+        cells.setNumber(0, 1, 0);
+
+        assertThatThrownBy(() -> evaluate("A1 / B1")).isInstanceOf(ArithmeticException.class);
+        cells.setNumber(0, 1, 4);
+
+        assertThat(evaluate("A1 / B1")).isEqualTo(0.25);
+        assertThat(evaluator.stats().getSize()).isEqualTo(1);
+    }
+}
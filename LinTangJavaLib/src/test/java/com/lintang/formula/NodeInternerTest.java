@@ -0,0 +1,185 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.FunctionCallNode;
+import com.lintang.formula.ast.NodeInterner;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.CompiledFormula;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.compile.SharedExpressionCompiler;
+import com.lintang.formula.engine.RecalculationEngine;
+import com.lintang.formula.function.FunctionRegistry;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for hash-consed AST nodes and shared subexpression evaluation.
+ */
+@DisplayName("Node Interner Tests")
+class NodeInternerTest {
+
+    @Test
+    @DisplayName("Identical subtrees of different formulas become one node")
+    void testSharedSubtrees() throws Exception {
+        NodeInterner interner = new NodeInterner();
+
+        BinaryOpNode first = (BinaryOpNode) interner.intern(FormulaParserUtil.parse("A1 * B1 + 1"));
+        BinaryOpNode second = (BinaryOpNode) interner.intern(FormulaParserUtil.parse("A1 * B1 - 2"));
+
+        assertThat(first.getLeft()).isSameAs(second.getLeft());
+        assertThat(interner.isShared(first.getLeft())).isTrue();
+        assertThat(interner.isShared(first)).isFalse();
+        // A1, B1, A1*B1, 1, +, 2, -
+        assertThat(interner.size()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("Interning a formula twice returns the same root")
+    void testSameFormula() throws Exception {
+        NodeInterner interner = new NodeInterner();
+
+        ASTNode first = interner.intern(FormulaParserUtil.parse("SUM(A1:A10) / COUNT(A1:A10)"));
+        ASTNode second = interner.intern(FormulaParserUtil.parseFast("SUM(A1:A10) / COUNT(A1:A10)"));
+
+        assertThat(first).isSameAs(second);
+        assertThat(interner.isShared(first)).isTrue();
+        assertThat(first.accept(new FormulaStringBuilder())).isEqualTo("(SUM(A1:A10) / COUNT(A1:A10))");
+    }
+
+    @Test
+    @DisplayName("Factory methods return canonical nodes and keep signed zeros apart")
+    void testFactory() {
+        NodeInterner interner = new NodeInterner();
+
+        assertThat(interner.number(1.5)).isSameAs(interner.number(1.5));
+        assertThat(interner.number(0.0)).isNotSameAs(interner.number(-0.0));
+        assertThat(interner.number(Double.NaN)).isSameAs(interner.number(Double.NaN));
+        assertThat(interner.cellRef("A1")).isSameAs(interner.cellRef("A1"));
+        assertThat(interner.bool(true)).isSameAs(interner.bool(true));
+        assertThat(interner.binary("+", interner.cellRef("A1"), interner.number(1)))
+            .isSameAs(interner.binary("+", interner.cellRef("A1"), interner.number(1)))
+            .isNotSameAs(interner.binary("-", interner.cellRef("A1"), interner.number(1)));
+    }
+
+    @Test
+    @DisplayName("Function call arguments cannot be modified")
+    void testImmutableArguments() throws Exception {
+        FunctionCallNode call = (FunctionCallNode) FormulaParserUtil.parse("SUM(A1, B1)");
+
+        assertThatThrownBy(() -> call.getArguments().add(call))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @DisplayName("Concurrent interning agrees on one node")
+    void testConcurrentInterning() {
+        NodeInterner interner = new NodeInterner();
+
+        List<ASTNode> roots = IntStream.range(0, 64).parallel()
+                .mapToObj(i -> interner.intern(PrattFormulaParser.parse("(A1 + B2) * MAX(C1:C9, 3)")))
+                .toList();
+
+        assertThat(roots).allMatch(root -> root == roots.get(0));
+    }
+
+    @Test
+    @DisplayName("Shared subexpressions are computed once per recalculation")
+    void testSharedEvaluation() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FunctionRegistry functions = new FunctionRegistry()
+                .register("SLOW", (source, arguments) -> {
+                    calls.incrementAndGet();
+                    return arguments[0].evaluate(source) * 10;
+                });
+        NodeInterner interner = new NodeInterner();
+        SharedExpressionCompiler compiler = new SharedExpressionCompiler(interner, functions);
+        ASTNode first = interner.intern(FormulaParserUtil.parse("SLOW(A1) + 1"));
+        ASTNode second = interner.intern(FormulaParserUtil.parse("SLOW(A1) * 2"));
+        CompiledFormula firstFormula = compiler.compile(first);
+        CompiledFormula secondFormula = compiler.compile(second);
+        double[] a1 = {3};
+        CellSource cells = (row, column) -> a1[0];
+
+        compiler.beginRecalculation();
+
+        assertThat(firstFormula.evaluate(cells)).isEqualTo(31.0);
+        assertThat(secondFormula.evaluate(cells)).isEqualTo(60.0);
+        assertThat(calls).hasValue(1);
+        assertThat(compiler.getSharedCount()).isEqualTo(1);
+
+        a1[0] = 4;
+        compiler.beginRecalculation();
+
+        assertThat(secondFormula.evaluate(cells)).isEqualTo(80.0);
+        assertThat(firstFormula.evaluate(cells)).isEqualTo(41.0);
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("Shared-subexpression engine gives the same results as the plain engine")
+    void testEngineSharing() {
+        RecalculationEngine plain = new RecalculationEngine();
+        RecalculationEngine shared = new RecalculationEngine(new ColumnarCellStore(), new FormulaCompiler(), null, true);
+        for (RecalculationEngine engine : List.of(plain, shared)) {
+            for (int row = 0; row < 50; row++) {
+                engine.setValue(row, 0, row + 1);
+                engine.setFormula(row, 1, PrattFormulaParser.parse("SUM(A1:A50) / A" + (row + 1)));
+                engine.setFormula(row, 2, PrattFormulaParser.parse("SUM(A1:A50) * 2 + B" + (row + 1)));
+                engine.setFormula(row, 3, PrattFormulaParser.parse("\"x\" + 1"));
+            }
+            engine.recalculate();
+            engine.setValue(7, 0, 100);
+            engine.recalculate();
+        }
+
+        for (int row = 0; row < 50; row++) {
+            for (int column = 0; column < 4; column++) {
+                assertThat(Double.doubleToLongBits(shared.getValue(row, column)))
+                    .isEqualTo(Double.doubleToLongBits(plain.getValue(row, column)));
+            }
+        }
+        assertThat(shared.getValue(0, 3)).isNaN();
+        assertThat(shared.getInterner().isShared(PrattFormulaParser.parse("SUM(A1:A50)").accept(shared.getInterner())))
+            .isTrue();
+    }
+
+    @Test
+    @DisplayName("Editing one cell repeatedly keeps the shared DAG bounded")
+    void testRepeatedEditsStayBounded() {
+        RecalculationEngine engine = new RecalculationEngine(new ColumnarCellStore(), new FormulaCompiler(), null, true);
+        for (int row = 0; row < 10; row++) {
+            engine.setValue(row, 0, row + 1);
+            engine.setFormula(row, 1, PrattFormulaParser.parse("SUM(A1:A10) / A" + (row + 1)));
+        }
+        engine.recalculate();
+        int size = engine.getInterner().size();
+
+        for (int edit = 0; edit < 5000; edit++) {
+            engine.setFormula(0, 2, PrattFormulaParser.parse("SUM(A1:A10) * " + edit + " + A" + (edit % 10 + 1)));
+            if (edit % 7 == 0) {
+                engine.clear(1, 3);
+                engine.setFormula(1, 3, PrattFormulaParser.parse("A2 - " + edit));
+            }
+            engine.recalculate();
+            assertThat(engine.getValue(0, 2)).isEqualTo(55.0 * edit + edit % 10 + 1);
+            assertThat(engine.getValue(1, 3)).isEqualTo(2.0 - edit / 7 * 7);
+        }
+
+        assertThat(engine.getInterner().size()).isLessThan(size + 400);
+        assertThat(engine.getValue(4, 1)).isEqualTo(11.0);
+        engine.setValue(4, 0, 55);
+        engine.recalculate();
+        assertThat(engine.getValue(4, 1)).isEqualTo(105.0 / 55);
+        assertThat(engine.getInterner().isShared(PrattFormulaParser.parse("SUM(A1:A10)").accept(engine.getInterner())))
+            .isTrue();
+    }
+}
@@ -0,0 +1,276 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.ast.BinaryOpNode;
+import com.lintang.formula.ast.CellRefNode;
+import com.lintang.formula.ast.FunctionCallNode;
+import com.lintang.formula.ast.NumberNode;
+import com.lintang.formula.ast.PostOrderIterator;
+import com.lintang.formula.ast.NodeInterner;
+import com.lintang.formula.ast.UnaryOpNode;
+import com.lintang.formula.batch.BatchFormula;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.BytecodeCompiler;
+import com.lintang.formula.compile.ClosureCompiler;
+import com.lintang.formula.compile.FlatFormula;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.engine.RecalculationEngine;
+import com.lintang.formula.serial.FormulaArchive;
+import com.lintang.formula.visitor.CellReferenceExtractor;
+import com.lintang.formula.visitor.ConstantFoldingVisitor;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import com.lintang.formula.visitor.FormulaCanonicalizer;
+import com.lintang.formula.visitor.FormulaFingerprint;
+import com.lintang.formula.visitor.FormulaStringBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for post-order traversal and the stack-safe built-in visitors.
+ */
+@DisplayName("Post-Order Iterator Tests")
+class PostOrderIteratorTest {
+
+    private static final int DEPTH = 100_000;
+    /** Parsing is far slower than walking, so parsed chains are kept shorter. */
+    private static final int PARSED_TERMS = 10_000;
+    /** Small enough that any per-level recursion overflows long before {@link #DEPTH}. */
+    private static final long THREAD_STACK_BYTES = 256 * 1024;
+    private static final CellSource CELLS = (row, column) -> row + 1;
+
+    private static List<String> postOrder(PostOrderIterator iterator) {
+        FormulaStringBuilder printer = new FormulaStringBuilder();
+        List<String> visited = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ASTNode node = iterator.next();
+            visited.add(node.getChildCount() == 0 ? node.accept(printer) : node.getClass().getSimpleName());
+        }
+        return visited;
+    }
+
+    /**
+     * Runs the check on a thread with a small stack and rethrows whatever it threw.
+     */
+    private static void onSmallStack(Runnable check) throws Throwable {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                check.run();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, "small-stack", THREAD_STACK_BYTES);
+        thread.start();
+        thread.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Returns {@code A1 + A1 + ...} with the given number of terms, as the parser builds it.
+     */
+    private static ASTNode leftDeepSum(int terms) {
+        ASTNode sum = new CellRefNode("A1");
+        for (int i = 1; i < terms; i++) {
+            sum = new BinaryOpNode("+", sum, new CellRefNode("A1"));
+        }
+        return sum;
+    }
+
+    @Test
+    @DisplayName("Children are returned left to right before their parent")
+    void testOrder() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("SUM(A1, -2) * B3 + 4");
+
+        assertThat(postOrder(new PostOrderIterator(ast))).containsExactly(
+            "A1", "2.0", "UnaryOpNode", "FunctionCallNode", "B3", "BinaryOpNode", "4.0", "BinaryOpNode");
+    }
+
+    @Test
+    @DisplayName("Rejected nodes are returned without their children")
+    void testDescendPredicate() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("SUM(A1, -2) * B3");
+
+        assertThat(postOrder(new PostOrderIterator(ast, node -> !(node instanceof FunctionCallNode))))
+            .containsExactly("FunctionCallNode", "B3", "BinaryOpNode");
+
+        PostOrderIterator iterator = new PostOrderIterator(ast, node -> !(node instanceof FunctionCallNode));
+        assertThat(iterator.next()).isInstanceOf(FunctionCallNode.class);
+        assertThat(iterator.childrenVisited()).isFalse();
+        iterator.next();
+        assertThat(iterator.childrenVisited()).isFalse();
+        assertThat(iterator.next()).isInstanceOf(BinaryOpNode.class);
+        assertThat(iterator.childrenVisited()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Leaves iterate once and exhausted iterators throw")
+    void testLeafAndExhaustion() {
+        PostOrderIterator iterator = new PostOrderIterator(new NumberNode(1));
+
+        assertThat(iterator.next()).isInstanceOf(NumberNode.class);
+        assertThat(iterator.hasNext()).isFalse();
+        assertThatThrownBy(iterator::next).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> new NumberNode(1).getChild(0)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> new UnaryOpNode("-", new NumberNode(1)).getChild(1))
+            .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    @DisplayName("A parsed chain of 10k terms is evaluated, scanned and printed on a small stack")
+    void testParsedChain() throws Throwable {
+        StringBuilder formula = new StringBuilder("A1");
+        for (int i = 2; i <= PARSED_TERMS; i++) {
+            formula.append(i % 2 == 0 ? " + A" : " - A").append(i % 10 + 1);
+        }
+        ASTNode ast = FormulaParserUtil.parse(formula.toString());
+
+        onSmallStack(() -> {
+            double expected = 1;
+            for (int i = 2; i <= PARSED_TERMS; i++) {
+                expected += (i % 2 == 0 ? 1 : -1) * (i % 10 + 1);
+            }
+            assertThat(ast.accept(new EvaluationVisitor(CELLS))).isEqualTo(expected);
+
+            CellReferenceExtractor extractor = new CellReferenceExtractor();
+            ast.accept(extractor);
+            assertThat(extractor.getCells().size()).isEqualTo(10);
+
+            String printed = ast.accept(new FormulaStringBuilder());
+            assertThat(printed).startsWith("((((").endsWith(" + A1)");
+        });
+    }
+
+    @Test
+    @DisplayName("Right-deep and unary chains 100k deep are handled on a small stack")
+    void testDeepTrees() throws Throwable {
+        ASTNode rightDeep = new CellRefNode("A1");
+        ASTNode negations = new CellRefNode("B2");
+        for (int i = 0; i < DEPTH; i++) {
+            rightDeep = new BinaryOpNode("+", new NumberNode(1), rightDeep);
+            negations = new UnaryOpNode("-", negations);
+        }
+        ASTNode right = rightDeep;
+        ASTNode unary = negations;
+
+        onSmallStack(() -> {
+            assertThat(right.accept(new EvaluationVisitor(CELLS))).isEqualTo(DEPTH + 1.0);
+            assertThat(unary.accept(new EvaluationVisitor(CELLS))).isEqualTo(2.0);
+
+            CellReferenceExtractor extractor = new CellReferenceExtractor();
+            unary.accept(extractor);
+            assertThat(extractor.getCellReferences()).containsExactly("B2");
+
+            assertThat(right.accept(new FormulaStringBuilder())).hasSize(DEPTH * 8 + 2).endsWith("A1" + ")".repeat(DEPTH));
+            assertThat(unary.accept(new FormulaStringBuilder())).isEqualTo("-".repeat(DEPTH) + "B2");
+        });
+    }
+
+    @Test
+    @DisplayName("Rewriting, hashing, encoding and compiling visitors handle 100k-deep chains on a small stack")
+    void testRewritingAndCompilingVisitors() throws Throwable {
+        ASTNode rightDeep = new CellRefNode("A1");
+        ASTNode negations = new CellRefNode("B2");
+        for (int i = 0; i < DEPTH; i++) {
+            rightDeep = new BinaryOpNode("+", new NumberNode(1), rightDeep);
+            negations = new UnaryOpNode("-", negations);
+        }
+        List<ASTNode> chains = List.of(leftDeepSum(DEPTH), rightDeep, negations);
+
+        onSmallStack(() -> {
+            for (ASTNode ast : chains) {
+                double expected = ast.accept(new EvaluationVisitor(CELLS));
+                String printed = ast.accept(new FormulaStringBuilder());
+
+                assertThat(ConstantFoldingVisitor.fold(ast).accept(new EvaluationVisitor(CELLS))).isEqualTo(expected);
+                assertThat(FormulaFingerprint.of(FormulaCanonicalizer.canonicalize(ast))).isEqualTo(FormulaFingerprint.of(ast));
+                assertThat(FormulaCanonicalizer.toR1C1(ast, 0, 0)).contains("R");
+                assertThat(new NodeInterner().intern(ast).accept(new FormulaStringBuilder())).isEqualTo(printed);
+                assertThat(FormulaArchive.decode(FormulaArchive.encode(ast)).accept(new FormulaStringBuilder()))
+                    .isEqualTo(printed);
+                assertThat(FlatFormula.fromAST(ast).evaluate(CELLS)).isEqualTo(expected);
+
+                // Too deep for closures, too large for one method: both leave the formula interpreted
+                assertThatThrownBy(() -> ClosureCompiler.compile(ast)).isInstanceOf(UnsupportedOperationException.class);
+                assertThatThrownBy(() -> BytecodeCompiler.compile(ast)).isInstanceOf(UnsupportedOperationException.class);
+                assertThatThrownBy(() -> new FormulaCompiler().compile(ast)).isInstanceOf(UnsupportedOperationException.class);
+            }
+            double[] column = {1, 2, 3};
+            assertThat(BatchFormula.compile(chains.get(0), 0).evaluate(new double[][] {column}, 3))
+                .containsExactly(DEPTH, 2.0 * DEPTH, 3.0 * DEPTH);
+        });
+    }
+
+    @Test
+    @DisplayName("A 100k-term chain is set and recalculated on a small stack, with or without shared subexpressions")
+    void testEngineDeepChain() throws Throwable {
+        ASTNode chain = leftDeepSum(DEPTH);
+
+        onSmallStack(() -> {
+            for (boolean share : new boolean[] {false, true}) {
+                RecalculationEngine engine = new RecalculationEngine(new ColumnarCellStore(), new FormulaCompiler(), null, share);
+                engine.setFormula(0, 1, chain);
+                // Past the closure threshold, where the formula stays interpreted
+                for (int value = 1; value <= 4; value++) {
+                    engine.setValue("A1", value);
+                    engine.recalculate();
+                    assertThat(engine.getValue("B1")).as("shared: %s", share).isEqualTo((double) DEPTH * value);
+                }
+            }
+        });
+
+        StringBuilder formula = new StringBuilder("A1");
+        for (int i = 1; i < PARSED_TERMS; i++) {
+            formula.append(" + A1");
+        }
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 2);
+        engine.setFormula("C1", formula.toString());
+        engine.recalculate();
+        assertThat(engine.getValue("C1")).isEqualTo(2.0 * PARSED_TERMS);
+    }
+
+    @Test
+    @DisplayName("Nested function calls are walked without recursion except for lazy evaluation")
+    void testNestedFunctionCalls() throws Throwable {
+        ASTNode nested = new CellRefNode("C3");
+        for (int i = 0; i < DEPTH; i++) {
+            nested = new FunctionCallNode("MAX", List.of(nested, new NumberNode(i % 3)));
+        }
+        ASTNode ast = nested;
+
+        onSmallStack(() -> {
+            CellReferenceExtractor extractor = new CellReferenceExtractor();
+            ast.accept(extractor);
+            assertThat(extractor.getCellReferences()).containsExactly("C3");
+            assertThat(ast.accept(new FormulaStringBuilder())).startsWith("MAX(MAX(").endsWith(", 0.0)");
+        });
+
+        // Arguments are evaluated by the functions themselves, so evaluation recurses per call;
+        // spreadsheets cap function nesting at 64 levels
+        ASTNode shallow = new CellRefNode("C3");
+        for (int i = 0; i < 64; i++) {
+            shallow = new FunctionCallNode("SUM", List.of(shallow, new NumberNode(1)));
+        }
+        assertThat(shallow.accept(new EvaluationVisitor(CELLS))).isEqualTo(67.0);
+    }
+
+    @Test
+    @DisplayName("Iterative visitors keep the left-to-right error order")
+    void testErrorOrder() throws Exception {
+        ASTNode ast = FormulaParserUtil.parse("1 / 0 + \"text\"");
+
+        assertThatThrownBy(() -> ast.accept(new EvaluationVisitor(CELLS)))
+            .isInstanceOf(ArithmeticException.class);
+        assertThat(FormulaParserUtil.parse("NOW() + 1").accept(new FormulaStringBuilder())).isEqualTo("(NOW() + 1.0)");
+    }
+}
@@ -0,0 +1,151 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Differential tests checking the hand-written parser against the ANTLR parsers.
+ */
+@DisplayName("Pratt Formula Parser Tests")
+class PrattFormulaParserTest {
+
+    private static final String[] TOKEN_ALPHABET = {
+        "1", "23", "4.5", ".5", "7.", "A1", "B10", "AA1", "A1:B2", "TRUE", "FALSE", "TRUE1", "SUM", "sum",
+        "x_1", "\"s\"", "\"", "(", ")", ",", ":", "+", "-", "*", "/", "^", " ", "\t", ".", "$", "a"
+    };
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "1", "42", "3.14", "3.5 + 2.5", ".5", "7.", "\"hello\"", "\"\"", "TRUE", "FALSE",
+        "A1", "A1:A10", "A1:B10", "Z99 + AA1 + ZZ100", "TRUE1 + FALSEX(1)",
+        "1 + 2 + 3", "1+2+3", "2 + 3 * 4", "2+3*4", "(2 + 3) * 4", "(2 + 3) ^ 2", "2 ^ 3 ^ 2",
+        "10 / 0", "+5", "-5", "-2 ^ 2", "2 * -3", "2 + -3 * 4", "-5 * (3 + 2)",
+        "2 + 3 * 4 - 5 / 2 + 1 ^ 2", "2 + 3 - 4 * 5 / 2 ^ 1", "((2 + 3) * (4 - 1))", "  2   +   3   ",
+        "(10 + 5) * 2 - 10 / 2", "3.5 * A1 + 2.5", "A1 + B2 * C3", "(A1 + B1) * (C1 - D1) / SUM(E1:E10)",
+        "SUM()", "SUM(A1:A10)", "MAX(1, 2, 3)", "SUM(A1, MAX(B1, 2), 3)", "MAX(SUM(A1:A10), SUM(B1:B10), SUM(C1:C5))",
+        "SUM(A1:A10) + AVERAGE(B1:B20) - COUNT(C1:C5)", "CONCATENATE(\"Hello\", \" \", \"World\")",
+        "12345678901234567890", "0.1 + 0.2"
+    })
+    @DisplayName("Produces the same AST as the ANTLR parsers")
+    void testMatchesAntlrParsers(String formula) throws Exception {
+        String expected = FormulaParserUtil.parse(formula).toString();
+
+        assertThat(PrattFormulaParser.parse(formula).toString()).isEqualTo(expected);
+        assertThat(FastFormulaParser.parse(formula).toString()).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "", "   ", "2 +", "\"hello", "2 $ 3", "(2 + 3", "2 3", "--5", "2 ^ -3", "SUM(1,)", "SUM", "A1:",
+        "A1:b2", "TRUE(1)", "1.2.3", ".", "SUM(A1, (2 +", ")", "1e5"
+    })
+    @DisplayName("Rejects the same malformed formulas as the strict ANTLR parser")
+    void testRejectsMalformedFormulas(String formula) {
+        assertThatThrownBy(() -> FastFormulaParser.parse(formula)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PrattFormulaParser.parse(formula))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageStartingWith("Invalid formula");
+    }
+
+    @Test
+    @DisplayName("Parses from a character array")
+    void testParseCharArray() {
+        ASTNode ast = PrattFormulaParser.parse("SUM(A1:B2) * 2".toCharArray());
+
+        assertThat(ast).isInstanceOf(BinaryOpNode.class);
+        BinaryOpNode multiply = (BinaryOpNode) ast;
+        assertThat(multiply.getLeft()).isInstanceOf(FunctionCallNode.class);
+        CellRangeNode range = (CellRangeNode) ((FunctionCallNode) multiply.getLeft()).getArguments().get(0);
+        assertThat(range.getStartCell()).isEqualTo("A1");
+        assertThat(range.getEndCell()).isEqualTo("B2");
+    }
+
+    @Test
+    @DisplayName("Parse null throws exception")
+    void testParseNullThrowsException() {
+        assertThatThrownBy(() -> PrattFormulaParser.parse((String) null))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Fuzzed valid formulas match the ANTLR parsers")
+    void testFuzzedValidFormulas() throws Exception {
+        Random random = new Random(20240611L);
+        for (int i = 0; i < 2000; i++) {
+            String formula = randomExpression(random, 0);
+            String expected = FormulaParserUtil.parse(formula).toString();
+
+            assertThat(PrattFormulaParser.parse(formula).toString()).as(formula).isEqualTo(expected);
+            assertThat(FastFormulaParser.parse(formula).toString()).as(formula).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    @DisplayName("Fuzzed token soup is accepted or rejected exactly like the strict ANTLR parser")
+    void testFuzzedTokenSoup() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder formula = new StringBuilder();
+            int tokens = 1 + random.nextInt(8);
+            for (int t = 0; t < tokens; t++) {
+                formula.append(TOKEN_ALPHABET[random.nextInt(TOKEN_ALPHABET.length)]);
+            }
+            String text = formula.toString();
+
+            String expected = parseOrNull(() -> FastFormulaParser.parse(text));
+            String actual = parseOrNull(() -> PrattFormulaParser.parse(text));
+
+            assertThat(actual).as(text).isEqualTo(expected);
+        }
+    }
+
+    private static String parseOrNull(java.util.function.Supplier<ASTNode> parser) {
+        try {
+            return parser.get().toString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String randomExpression(Random random, int depth) {
+        int choice = depth > 4 ? random.nextInt(4) : random.nextInt(9);
+        return switch (choice) {
+            case 0 -> String.valueOf(random.nextInt(1000));
+            case 1 -> random.nextInt(100) + "." + random.nextInt(100);
+            case 2 -> (char) ('A' + random.nextInt(26)) + String.valueOf(1 + random.nextInt(99));
+            case 3 -> random.nextBoolean() ? "TRUE" : "\"s" + random.nextInt(10) + "\"";
+            case 4 -> "(" + randomExpression(random, depth + 1) + ")";
+            case 5 -> (random.nextBoolean() ? "-" : "+") + randomPowerChain(random, depth + 1);
+            case 6 -> {
+                StringBuilder call = new StringBuilder(random.nextBoolean() ? "SUM(" : "f_" + random.nextInt(5) + "(");
+                int args = random.nextInt(4);
+                for (int a = 0; a < args; a++) {
+                    call.append(a > 0 ? ", " : "").append(randomExpression(random, depth + 1));
+                }
+                yield call.append(")").toString();
+            }
+            case 7 -> "A" + (1 + random.nextInt(9)) + ":C" + (10 + random.nextInt(90));
+            default -> {
+                String[] operators = {" + ", " - ", "*", " / ", "^"};
+                String operator = operators[random.nextInt(operators.length)];
+                String right = randomExpression(random, depth + 1);
+                if (operator.equals("^") && (right.startsWith("-") || right.startsWith("+"))) {
+                    right = "(" + right + ")";
+                }
+                yield randomExpression(random, depth + 1) + operator + right;
+            }
+        };
+    }
+
+    private static String randomPowerChain(Random random, int depth) {
+        String base = random.nextBoolean() ? String.valueOf(random.nextInt(10)) : "(" + randomExpression(random, depth) + ")";
+        return random.nextBoolean() ? base : base + "^" + random.nextInt(4);
+    }
+}
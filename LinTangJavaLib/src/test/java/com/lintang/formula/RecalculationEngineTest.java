@@ -0,0 +1,326 @@
+package com.lintang.formula;
+
+import com.lintang.formula.cell.CellAddress;
+import com.lintang.formula.cell.ColumnarCellStore;
+import com.lintang.formula.compile.FormulaCompiler;
+import com.lintang.formula.engine.DependencyGraph;
+import com.lintang.formula.engine.RecalculationEngine;
+import com.lintang.formula.engine.RecalculationOrder;
+import com.lintang.formula.engine.RecalculationScheduler;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for the dependency graph and incremental recalculation.
+ */
+@DisplayName("Recalculation Engine Tests")
+class RecalculationEngineTest {
+
+    private static long cell(String cellRef) {
+        return CellAddress.pack(CellAddress.parseRow(cellRef), CellAddress.parseColumn(cellRef));
+    }
+
+    @Test
+    @DisplayName("First recalculation evaluates formulas in dependency order")
+    void testInitialRecalculation() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setFormula("C1", "B1 * 2");
+        engine.setFormula("B1", "A1 + 1");
+        engine.setValue("A1", 4);
+
+        assertThat(engine.recalculate()).isEqualTo(2);
+        assertThat(engine.getValue("B1")).isEqualTo(5.0);
+        assertThat(engine.getValue("C1")).isEqualTo(10.0);
+        assertThat(engine.isDirty()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Only formulas depending on a changed cell are recomputed")
+    void testIncrementalRecalculation() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 1);
+        engine.setValue("A2", 2);
+        engine.setFormula("B1", "A1 * 10");
+        engine.setFormula("B2", "A2 * 10");
+        engine.setFormula("C1", "B1 + B2");
+        engine.recalculate();
+
+        engine.setValue("A1", 3);
+
+        assertThat(engine.recalculate()).isEqualTo(2);
+        assertThat(engine.getValue("B1")).isEqualTo(30.0);
+        assertThat(engine.getValue("C1")).isEqualTo(50.0);
+        assertThat(engine.recalculate()).isZero();
+    }
+
+    @Test
+    @DisplayName("Diamond dependencies evaluate the shared dependent once, after both inputs")
+    void testDiamond() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 1);
+        engine.setFormula("B1", "A1 + 1");
+        engine.setFormula("B2", "A1 * 3");
+        engine.setFormula("C1", "B1 * B2");
+        engine.recalculate();
+
+        engine.setValue("A1", 2);
+
+        assertThat(engine.recalculate()).isEqualTo(3);
+        assertThat(engine.getValue("C1")).isEqualTo(18.0);
+    }
+
+    @Test
+    @DisplayName("Range precedents propagate changes to functions")
+    void testRangeDependencies() {
+        RecalculationEngine engine = new RecalculationEngine();
+        for (int row = 0; row < 10; row++) {
+            engine.setValue(row, 0, row + 1);
+        }
+        engine.setFormula("B1", "SUM(A1:A10)");
+        engine.setFormula("B2", "MAX(A1:A5)");
+        engine.recalculate();
+
+        engine.setValue("A8", 100);
+
+        assertThat(engine.recalculate()).isEqualTo(1);
+        assertThat(engine.getValue("B1")).isEqualTo(147.0);
+        assertThat(engine.getValue("B2")).isEqualTo(5.0);
+    }
+
+    @Test
+    @DisplayName("Replacing a formula drops its old precedents")
+    void testReplaceFormula() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 1);
+        engine.setValue("A2", 2);
+        engine.setFormula("B1", "A1");
+        engine.recalculate();
+
+        engine.setFormula("B1", "A2");
+        engine.recalculate();
+        engine.setValue("A1", 50);
+
+        assertThat(engine.recalculate()).isZero();
+        assertThat(engine.getValue("B1")).isEqualTo(2.0);
+        assertThat(engine.getGraph().getDependents(cell("A1"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Overwriting a formula with a value propagates to its dependents")
+    void testFormulaReplacedByValue() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 1);
+        engine.setFormula("B1", "A1 + 1");
+        engine.setFormula("C1", "B1 + 1");
+        engine.recalculate();
+
+        engine.setValue("B1", 10);
+
+        assertThat(engine.recalculate()).isEqualTo(1);
+        assertThat(engine.isFormula(0, 1)).isFalse();
+        assertThat(engine.getValue("C1")).isEqualTo(11.0);
+    }
+
+    @Test
+    @DisplayName("Evaluation errors become NaN and propagate")
+    void testErrorsBecomeNaN() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 0);
+        engine.setFormula("B1", "1 / A1");
+        engine.setFormula("C1", "B1 + 1");
+        engine.recalculate();
+
+        assertThat(engine.getValue("B1")).isNaN();
+        assertThat(engine.getValue("C1")).isNaN();
+
+        engine.setValue("A1", 4);
+        engine.recalculate();
+
+        assertThat(engine.getValue("C1")).isEqualTo(1.25);
+    }
+
+    @Test
+    @DisplayName("Circular references are reported while the rest is still recomputed")
+    void testCircularReference() {
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue("A1", 1);
+        engine.setFormula("B1", "A1 + C1");
+        engine.setFormula("C1", "B1 + 1");
+        engine.setFormula("D1", "A1 * 2");
+
+        assertThatThrownBy(engine::recalculate)
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("B1")
+            .hasMessageContaining("C1");
+        assertThat(engine.getValue("D1")).isEqualTo(2.0);
+        assertThat(engine.isDirty()).isTrue();
+
+        engine.setFormula("C1", "5");
+
+        assertThat(engine.recalculate()).isEqualTo(2);
+        assertThat(engine.getValue("B1")).isEqualTo(6.0);
+    }
+
+    @Test
+    @DisplayName("A formula reading its own cell is circular, also through a range")
+    void testSelfReference() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setFormula(cell("A1"), FormulaParserUtil.parseFast("A1 + 1"));
+        graph.setFormula(cell("B5"), FormulaParserUtil.parseFast("SUM(B1:B10)"));
+
+        RecalculationOrder order = graph.recalculationOrder(new long[] {cell("A1"), cell("B5")});
+
+        assertThat(order.getCells()).isEmpty();
+        assertThat(order.getCircularCells()).containsExactlyInAnyOrder(cell("A1"), cell("B5"));
+    }
+
+    @Test
+    @DisplayName("Overlapping ranges report a dependent once and are dropped on edit")
+    void testOverlappingRangeDependents() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setFormula(cell("Z1"), FormulaParserUtil.parseFast("SUM(A1:A10) + SUM(A5:A20) + A7"));
+        graph.setFormula(cell("Z2"), FormulaParserUtil.parseFast("SUM(A1:C100)"));
+
+        assertThat(graph.getDependents(cell("A7"))).containsExactlyInAnyOrder(cell("Z1"), cell("Z2"));
+        assertThat(graph.getDependents(cell("A15"))).containsExactlyInAnyOrder(cell("Z1"), cell("Z2"));
+
+        graph.setFormula(cell("Z1"), FormulaParserUtil.parseFast("SUM(B1:B3)"));
+
+        assertThat(graph.getDependents(cell("A7"))).containsExactly(cell("Z2"));
+        assertThat(graph.getDependents(cell("B2"))).containsExactlyInAnyOrder(cell("Z1"), cell("Z2"));
+        graph.remove(cell("Z2"));
+        assertThat(graph.getDependents(cell("C50"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Cells downstream of a cycle are reported as circular, not evaluated")
+    void testDownstreamOfCycle() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setFormula(cell("A1"), FormulaParserUtil.parseFast("B1"));
+        graph.setFormula(cell("B1"), FormulaParserUtil.parseFast("A1"));
+        graph.setFormula(cell("C1"), FormulaParserUtil.parseFast("B1 + Z9"));
+
+        RecalculationOrder order = graph.recalculationOrder(new long[] {cell("A1"), cell("Z9")});
+
+        assertThat(order.getCells()).isEmpty();
+        assertThat(order.getCircularCells()).containsExactlyInAnyOrder(cell("A1"), cell("B1"), cell("C1"));
+    }
+
+    @Test
+    @DisplayName("Long dependency chains are ordered without recursion")
+    void testLongChain() {
+        int length = 100_000;
+        RecalculationEngine engine = new RecalculationEngine();
+        engine.setValue(0, 0, 1);
+        for (int row = 1; row < length; row++) {
+            engine.setFormula(row, 0, FormulaParserUtil.parseFast("A" + row + " + 1"));
+        }
+
+        assertThat(engine.recalculate()).isEqualTo(length - 1);
+        assertThat(engine.getValue(length - 1, 0)).isEqualTo(length);
+
+        engine.setValue(length / 2, 0, 0);
+
+        assertThat(engine.recalculate()).isEqualTo(length / 2 - 1);
+        assertThat(engine.getValue(length - 1, 0)).isEqualTo(length / 2 - 1);
+    }
+
+    @Test
+    @DisplayName("Packed addresses round-trip and sort row-major")
+    void testPackedAddress() {
+        long address = CellAddress.pack(41, 27);
+
+        assertThat(CellAddress.packedRow(address)).isEqualTo(41);
+        assertThat(CellAddress.packedColumn(address)).isEqualTo(27);
+        assertThat(CellAddress.toString(address)).isEqualTo("AB42");
+        assertThat(CellAddress.pack(1, 0)).isGreaterThan(CellAddress.pack(0, 1000));
+    }
+
+    @Test
+    @DisplayName("Recalculation order is grouped into topological levels")
+    void testLevels() {
+        DependencyGraph graph = new DependencyGraph();
+        graph.setFormula(cell("B1"), FormulaParserUtil.parseFast("A1 + 1"));
+        graph.setFormula(cell("B2"), FormulaParserUtil.parseFast("A1 * 2"));
+        graph.setFormula(cell("C1"), FormulaParserUtil.parseFast("B1 + B2"));
+        graph.setFormula(cell("D1"), FormulaParserUtil.parseFast("C1 + A1"));
+
+        RecalculationOrder order = graph.recalculationOrder(new long[] {cell("A1")});
+
+        assertThat(order.getLevelCount()).isEqualTo(3);
+        assertThat(order.getLevelEnd(0) - order.getLevelStart(0)).isEqualTo(2);
+        assertThat(order.getCells()[order.getLevelStart(1)]).isEqualTo(cell("C1"));
+        assertThat(order.getCells()[order.getLevelStart(2)]).isEqualTo(cell("D1"));
+    }
+
+    @Test
+    @DisplayName("Parallel recalculation gives the same results as sequential recalculation")
+    void testParallelMatchesSequential() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RecalculationEngine sequential = new RecalculationEngine();
+            RecalculationEngine parallel = new RecalculationEngine(new ColumnarCellStore(), new FormulaCompiler(),
+                    new RecalculationScheduler(pool, 16));
+            buildRandomSheet(sequential, new Random(99));
+            buildRandomSheet(parallel, new Random(99));
+
+            assertThat(parallel.recalculate()).isEqualTo(sequential.recalculate());
+            assertSameValues(sequential, parallel);
+
+            for (int row = 0; row < 200; row += 7) {
+                sequential.setValue(row, 0, row * 0.5);
+                parallel.setValue(row, 0, row * 0.5);
+            }
+
+            assertThat(parallel.recalculate()).isEqualTo(sequential.recalculate());
+            assertSameValues(sequential, parallel);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Scheduler chunk size must be positive")
+    void testSchedulerChunkSize() {
+        assertThatThrownBy(() -> new RecalculationScheduler(ForkJoinPool.commonPool(), 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /** Column A holds inputs; every later column holds formulas reading earlier columns. */
+    private static void buildRandomSheet(RecalculationEngine engine, Random random) {
+        for (int row = 0; row < 200; row++) {
+            engine.setValue(row, 0, random.nextInt(100));
+        }
+        for (int column = 1; column < 12; column++) {
+            for (int row = 0; row < 200; row++) {
+                String left = CellAddress.toString(random.nextInt(200), random.nextInt(column));
+                String right = CellAddress.toString(random.nextInt(200), random.nextInt(column));
+                int first = random.nextInt(190);
+                String range = CellAddress.columnName(random.nextInt(column)) + (first + 1)
+                        + ":" + CellAddress.columnName(random.nextInt(column)) + (first + 10);
+                String formula = switch (random.nextInt(4)) {
+                    case 0 -> left + " + " + right + " * 0.5";
+                    case 1 -> left + " / (" + right + " - 50)";
+                    case 2 -> "SUM(" + range + ") - " + left;
+                    default -> "MAX(" + range + ", " + right + ")";
+                };
+                engine.setFormula(row, column, FormulaParserUtil.parseFast(formula));
+            }
+        }
+    }
+
+    private static void assertSameValues(RecalculationEngine expected, RecalculationEngine actual) {
+        for (int column = 0; column < 12; column++) {
+            for (int row = 0; row < 200; row++) {
+                assertThat(Double.doubleToLongBits(actual.getValue(row, column)))
+                    .as(CellAddress.toString(row, column))
+                    .isEqualTo(Double.doubleToLongBits(expected.getValue(row, column)));
+            }
+        }
+    }
+}
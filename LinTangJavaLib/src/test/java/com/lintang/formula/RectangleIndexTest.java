@@ -0,0 +1,104 @@
+package com.lintang.formula;
+
+import com.lintang.formula.cell.CellRectangle;
+import com.lintang.formula.engine.RectangleIndex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for RectangleIndex, checked against a linear scan.
+ */
+@DisplayName("Rectangle Index Tests")
+class RectangleIndexTest {
+
+    private record Entry(CellRectangle range, Integer value) { }
+
+    @Test
+    @DisplayName("Point queries find every covering rectangle")
+    void testPointQuery() {
+        RectangleIndex<String> index = new RectangleIndex<>();
+        index.insert(new CellRectangle(0, 0, 99, 0), "A1:A100");
+        index.insert(new CellRectangle(0, 0, 9, 3), "A1:D10");
+        index.insert(new CellRectangle(50, 1, 60, 1), "B51:B61");
+
+        assertThat(query(index, 5, 0)).containsExactlyInAnyOrder("A1:A100", "A1:D10");
+        assertThat(query(index, 55, 1)).containsExactly("B51:B61");
+        assertThat(query(index, 200, 0)).isEmpty();
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Removing needs the exact rectangle and value")
+    void testRemove() {
+        RectangleIndex<String> index = new RectangleIndex<>();
+        index.insert(new CellRectangle(0, 0, 9, 0), "x");
+        index.insert(new CellRectangle(0, 0, 9, 0), "y");
+
+        assertThat(index.remove(new CellRectangle(0, 0, 8, 0), "x")).isFalse();
+        assertThat(index.remove(new CellRectangle(0, 0, 9, 0), "z")).isFalse();
+        assertThat(index.remove(new CellRectangle(0, 0, 9, 0), "x")).isTrue();
+        assertThat(query(index, 3, 0)).containsExactly("y");
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Random inserts and deletes match a linear scan")
+    void testRandomEditsMatchLinearScan() {
+        Random random = new Random(7);
+        RectangleIndex<Integer> index = new RectangleIndex<>();
+        List<Entry> entries = new ArrayList<>();
+
+        for (int step = 0; step < 5000; step++) {
+            if (entries.isEmpty() || random.nextInt(3) > 0) {
+                int row = random.nextInt(1000);
+                int column = random.nextInt(20);
+                CellRectangle range = new CellRectangle(row, column,
+                        row + random.nextInt(random.nextBoolean() ? 5 : 300), column + random.nextInt(3));
+                Entry entry = new Entry(range, step);
+                entries.add(entry);
+                index.insert(range, entry.value());
+            } else {
+                Entry entry = entries.remove(random.nextInt(entries.size()));
+                assertThat(index.remove(entry.range(), entry.value())).isTrue();
+            }
+
+            if (step % 50 == 0) {
+                for (int probe = 0; probe < 20; probe++) {
+                    int row = random.nextInt(1300);
+                    int column = random.nextInt(23);
+                    List<Integer> expected = new ArrayList<>();
+                    for (Entry entry : entries) {
+                        if (entry.range().contains(row, column)) {
+                            expected.add(entry.value());
+                        }
+                    }
+                    assertThat(query(index, row, column)).containsExactlyInAnyOrderElementsOf(expected);
+                }
+                CellRectangle area = new CellRectangle(random.nextInt(1000), 0, random.nextInt(1000), 5);
+                List<Integer> overlapping = new ArrayList<>();
+                index.search(area, overlapping::add);
+                assertThat(overlapping).containsExactlyInAnyOrderElementsOf(
+                        entries.stream().filter(entry -> entry.range().intersects(area)).map(Entry::value).toList());
+            }
+        }
+        assertThat(index.size()).isEqualTo(entries.size());
+
+        for (Entry entry : entries) {
+            assertThat(index.remove(entry.range(), entry.value())).isTrue();
+        }
+        assertThat(index.isEmpty()).isTrue();
+        assertThat(query(index, 10, 10)).isEmpty();
+    }
+
+    private static <T> List<T> query(RectangleIndex<T> index, int row, int column) {
+        List<T> found = new ArrayList<>();
+        index.search(row, column, found::add);
+        return found;
+    }
+}
@@ -0,0 +1,184 @@
+package com.lintang.formula;
+
+import com.lintang.formula.ast.ASTNode;
+import com.lintang.formula.cell.CellSource;
+import com.lintang.formula.value.FormulaError;
+import com.lintang.formula.value.ValueEvaluator;
+import com.lintang.formula.value.ValueSlot;
+import com.lintang.formula.value.ValueType;
+import com.lintang.formula.visitor.EvaluationVisitor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Unit tests for typed evaluation with error values and lazy logical functions.
+ */
+@DisplayName("Value Evaluator Tests")
+class ValueEvaluatorTest {
+
+    /**
+     * Row number as the value, except that column D is blank.
+     */
+    private static class Cells implements CellSource {
+        final List<String> reads = new ArrayList<>();
+
+        @Override
+        public double getNumber(int row, int column) {
+            reads.add((char) ('A' + column) + String.valueOf(row + 1));
+            return row + 1;
+        }
+
+        @Override
+        public boolean isBlank(int row, int column) {
+            return column == 3;
+        }
+    }
+
+    private static ValueSlot evaluate(String formula) throws Exception {
+        return new ValueEvaluator(new Cells()).evaluate(FormulaParserUtil.parse(formula));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "1 + 2 * 3              | NUMBER  | 7.0",
+        "'\"3\" * 2'            | NUMBER  | 6.0",
+        "'\" 1e3 \" / 10'       | NUMBER  | 100.0",
+        "TRUE + TRUE            | NUMBER  | 2.0",
+        "D1 + A2                | NUMBER  | 2.0",
+        "'-\"4\"'               | NUMBER  | -4.0",
+        "'+\"x\"'               | STRING  | x",
+        "'\"text\"'             | STRING  | text",
+        "FALSE                  | BOOLEAN | FALSE",
+        "D1                     | BLANK   | ''",
+        "A1:A1                  | NUMBER  | 1.0",
+        "'SUM(A1:A3, \"2\")'    | NUMBER  | 8.0",
+        "MAX(A1, B2, -C3)       | NUMBER  | 2.0"
+    })
+    @DisplayName("Evaluates typed values with spreadsheet coercion")
+    void testTypedValues(String formula, ValueType type, String display) throws Exception {
+        ValueSlot result = evaluate(formula);
+
+        assertThat(result.getType()).isEqualTo(type);
+        assertThat(result.toString()).isEqualTo(display);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "1 / 0                      | DIV0",
+        "A1 / (D1 * 2)              | DIV0",
+        "(1 / 0) + \"abc\"          | DIV0",
+        "'\"abc\" + 1 / 0'          | VALUE",
+        "'\"1.2.3\" * 1'            | VALUE",
+        "'\"\u0663\" + 1'            | VALUE",
+        "A0 + 1                     | REF",
+        "A1:B2 + 1                  | VALUE",
+        "2 ^ 5000                   | NUM",
+        "-(1 / 0)                   | DIV0",
+        "NOPE(1)                    | NAME",
+        "MAX(A1, NOPE(1))           | NAME",
+        "SUM(A1:A3, 1 / 0, A0)      | DIV0",
+        "SUM(A1:A3, A0)             | REF",
+        "AVERAGE(D1:D3)             | DIV0",
+        "SUM(A1, A0:B2)             | REF"
+    })
+    @DisplayName("Errors are values that propagate, first operand first")
+    void testErrorsPropagate(String formula, FormulaError error) throws Exception {
+        ValueSlot result = evaluate(formula);
+
+        assertThat(result.isError()).isTrue();
+        assertThat(result.getError()).isEqualTo(error);
+        assertThat(result.toString()).isEqualTo(error.getCode());
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+        "'IF(A1, \"yes\", 1 / 0)'       | yes",
+        "'IF(D1, 1 / 0, \"no\")'        | no",
+        "IF(0, 1)                       | FALSE",
+        "'IF(\"true\", 1, 2)'           | 1.0",
+        "'IF(\"maybe\", 1, 2)'          | #VALUE!",
+        "IF(1 / 0, 1, 2)                | #DIV/0!",
+        "IFERROR(1 / 0, -1)             | -1.0",
+        "IFERROR(4, 1 / 0)              | 4.0",
+        "AND(TRUE, 0, 1 / 0)            | FALSE",
+        "AND(1 / 0, FALSE)              | #DIV/0!",
+        "AND(A1:B3, D1)                 | TRUE",
+        "AND(D1:D5)                     | #VALUE!",
+        "OR(0, A1, NOPE())              | TRUE",
+        "OR(D1:D5, 0)                   | FALSE",
+        "NOT(D1)                        | TRUE",
+        "ISERROR(A0)                    | TRUE",
+        "ISERROR(IFERROR(A0, 0))        | FALSE",
+        "SUM(IF(A1, 2, 3), NOT(0))      | 3.0"
+    })
+    @DisplayName("Logical functions evaluate their arguments lazily")
+    void testLogicalFunctions(String formula, String display) throws Exception {
+        assertThat(evaluate(formula).toString()).isEqualTo(display);
+    }
+
+    @Test
+    @DisplayName("Branches that are not taken are not read")
+    void testShortCircuitSkipsCells() throws Exception {
+        Cells cells = new Cells();
+        ValueEvaluator evaluator = new ValueEvaluator(cells);
+
+        evaluator.evaluate(FormulaParserUtil.parse("IF(A1, B1, C1) + AND(0, A9) + OR(A2:A5, B7)"));
+
+        assertThat(cells.reads).containsExactly("A1", "B1", "A2");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"A1 * 2 + B3 / 4", "SUM(A1:C3) - MAX(B1, 7) ^ 2", "-(A2 - 3) * (C1 + TRUE)", "MIN(A1:B2, 0.5)"})
+    @DisplayName("Numeric formulas match EvaluationVisitor")
+    void testMatchesEvaluationVisitor(String formula) throws Exception {
+        ASTNode ast = FormulaParserUtil.parse(formula);
+
+        ValueSlot result = new ValueEvaluator(new Cells()).evaluate(ast);
+
+        assertThat(result.getType()).isEqualTo(ValueType.NUMBER);
+        assertThat(result.getNumber()).isEqualTo(ast.accept(new EvaluationVisitor(new Cells())));
+    }
+
+    @Test
+    @DisplayName("One evaluator and slot are reused across formulas")
+    void testReuse() throws Exception {
+        ValueEvaluator evaluator = new ValueEvaluator(new Cells());
+        ValueSlot slot = new ValueSlot();
+
+        evaluator.evaluate(FormulaParserUtil.parse("\"text\""), slot);
+        assertThat(slot.getString()).isEqualTo("text");
+        assertThatThrownBy(slot::getNumber).isInstanceOf(IllegalStateException.class);
+
+        evaluator.evaluate(FormulaParserUtil.parse("1 / 0"), slot);
+        assertThat(slot.getError()).isEqualTo(FormulaError.DIV0);
+        assertThat(slot.getString()).isNull();
+
+        evaluator.evaluate(FormulaParserUtil.parse("IF(TRUE, A3, 0)"), slot);
+        assertThat(slot.getNumber()).isEqualTo(3.0);
+        assertThat(slot.getError()).isNull();
+        assertThatThrownBy(slot::getBoolean).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("Invalid calls and missing cell data still throw")
+    void testStructuralErrorsThrow() throws Exception {
+        ValueEvaluator evaluator = new ValueEvaluator(new Cells());
+
+        assertThatThrownBy(() -> evaluator.evaluate(FormulaParserUtil.parse("IF(1)")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("IF requires 2 to 3 arguments");
+        assertThatThrownBy(() -> evaluator.evaluate(FormulaParserUtil.parse("SUMPRODUCT(A1, 2)")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ValueEvaluator().evaluate(FormulaParserUtil.parse("A1 + 1")))
+            .isInstanceOf(UnsupportedOperationException.class);
+        assertThat(evaluator.evaluate(FormulaParserUtil.parse("A2 * 2")).getNumber()).isEqualTo(4.0);
+    }
+}